@@ -0,0 +1,79 @@
+package com.calmasalud.hubi.benchmarks;
+
+import com.calmasalud.hubi.persistence.db.SQLiteManager;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Entorno aislado para los benchmarks: el repositorio de archivos, las cachés (todas bajo user.home/SistemaHUBI)
+ * y la base SQLite se redirigen a un directorio temporal, así una corrida nunca toca los datos reales.
+ * prepare() debe llamarse en cada @Setup antes de usar cualquier clase de hubi-core: las rutas base
+ * son constantes estáticas que se resuelven al cargar la clase.
+ */
+public final class BenchmarkEnvironment {
+
+    private static final Path ROOT = Paths.get(System.getProperty("java.io.tmpdir"), "hubi-benchmarks");
+    private static final Path HOME = ROOT.resolve("home");
+    private static final Path CORPUS = ROOT.resolve("corpus");
+
+    private static boolean prepared = false;
+
+    private BenchmarkEnvironment() {
+    }
+
+    public static synchronized void prepare() throws IOException {
+        if (prepared) return;
+        deleteRecursively(HOME);
+        Files.createDirectories(HOME);
+        System.setProperty("user.home", HOME.toString());
+        prepared = true;
+    }
+
+    /**
+     * @return Directorio compartido entre corridas para los archivos sintéticos (se generan una sola vez).
+     */
+    public static Path corpusDirectory() {
+        return CORPUS;
+    }
+
+    /**
+     * @return Directorio del repositorio de archivos redirigido (SistemaHUBI/RepositorioArchivos).
+     */
+    public static Path repositoryDirectory() {
+        return HOME.resolve("SistemaHUBI").resolve("RepositorioArchivos");
+    }
+
+    /**
+     * Crea una base SQLite nueva con el esquema de la aplicación.
+     */
+    public static SQLiteManager newDatabase(String name) throws IOException {
+        Files.createDirectories(HOME);
+        Path db = HOME.resolve(name + ".db");
+        Files.deleteIfExists(db);
+        SQLiteManager.initializeDatabase(db.toString());
+        return new SQLiteManager(db.toString());
+    }
+
+    public static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) return;
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,58 @@
+package com.calmasalud.hubi.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Punto de entrada del jar de benchmarks.
+ * <pre>
+ *   java -jar hubi-benchmarks/target/benchmarks.jar [regex]            (corre y guarda el JSON)
+ *   java -jar hubi-benchmarks/target/benchmarks.jar compare a.json b.json   (compara dos corridas)
+ * </pre>
+ * Cada corrida incluye el perfilador de GC (gc.alloc.rate.norm = bytes asignados por operación)
+ * y deja el resultado en jmh-results/&lt;fecha&gt;.json para poder compararla con la siguiente.
+ */
+public class BenchmarkRunner {
+
+    private static final Path RESULTS_DIR = Paths.get("jmh-results");
+    private static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        if (args.length > 0 && args[0].equals("compare")) {
+            if (args.length != 3) {
+                System.err.println("Uso: compare <base.json> <nuevo.json>");
+                System.exit(2);
+            }
+            ResultComparison.print(Paths.get(args[1]), Paths.get(args[2]));
+            return;
+        }
+
+        Files.createDirectories(RESULTS_DIR);
+        Path result = RESULTS_DIR.resolve(LocalDateTime.now().format(STAMP) + ".json");
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.toString())
+                .shouldFailOnError(true);
+        if (args.length == 0) {
+            options.include(BenchmarkRunner.class.getPackageName() + ".*");
+        } else {
+            for (String include : args) options.include(include);
+        }
+
+        new Runner(options.build()).run();
+        System.out.println("✅ Resultados guardados en: " + result.toAbsolutePath());
+    }
+}
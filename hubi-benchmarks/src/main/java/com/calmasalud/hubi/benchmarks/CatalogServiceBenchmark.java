@@ -0,0 +1,109 @@
+package com.calmasalud.hubi.benchmarks;
+
+import com.calmasalud.hubi.core.model.DeductionPlan;
+import com.calmasalud.hubi.core.model.Supply;
+import com.calmasalud.hubi.core.service.CatalogService;
+import com.calmasalud.hubi.corpus.Corpus;
+import com.calmasalud.hubi.corpus.CorpusPlan;
+import com.calmasalud.hubi.corpus.CorpusSpec;
+import com.calmasalud.hubi.corpus.SlicerFlavor;
+import com.calmasalud.hubi.persistence.db.SQLiteManager;
+import com.calmasalud.hubi.persistence.repository.MasterProductRepositorySQLite;
+import com.calmasalud.hubi.persistence.repository.ProductCompositionRepositorySQLite;
+import com.calmasalud.hubi.persistence.repository.ProductRepositorySQLite;
+import com.calmasalud.hubi.persistence.repository.SupplyRepositorySQLite;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flujos completos de CatalogService contra SQLite real (base temporal por trial):
+ * carga de un producto con N piezas (extracción + BD + copia al repositorio) y registro de producción
+ * de una pieza multicolor con descuento automático de insumos.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class CatalogServiceBenchmark {
+
+    private static final long PART_BYTES = 256 * 1024;
+    private static final double SUPPLY_STOCK_GRAMS = 1.0e9;
+
+    @Param({"10", "50"})
+    public int parts;
+
+    private CatalogService catalogService;
+    private List<File> partFiles;
+    private String pieceCode;
+    private int productCounter;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        BenchmarkEnvironment.prepare();
+        BenchmarkEnvironment.deleteRecursively(BenchmarkEnvironment.repositoryDirectory());
+        SQLiteManager db = BenchmarkEnvironment.newDatabase("catalog-" + parts);
+        catalogService = new CatalogService(
+                new ProductRepositorySQLite(db),
+                new MasterProductRepositorySQLite(db),
+                new ProductCompositionRepositorySQLite(db),
+                new SupplyRepositorySQLite(db));
+
+        // Piezas distintas (una semilla por parte) para que cada archivo sea su propio nombre base
+        partFiles = new ArrayList<>();
+        SlicerFlavor[] flavors = SlicerFlavor.values();
+        for (int i = 0; i < parts; i++) {
+            CorpusSpec spec = new CorpusSpec(flavors[i % flavors.length], PART_BYTES, 1000 + i).tools(1 + i % 3);
+            partFiles.add(Corpus.gcode(spec, BenchmarkEnvironment.corpusDirectory()).toFile());
+        }
+
+        // Pieza de 4 herramientas con un insumo por herramienta (mismo material y color, stock de sobra)
+        CorpusSpec multicolor = new CorpusSpec(SlicerFlavor.PRUSA, PART_BYTES, 77).tools(4);
+        CorpusPlan plan = new CorpusPlan(multicolor);
+        for (int t = 0; t < multicolor.tools; t++) {
+            Supply supply = new Supply(0, null, "Carrete " + (t + 1), plan.materials[t], plan.colors[t], SUPPLY_STOCK_GRAMS, 0);
+            catalogService.addOrModifySupplyStock(supply);
+        }
+        catalogService.procesarCargaProducto(List.of(Corpus.gcode(multicolor, BenchmarkEnvironment.corpusDirectory()).toFile()), "Muestra");
+        pieceCode = "MUEROJ001";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkEnvironment.deleteRecursively(BenchmarkEnvironment.repositoryDirectory());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 15)
+    public void loadProduct() throws IOException {
+        // Nombre único por invocación: cada carga crea su carpeta y su código maestro
+        catalogService.procesarCargaProducto(partFiles, "Bench" + (productCounter++));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public List<String> registerPieceProduction() {
+        DeductionPlan plan = catalogService.planPieceProduction(pieceCode, 1);
+        return catalogService.registerPieceProduction(pieceCode, plan);
+    }
+}
@@ -0,0 +1,65 @@
+package com.calmasalud.hubi.benchmarks;
+
+import com.calmasalud.hubi.core.model.PrintInfo;
+import com.calmasalud.hubi.core.service.FileParameterExtractor;
+import com.calmasalud.hubi.corpus.Corpus;
+import com.calmasalud.hubi.corpus.CorpusSpec;
+import com.calmasalud.hubi.corpus.SlicerFlavor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FileParameterExtractor.extract por dialecto y tamaño, sobre G-code y .gcode.3mf sintéticos (semilla fija).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class ExtractBenchmark {
+
+    private static final long SEED = 20240301L;
+
+    @Param({"PRUSA", "ORCA", "BAMBU", "CURA"})
+    public SlicerFlavor flavor;
+
+    @Param({"1", "16", "128"})
+    public int sizeMb;
+
+    @Param({"gcode", "gcode.3mf"})
+    public String container;
+
+    private FileParameterExtractor extractor;
+    private List<File> files;
+
+    @Setup
+    public void setup() throws IOException {
+        BenchmarkEnvironment.prepare();
+        CorpusSpec spec = new CorpusSpec(flavor, sizeMb * 1024L * 1024L, SEED).tools(4).colorChanges(2);
+        File file = (container.equals("gcode")
+                ? Corpus.gcode(spec, BenchmarkEnvironment.corpusDirectory())
+                : Corpus.gcode3MF(spec, BenchmarkEnvironment.corpusDirectory())).toFile();
+        files = List.of(file);
+        extractor = new FileParameterExtractor();
+    }
+
+    @Benchmark
+    public PrintInfo extract() {
+        return extractor.extract(files);
+    }
+}
@@ -0,0 +1,87 @@
+package com.calmasalud.hubi.benchmarks;
+
+import com.calmasalud.hubi.core.model.PieceStockDeduction;
+import com.calmasalud.hubi.core.model.Product;
+import com.calmasalud.hubi.persistence.db.SQLiteManager;
+import com.calmasalud.hubi.persistence.repository.ProductRepositorySQLite;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operaciones de ProductRepositorySQLite sobre una base sembrada: búsqueda por código,
+ * reserva de correlativo y descuento de stock de piezas por lotes (una transacción por lote).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    private static final int SEEDED_PIECES = 2000;
+    private static final String[] COLORS = {"ROJO", "AZUL", "BLANCO", "NEGRO"};
+    // Stock suficiente para que ninguna iteración agote una fila
+    private static final int SEEDED_STOCK = Integer.MAX_VALUE / 2;
+
+    @Param({"1", "10", "100"})
+    public int batchSize;
+
+    private ProductRepositorySQLite repository;
+    private List<PieceStockDeduction> deductions;
+    private int lookup;
+
+    @Setup
+    public void setup() throws IOException {
+        BenchmarkEnvironment.prepare();
+        SQLiteManager db = BenchmarkEnvironment.newDatabase("repository-" + batchSize);
+        repository = new ProductRepositorySQLite(db);
+
+        for (int i = 1; i <= SEEDED_PIECES; i++) {
+            String code = code(i);
+            repository.save(new Product(code, "pieza_" + i + ".gcode", ".gcode", 12.5, "0:PLA:#FF0000:12.5"));
+        }
+
+        deductions = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            String pieceNameBase = "pieza_" + (i / COLORS.length + 1);
+            String color = COLORS[i % COLORS.length];
+            repository.increasePieceStockQuantity(pieceNameBase, color, SEEDED_STOCK);
+            deductions.add(new PieceStockDeduction(pieceNameBase, color, 1));
+        }
+    }
+
+    private static String code(int i) {
+        return "BEN" + COLORS[i % COLORS.length].substring(0, 3) + String.format("%04d", i);
+    }
+
+    @Benchmark
+    public Product findByCode() {
+        lookup = lookup % SEEDED_PIECES + 1;
+        return repository.findByCode(code(lookup));
+    }
+
+    @Benchmark
+    public String getNextCorrelative() {
+        return repository.getNextCorrelative("BENROJ");
+    }
+
+    @Benchmark
+    public void decreasePieceStockBatch() {
+        repository.decreasePieceStockBatch(deductions);
+    }
+}
@@ -0,0 +1,199 @@
+package com.calmasalud.hubi.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compara dos archivos JSON de JMH (benchmark + parámetros) e imprime la variación del puntaje
+ * y de los bytes asignados por operación. Incluye un lector JSON mínimo para no sumar dependencias.
+ */
+public final class ResultComparison {
+
+    private static final String ALLOC_METRIC = "gc.alloc.rate.norm";
+
+    private ResultComparison() {
+    }
+
+    /** Puntaje de una combinación benchmark + parámetros. */
+    static final class Score {
+        final double score;
+        final String unit;
+        final double allocBytes;
+
+        Score(double score, String unit, double allocBytes) {
+            this.score = score;
+            this.unit = unit;
+            this.allocBytes = allocBytes;
+        }
+    }
+
+    public static void print(Path baseline, Path candidate) throws IOException {
+        Map<String, Score> before = read(baseline);
+        Map<String, Score> after = read(candidate);
+
+        System.out.printf(Locale.US, "%-70s %14s %14s %9s %12s%n", "Benchmark", "Base", "Nuevo", "Δ", "Δ alloc");
+        for (Map.Entry<String, Score> entry : after.entrySet()) {
+            Score now = entry.getValue();
+            Score old = before.get(entry.getKey());
+            if (old == null) {
+                System.out.printf(Locale.US, "%-70s %14s %14.3f %9s %12s  (nuevo)%n", entry.getKey(), "-", now.score, "-", "-");
+                continue;
+            }
+            System.out.printf(Locale.US, "%-70s %14.3f %14.3f %9s %12s  %s%n",
+                    entry.getKey(), old.score, now.score, percent(old.score, now.score),
+                    percent(old.allocBytes, now.allocBytes), now.unit);
+        }
+        for (String key : before.keySet()) {
+            if (!after.containsKey(key)) System.out.printf("%-70s (ya no existe)%n", key);
+        }
+    }
+
+    private static String percent(double before, double after) {
+        if (Double.isNaN(before) || Double.isNaN(after) || before == 0) return "-";
+        return String.format(Locale.US, "%+.1f%%", (after - before) * 100.0 / before);
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Score> read(Path file) throws IOException {
+        Object root = new JsonReader(Files.readString(file, StandardCharsets.UTF_8)).value();
+        Map<String, Score> scores = new TreeMap<>();
+        for (Object item : (List<Object>) root) {
+            Map<String, Object> result = (Map<String, Object>) item;
+            StringBuilder key = new StringBuilder((String) result.get("benchmark"));
+            Object params = result.get("params");
+            if (params instanceof Map<?, ?> map) {
+                map.forEach((name, value) -> key.append(' ').append(name).append('=').append(value));
+            }
+
+            Map<String, Object> primary = (Map<String, Object>) result.get("primaryMetric");
+            double allocBytes = Double.NaN;
+            Object secondary = result.get("secondaryMetrics");
+            if (secondary instanceof Map<?, ?> metrics && metrics.get(ALLOC_METRIC) instanceof Map<?, ?> alloc) {
+                allocBytes = toDouble(alloc.get("score"));
+            }
+            scores.put(key.toString(), new Score(toDouble(primary.get("score")),
+                    (String) primary.get("scoreUnit"), allocBytes));
+        }
+        return scores;
+    }
+
+    // JMH escribe "NaN" entre comillas cuando no hay dato
+    private static double toDouble(Object value) {
+        if (value instanceof Number number) return number.doubleValue();
+        return value == null ? Double.NaN : Double.parseDouble(value.toString());
+    }
+
+    /** Lector JSON recursivo: objetos -> LinkedHashMap, arreglos -> ArrayList, números -> Double. */
+    static final class JsonReader {
+        private final String text;
+        private int pos;
+
+        JsonReader(String text) {
+            this.text = text;
+        }
+
+        Object value() {
+            skipWhitespace();
+            char c = text.charAt(pos);
+            switch (c) {
+                case '{':
+                    return object();
+                case '[':
+                    return array();
+                case '"':
+                    return string();
+                case 't':
+                    pos += 4;
+                    return Boolean.TRUE;
+                case 'f':
+                    pos += 5;
+                    return Boolean.FALSE;
+                case 'n':
+                    pos += 4;
+                    return null;
+                default:
+                    return number();
+            }
+        }
+
+        private Map<String, Object> object() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            pos++; // {
+            skipWhitespace();
+            if (text.charAt(pos) == '}') {
+                pos++;
+                return map;
+            }
+            while (true) {
+                skipWhitespace();
+                String name = string();
+                skipWhitespace();
+                pos++; // :
+                map.put(name, value());
+                skipWhitespace();
+                if (text.charAt(pos++) == '}') return map;
+            }
+        }
+
+        private List<Object> array() {
+            List<Object> list = new ArrayList<>();
+            pos++; // [
+            skipWhitespace();
+            if (text.charAt(pos) == ']') {
+                pos++;
+                return list;
+            }
+            while (true) {
+                list.add(value());
+                skipWhitespace();
+                if (text.charAt(pos++) == ']') return list;
+            }
+        }
+
+        private String string() {
+            StringBuilder sb = new StringBuilder();
+            pos++; // "
+            while (true) {
+                char c = text.charAt(pos++);
+                if (c == '"') return sb.toString();
+                if (c == '\\') {
+                    char escaped = text.charAt(pos++);
+                    switch (escaped) {
+                        case 'n' -> sb.append('\n');
+                        case 't' -> sb.append('\t');
+                        case 'r' -> sb.append('\r');
+                        case 'b' -> sb.append('\b');
+                        case 'f' -> sb.append('\f');
+                        case 'u' -> {
+                            sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                            pos += 4;
+                        }
+                        default -> sb.append(escaped);
+                    }
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+
+        private Object number() {
+            int start = pos;
+            while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) pos++;
+            String literal = text.substring(start, pos);
+            if (literal.isEmpty()) throw new IllegalStateException("JSON inválido en la posición " + start);
+            return Double.parseDouble(literal);
+        }
+
+        private void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+        }
+    }
+}
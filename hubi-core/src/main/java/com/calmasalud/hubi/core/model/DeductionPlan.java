@@ -0,0 +1,61 @@
+package com.calmasalud.hubi.core.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plan de descuento de insumos para producir una pieza: a cada herramienta del archivo se le asigna un insumo.
+ * Las líneas quedan ordenadas de mayor a menor consumo (Color 1, Color 2...), igual que en el registro manual.
+ * Si algún consumo no tiene insumo compatible o con stock suficiente, el plan no es válido y se detalla en problems.
+ */
+public class DeductionPlan {
+
+    /**
+     * Asignación de una herramienta a un insumo.
+     */
+    public static class Line {
+        public final FilamentProfile usage;
+        public final Supply supply;          // null si no hay insumo compatible
+        public final double gramsPerUnit;
+        public final double totalGrams;
+        public final double colorDistance;   // CIEDE2000 entre el color del archivo y el del insumo (NaN si se desconoce)
+
+        public Line(FilamentProfile usage, Supply supply, double gramsPerUnit, double totalGrams, double colorDistance) {
+            this.usage = usage;
+            this.supply = supply;
+            this.gramsPerUnit = gramsPerUnit;
+            this.totalGrams = totalGrams;
+            this.colorDistance = colorDistance;
+        }
+
+        /**
+         * @return La clave del insumo con el formato de los ComboBox ("Nombre | COLOR TIPO"), o null.
+         */
+        public String getColorKey() {
+            return supply == null ? null : supply.getName() + " | " + supply.getColorFilamento() + " " + supply.getTipoFilamento();
+        }
+    }
+
+    public final int quantity;
+    public final List<Line> lines = new ArrayList<>();
+    public final List<String> problems = new ArrayList<>();
+
+    public DeductionPlan(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public boolean isValid() {
+        return problems.isEmpty();
+    }
+
+    /**
+     * @return Las claves de insumo de cada línea, en orden (null donde no se encontró insumo).
+     */
+    public List<String> getColorKeys() {
+        List<String> keys = new ArrayList<>();
+        for (Line line : lines) {
+            keys.add(line.getColorKey());
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,40 @@
+package com.calmasalud.hubi.core.model;
+
+import java.util.List;
+
+/**
+ * Filas de la BD que se borraron junto con una entrada de la papelera (un producto completo o una pieza),
+ * tal como estaban: el manifiesto de la papelera las guarda para poder restaurarlas.
+ * master es null si se borraron solo piezas (Ej: deletePiece).
+ */
+public class DeletedRows {
+
+    public static final DeletedRows EMPTY = new DeletedRows(null, List.of(), List.of(), List.of());
+
+    public final MasterProductView master;             // Maestro con su stock final y precio, o null
+    public final List<ProductComposition> composition; // Composición (BOM) del maestro
+    public final List<Product> pieces;
+    public final List<PieceStockColorView> pieceStock;
+
+    public DeletedRows(MasterProductView master, List<ProductComposition> composition, List<Product> pieces,
+                       List<PieceStockColorView> pieceStock) {
+        this.master = master;
+        this.composition = List.copyOf(composition);
+        this.pieces = List.copyOf(pieces);
+        this.pieceStock = List.copyOf(pieceStock);
+    }
+
+    public boolean isEmpty() {
+        return master == null && composition.isEmpty() && pieces.isEmpty() && pieceStock.isEmpty();
+    }
+
+    /**
+     * @return La fila de la pieza con ese código, o null.
+     */
+    public Product findPiece(String code) {
+        for (Product piece : pieces) {
+            if (piece.getCode().equals(code)) return piece;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,56 @@
+package com.calmasalud.hubi.core.model;
+
+import java.util.Locale;
+
+/**
+ * Familias de material de filamento reconocidas en los archivos de impresión.
+ * La densidad por defecto (g/cm³) se usa cuando el archivo no la informa.
+ */
+public enum FilamentMaterial {
+    PLA(1.24),
+    PETG(1.27),
+    ABS(1.04),
+    ASA(1.07),
+    TPU(1.21),
+    PA(1.14),
+    PC(1.20),
+    PVA(1.23),
+    HIPS(1.04),
+    OTHER(1.24),
+    UNKNOWN(1.24);
+
+    private final double defaultDensity;
+
+    FilamentMaterial(double defaultDensity) {
+        this.defaultDensity = defaultDensity;
+    }
+
+    public double getDefaultDensity() {
+        return defaultDensity;
+    }
+
+    /**
+     * Traduce el texto informado por el slicer (Ej: "PLA+", "PETG-HF", "PA12-CF") a su familia.
+     * @param label Texto original del archivo.
+     * @return La familia de material, UNKNOWN si no hay texto y OTHER si no se reconoce.
+     */
+    public static FilamentMaterial fromLabel(String label) {
+        if (label == null || label.isBlank() || label.equalsIgnoreCase("N/D")) {
+            return UNKNOWN;
+        }
+        String l = label.trim().toUpperCase(Locale.ROOT);
+
+        // Casos que comparten prefijo con otra familia
+        if (l.startsWith("PCTG") || l.startsWith("PET")) return PETG;
+        if (l.startsWith("NYLON")) return PA;
+        if (l.startsWith("TPE")) return TPU;
+
+        for (FilamentMaterial material : values()) {
+            if (material == OTHER || material == UNKNOWN) continue;
+            if (l.startsWith(material.name())) {
+                return material;
+            }
+        }
+        return OTHER;
+    }
+}
@@ -0,0 +1,116 @@
+package com.calmasalud.hubi.core.model;
+
+/**
+ * Perfil de filamento de una herramienta (T0, T1...) extraído de un archivo de impresión.
+ * Los valores numéricos desconocidos quedan en NaN y el color en NO_COLOR.
+ */
+public class FilamentProfile {
+
+    /** Valor de colorRgb cuando el archivo no informa un color HEX. */
+    public static final int NO_COLOR = -1;
+
+    /** Diámetro asumido cuando el archivo no lo informa. */
+    public static final double DEFAULT_DIAMETER_MM = 1.75;
+
+    private final int toolIndex;
+
+    public FilamentMaterial material = FilamentMaterial.UNKNOWN;
+    public String materialLabel;          // Texto original del slicer (Ej: "PLA+")
+    public double densityGcm3 = Double.NaN;
+    public double diameterMm = Double.NaN;
+    public int colorRgb = NO_COLOR;       // 0xRRGGBB
+    public String colorLabel;             // Color informado como texto (sin HEX)
+    public String colorName;              // Nombre resuelto para mostrar
+    public double amountMeters = Double.NaN;
+    public double amountGrams = Double.NaN;
+    public boolean amountEstimated = false; // true si el peso se calculó por extrusión y no lo informó el slicer
+
+    // Constructor que recibe el índice de herramienta
+    public FilamentProfile(int toolIndex) {
+        this.toolIndex = toolIndex;
+    }
+
+    public int getToolIndex() {
+        return toolIndex;
+    }
+
+    public boolean hasAmountGrams() {
+        return !Double.isNaN(amountGrams);
+    }
+
+    public boolean hasAmountMeters() {
+        return !Double.isNaN(amountMeters);
+    }
+
+    /**
+     * Convierte un largo de filamento a gramos con el diámetro y la densidad del perfil
+     * (o los valores por defecto del material si el archivo no los informa).
+     * @param lengthMm Largo extruido en mm.
+     */
+    public double estimateGrams(double lengthMm) {
+        double diameter = Double.isNaN(diameterMm) || diameterMm <= 0 ? DEFAULT_DIAMETER_MM : diameterMm;
+        double density = Double.isNaN(densityGcm3) || densityGcm3 <= 0 ? material.getDefaultDensity() : densityGcm3;
+        double radius = diameter / 2.0;
+        double volumeCm3 = lengthMm * Math.PI * radius * radius / 1000.0; // mm³ -> cm³
+        return volumeCm3 * density;
+    }
+
+    public boolean hasColor() {
+        return colorRgb != NO_COLOR;
+    }
+
+    /**
+     * Asigna el material a partir del texto del slicer, conservando el texto original.
+     */
+    public void setMaterial(String label) {
+        if (label == null || label.isBlank()) return;
+        this.materialLabel = label.trim();
+        this.material = FilamentMaterial.fromLabel(this.materialLabel);
+    }
+
+    /**
+     * Asigna el color a partir del texto del slicer ("#RRGGBB", "#RRGGBBAA" o un nombre).
+     */
+    public void setColor(String raw) {
+        if (raw == null || raw.isBlank()) return;
+        String value = raw.trim();
+        int rgb = parseHexColor(value);
+        if (rgb != NO_COLOR) {
+            this.colorRgb = rgb;
+            this.colorLabel = null;
+        } else if (!value.startsWith("#")) {
+            this.colorLabel = value;
+        }
+    }
+
+    public String getColorHex() {
+        return PrintInfoFormatter.colorHex(colorRgb);
+    }
+
+    /**
+     * Convierte "#RRGGBB" o "#RRGGBBAA" en 0xRRGGBB. Devuelve NO_COLOR si el formato no es válido.
+     */
+    public static int parseHexColor(String hex) {
+        if (hex == null || hex.length() < 7 || hex.charAt(0) != '#') return NO_COLOR;
+        if (hex.length() != 7 && hex.length() != 9) return NO_COLOR;
+        int rgb = 0;
+        for (int i = 1; i < 7; i++) {
+            int digit = Character.digit(hex.charAt(i), 16);
+            if (digit < 0) return NO_COLOR;
+            rgb = (rgb << 4) | digit;
+        }
+        return rgb;
+    }
+
+    @Override
+    public String toString() {
+        // Si el nombre de color es N/D, muestra el color HEX si está disponible, sino "Filamento"
+        String color = (colorName != null && !colorName.startsWith("N/D")) ? colorName :
+                (hasColor() ? getColorHex() : "Filamento");
+
+        String type = materialLabel == null ? "" : " | " + materialLabel;
+        String amount = hasAmountGrams() ? " | " + PrintInfoFormatter.grams(amountGrams) : "";
+
+        return color + type + amount;
+    }
+}
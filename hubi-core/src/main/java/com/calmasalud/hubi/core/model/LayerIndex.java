@@ -0,0 +1,138 @@
+package com.calmasalud.hubi.core.model;
+
+import java.util.Arrays;
+
+/**
+ * Índice compacto de capas de un G-code: por capa, el byte donde empieza (la línea que sube la Z),
+ * su altura, la herramienta activa, el filamento extruido acumulado (mm) y los cambios de color
+ * acumulados hasta ese byte. Con él, una capa o rango de capas se lee con I/O posicional
+ * sin recorrer el archivo desde el principio.
+ * Los datos van en arreglos primitivos paralelos (un G-code puede tener miles de capas).
+ */
+public class LayerIndex {
+
+    private final long[] offsets;
+    private final double[] z;
+    private final int[] tools;
+    private final double[] cumulativeE;
+    private final int[] colorChanges;
+    private final long endOffset;     // Fin de la última capa (largo del archivo)
+    private final int totalColorChanges;
+
+    public LayerIndex(long[] offsets, double[] z, int[] tools, double[] cumulativeE, int[] colorChanges,
+                      long endOffset, int totalColorChanges) {
+        int n = offsets.length;
+        if (z.length != n || tools.length != n || cumulativeE.length != n || colorChanges.length != n) {
+            throw new IllegalArgumentException("Los arreglos del índice de capas deben tener el mismo largo.");
+        }
+        this.offsets = offsets;
+        this.z = z;
+        this.tools = tools;
+        this.cumulativeE = cumulativeE;
+        this.colorChanges = colorChanges;
+        this.endOffset = endOffset;
+        this.totalColorChanges = totalColorChanges;
+    }
+
+    public int size() {
+        return offsets.length;
+    }
+
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    public int getTotalColorChanges() {
+        return totalColorChanges;
+    }
+
+    /** Byte donde empieza la capa. */
+    public long offset(int layer) {
+        return offsets[layer];
+    }
+
+    /** Byte donde termina la capa (exclusivo): el inicio de la siguiente o el fin del archivo. */
+    public long endOffset(int layer) {
+        return layer + 1 < offsets.length ? offsets[layer + 1] : endOffset;
+    }
+
+    public double z(int layer) {
+        return z[layer];
+    }
+
+    public int tool(int layer) {
+        return tools[layer];
+    }
+
+    /** Filamento neto extruido (mm, todas las herramientas) antes de empezar la capa. */
+    public double cumulativeE(int layer) {
+        return cumulativeE[layer];
+    }
+
+    /** Filamento neto extruido (mm) dentro de la capa. Para la última capa no se conoce el total (NaN). */
+    public double extrudedInLayer(int layer) {
+        return layer + 1 < offsets.length ? cumulativeE[layer + 1] - cumulativeE[layer] : Double.NaN;
+    }
+
+    /** Cambios de color acumulados antes de empezar la capa. */
+    public int colorChangesBefore(int layer) {
+        return colorChanges[layer];
+    }
+
+    /** Cambios de color que ocurren dentro de la capa. */
+    public int colorChangesInLayer(int layer) {
+        int next = layer + 1 < colorChanges.length ? colorChanges[layer + 1] : totalColorChanges;
+        return next - colorChanges[layer];
+    }
+
+    /**
+     * @return La capa que contiene la altura z (la última con z(capa) <= z), o -1 si está por debajo de la primera.
+     */
+    public int layerAtZ(double height) {
+        int idx = Arrays.binarySearch(z, height);
+        if (idx >= 0) return idx;
+        return -idx - 2;
+    }
+
+    /**
+     * Acumulador usado durante el parseo; las capas se agregan en orden.
+     */
+    public static class Builder {
+        private long[] offsets = new long[256];
+        private double[] z = new double[256];
+        private int[] tools = new int[256];
+        private double[] cumulativeE = new double[256];
+        private int[] colorChanges = new int[256];
+        private int size = 0;
+
+        public void add(long offset, double height, int tool, double extrudedMm, int colorChangesBefore) {
+            if (size == offsets.length) {
+                int capacity = size * 2;
+                offsets = Arrays.copyOf(offsets, capacity);
+                z = Arrays.copyOf(z, capacity);
+                tools = Arrays.copyOf(tools, capacity);
+                cumulativeE = Arrays.copyOf(cumulativeE, capacity);
+                colorChanges = Arrays.copyOf(colorChanges, capacity);
+            }
+            offsets[size] = offset;
+            z[size] = height;
+            tools[size] = tool;
+            cumulativeE[size] = extrudedMm;
+            colorChanges[size] = colorChangesBefore;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long lastOffset() {
+            return size == 0 ? -1 : offsets[size - 1];
+        }
+
+        public LayerIndex build(long endOffset, int totalColorChanges) {
+            return new LayerIndex(Arrays.copyOf(offsets, size), Arrays.copyOf(z, size), Arrays.copyOf(tools, size),
+                    Arrays.copyOf(cumulativeE, size), Arrays.copyOf(colorChanges, size), endOffset, totalColorChanges);
+        }
+    }
+}
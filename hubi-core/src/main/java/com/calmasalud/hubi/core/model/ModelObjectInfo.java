@@ -0,0 +1,24 @@
+package com.calmasalud.hubi.core.model;
+
+/**
+ * Objeto de malla declarado en un archivo .model de un 3MF (solo contadores, sin la geometría).
+ */
+public class ModelObjectInfo {
+    public final String modelPath; // Entrada del zip (Ej: "3D/3dmodel.model")
+    public final String id;
+    public String name;
+    public String type;            // "model", "support", "other"...
+    public long vertices = 0;
+    public long triangles = 0;
+    public int components = 0;     // Referencias a otros objetos (<component>)
+
+    public ModelObjectInfo(String modelPath, String id) {
+        this.modelPath = modelPath;
+        this.id = id;
+    }
+
+    @Override
+    public String toString() {
+        return (name != null ? name : "Objeto " + id) + " (" + triangles + " triángulos)";
+    }
+}
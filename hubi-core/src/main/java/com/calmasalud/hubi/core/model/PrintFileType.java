@@ -0,0 +1,94 @@
+package com.calmasalud.hubi.core.model;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Tipos de archivo aceptados en el repositorio. Las extensiones compuestas (".gcode.3mf", ".gcode.gz")
+ * se resuelven por el sufijo más largo, por lo que "pieza.gcode.3mf" NO es un ".3mf".
+ */
+public enum PrintFileType {
+    STL(".stl", false),
+    THREE_MF(".3mf", false),
+    GCODE(".gcode", true),
+    GCODE_3MF(".gcode.3mf", true),   // G-code embebido en un zip (BambuStudio)
+    GCODE_GZ(".gcode.gz", true),     // G-code archivado con gzip
+    BGCODE(".bgcode", true);         // G-code binario de PrusaSlicer
+
+    private final String extension;
+    private final boolean gcode;
+
+    // Ordenados de la extensión más larga a la más corta para la búsqueda por sufijo
+    private static final PrintFileType[] BY_SUFFIX_LENGTH = Arrays.stream(values())
+            .sorted(Comparator.comparingInt((PrintFileType t) -> t.extension.length()).reversed())
+            .toArray(PrintFileType[]::new);
+
+    PrintFileType(String extension, boolean gcode) {
+        this.extension = extension;
+        this.gcode = gcode;
+    }
+
+    /**
+     * @return La extensión con el punto (Ej: ".gcode.gz").
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * @return true si el archivo contiene G-code (plano, comprimido o embebido).
+     */
+    public boolean isGCode() {
+        return gcode;
+    }
+
+    /**
+     * @return El tipo del archivo por su sufijo más largo, o null si no es un tipo aceptado.
+     */
+    public static PrintFileType fromFileName(String fileName) {
+        if (fileName == null) return null;
+        String lower = fileName.toLowerCase(Locale.ROOT);
+        for (PrintFileType type : BY_SUFFIX_LENGTH) {
+            if (lower.endsWith(type.extension) && lower.length() > type.extension.length()) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    public static boolean isSupported(String fileName) {
+        return fromFileName(fileName) != null;
+    }
+
+    /**
+     * Extensión del archivo incluyendo el punto, respetando las extensiones compuestas
+     * (Ej: "A.gcode.gz" -> ".gcode.gz", "A.png" -> ".png"). Devuelve "" si no hay extensión.
+     */
+    public static String extensionOf(String fileName) {
+        if (fileName == null) return "";
+        PrintFileType type = fromFileName(fileName);
+        if (type != null) {
+            return fileName.substring(fileName.length() - type.extension.length());
+        }
+        int dotIndex = fileName.lastIndexOf('.');
+        if (dotIndex <= 0) return "";
+        return fileName.substring(dotIndex);
+    }
+
+    /**
+     * Nombre sin la extensión (Ej: "SOPROJ001.gcode.3mf" -> "SOPROJ001").
+     */
+    public static String baseName(String fileName) {
+        if (fileName == null) return null;
+        return fileName.substring(0, fileName.length() - extensionOf(fileName).length());
+    }
+
+    /**
+     * @return true si la extensión (con punto) corresponde a un archivo de G-code.
+     */
+    public static boolean isGCodeExtension(String extension) {
+        PrintFileType type = fromFileName("x" + (extension == null ? "" : extension));
+        return type != null && type.isGCode() && type.extension.equalsIgnoreCase(extension);
+    }
+}
@@ -0,0 +1,70 @@
+package com.calmasalud.hubi.core.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Resultado tipado de la extracción de parámetros de un archivo de impresión (G-code / 3MF).
+ * Tiempo en segundos (-1 si se desconoce) y altura de capa en mm (NaN si se desconoce).
+ */
+public class PrintInfo {
+    public long timeSeconds = -1;
+    public int pieces = 0;
+    public int colorChanges = 0;
+    public double layerHeightMm = Double.NaN;
+    public int totalLayers = 0;
+
+    // Tiempo estimado por el modelo cinemático a partir de los movimientos (-1 si no se calculó)
+    public long estimatedSeconds = -1;
+    public final List<Double> layerSeconds = new ArrayList<>();
+    public boolean timeEstimated = false; // true si timeSeconds proviene de la estimación
+
+    // Índice de capas -> bytes del G-code (null si el archivo no se leyó desde disco sin comprimir)
+    public LayerIndex layerIndex;
+
+    // Contenido de los .model de un 3MF (objetos con sus contadores y piezas colocadas en el build)
+    public final List<ModelObjectInfo> modelObjects = new ArrayList<>();
+    public int buildItems = 0;
+
+    // Proyectos multi-placa (BambuStudio / OrcaSlicer): un resultado por placa, 1-based
+    public int plateIndex = 0;
+    public final List<PrintInfo> plates = new ArrayList<>();
+
+    // Mapa para almacenar los perfiles de filamento, key = Tool Index (0, 1, 2...)
+    public final Map<Integer, FilamentProfile> filamentProfiles = new HashMap<>();
+
+    public boolean hasTime() {
+        return timeSeconds >= 0;
+    }
+
+    public FilamentProfile profile(int toolIndex) {
+        return filamentProfiles.computeIfAbsent(toolIndex, FilamentProfile::new);
+    }
+
+    /**
+     * @return Los gramos (> 0) de cada herramienta, ordenados por índice de herramienta.
+     */
+    public List<Double> gramsByTool() {
+        List<Double> grams = new ArrayList<>();
+        for (FilamentProfile profile : new TreeMap<>(filamentProfiles).values()) {
+            if (profile.hasAmountGrams() && profile.amountGrams > 0) {
+                grams.add(profile.amountGrams);
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * @return Suma de gramos de todas las herramientas (0 si no hay datos).
+     */
+    public double totalGrams() {
+        double total = 0.0;
+        for (double g : gramsByTool()) {
+            total += g;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,59 @@
+package com.calmasalud.hubi.core.model;
+
+import java.util.Locale;
+
+/**
+ * Adaptadores de formato para mostrar en la UI los valores tipados de PrintInfo y FilamentProfile.
+ * Los valores desconocidos (NaN, -1, NO_COLOR) se muestran como "N/D".
+ */
+public final class PrintInfoFormatter {
+
+    public static final String NOT_AVAILABLE = "N/D";
+
+    private PrintInfoFormatter() {
+    }
+
+    /** Número sin unidad (Ej: "12.5"), pensado para campos de texto editables. */
+    public static String number(double value) {
+        return Double.isNaN(value) ? NOT_AVAILABLE : trimNum(value);
+    }
+
+    public static String grams(double grams) {
+        return Double.isNaN(grams) ? NOT_AVAILABLE : trimNum(grams) + " g";
+    }
+
+    public static String meters(double meters) {
+        return Double.isNaN(meters) ? NOT_AVAILABLE : trimNum(meters) + " m";
+    }
+
+    public static String density(double gramsPerCm3) {
+        return Double.isNaN(gramsPerCm3) ? NOT_AVAILABLE : trimNum(gramsPerCm3) + " g/cm³";
+    }
+
+    public static String millimeters(double mm) {
+        return Double.isNaN(mm) ? NOT_AVAILABLE : trimNum(mm) + " mm";
+    }
+
+    /** Duración legible (Ej: "2h 15m", "4m 10s", "35s"). */
+    public static String duration(long totalSec) {
+        if (totalSec < 0) return NOT_AVAILABLE;
+        long h = totalSec / 3600;
+        long m = (totalSec % 3600) / 60;
+        long s = totalSec % 60;
+        if (h > 0) return String.format("%dh %dm", h, m);
+        if (m > 0) return String.format("%dm %ds", m, s);
+        return String.format("%ds", s);
+    }
+
+    /** Color en formato "#RRGGBB", o null si no hay color. */
+    public static String colorHex(int rgb) {
+        if (rgb == FilamentProfile.NO_COLOR) return null;
+        return String.format("#%06X", rgb & 0xFFFFFF);
+    }
+
+    /** Enteros sin decimales, el resto con 2 decimales (Locale.US). */
+    public static String trimNum(double v) {
+        if (Math.abs(v - Math.rint(v)) < 1e-6) return String.valueOf((long) Math.rint(v));
+        return String.format(Locale.US, "%.2f", v);
+    }
+}
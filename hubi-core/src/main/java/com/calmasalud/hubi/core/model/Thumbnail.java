@@ -0,0 +1,45 @@
+package com.calmasalud.hubi.core.model;
+
+/**
+ * Miniatura embebida en un archivo de impresión (G-code, 3MF o bgcode).
+ * Los bytes son la imagen completa en su formato (las QOI se convierten a PNG al extraerlas).
+ */
+public class Thumbnail {
+
+    public enum Format {
+        PNG(".png"),
+        JPG(".jpg"),
+        QOI(".qoi");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    public final Format format;
+    public final int width;
+    public final int height;
+    public final byte[] data;
+
+    public Thumbnail(Format format, int width, int height, byte[] data) {
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.data = data;
+    }
+
+    public long area() {
+        return (long) width * height;
+    }
+
+    @Override
+    public String toString() {
+        return format + " " + width + "x" + height + " (" + data.length + " bytes)";
+    }
+}
@@ -0,0 +1,77 @@
+package com.calmasalud.hubi.core.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+
+/**
+ * Formato del detalle de consumo por herramienta guardado en products.usage_detail.
+ * Cada herramienta es "herramienta:material:#RRGGBB:gramos", separadas por ';' (Ej: "0:PLA:#FF0000:80.5;1:PETG::20.2").
+ * El formato viejo (solo gramos, Ej: "80.5;20.2") se sigue leyendo: la herramienta es la posición y
+ * el material y el color quedan desconocidos.
+ */
+public final class UsageDetail {
+
+    private UsageDetail() {
+    }
+
+    /**
+     * @return El detalle de las herramientas con gramos > 0, ordenadas por índice de herramienta.
+     */
+    public static String format(PrintInfo info) {
+        StringBuilder sb = new StringBuilder();
+        for (FilamentProfile profile : new TreeMap<>(info.filamentProfiles).values()) {
+            if (!profile.hasAmountGrams() || profile.amountGrams <= 0) continue;
+            if (sb.length() > 0) sb.append(';');
+            sb.append(profile.getToolIndex()).append(':')
+                    .append(profile.materialLabel == null ? "" : clean(profile.materialLabel)).append(':')
+                    .append(profile.hasColor() ? profile.getColorHex() : "").append(':')
+                    .append(profile.amountGrams);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return Un perfil por herramienta con gramos > 0 (material, color y gramos), en el orden guardado.
+     */
+    public static List<FilamentProfile> parse(String detail) {
+        List<FilamentProfile> profiles = new ArrayList<>();
+        if (detail == null || detail.isBlank()) return profiles;
+        String[] entries = detail.split(";");
+        for (int i = 0; i < entries.length; i++) {
+            String[] parts = entries[i].trim().split(":", -1);
+            try {
+                FilamentProfile profile;
+                if (parts.length >= 4) {
+                    profile = new FilamentProfile(Integer.parseInt(parts[0].trim()));
+                    profile.setMaterial(parts[1]);
+                    profile.setColor(parts[2]);
+                    profile.amountGrams = Double.parseDouble(parts[3].trim());
+                } else {
+                    // Formato viejo: solo gramos
+                    profile = new FilamentProfile(i);
+                    profile.amountGrams = Double.parseDouble(parts[0].trim());
+                }
+                if (profile.amountGrams > 0) profiles.add(profile);
+            } catch (NumberFormatException e) { /* Ignorar valores corruptos */ }
+        }
+        return profiles;
+    }
+
+    /**
+     * @return Los gramos (> 0) de cada herramienta, en el orden guardado.
+     */
+    public static List<Double> grams(String detail) {
+        List<Double> grams = new ArrayList<>();
+        for (FilamentProfile profile : parse(detail)) {
+            grams.add(profile.amountGrams);
+        }
+        return grams;
+    }
+
+    // Los separadores no pueden aparecer dentro del material
+    private static String clean(String label) {
+        return label.replace(':', ' ').replace(';', ' ').trim().toUpperCase(Locale.ROOT);
+    }
+}
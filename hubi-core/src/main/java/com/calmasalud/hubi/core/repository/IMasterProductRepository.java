@@ -1,6 +1,9 @@
 package com.calmasalud.hubi.core.repository;
 
+import com.calmasalud.hubi.core.model.DeletedRows;
 import com.calmasalud.hubi.core.model.MasterProduct;
+import com.calmasalud.hubi.core.model.Product;
+import java.util.Collection;
 import java.util.List;
 
 public interface IMasterProductRepository {
@@ -26,6 +29,22 @@ public interface IMasterProductRepository {
      */
     long saveNewProduct(MasterProduct product, double initialPrice);
 
+    /**
+     * Guarda el producto maestro, su stock inicial y todas sus piezas en una sola transacción
+     * (carga de un producto nuevo): o quedan todas las filas o ninguna.
+     * @throws RuntimeException Si la transacción falla (ya revertida).
+     */
+    long saveNewProductWithPieces(MasterProduct product, double initialPrice, List<Product> pieces);
+
+    /**
+     * Devuelve el código maestro reservado con getNextMasterCode si sigue siendo el último de su prefijo
+     * (una carga deshecha no deja el número consumido).
+     * @return true si se devolvió.
+     */
+    default boolean releaseMasterCode(String masterCode) {
+        return false;
+    }
+
     /**
      *  requerido por el compilador para el contrato base de repositorio (si existe).
      * Delega la llamada a saveNewProduct con precio inicial 0.0.
@@ -42,6 +61,26 @@ public interface IMasterProductRepository {
     List<MasterProduct> findAll();
     MasterProduct findByProductName(String productName);
     void deleteProduct(String masterCode);
+
+    /**
+     * Elimina un producto completo en una sola transacción (borrado de la carpeta de un producto):
+     * el maestro, su stock, su composición (BOM), las piezas y el stock de esas piezas, o nada.
+     * Las filas se borran por conjuntos (DELETE ... IN), no una consulta por pieza.
+     * @param masterCode Código maestro, o null si la carpeta no tiene producto maestro (solo se borran las piezas).
+     * @param pieceCodes Códigos de las piezas (tabla products).
+     * @param pieceNameBases Nombres base de las piezas (tabla piece_stock).
+     * @return Las filas borradas, leídas en la misma transacción (se guardan en el manifiesto de la papelera).
+     * @throws RuntimeException Si la transacción falla (ya revertida).
+     */
+    DeletedRows deleteProductWithPieces(String masterCode, Collection<String> pieceCodes, Collection<String> pieceNameBases);
+
+    /**
+     * Vuelve a insertar las filas de un producto o pieza restaurado desde la papelera, en una sola transacción.
+     * El stock de las piezas se suma al que haya (piece_stock es por nombre base, no por producto).
+     * @throws RuntimeException Si el código maestro o algún código de pieza ya está en uso, o si la transacción falla.
+     */
+    void restoreRows(DeletedRows rows);
+
     MasterProduct findByProductPrefix(String prefix);
     public void decreaseStock(String masterCode, int quantity);
 }
\ No newline at end of file
@@ -14,6 +14,47 @@ public interface IProductRepository {
     // Guarda un objeto Product en la base de datos.
     long save(Product product);
 
+    /**
+     * Guarda varias piezas de una vez (carga de un producto). Las implementaciones con BD lo hacen
+     * en una sola transacción: o quedan todas o ninguna.
+     * @return true si se guardaron todas.
+     */
+    default boolean saveAll(List<Product> products) {
+        for (Product product : products) {
+            if (save(product) == -1) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reserva count correlativos seguidos para el prefijo (equivale a llamar count veces a getNextCorrelative).
+     * @return El último correlativo reservado (Ej: "007"), o null si count es 0.
+     */
+    default String reserveCorrelatives(String prefijoSeisLetras, int count) {
+        String last = null;
+        for (int i = 0; i < count; i++) {
+            last = getNextCorrelative(prefijoSeisLetras);
+        }
+        return last;
+    }
+
+    /**
+     * Todas las filas de piezas (una consulta; la usa el índice del catálogo al construirse).
+     * Una implementación sin listado devuelve una lista vacía y el índice consulta pieza por pieza.
+     */
+    default List<Product> findAll() {
+        return List.of();
+    }
+
+    /**
+     * Devuelve los correlativos first..last reservados por una carga que se deshizo, solo si nadie reservó
+     * otros después (si no, quedan como hueco, igual que antes).
+     * @return true si el correlativo del prefijo volvió a first - 1.
+     */
+    default boolean releaseCorrelatives(String prefijoSeisLetras, int first, int last) {
+        return false;
+    }
+
     /**
      * Actualiza el costo calculado de una pieza específica.
      * @param code El código de la pieza (ej: SOP01).
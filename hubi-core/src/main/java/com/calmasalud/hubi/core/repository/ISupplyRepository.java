@@ -1,6 +1,7 @@
 package com.calmasalud.hubi.core.repository;
 import com.calmasalud.hubi.core.model.Supply;
 import java.util.List;
+import java.util.Map;
 
 public interface ISupplyRepository {
     void add(Supply supply);
@@ -9,4 +10,13 @@ public interface ISupplyRepository {
     Supply findByID(long id);
     List<Supply> listAll();
     String getNextCorrelativeCode(String colorName, String tipoFilamento);
+
+    /**
+     * Descuenta gramos de varios insumos en una sola transacción (producción con un plan de descuento):
+     * o se descuentan todos o ninguno. Un insumo que queda con 0.01 g o menos queda en 0.
+     * @param gramsBySupplyId Gramos a descontar por ID de insumo.
+     * @return El stock que queda en cada insumo, leído en la misma transacción.
+     * @throws RuntimeException Si algún insumo no existe o no tiene stock suficiente (ya revertida).
+     */
+    Map<Long, Double> deductStockBatch(Map<Long, Double> gramsBySupplyId);
 }
\ No newline at end of file
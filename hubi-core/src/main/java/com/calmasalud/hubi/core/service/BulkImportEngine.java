@@ -0,0 +1,326 @@
+package com.calmasalud.hubi.core.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.calmasalud.hubi.core.model.PrintFileType;
+
+/**
+ * Importación masiva de un árbol de carpetas al repositorio (Ej: la exportación del archivo de piezas de un NAS).
+ * Cada carpeta del primer nivel del origen es un producto maestro y los archivos imprimibles que cuelgan de ella,
+ * en cualquier subcarpeta, son sus piezas.
+ * Un hilo recorre el origen y deja un trabajo por producto en una cola acotada; los hilos de carga los toman y
+ * los cargan con CatalogService. Con la cola llena el recorrido espera (contrapresión): en memoria hay a lo sumo
+ * cola + hilos productos con su lista de archivos, sea cual sea el tamaño del origen. Del resultado se guardan
+ * contadores y los primeros errores, no el detalle de cada archivo.
+ * Un producto cuya carpeta ya existe en el repositorio (importación repetida o cortada) recibe solo los archivos
+ * que le faltan, como piezas sueltas; así la misma importación se puede relanzar sin duplicar nada.
+ */
+public class BulkImportEngine {
+
+    public static final int DEFAULT_WORKERS = 2;
+    private static final int TRABAJOS_EN_COLA_POR_HILO = 2;
+    private static final int MAX_ERRORES_EN_REPORTE = 500;
+
+    /**
+     * Resumen de una importación masiva.
+     */
+    public static final class Report {
+        public final Path source;
+        public final int productsCreated;
+        public final int productsCompleted;  // Ya existían en el repositorio y recibieron las piezas faltantes
+        public final int productsFailed;
+        public final int filesImported;
+        public final int filesSkipped;       // No imprimibles, repetidos en el origen o ya cargados
+        public final int filesFailed;        // Piezas sueltas que no se pudieron agregar a un producto existente
+        public final long bytesImported;
+        public final long elapsedMillis;
+        public final int errorCount;
+        public final List<String> errors;    // Los primeros MAX_ERRORES_EN_REPORTE
+
+        Report(Path source, int productsCreated, int productsCompleted, int productsFailed, int filesImported,
+               int filesSkipped, int filesFailed, long bytesImported, long elapsedMillis, int errorCount, List<String> errors) {
+            this.source = source;
+            this.productsCreated = productsCreated;
+            this.productsCompleted = productsCompleted;
+            this.productsFailed = productsFailed;
+            this.filesImported = filesImported;
+            this.filesSkipped = filesSkipped;
+            this.filesFailed = filesFailed;
+            this.bytesImported = bytesImported;
+            this.elapsedMillis = elapsedMillis;
+            this.errorCount = errorCount;
+            this.errors = Collections.unmodifiableList(errors);
+        }
+
+        public boolean hasErrors() {
+            return errorCount > 0;
+        }
+
+        public String summary() {
+            long segundos = elapsedMillis / 1000;
+            return "Importación masiva desde " + source + "\n"
+                    + "Productos creados: " + productsCreated + "\n"
+                    + "Productos completados (ya existían): " + productsCompleted + "\n"
+                    + "Productos con error: " + productsFailed + "\n"
+                    + "Archivos importados: " + filesImported + " (" + String.format("%.1f MB", bytesImported / (1024.0 * 1024.0)) + ")\n"
+                    + "Archivos omitidos: " + filesSkipped + "\n"
+                    + "Archivos con error: " + filesFailed + "\n"
+                    + "Duración: " + String.format("%02d:%02d:%02d", segundos / 3600, (segundos / 60) % 60, segundos % 60);
+        }
+
+        /**
+         * Escribe el resumen y los errores en un archivo de texto (lo reemplaza si existe).
+         */
+        public void writeTo(Path file) throws IOException {
+            List<String> lineas = new ArrayList<>(List.of(summary().split("\n")));
+            if (errorCount > 0) {
+                lineas.add("");
+                lineas.add(errors.size() < errorCount
+                        ? "Errores (primeros " + errors.size() + " de " + errorCount + "):"
+                        : "Errores (" + errorCount + "):");
+                for (String error : errors) lineas.add(" - " + error);
+            }
+            Path carpeta = file.toAbsolutePath().getParent();
+            if (carpeta != null) Files.createDirectories(carpeta);
+            Files.write(file, lineas, StandardCharsets.UTF_8);
+        }
+    }
+
+    // Un producto a importar: nombre (carpeta del primer nivel) y sus archivos imprimibles
+    private static final class Trabajo {
+        final String nombreProducto;
+        final List<File> archivos;
+
+        Trabajo(String nombreProducto, List<File> archivos) {
+            this.nombreProducto = nombreProducto;
+            this.archivos = archivos;
+        }
+    }
+
+    private static final Trabajo FIN = new Trabajo("", List.of());
+
+    private final CatalogService catalogService;
+    private final Path repositoryBase;
+    private final int workers;
+
+    private final AtomicInteger productsCreated = new AtomicInteger();
+    private final AtomicInteger productsCompleted = new AtomicInteger();
+    private final AtomicInteger productsFailed = new AtomicInteger();
+    private final AtomicInteger filesImported = new AtomicInteger();
+    private final AtomicInteger filesSkipped = new AtomicInteger();
+    private final AtomicInteger filesFailed = new AtomicInteger();
+    private final AtomicLong bytesImported = new AtomicLong();
+    private final AtomicInteger errorCount = new AtomicInteger();
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+    BulkImportEngine(CatalogService catalogService, Path repositoryBase, int workers) {
+        this.catalogService = catalogService;
+        this.repositoryBase = repositoryBase;
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * Importa el árbol de origen. Bloquea hasta terminar; se usa una sola vez por instancia.
+     * @throws IOException Si el origen no es una carpeta legible (los errores de cada producto van al reporte).
+     */
+    Report run(Path source) throws IOException {
+        if (!Files.isDirectory(source)) {
+            throw new IOException("La carpeta de origen no existe: " + source);
+        }
+        long inicio = System.currentTimeMillis();
+        catalogService.getCatalogIndex(); // Se arma antes de arrancar para que los hilos no compitan por hacerlo
+
+        // La capacidad alcanza para los avisos de FIN aunque se vacíe la cola por una interrupción
+        BlockingQueue<Trabajo> cola = new ArrayBlockingQueue<>(workers * TRABAJOS_EN_COLA_POR_HILO);
+        List<Thread> hilos = new ArrayList<>();
+        for (int i = 1; i <= workers; i++) {
+            Thread hilo = new Thread(() -> procesarCola(cola), "importacion-masiva-" + i);
+            hilo.start();
+            hilos.add(hilo);
+        }
+
+        System.out.println("LOG: Importación masiva desde " + source + " con " + workers + " hilos.");
+        boolean interrumpido = false;
+        try {
+            recorrerOrigen(source, cola);
+        } catch (InterruptedException e) {
+            interrumpido = true;
+            cola.clear(); // Lo encolado no se carga; lo que está en curso termina (o lo deshace el diario de cargas)
+            registrarError("Importación interrumpida: quedaron productos sin cargar.");
+        } finally {
+            for (int i = 0; i < hilos.size(); i++) {
+                try {
+                    cola.put(FIN);
+                } catch (InterruptedException e) {
+                    interrumpido = true;
+                    cola.offer(FIN);
+                }
+            }
+            for (Thread hilo : hilos) {
+                while (hilo.isAlive()) {
+                    try {
+                        hilo.join();
+                    } catch (InterruptedException e) {
+                        interrumpido = true;
+                    }
+                }
+            }
+            if (interrumpido) Thread.currentThread().interrupt();
+        }
+
+        Report report = new Report(source, productsCreated.get(), productsCompleted.get(), productsFailed.get(),
+                filesImported.get(), filesSkipped.get(), filesFailed.get(), bytesImported.get(),
+                System.currentTimeMillis() - inicio, errorCount.get(), new ArrayList<>(errors));
+        System.out.println((report.hasErrors() ? "⚠️ " : "✅ ") + "Importación masiva terminada: "
+                + report.productsCreated + " productos creados, " + report.productsCompleted + " completados, "
+                + report.productsFailed + " con error.");
+        return report;
+    }
+
+    // --- RECORRIDO (un solo hilo) ---
+
+    private void recorrerOrigen(Path source, BlockingQueue<Trabajo> cola) throws IOException, InterruptedException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(source)) {
+            for (Path entrada : stream) {
+                if (esOculta(entrada)) continue;
+                if (!Files.isDirectory(entrada)) {
+                    // Un archivo suelto en la raíz no tiene producto
+                    filesSkipped.incrementAndGet();
+                    continue;
+                }
+                List<File> archivos;
+                try {
+                    archivos = listarArchivos(entrada);
+                } catch (IOException e) {
+                    productsFailed.incrementAndGet();
+                    registrarError("Producto '" + entrada.getFileName() + "': no se pudo recorrer la carpeta (" + e.getMessage() + ")");
+                    continue;
+                }
+                if (archivos.isEmpty()) {
+                    System.out.println("LOG: '" + entrada.getFileName() + "' no tiene archivos imprimibles, se omite.");
+                    continue;
+                }
+                cola.put(new Trabajo(entrada.getFileName().toString(), archivos)); // Espera si los hilos van atrasados
+            }
+        }
+    }
+
+    // Archivos imprimibles de la carpeta de un producto (subcarpetas incluidas); un nombre repetido se omite
+    private List<File> listarArchivos(Path carpeta) throws IOException {
+        List<File> archivos = new ArrayList<>();
+        Set<String> nombres = new HashSet<>();
+        Files.walkFileTree(carpeta, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return !dir.equals(carpeta) && esOculta(dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                String nombre = file.getFileName().toString();
+                if (!attrs.isRegularFile() || esOculta(file) || !PrintFileType.isSupported(nombre)) {
+                    filesSkipped.incrementAndGet();
+                } else if (!nombres.add(nombre)) {
+                    // En la carpeta del producto las piezas se identifican por su nombre original
+                    filesSkipped.incrementAndGet();
+                    registrarError("Producto '" + carpeta.getFileName() + "': '" + carpeta.relativize(file) + "' repite el nombre de otro archivo, se omite.");
+                } else {
+                    archivos.add(file.toFile());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return archivos;
+    }
+
+    // --- CARGA (hilos de la cola) ---
+
+    private void procesarCola(BlockingQueue<Trabajo> cola) {
+        try {
+            Trabajo trabajo;
+            while ((trabajo = cola.take()) != FIN) {
+                procesar(trabajo);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void procesar(Trabajo trabajo) {
+        Path directorioProducto = repositoryBase.resolve(trabajo.nombreProducto.trim());
+        CatalogIndex indice = catalogService.getCatalogIndex();
+        try {
+            if (indice.containsFolder(directorioProducto) && !indice.listPieces(directorioProducto).isEmpty()) {
+                completarProducto(trabajo, directorioProducto, indice);
+                return;
+            }
+            catalogService.procesarCargaProducto(trabajo.archivos, trabajo.nombreProducto);
+            productsCreated.incrementAndGet();
+            filesImported.addAndGet(trabajo.archivos.size());
+            bytesImported.addAndGet(tamanioTotal(trabajo.archivos));
+            System.out.println("LOG: Importado '" + trabajo.nombreProducto + "' (" + trabajo.archivos.size() + " archivos).");
+        } catch (IOException | RuntimeException e) {
+            productsFailed.incrementAndGet();
+            registrarError("Producto '" + trabajo.nombreProducto + "': " + e.getMessage());
+        }
+    }
+
+    // El producto ya está en el repositorio: se agregan como piezas los archivos que todavía no tiene
+    private void completarProducto(Trabajo trabajo, Path directorioProducto, CatalogIndex indice) {
+        int agregados = 0;
+        for (File archivo : trabajo.archivos) {
+            if (indice.containsOriginalName(directorioProducto, archivo.getName())) {
+                filesSkipped.incrementAndGet();
+                continue;
+            }
+            try {
+                catalogService.procesarCargaPieza(archivo, directorioProducto.toString());
+                agregados++;
+                filesImported.incrementAndGet();
+                bytesImported.addAndGet(archivo.length());
+            } catch (IOException | RuntimeException e) {
+                filesFailed.incrementAndGet();
+                registrarError("Producto '" + trabajo.nombreProducto + "', archivo '" + archivo.getName() + "': " + e.getMessage());
+            }
+        }
+        if (agregados > 0) {
+            productsCompleted.incrementAndGet();
+            System.out.println("LOG: '" + trabajo.nombreProducto + "' ya existía, se agregaron " + agregados + " piezas.");
+        }
+    }
+
+    private void registrarError(String error) {
+        System.err.println("⚠️ " + error);
+        if (errorCount.incrementAndGet() <= MAX_ERRORES_EN_REPORTE) {
+            errors.add(error);
+        }
+    }
+
+    private static long tamanioTotal(List<File> archivos) {
+        long total = 0;
+        for (File archivo : archivos) total += archivo.length();
+        return total;
+    }
+
+    private static boolean esOculta(Path path) {
+        Path nombre = path.getFileName();
+        return nombre != null && nombre.toString().startsWith(".");
+    }
+}
@@ -0,0 +1,431 @@
+package com.calmasalud.hubi.core.service;
+
+import com.calmasalud.hubi.core.model.PrintFileType;
+import com.calmasalud.hubi.core.model.Product;
+import com.calmasalud.hubi.core.repository.IProductRepository;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+/**
+ * Índice en memoria del repositorio de archivos: carpeta -> subcarpetas y piezas (código, nombre original,
+ * extensión, tamaño y fecha). Se arma una vez (al iniciar, con una sola consulta a products) y lo mantienen
+ * al día las escrituras de CatalogService, así la validación de duplicados, la correlación STL/G-code y el
+ * árbol del catálogo no recorren el disco ni consultan la BD archivo por archivo.
+ * Las carpetas y archivos ocultos (.blobs, .staging, .journal...) no se indexan.
+ * Los cambios hechos fuera de la aplicación los aplica CatalogWatcher, que avisa a las vistas con un Change.
+ */
+public class CatalogIndex {
+
+    /**
+     * Una pieza del repositorio (un archivo SOPROJ001.gcode).
+     */
+    public static final class PieceEntry {
+        public final Path path;
+        public final String code;          // Ej: SOPROJ001
+        public final String originalName;  // Nombre con el que se subió (Ej: Soporte.gcode), o null si no está en BD
+        public final String extension;     // Extensión del archivo en disco (Ej: .gcode.3mf)
+        public final long size;
+        public final long lastModified;
+
+        PieceEntry(Path path, String originalName, long size, long lastModified) {
+            String fileName = path.getFileName().toString();
+            this.path = path;
+            this.code = PrintFileType.baseName(fileName);
+            this.originalName = originalName;
+            this.extension = PrintFileType.extensionOf(fileName);
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Cambio aplicado al índice desde fuera de la aplicación (lo informa CatalogWatcher).
+     */
+    public static final class Change {
+        public final Set<Path> folders;      // Carpetas cuyo contenido cambió
+        public final boolean treeChanged;    // true si se agregaron o quitaron carpetas
+
+        public Change(Set<Path> folders, boolean treeChanged) {
+            this.folders = Collections.unmodifiableSet(folders);
+            this.treeChanged = treeChanged;
+        }
+    }
+
+    /**
+     * Se invoca desde el hilo del watcher (las vistas JavaFX deben pasar al hilo de la UI).
+     */
+    @FunctionalInterface
+    public interface ChangeListener {
+        void onCatalogChanged(Change change);
+    }
+
+    // Contenido de una carpeta; los accesos se sincronizan sobre la carpeta
+    private static final class Folder {
+        final Set<Path> subfolders = new HashSet<>();
+        final Map<String, PieceEntry> pieces = new HashMap<>();              // nombre en disco -> pieza
+        final Map<String, Set<String>> byOriginalName = new HashMap<>();     // nombre original -> nombres en disco
+        final Map<String, Set<String>> byOriginalBaseName = new HashMap<>(); // nombre base original (minúsculas) -> nombres en disco
+
+        synchronized void put(PieceEntry entry) {
+            remove(entry.path.getFileName().toString());
+            String fileName = entry.path.getFileName().toString();
+            pieces.put(fileName, entry);
+            if (entry.originalName != null) {
+                byOriginalName.computeIfAbsent(entry.originalName, k -> new HashSet<>()).add(fileName);
+                byOriginalBaseName.computeIfAbsent(baseKey(entry.originalName), k -> new HashSet<>()).add(fileName);
+            }
+        }
+
+        synchronized PieceEntry remove(String fileName) {
+            PieceEntry old = pieces.remove(fileName);
+            if (old != null && old.originalName != null) {
+                removeFrom(byOriginalName, old.originalName, fileName);
+                removeFrom(byOriginalBaseName, baseKey(old.originalName), fileName);
+            }
+            return old;
+        }
+
+        private static void removeFrom(Map<String, Set<String>> map, String key, String fileName) {
+            Set<String> names = map.get(key);
+            if (names == null) return;
+            names.remove(fileName);
+            if (names.isEmpty()) map.remove(key);
+        }
+    }
+
+    private static final CatalogIndex DEFAULT = new CatalogIndex();
+
+    private volatile ConcurrentMap<Path, Folder> folders = new ConcurrentHashMap<>();
+    private volatile Path root;
+    private final ConcurrentMap<Path, PieceEntry> missing = new ConcurrentHashMap<>();
+    // Referencias débiles: una vista que se descarta deja de recibir avisos sin tener que desregistrarse
+    private final Set<ChangeListener> listeners = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    /**
+     * @return El índice compartido por todas las instancias de CatalogService de la aplicación.
+     */
+    public static CatalogIndex getDefault() {
+        return DEFAULT;
+    }
+
+    public boolean isBuilt() {
+        return root != null;
+    }
+
+    /**
+     * Construye el índice si todavía no se construyó.
+     */
+    public synchronized void ensureBuilt(Path repositoryBase, IProductRepository productRepository) {
+        if (root == null) build(repositoryBase, productRepository);
+    }
+
+    /**
+     * (Re)construye el índice recorriendo el repositorio una vez. Los nombres originales salen de una
+     * sola consulta (findAll); si el repositorio no la implementa, se consulta por código.
+     */
+    public synchronized void build(Path repositoryBase, IProductRepository productRepository) {
+        long start = System.nanoTime();
+        Map<String, List<Product>> rowsByCode = productRepository.findAll().stream()
+                .collect(Collectors.groupingBy(Product::getCode));
+        boolean lookupEachCode = rowsByCode.isEmpty();
+
+        ConcurrentMap<Path, Folder> built = new ConcurrentHashMap<>();
+        Path base = normalize(repositoryBase);
+        built.put(base, new Folder());
+        int[] count = {0};
+        try {
+            if (Files.isDirectory(base)) {
+                scan(base, built, rowsByCode, lookupEachCode ? productRepository : null, count);
+            }
+        } catch (IOException e) {
+            System.err.println("⚠️ No se pudo recorrer el repositorio para el índice del catálogo: " + e.getMessage());
+        }
+        folders = built;
+        root = base;
+        missing.clear();
+        System.out.println("LOG: Índice del catálogo: " + (built.size() - 1) + " carpetas, " + count[0] + " piezas en "
+                + (System.nanoTime() - start) / 1_000_000 + " ms.");
+    }
+
+    private void scan(Path dir, ConcurrentMap<Path, Folder> built, Map<String, List<Product>> rowsByCode,
+                      IProductRepository lookup, int[] count) throws IOException {
+        Folder folder = built.get(dir);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path child : stream) {
+                String name = child.getFileName().toString();
+                if (name.startsWith(".")) continue;
+                BasicFileAttributes attrs = Files.readAttributes(child, BasicFileAttributes.class);
+                if (attrs.isDirectory()) {
+                    folder.subfolders.add(child);
+                    built.put(child, new Folder());
+                    scan(child, built, rowsByCode, lookup, count);
+                } else if (attrs.isRegularFile() && PrintFileType.isSupported(name)) {
+                    String code = PrintFileType.baseName(name);
+                    String extension = PrintFileType.extensionOf(name);
+                    List<Product> rows = rowsByCode.get(code);
+                    if (rows == null && lookup != null) {
+                        Product product = lookup.findByCode(code);
+                        rows = product == null ? null : List.of(product);
+                    }
+                    folder.put(new PieceEntry(child, originalName(rows, extension), attrs.size(), attrs.lastModifiedTime().toMillis()));
+                    count[0]++;
+                }
+            }
+        }
+    }
+
+    // Un código puede tener dos filas (STL y G-code): se usa la de la misma extensión, si no la de G-code (como findByCode)
+    private static String originalName(List<Product> rows, String extension) {
+        if (rows == null || rows.isEmpty()) return null;
+        for (Product row : rows) {
+            if (extension.equalsIgnoreCase(row.getFileExtension())) return row.getName();
+        }
+        for (Product row : rows) {
+            if (row.getFileExtension() != null && row.getFileExtension().toLowerCase(Locale.ROOT).contains("gcode")) {
+                return row.getName();
+            }
+        }
+        return rows.get(0).getName();
+    }
+
+    // --- CONSULTAS ---
+
+    /**
+     * @return Las subcarpetas visibles de folder, ordenadas por nombre.
+     */
+    public List<File> listFolders(Path folder) {
+        Folder entry = folders.get(normalize(folder));
+        if (entry == null) return List.of();
+        List<Path> paths;
+        synchronized (entry) {
+            paths = new ArrayList<>(entry.subfolders);
+        }
+        paths.sort(Comparator.comparing(p -> p.getFileName().toString(), String.CASE_INSENSITIVE_ORDER));
+        return paths.stream().map(Path::toFile).collect(Collectors.toList());
+    }
+
+    /**
+     * @return Las piezas de folder (sin subcarpetas), ordenadas por nombre en disco.
+     */
+    public List<PieceEntry> listPieces(Path folder) {
+        Folder entry = folders.get(normalize(folder));
+        if (entry == null) return List.of();
+        List<PieceEntry> pieces;
+        synchronized (entry) {
+            pieces = new ArrayList<>(entry.pieces.values());
+        }
+        pieces.sort(Comparator.comparing(p -> p.path.getFileName().toString()));
+        return pieces;
+    }
+
+    /**
+     * @return La pieza indexada para el archivo, o null.
+     */
+    public PieceEntry getPiece(Path file) {
+        Path path = normalize(file);
+        Folder entry = folders.get(path.getParent());
+        if (entry == null) return null;
+        synchronized (entry) {
+            return entry.pieces.get(path.getFileName().toString());
+        }
+    }
+
+    /**
+     * @return true si la carpeta ya tiene una pieza subida con ese nombre original (REQ 3).
+     */
+    public boolean containsOriginalName(Path folder, String originalName) {
+        Folder entry = folders.get(normalize(folder));
+        if (entry == null) return false;
+        synchronized (entry) {
+            return entry.byOriginalName.containsKey(originalName);
+        }
+    }
+
+    /**
+     * Correlación STL/G-code (REQ 2): busca en la carpeta una pieza del tipo complementario cuyo nombre
+     * original tenga el mismo nombre base (sin distinguir mayúsculas).
+     * @param complementaryIsGCode true si se busca un G-code (se está subiendo un modelo), false si un STL.
+     * @return El código de la pieza encontrada (Ej: SOPROJ001) o null.
+     */
+    public String findCorrelative(Path folder, String baseName, boolean complementaryIsGCode) {
+        Folder entry = folders.get(normalize(folder));
+        if (entry == null) return null;
+        synchronized (entry) {
+            Set<String> candidates = entry.byOriginalBaseName.get(baseName.toLowerCase(Locale.ROOT));
+            if (candidates == null) return null;
+            for (String fileName : candidates) {
+                PrintFileType type = PrintFileType.fromFileName(fileName);
+                boolean isComplementary = type != null
+                        && (complementaryIsGCode ? type.isGCode() : type == PrintFileType.STL);
+                if (isComplementary) return entry.pieces.get(fileName).code;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Piezas que estaban en el catálogo y se borraron o movieron fuera de la aplicación
+     *         (su fila en BD sigue; vuelven a la normalidad si el archivo reaparece).
+     */
+    public List<PieceEntry> getMissingPieces() {
+        return new ArrayList<>(missing.values());
+    }
+
+    public boolean isMissing(Path file) {
+        return missing.containsKey(normalize(file));
+    }
+
+    // --- AVISOS ---
+
+    /**
+     * Registra una vista para recibir los cambios externos. Se guarda con referencia débil:
+     * quien registra debe mantener el listener en un campo mientras lo necesite.
+     */
+    public void addListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Avisa a las vistas un cambio aplicado al índice.
+     */
+    public void fireChanged(Change change) {
+        List<ChangeListener> copy;
+        synchronized (listeners) {
+            copy = new ArrayList<>(listeners);
+        }
+        for (ChangeListener listener : copy) {
+            try {
+                listener.onCatalogChanged(change);
+            } catch (RuntimeException e) {
+                System.err.println("⚠️ Error en un listener del catálogo: " + e.getMessage());
+            }
+        }
+    }
+
+    // --- ACTUALIZACIONES (las hace CatalogService después de escribir en disco y BD) ---
+
+    /**
+     * Registra (o reemplaza) una pieza ya escrita en disco; crea las carpetas que falten en el índice.
+     * @param originalName Nombre original de la pieza en BD (Ej: Soporte.gcode).
+     */
+    public void putPiece(Path file, String originalName) {
+        Path path = normalize(file);
+        long size = 0;
+        long lastModified = 0;
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            size = attrs.size();
+            lastModified = attrs.lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            System.err.println("⚠️ No se pudieron leer los atributos de " + path.getFileName() + " para el índice: " + e.getMessage());
+        }
+        folder(path.getParent()).put(new PieceEntry(path, originalName, size, lastModified));
+        missing.remove(path);
+    }
+
+    /**
+     * Registra una carpeta (Ej: la de un producto nuevo).
+     */
+    public void putFolder(Path dir) {
+        folder(normalize(dir));
+    }
+
+    /**
+     * Quita una pieza (borrada o movida a la papelera).
+     */
+    public void removePiece(Path file) {
+        Path path = normalize(file);
+        Folder entry = folders.get(path.getParent());
+        if (entry != null) entry.remove(path.getFileName().toString());
+    }
+
+    /**
+     * Quita una pieza que desapareció fuera de la aplicación y la marca como faltante.
+     */
+    public void markMissing(Path file) {
+        Path path = normalize(file);
+        Folder entry = folders.get(path.getParent());
+        if (entry == null) return;
+        PieceEntry old = entry.remove(path.getFileName().toString());
+        if (old != null) missing.put(path, old);
+    }
+
+    /**
+     * @return Las piezas de folder y de sus subcarpetas (Ej: para marcarlas faltantes si la carpeta desaparece).
+     */
+    public List<PieceEntry> listPiecesRecursively(Path folder) {
+        Path path = normalize(folder);
+        List<PieceEntry> pieces = new ArrayList<>();
+        for (Map.Entry<Path, Folder> entry : folders.entrySet()) {
+            if (!entry.getKey().startsWith(path)) continue;
+            synchronized (entry.getValue()) {
+                pieces.addAll(entry.getValue().pieces.values());
+            }
+        }
+        return pieces;
+    }
+
+    public boolean containsFolder(Path dir) {
+        return folders.containsKey(normalize(dir));
+    }
+
+    /**
+     * Quita una carpeta con todo su contenido.
+     */
+    public void removeFolder(Path dir) {
+        Path path = normalize(dir);
+        if (path.equals(root)) return;
+        folders.keySet().removeIf(p -> p.startsWith(path));
+        Folder parent = folders.get(path.getParent());
+        if (parent != null) {
+            synchronized (parent) {
+                parent.subfolders.remove(path);
+            }
+        }
+    }
+
+    // Carpeta del índice, creándola (y enlazándola con su padre) si no existía
+    private Folder folder(Path path) {
+        Folder existing = folders.get(path);
+        if (existing != null) return existing;
+        Folder created = folders.computeIfAbsent(path, p -> new Folder());
+        Path parent = path.getParent();
+        if (parent != null && root != null && path.startsWith(root) && !path.equals(root)) {
+            Folder parentFolder = folder(parent);
+            synchronized (parentFolder) {
+                parentFolder.subfolders.add(path);
+            }
+        }
+        return created;
+    }
+
+    private static Path normalize(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    private static String baseKey(String originalName) {
+        return PrintFileType.baseName(originalName).toLowerCase(Locale.ROOT);
+    }
+}
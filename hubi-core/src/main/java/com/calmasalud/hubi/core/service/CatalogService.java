@@ -4,25 +4,57 @@ package com.calmasalud.hubi.core.service;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+import com.calmasalud.hubi.core.model.DeductionPlan;
+import com.calmasalud.hubi.core.model.DeletedRows;
+import com.calmasalud.hubi.core.model.FilamentProfile;
+import com.calmasalud.hubi.core.model.LayerIndex;
 import com.calmasalud.hubi.core.model.MasterProduct;
+import com.calmasalud.hubi.core.model.PieceStockColorView;
 import com.calmasalud.hubi.core.model.PieceStockDeduction;
+import com.calmasalud.hubi.core.model.PrintFileType;
+import com.calmasalud.hubi.core.model.PrintInfo;
 import com.calmasalud.hubi.core.model.Product;
 import com.calmasalud.hubi.core.model.ProductComposition;
+import com.calmasalud.hubi.core.model.UsageDetail;
 import com.calmasalud.hubi.core.repository.IMasterProductRepository;
 import com.calmasalud.hubi.core.repository.IProductCompositionRepository;
 import com.calmasalud.hubi.core.repository.IProductRepository;
 import com.calmasalud.hubi.core.model.Supply;
 import com.calmasalud.hubi.core.repository.ISupplyRepository;
 import com.calmasalud.hubi.core.repository.ISupplyRepository;
+import com.calmasalud.hubi.core.service.color.ColorResolver;
+import com.calmasalud.hubi.core.service.gcode.LayerIndexStore;
+import com.calmasalud.hubi.core.service.storage.BlobStore;
+import com.calmasalud.hubi.core.service.storage.FileImporter;
+import com.calmasalud.hubi.core.service.storage.GCodeCompactor;
+import com.calmasalud.hubi.core.service.storage.IngestionJournal;
+import com.calmasalud.hubi.core.service.storage.StoragePolicy;
+import com.calmasalud.hubi.core.service.thumbnail.ThumbnailCache;
 public class CatalogService {
     private final IProductRepository productRepository;
     private final IMasterProductRepository masterProductRepository;
     private final IProductCompositionRepository productCompositionRepository;
     private final FileParameterExtractor fileExtractor = new FileParameterExtractor();
+    private final ExtractionService extractionService = new ExtractionService(fileExtractor, ExtractionService.DEFAULT_MAX_CONCURRENCY);
+    private final ThumbnailCache thumbnailCache = new ThumbnailCache();
+    private final LayerIndexStore layerIndexStore = new LayerIndexStore();
+    private final BlobStore blobStore = BlobStore.getDefault();
+    private final IngestionJournal ingestionJournal = new IngestionJournal(REPOSITORIO_BASE);
+    private final CatalogIndex catalogIndex = CatalogIndex.getDefault();
+    private final GCodeCompactor gcodeCompactor = new GCodeCompactor(blobStore);
+    private volatile StoragePolicy storagePolicy = StoragePolicy.DISABLED;
     private final ISupplyRepository supplyRepository;
+    private String paletteKey; // Colores de insumos con los que se armó la paleta actual
     // Constructor for Dependency Injection (Correct)
     public CatalogService(IProductRepository productRepository, IMasterProductRepository masterProductRepository,IProductCompositionRepository productCompositionRepository, ISupplyRepository supplyRepository) {
         this.productRepository = productRepository;
@@ -38,6 +70,12 @@ public class CatalogService {
     //Color por defecto
     private static final String COLOR_POR_DEFECTO = "ROJO"; // Example, consider making configurable
 
+    // Copias simultáneas al cargar un producto (el resto de los hilos virtuales espera su turno)
+    private static final int MAX_COPIAS_EN_CURSO = ExtractionService.DEFAULT_MAX_CONCURRENCY;
+
+    // Serializa la asignación de correlativos de piezas entre cargas simultáneas (todas las instancias)
+    private static final Object RESERVA_CODIGOS = new Object();
+
     /**
      * Implementa la lógica de RF8 para generar códigos únicos. (Method PÚBLICO SIMPLE)
      * FORMATO: [PROD 3 letras][COLOR 3 letras][CORRELATIVO 3 dígitos]
@@ -87,9 +125,8 @@ public class CatalogService {
             throw new IOException("Error: El archivo origen no es válido.");
         }
         // Validación de la Extensión (RF1)
-        String nombre = archivoOrigen.getName().toLowerCase();
-        if (!nombre.endsWith(".stl") && !nombre.endsWith(".3mf") && !nombre.endsWith(".gcode")) {
-            throw new IOException("Error: El archivo debe ser .stl, .3mf o .gcode.");
+        if (!PrintFileType.isSupported(archivoOrigen.getName())) {
+            throw new IOException("Error: El archivo debe ser .stl, .3mf, .gcode, .gcode.3mf, .gcode.gz o .bgcode.");
         }
 
         // Asegurar la creación del Directorio Destino
@@ -100,8 +137,9 @@ public class CatalogService {
         // El nombre en el repositorio base SÍ mantiene el nombre original por ahora
         Path rutaDestinoFinal = REPOSITORIO_BASE.resolve(rutaOrigen.getFileName());
 
-        // Copia el Archivo, reemplazando si existe.
-        Files.copy(rutaOrigen, rutaDestinoFinal, StandardCopyOption.REPLACE_EXISTING);
+        // Copia el Archivo (al almacén por contenido), reemplazando si existe.
+        blobStore.store(rutaOrigen, rutaDestinoFinal);
+        catalogIndex.putPiece(rutaDestinoFinal, null);
 
         return rutaDestinoFinal.toFile(); // Devuelve el archivo copiado en el repositorio
     }
@@ -109,88 +147,216 @@ public class CatalogService {
     // --- MethodS AUXILIARES DE ARCHIVOS (REQ 2 & 3) ---
 
     /* Función auxiliar para obtener la extensión de un archivo (incluyendo el punto).
-     * Devuelve "" si no hay extensión.
+     * Respeta las extensiones compuestas (".gcode.3mf", ".gcode.gz"). Devuelve "" si no hay extensión.
      */
     private String getFileExtension(String filename) {
-        if (filename == null) return "";
-        int dotIndex = filename.lastIndexOf('.');
-        // Asegurarse que el punto no sea el primer caracter y que exista
-        if (dotIndex == -1 || dotIndex == 0) {
-            return ""; // Sin extensión o archivo tipo ".bashrc"
-        }
-        return filename.substring(dotIndex); // Incluye el punto, ej: ".stl"
+        return PrintFileType.extensionOf(filename);
     }
 
     /**
      * Auxiliar: Busca si ya existe un archivo con el mismo nombre base y diferente extensión. (REQ 2)
      * Retorna el CÓDIGO ÚNICO (ej: SOPROJ001) del archivo existente si se encuentra una correlación.
+     * Se resuelve en el índice del catálogo (nombre original de cada pieza), sin leer el disco ni la BD.
      */
     private String findExistingCorrelative(File directorioProducto, String baseName, String extension) {
-        // Obtenemos las extensiones complementarias (con el punto)
-        String lowerExt = extension.toLowerCase();
-        String complementaryExtension = null;
-        if (lowerExt.endsWith(".gcode")) {
-            complementaryExtension = ".stl";
-        } else if (lowerExt.endsWith(".3mf")) {
-            complementaryExtension = ".gcode";
-        } else if (lowerExt.endsWith(".stl")) {
-            // Buscamos el GCODE complementario si subimos STL
-            complementaryExtension = ".gcode";
-        }
-
-        if (complementaryExtension == null) return null;
-
-        File[] files = directorioProducto.listFiles();
-        if (files == null) return null;
-
-        for (File f : files) {
-            // Un archivo existente en disco está nombrado con su CÓDIGO_UNICO_PRODUCTO
-            String fileName = f.getName();
-            String fileExt = getFileExtension(fileName);
-
-            // 1. Verificar si tiene la extensión complementaria y es un archivo de pieza
-            if (f.isFile() && fileExt.equalsIgnoreCase(complementaryExtension)) {
-                String existingCode = fileName.substring(0, fileName.lastIndexOf('.'));
-
-                // 2. Usar el repositorio para obtener el nombre original guardado en la BD
-                Product existingProduct = productRepository.findByCode(existingCode);
-
-                if (existingProduct != null) {
-                    String existingOriginalName = existingProduct.getName(); // Ej: "MyPart.stl"
-                    String existingBaseName = existingOriginalName.substring(0, existingOriginalName.lastIndexOf('.')); // Ej: "MyPart"
-
-                    // 3. Comparar el nombre base original (guardado en DB) con el nombre base del nuevo archivo
-                    if (existingBaseName.equalsIgnoreCase(baseName)) {
-                        // ¡Correlación encontrada! Retornamos el código base existente (Ej: SOPROJ001)
-                        return existingCode;
-                    }
-                }
-            }
-        }
-        return null;
+        // Obtenemos el tipo complementario: G-code (plano o archivado) <-> modelo
+        PrintFileType type = PrintFileType.fromFileName("x" + extension);
+        if (type == null) return null;
+        // Si subimos STL o 3MF buscamos el GCODE complementario; si subimos GCODE, el STL
+        boolean complementaryIsGCode = !type.isGCode();
+        return getCatalogIndex().findCorrelative(directorioProducto.toPath(), baseName, complementaryIsGCode);
     }
 
     /**
      * Auxiliar: Comprueba si ya existe un archivo con el mismo nombre y extensión. (REQ 3)
-     * La verificación se hace buscando si existe un registro en la BD con el mismo nombre ORIGINAL.
+     * La verificación se hace buscando en el índice del catálogo una pieza con el mismo nombre ORIGINAL.
      */
     private boolean isDuplicate(File directorioProducto, String nombreArchivoOriginal) {
-        File[] allPieces = directorioProducto.listFiles();
-        if (allPieces != null) {
-            for (File pieceFile : allPieces) {
-                if (!pieceFile.isFile() || pieceFile.getName().startsWith(".")) continue;
+        return getCatalogIndex().containsOriginalName(directorioProducto.toPath(), nombreArchivoOriginal);
+    }
+
+    /**
+     * Índice en memoria del repositorio (carpetas y piezas), compartido por toda la aplicación.
+     * Se construye la primera vez que se pide si no se armó al iniciar.
+     */
+    public CatalogIndex getCatalogIndex() {
+        catalogIndex.ensureBuilt(REPOSITORIO_BASE, productRepository);
+        return catalogIndex;
+    }
+
+    /**
+     * Reconstruye el índice del catálogo recorriendo el repositorio (al iniciar la aplicación).
+     */
+    public void rebuildCatalogIndex() {
+        catalogIndex.build(REPOSITORIO_BASE, productRepository);
+    }
 
-                // Extraemos el código del nombre del archivo en disco
-                String code = pieceFile.getName().substring(0, pieceFile.getName().lastIndexOf('.'));
+    /**
+     * Política de almacenamiento del repositorio (compresión en disco de los G-code sin uso).
+     * Por defecto está desactivada; se aplica en cada compactStorage. Los G-code comprimidos conservan su nombre
+     * .gcode: fuera de la aplicación se ven como gzip (ver StoragePolicy).
+     */
+    public void setStoragePolicy(StoragePolicy policy) {
+        this.storagePolicy = policy == null ? StoragePolicy.DISABLED : policy;
+    }
 
-                // Buscamos el producto por su código para obtener su nombre original
-                Product existingPiece = productRepository.findByCode(code);
+    public StoragePolicy getStoragePolicy() {
+        return storagePolicy;
+    }
 
-                // Comparamos el nombre original guardado en la BD con el nombre original del archivo subido
-                if (existingPiece != null && existingPiece.getName().equals(nombreArchivoOriginal)) {
-                    return true; // Duplicado encontrado
+    /**
+     * Comprime en disco los G-code del repositorio que cumplen la política de almacenamiento, y los de la
+     * papelera (RecycleBinManager.compactRecycleBin). Los archivos conservan su nombre, así que la búsqueda
+     * por código no cambia; el índice del catálogo toma los tamaños nuevos y se avisa a las vistas.
+     * @return Resultado de la pasada por el repositorio.
+     */
+    public GCodeCompactor.Result compactStorage() {
+        Set<Path> carpetasCambiadas = new HashSet<>();
+        GCodeCompactor.Result result = gcodeCompactor.compact(REPOSITORIO_BASE, storagePolicy, archivo -> {
+            if (!catalogIndex.isBuilt()) return;
+            CatalogIndex.PieceEntry pieza = catalogIndex.getPiece(archivo);
+            catalogIndex.putPiece(archivo, pieza != null ? pieza.originalName : null);
+            carpetasCambiadas.add(archivo.getParent());
+        });
+        if (!carpetasCambiadas.isEmpty()) {
+            catalogIndex.fireChanged(new CatalogIndex.Change(carpetasCambiadas, false));
+        }
+        RecycleBinManager.compactRecycleBin();
+        return result;
+    }
+
+    /**
+     * Aplica al índice y a la BD los cambios hechos en el repositorio fuera de la aplicación (CatalogWatcher).
+     * Un archivo nuevo en la carpeta de un producto se registra como pieza (extracción de parámetros, código
+     * y fila en BD, igual que procesarCargaPieza) y el original se renombra con su código (nunca se borra);
+     * uno que ya tiene fila (Ej: escrito por la propia aplicación) solo se indexa. Los archivos sueltos en la
+     * raíz se indexan sin registrar. Una pieza que desaparece se marca como faltante (su fila en BD queda).
+     * Se llama desde el hilo de sincronización del watcher, no desde el que recibe los eventos.
+     * @param rutas Archivos o carpetas que cambiaron (una carpeta se revisa completa).
+     * @return El cambio aplicado, o null si el índice ya estaba al día.
+     */
+    public CatalogIndex.Change syncExternalChanges(Collection<Path> rutas) {
+        CatalogIndex index = getCatalogIndex();
+        Set<Path> carpetasCambiadas = new HashSet<>();
+        boolean[] arbolCambiado = {false};
+
+        for (Path ruta : rutas) {
+            Path path = ruta.toAbsolutePath().normalize();
+            if (!path.startsWith(REPOSITORIO_BASE) || esOculta(path)) continue;
+            try {
+                if (Files.isDirectory(path)) {
+                    sincronizarCarpeta(path, carpetasCambiadas, arbolCambiado);
+                } else if (Files.isRegularFile(path)) {
+                    sincronizarArchivo(path, carpetasCambiadas);
+                } else if (index.containsFolder(path)) {
+                    // Carpeta borrada o movida fuera de la aplicación
+                    index.listPiecesRecursively(path).forEach(p -> index.markMissing(p.path));
+                    index.removeFolder(path);
+                    carpetasCambiadas.add(path.getParent());
+                    arbolCambiado[0] = true;
+                    System.err.println("⚠️ La carpeta '" + path.getFileName() + "' se quitó fuera de la aplicación.");
+                } else if (index.getPiece(path) != null) {
+                    index.markMissing(path);
+                    carpetasCambiadas.add(path.getParent());
+                    System.err.println("⚠️ Pieza faltante (borrada fuera de la aplicación): " + path.getFileName());
                 }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("⚠️ No se pudo sincronizar '" + path.getFileName() + "': " + e.getMessage());
+            }
+        }
+        return carpetasCambiadas.isEmpty() ? null : new CatalogIndex.Change(carpetasCambiadas, arbolCambiado[0]);
+    }
+
+    private void sincronizarCarpeta(Path carpeta, Set<Path> carpetasCambiadas, boolean[] arbolCambiado) throws IOException {
+        CatalogIndex index = catalogIndex;
+        if (!index.containsFolder(carpeta)) {
+            index.putFolder(carpeta);
+            carpetasCambiadas.add(carpeta.getParent());
+            arbolCambiado[0] = true;
+        }
+        Set<String> presentes = new HashSet<>();
+        List<Path> archivos = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(carpeta)) {
+            for (Path hijo : stream) {
+                String nombre = hijo.getFileName().toString();
+                if (nombre.startsWith(".")) continue;
+                if (Files.isDirectory(hijo)) {
+                    sincronizarCarpeta(hijo, carpetasCambiadas, arbolCambiado);
+                } else {
+                    archivos.add(hijo);
+                }
+            }
+        }
+        for (Path archivo : archivos) {
+            if (Files.isRegularFile(archivo)) presentes.add(sincronizarArchivo(archivo, carpetasCambiadas).getFileName().toString());
+        }
+        // Piezas indexadas que ya no están (eventos perdidos o desborde de la cola del watcher)
+        for (CatalogIndex.PieceEntry pieza : index.listPieces(carpeta)) {
+            if (!presentes.contains(pieza.path.getFileName().toString()) && !Files.exists(pieza.path)) {
+                index.markMissing(pieza.path);
+                carpetasCambiadas.add(carpeta);
+            }
+        }
+    }
+
+    // Devuelve la ruta con la que quedó el archivo (la de su código si se registró como pieza)
+    private Path sincronizarArchivo(Path archivo, Set<Path> carpetasCambiadas) throws IOException {
+        String nombre = archivo.getFileName().toString();
+        if (!PrintFileType.isSupported(nombre)) return archivo;
+
+        CatalogIndex.PieceEntry actual = catalogIndex.getPiece(archivo);
+        BasicFileAttributes atributos = Files.readAttributes(archivo, BasicFileAttributes.class);
+        if (actual != null && actual.size == atributos.size() && actual.lastModified == atributos.lastModifiedTime().toMillis()) {
+            return archivo; // Sin cambios (Ej: evento de una escritura de la propia aplicación)
+        }
+        Path carpeta = archivo.getParent();
+        carpetasCambiadas.add(carpeta);
+
+        if (carpeta.equals(REPOSITORIO_BASE)) {
+            catalogIndex.putPiece(archivo, null); // Archivos sueltos de la raíz: no son piezas de un producto
+            return archivo;
+        }
+
+        // ¿Ya tiene fila? (nombrado con su código: lo escribió la aplicación o se restauró a mano)
+        Product existente = productRepository.findByCode(PrintFileType.baseName(nombre));
+        if (existente != null) {
+            if (actual != null) {
+                System.err.println("⚠️ La pieza " + nombre + " se modificó fuera de la aplicación.");
+            }
+            if (cantidadDeEnlaces(archivo) > 1) {
+                // Editada en el lugar a través de su enlace al blob: se vuelve a guardar con su contenido actual,
+                // así deja de compartir el archivo con el blob y con las demás piezas enlazadas a él
+                blobStore.store(archivo, archivo);
             }
+            catalogIndex.putPiece(archivo, existente.getName());
+            return archivo;
+        }
+
+        // Archivo nuevo: se registra como pieza del producto de la carpeta; el original se renombra con su código
+        try {
+            Path pieza = cargarPieza(archivo.toFile(), carpeta.toString(), null, true);
+            System.out.println("✅ Archivo externo '" + nombre + "' registrado como pieza " + pieza.getFileName() + ".");
+            return pieza;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("⚠️ No se pudo registrar el archivo externo '" + nombre + "': " + e.getMessage());
+            catalogIndex.putPiece(archivo, null); // Queda visible, sin registrar
+            return archivo;
+        }
+    }
+
+    // Enlaces duros del archivo (1 si el sistema de archivos no lo informa)
+    private static int cantidadDeEnlaces(Path archivo) throws IOException {
+        try {
+            return ((Number) Files.getAttribute(archivo, "unix:nlink")).intValue();
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return 1;
+        }
+    }
+
+    // Ruta con algún componente oculto dentro del repositorio (.blobs, .staging, .journal...)
+    private static boolean esOculta(Path path) {
+        for (Path parte : REPOSITORIO_BASE.relativize(path)) {
+            if (parte.toString().startsWith(".")) return true;
         }
         return false;
     }
@@ -198,11 +364,24 @@ public class CatalogService {
     /**
      * Procesa la carga de uno o más archivos como un NUEVO PRODUCTO. (REQ 1 - Modificado para List)
      * Incluye extracción de peso y detalle de consumo para HU3.
+     * Se hace por etapas: extracción en paralelo, asignación de códigos (por nombre base, como siempre),
+     * copia en paralelo a una carpeta temporal, una única transacción con el maestro y todas las piezas, y
+     * el renombre de la carpeta temporal a la del producto. El diario de cargas permite terminar o deshacer
+     * al iniciar una carga que se cortó; si falla antes de confirmar no queda nada y se puede reintentar.
      * @param archivosOrigen Lista de archivos .stl, .3mf, .gcode a cargar.
      * @param nombreProducto Nombre deseado para el nuevo producto (usado para la carpeta).
      * @throws IOException Si hay error de validación, creación de directorio, BD o copia/movimiento de archivo.
      */
     public void procesarCargaProducto(List<File> archivosOrigen, String nombreProducto) throws IOException {
+        procesarCargaProducto(archivosOrigen, nombreProducto, null);
+    }
+
+    /**
+     * Igual que procesarCargaProducto(List, String), informando el avance de la importación de archivos
+     * (bytes de todas las piezas). El listener se invoca desde los hilos de copia.
+     */
+    public void procesarCargaProducto(List<File> archivosOrigen, String nombreProducto,
+                                      FileImporter.ProgressListener listener) throws IOException {
         if (archivosOrigen == null || archivosOrigen.isEmpty()) {
             throw new IOException("Error: No se proporcionaron archivos para cargar.");
         }
@@ -211,134 +390,395 @@ public class CatalogService {
         }
         nombreProducto = nombreProducto.trim();
 
-        // 1. --- REGISTRO DEL PRODUCTO MAESTRO (RF4, RF8) ---
+        // La carpeta del producto se crea entera al final; no se mezclan archivos con otra carga
+        Path directorioProducto = REPOSITORIO_BASE.resolve(nombreProducto);
+        if (!esDirectorioVacioOInexistente(directorioProducto)) {
+            throw new IOException("Ya existe una carpeta con archivos para el producto '" + nombreProducto + "'.");
+        }
+
+        // 1. Agrupar por nombre base (Continúa lógica de piezas)
+        Map<String, List<File>> archivosPorNombreBase = archivosOrigen.stream()
+                .filter(file -> PrintFileType.isSupported(file.getName()))
+                .collect(Collectors.groupingBy(file -> PrintFileType.baseName(file.getName())));
+
+        if (archivosPorNombreBase.isEmpty()) {
+            throw new IOException("No se pudo cargar ningún archivo válido de la lista proporcionada.");
+        }
 
-        // 1.1. Obtener Prefijo y Código Maestro Único (Ej: SOP01)
+        // 1.1. Etapa 1: extraer los parámetros de todos los archivos en paralelo (hilos virtuales del ExtractionService)
+        Map<File, List<ResumenPlaca>> placasPorArchivo = extraerEnParalelo(archivosPorNombreBase);
+
+        // 2. --- CÓDIGOS DEL PRODUCTO MAESTRO (RF4, RF8) ---
         String productPrefix = masterProductRepository.getPrefixFromName(nombreProducto);
         // Genera el código (Ej: SOP01) y reserva el correlativo en master_correlatives.
         String masterCode = masterProductRepository.getNextMasterCode(productPrefix);
-
-        // 1.2. Guardar el Producto Maestro y el Stock Inicial (RF6)
         MasterProduct newMasterProduct = new MasterProduct(
                 masterCode,
                 productPrefix,
                 nombreProducto,
                 "Producto inicial generado al cargar piezas."
         );
-        // Guardamos el producto maestro y su stock inicial (Qty: 0)
-        masterProductRepository.saveNewProduct(newMasterProduct, 0.0);
-
-        System.out.println("✅ Producto Maestro Registrado: " + masterCode);
 
-        // 2. Preparar Prefijos y Agrupación (Continúa lógica de piezas)
         String prefijoProd = productPrefix; // Usamos el prefijo de 3 letras (SOP)
         String prefijoColor = COLOR_POR_DEFECTO.trim().substring(0, 3).toUpperCase();
         String prefijoSeisLetras = prefijoProd + prefijoColor; // Ej: SOPROJ
 
-        // 3. Obtener el primer correlativo disponible para PIEZAS (La BD lo incrementa/reserva aquí)
-        int currentCorrelative = Integer.parseInt(productRepository.getNextCorrelative(prefijoSeisLetras));
+        // Entrada del diario: las piezas se copian a su carpeta temporal con el nombre final
+        IngestionJournal.Entry carga = ingestionJournal.newEntry(directorioProducto, nombreProducto);
+        carga.masterCode = masterCode;
+        carga.piecePrefix = prefijoSeisLetras;
+        List<PiezaACargar> piezas = new ArrayList<>();
 
-        // 4. Crear el directorio (si no existe) con el nombre dado por el usuario
-        Path directorioProducto = REPOSITORIO_BASE.resolve(nombreProducto);
-        Files.createDirectories(directorioProducto);
+        // Entre la consulta del primer correlativo y la reserva del bloque no puede entrar otra carga del mismo
+        // prefijo (importación masiva con varios hilos): se pisarían los códigos
+        synchronized (RESERVA_CODIGOS) {
+            // 3. Obtener el primer correlativo disponible para PIEZAS (La BD lo incrementa/reserva aquí)
+            int currentCorrelative = Integer.parseInt(productRepository.getNextCorrelative(prefijoSeisLetras));
+            carga.firstCorrelative = currentCorrelative;
 
-        // 5. Lógica para procesar y guardar las piezas individuales
-        Map<String, List<File>> archivosPorNombreBase = archivosOrigen.stream()
-                .filter(file -> {
-                    String name = file.getName();
-                    String ext = getFileExtension(name);
-                    return !ext.isEmpty() && (ext.endsWith(".stl") || ext.endsWith(".3mf") || ext.endsWith(".gcode"));
-                })
-                .collect(Collectors.groupingBy(file -> {
-                    String name = file.getName();
-                    int lastDot = name.lastIndexOf('.');
-                    return lastDot != -1 ? name.substring(0, lastDot) : name;
-                }));
+            // 4. Asignar códigos (secuencial y sin I/O): mismo orden y correlativos que la carga pieza por pieza
+            int correlativosExtra = 0;
 
-        if (archivosPorNombreBase.isEmpty()) {
-            throw new IOException("No se pudo cargar ningún archivo válido de la lista proporcionada.");
+            for (Map.Entry<String, List<File>> entry : archivosPorNombreBase.entrySet()) {
+                String correlativeStr = String.format("%03d", currentCorrelative);
+                String pieceCode = prefijoSeisLetras + correlativeStr; // Ej: SOPROJ001
+
+                for (File archivo : entry.getValue()) {
+                    String nombreArchivoOriginal = archivo.getName();
+                    String pieceExtension = getFileExtension(nombreArchivoOriginal);
+
+                    // --- EXTRAER PESO Y DETALLE (LOGICA HU3) ---
+                    // Un proyecto 3MF con varias placas se registra como una pieza por placa
+                    List<ResumenPlaca> placas = placasPorArchivo.getOrDefault(archivo, ResumenPlaca.de(new PrintInfo()));
+                    String codigoPlaca = pieceCode;
+
+                    for (int i = 0; i < placas.size(); i++) {
+                        ResumenPlaca placa = placas.get(i);
+                        if (i > 0) {
+                            // Cada placa adicional reserva su propio correlativo
+                            currentCorrelative++;
+                            correlativosExtra++;
+                            codigoPlaca = prefijoSeisLetras + String.format("%03d", currentCorrelative);
+                        }
+                        String nombrePieza = placas.size() > 1
+                                ? entry.getKey() + "_placa" + placa.plateIndex + pieceExtension
+                                : nombreArchivoOriginal;
+
+                        Product newPiece = new Product(codigoPlaca, nombrePieza, pieceExtension, placa.gramos, placa.detalleUso);
+                        piezas.add(new PiezaACargar(archivo, newPiece, carga.stagingDir.resolve(codigoPlaca + pieceExtension)));
+                    }
+                }
+
+                // 5. Incrementar Correlativo por cada grupo procesado
+                currentCorrelative++;
+                correlativosExtra++;
+            }
+
+            // Una sola reserva en BD por todos los correlativos usados (antes, una consulta por grupo y por placa)
+            carga.lastCorrelative = Integer.parseInt(productRepository.reserveCorrelatives(prefijoSeisLetras, correlativosExtra));
         }
-        int loadedCount = 0;
+        carga.firstPieceCode = piezas.get(0).producto.getCode();
+        ingestionJournal.write(carga);
 
-        for (Map.Entry<String, List<File>> entry : archivosPorNombreBase.entrySet()) {
-            String correlativeStr = String.format("%03d", currentCorrelative);
-            String pieceCode = prefijoSeisLetras + correlativeStr; // Ej: SOPROJ001
+        // 6. Etapa 2: copiar a la carpeta temporal en paralelo.
+        // Etapa 3: maestro, stock y piezas en una sola transacción. Si algo falla se deshace todo.
+        List<Product> productos = piezas.stream().map(p -> p.producto).collect(Collectors.toList());
+        try {
+            Files.createDirectories(carga.stagingDir);
+            copiarEnParalelo(piezas, listener);
+            masterProductRepository.saveNewProductWithPieces(newMasterProduct, 0.0, productos);
+        } catch (IOException e) {
+            deshacerCarga(carga);
+            throw e;
+        } catch (RuntimeException e) {
+            deshacerCarga(carga);
+            throw new IOException("No se pudo guardar el producto en la base de datos (" + productos.size() + " piezas): "
+                    + e.getMessage(), e);
+        }
+        System.out.println("✅ Producto Maestro Registrado: " + masterCode + " con " + piezas.size() + " piezas");
 
-            boolean groupProcessed = false;
+        // 7. Etapa 4: la carpeta temporal pasa a ser la del producto (un renombre en el mismo volumen)
+        try {
+            ingestionJournal.markCommitted(carga);
+        } catch (IOException e) {
+            // Al iniciar, la entrada en STAGING se reconoce como confirmada porque sus piezas ya están en BD
+            System.err.println("⚠️ No se pudo actualizar el diario de cargas: " + e.getMessage());
+        }
+        try {
+            moverAlRepositorio(carga);
+            ingestionJournal.delete(carga);
+        } catch (IOException e) {
+            throw new IOException("El producto " + masterCode + " quedó registrado, pero sus archivos no se pudieron mover a '"
+                    + nombreProducto + "' (se reintentará al iniciar la aplicación): " + e.getMessage(), e);
+        }
+        List<Path> archivosFinales = new ArrayList<>();
+        catalogIndex.putFolder(directorioProducto);
+        for (PiezaACargar pieza : piezas) {
+            Path archivoFinal = directorioProducto.resolve(pieza.destino.getFileName());
+            catalogIndex.putPiece(archivoFinal, pieza.producto.getName());
+            archivosFinales.add(archivoFinal);
+        }
+        precargarMiniaturas(archivosFinales);
+    }
 
-            for (File archivo : entry.getValue()) {
-                String nombreArchivoOriginal = archivo.getName();
-                String pieceExtension = getFileExtension(nombreArchivoOriginal);
+    /**
+     * Importa un árbol de carpetas completo (Ej: una exportación del NAS): cada carpeta del primer nivel de
+     * origen es un producto y sus archivos imprimibles, en cualquier subcarpeta, son las piezas.
+     * Los productos se cargan de a varios con procesarCargaProducto; si la carpeta del producto ya existe
+     * (importación repetida) solo se agregan las piezas que le faltan. Ver BulkImportEngine.
+     * @param hilos Productos que se cargan a la vez.
+     * @return Resumen de la importación (los errores de cada producto no la cortan).
+     */
+    public BulkImportEngine.Report bulkImport(Path origen, int hilos) throws IOException {
+        return new BulkImportEngine(this, REPOSITORIO_BASE, hilos).run(origen);
+    }
 
+    /**
+     * Termina o deshace las cargas de productos que quedaron a la mitad (cierre inesperado durante una carga).
+     * Una carga cuyas filas ya están en BD se completa moviendo su carpeta temporal a su lugar; cualquier otra
+     * se deshace (archivos temporales y correlativos), así el mismo lote se puede volver a cargar tal cual.
+     * Se llama al iniciar la aplicación, antes de que haya cargas en curso.
+     * @return Cantidad de cargas resueltas.
+     */
+    public int recoverIngestions() {
+        int resueltas = 0;
+        try {
+            for (IngestionJournal.Entry carga : ingestionJournal.pending()) {
                 try {
-                    // --- EXTRAER PESO Y DETALLE (LOGICA HU3) ---
-                    double pesoTotalDetectado = 0.0;
-                    List<Double> pesosIndividuales = new ArrayList<>();
+                    boolean confirmada = carga.state == IngestionJournal.State.COMMITTED
+                            || (carga.firstPieceCode != null && productRepository.findByCode(carga.firstPieceCode) != null);
+                    if (confirmada) {
+                        moverAlRepositorio(carga);
+                        ingestionJournal.delete(carga);
+                        indexarCarpeta(carga.targetDir);
+                        System.out.println("✅ Carga del producto '" + carga.productName + "' completada al iniciar.");
+                    } else {
+                        deshacerCarga(carga);
+                        System.out.println("♻️ Carga incompleta del producto '" + carga.productName + "' deshecha al iniciar.");
+                    }
+                    resueltas++;
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("⚠️ No se pudo resolver la carga pendiente de '" + carga.productName + "': " + e.getMessage());
+                }
+            }
+            for (Path huerfana : ingestionJournal.orphanStagingDirs()) {
+                borrarCarpetaTemporal(huerfana);
+            }
+        } catch (IOException e) {
+            System.err.println("⚠️ No se pudo leer el diario de cargas: " + e.getMessage());
+        }
+        return resueltas;
+    }
 
-                    try {
-                        List<File> filesToAnalyze = new ArrayList<>();
-                        filesToAnalyze.add(archivo);
-
-                        // Usamos el extractor de la clase
-                        FileParameterExtractor.PrintInfo info = fileExtractor.extract(filesToAnalyze);
-
-                        for (FileParameterExtractor.FilamentProfile profile : info.filamentProfiles.values()) {
-                            if (profile.filamentAmountG != null && !profile.filamentAmountG.equals("N/D")) {
-                                try {
-                                    String cleanWeight = profile.filamentAmountG.replace(" g", "").trim();
-                                    double val = Double.parseDouble(cleanWeight);
-                                    if (val > 0) {
-                                        pesoTotalDetectado += val;
-                                        pesosIndividuales.add(val);
-                                    }
-                                } catch (NumberFormatException e) { /* Ignorar */ }
-                            }
-                        }
-                        System.out.println("⚖️ Peso extraído para " + archivo.getName() + ": " + pesoTotalDetectado + "g");
+    // Agrega al índice (si ya está armado) una carpeta que apareció fuera de una carga normal
+    private void indexarCarpeta(Path carpeta) throws IOException {
+        if (!catalogIndex.isBuilt()) return; // Se indexará al construirse
+        catalogIndex.putFolder(carpeta);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(carpeta)) {
+            for (Path archivo : stream) {
+                String nombre = archivo.getFileName().toString();
+                if (!Files.isRegularFile(archivo) || nombre.startsWith(".") || !PrintFileType.isSupported(nombre)) continue;
+                Product pieza = productRepository.findByCode(PrintFileType.baseName(nombre));
+                catalogIndex.putPiece(archivo, pieza != null ? pieza.getName() : null);
+            }
+        }
+    }
 
-                    } catch (Exception e) {
-                        System.err.println("⚠️ No se pudo extraer el peso del archivo: " + e.getMessage());
-                    }
+    // Lo que la fila de una pieza necesita de la extracción: el resto del PrintInfo (índice de capas, segundos
+    // por capa, objetos del 3MF) no se retiene mientras dura la copia de toda la carga
+    private static final class ResumenPlaca {
+        final int plateIndex;
+        final double gramos;
+        final String detalleUso; // Detalle por herramienta (ej: "0:PLA:#FF0000:80.5;1:PLA:#FFFFFF:20.2")
+
+        private ResumenPlaca(PrintInfo placa) {
+            this.plateIndex = placa.plateIndex;
+            this.gramos = placa.totalGrams();
+            this.detalleUso = UsageDetail.format(placa);
+        }
+
+        static List<ResumenPlaca> de(PrintInfo info) {
+            List<PrintInfo> placas = info.plates.size() > 1 ? info.plates : List.of(info);
+            List<ResumenPlaca> resumen = new ArrayList<>(placas.size());
+            for (PrintInfo placa : placas) resumen.add(new ResumenPlaca(placa));
+            return resumen;
+        }
+    }
 
-                    // Generar String de detalle (ej: "80.5;20.2") para soporte multicolor
-                    String usageDetailStr = pesosIndividuales.stream()
-                            .map(String::valueOf)
-                            .collect(Collectors.joining(";"));
-                    // ---------------------------------------------------------
+    // Pieza ya planificada: archivo de origen, fila a guardar y destino en la carpeta temporal de la carga
+    private static final class PiezaACargar {
+        final File origen;
+        final Product producto;
+        final Path destino;
 
-                    // A. Guardar en BD (CON PESO Y DETALLE)
-                    // 🚨 Usamos el constructor completo actualizado
-                    Product newPiece = new Product(pieceCode, nombreArchivoOriginal, pieceExtension, pesoTotalDetectado, usageDetailStr);
+        PiezaACargar(File origen, Product producto, Path destino) {
+            this.origen = origen;
+            this.producto = producto;
+            this.destino = destino;
+        }
+    }
 
-                    long pieceId = productRepository.save(newPiece);
-                    if (pieceId == -1) {
-                        throw new IOException("No se pudo guardar la pieza en la base de datos. Código: " + pieceCode);
+    /**
+     * Auxiliar: copia las piezas a la carpeta temporal en hilos virtuales (a lo sumo MAX_COPIAS_EN_CURSO
+     * a la vez). Si una copia falla se cancelan las demás; las ya copiadas las borra quien deshace la carga.
+     */
+    private void copiarEnParalelo(List<PiezaACargar> piezas, FileImporter.ProgressListener listener) throws IOException {
+        Semaphore permisos = new Semaphore(MAX_COPIAS_EN_CURSO);
+        long totalBytes = 0;
+        for (PiezaACargar pieza : piezas) totalBytes += pieza.origen.length();
+        final long total = totalBytes;
+        AtomicLong copiados = new AtomicLong();
+        List<Future<?>> copias = new ArrayList<>();
+        IOException error = null;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (PiezaACargar pieza : piezas) {
+                copias.add(executor.submit(() -> {
+                    permisos.acquire();
+                    try {
+                        // Avance global: cada copia suma lo que avanzó desde su último aviso
+                        long[] ultimo = {0};
+                        FileImporter.ProgressListener avance = listener == null ? null : (hechos, totalArchivo) -> {
+                            listener.onProgress(copiados.addAndGet(hechos - ultimo[0]), total);
+                            ultimo[0] = hechos;
+                        };
+                        blobStore.store(pieza.origen.toPath(), pieza.destino, avance); // Un contenido repetido no ocupa disco de nuevo
+                    } finally {
+                        permisos.release();
                     }
+                    return null;
+                }));
+            }
 
-                    // B. Copiar archivo con el nombre de código único
-                    String nombreArchivoFinalPieza = pieceCode + pieceExtension;
-                    Path rutaDestinoFinalEnProductoPieza = directorioProducto.resolve(nombreArchivoFinalPieza);
-                    Files.copy(archivo.toPath(), rutaDestinoFinalEnProductoPieza, StandardCopyOption.REPLACE_EXISTING);
+            for (int i = 0; i < copias.size() && error == null; i++) {
+                try {
+                    copias.get(i).get();
+                } catch (ExecutionException e) {
+                    Throwable causa = e.getCause();
+                    error = new IOException("Error al procesar el archivo '" + piezas.get(i).origen.getName() + "': "
+                            + causa.getMessage(), causa);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    error = new IOException("Carga interrumpida durante la copia de archivos.", e);
+                }
+            }
+            if (error != null) {
+                copias.forEach(f -> f.cancel(true));
+                executor.shutdownNow();
+            }
+        } // El cierre espera a las copias en curso: recién entonces se pueden deshacer
 
-                    loadedCount++;
-                    groupProcessed = true;
+        if (error != null) {
+            throw error;
+        }
+    }
 
-                } catch (Exception e) {
-                    throw new IOException("Error al procesar el archivo '" + archivo.getName() + "': " + e.getMessage(), e);
-                }
+    /**
+     * Auxiliar: mueve la carpeta temporal de una carga confirmada a la carpeta del producto.
+     * Si ya se había movido (cierre justo después del renombre), solo actualiza las referencias de los blobs.
+     */
+    private void moverAlRepositorio(IngestionJournal.Entry carga) throws IOException {
+        if (Files.isDirectory(carga.stagingDir)) {
+            if (!esDirectorioVacioOInexistente(carga.targetDir)) {
+                throw new IOException("La carpeta '" + carga.targetDir.getFileName() + "' ya tiene archivos.");
             }
+            Files.deleteIfExists(carga.targetDir); // Carpeta vacía creada a mano: el renombre la reemplaza
+            Files.createDirectories(carga.targetDir.getParent());
+            Files.move(carga.stagingDir, carga.targetDir, StandardCopyOption.ATOMIC_MOVE);
+        }
+        blobStore.moved(carga.stagingDir, carga.targetDir);
+    }
 
-            // 6. Incrementar Correlativo SOLO si el grupo fue procesado
-            if (groupProcessed) {
-                currentCorrelative++;
-                productRepository.getNextCorrelative(prefijoSeisLetras);
+    /**
+     * Auxiliar: deshace una carga no confirmada en BD. Borra la carpeta temporal (liberando sus blobs), quita la
+     * entrada del diario y devuelve los correlativos si nadie reservó otros después.
+     * Si la carpeta no se puede borrar la entrada queda, y se reintenta al iniciar la aplicación.
+     */
+    private void deshacerCarga(IngestionJournal.Entry carga) {
+        try {
+            borrarCarpetaTemporal(carga.stagingDir);
+            ingestionJournal.delete(carga);
+        } catch (IOException e) {
+            System.err.println("⚠️ No se pudo deshacer la carga de '" + carga.productName + "': " + e.getMessage());
+            return;
+        }
+        if (carga.piecePrefix != null && carga.lastCorrelative > 0) {
+            productRepository.releaseCorrelatives(carga.piecePrefix, carga.firstCorrelative, carga.lastCorrelative);
+        }
+        if (carga.masterCode != null) {
+            masterProductRepository.releaseMasterCode(carga.masterCode);
+        }
+    }
+
+    private void borrarCarpetaTemporal(Path carpeta) throws IOException {
+        if (!Files.isDirectory(carpeta)) return;
+        List<Path> archivos;
+        try (var stream = Files.walk(carpeta)) {
+            archivos = stream.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path archivo : archivos) {
+            if (Files.isRegularFile(archivo)) {
+                blobStore.release(archivo);
+            } else {
+                Files.deleteIfExists(archivo);
+            }
+        }
+    }
+
+    // Ignora la carpeta si solo existe vacía (Ej: creada a mano desde el explorador)
+    private static boolean esDirectorioVacioOInexistente(Path directorio) throws IOException {
+        if (!Files.exists(directorio)) return true;
+        if (!Files.isDirectory(directorio)) return false;
+        try (var stream = Files.list(directorio)) {
+            return stream.findAny().isEmpty();
+        }
+    }
+
+    // Precarga en segundo plano las miniaturas de las piezas ya en su carpeta final (la caché se indexa por ruta).
+    // La carga no las espera: la caché es secuencial y el visor extrae la que todavía no esté.
+    private void precargarMiniaturas(List<Path> archivos) {
+        Thread.ofVirtual().name("hubi-miniaturas").start(() -> {
+            for (Path archivo : archivos) {
+                getThumbnail(archivo.toFile());
+            }
+        });
+    }
+
+    /**
+     * Auxiliar: extrae los parámetros de cada archivo (individualmente, como se registran) con el ExtractionService.
+     * Un archivo cuya extracción falla queda sin entrada y se registra con peso 0, igual que antes.
+     * @return Por archivo, solo el resumen de cada placa (gramos y detalle de uso).
+     */
+    private Map<File, List<ResumenPlaca>> extraerEnParalelo(Map<String, List<File>> archivosPorNombreBase) throws IOException {
+        refreshColorPalette();
+        Map<String, List<File>> unoPorArchivo = new LinkedHashMap<>();
+        for (List<File> grupo : archivosPorNombreBase.values()) {
+            for (File archivo : grupo) {
+                unoPorArchivo.put(archivo.getAbsolutePath(), List.of(archivo));
             }
         }
 
-        if (loadedCount == 0) {
-            throw new IOException("No se pudo cargar ningún archivo de la lista proporcionada.");
+        Map<File, List<ResumenPlaca>> placasPorArchivo = new HashMap<>();
+        ExtractionService.Job job = extractionService.submitGroups(unoPorArchivo, null);
+        try {
+            ExtractionService.Result result;
+            while ((result = job.next()) != null) {
+                if (result.status == ExtractionService.Status.COMPLETED) {
+                    placasPorArchivo.put(result.files.get(0), ResumenPlaca.de(result.info));
+                } else {
+                    System.err.println("⚠️ No se pudo extraer el peso del archivo: " + result.key
+                            + (result.error != null ? " (" + result.error.getMessage() + ")" : ""));
+                }
+            }
+        } catch (InterruptedException e) {
+            job.cancel();
+            Thread.currentThread().interrupt();
+            throw new IOException("Carga interrumpida durante la extracción de parámetros.", e);
         }
-    }/**
+        return placasPorArchivo;
+    }
+
+    /**
      * Procesa la carga de un archivo como una PIEZA asociada a un PRODUCTO existente. (REQ 2 & 3)
      * @param archivoOrigen Archivo .stl, .3mf, .gcode a cargar como pieza.
      * @param rutaDirectorioProducto Ruta absoluta a la carpeta del producto existente.
@@ -346,6 +786,21 @@ public class CatalogService {
      * @throws IllegalArgumentException Si la ruta no es un directorio válido.
      */
     public void procesarCargaPieza(File archivoOrigen, String rutaDirectorioProducto) throws IOException {
+        procesarCargaPieza(archivoOrigen, rutaDirectorioProducto, null);
+    }
+
+    /**
+     * Igual que procesarCargaPieza(File, String), informando el avance de la importación del archivo.
+     */
+    public void procesarCargaPieza(File archivoOrigen, String rutaDirectorioProducto,
+                                   FileImporter.ProgressListener listener) throws IOException {
+        cargarPieza(archivoOrigen, rutaDirectorioProducto, listener, false);
+    }
+
+    // Carga de una pieza; devuelve la ruta con la que quedó en la carpeta del producto.
+    // enLugar: archivoOrigen ya está en la carpeta (lo dejó el usuario) y se renombra en vez de copiarse
+    private Path cargarPieza(File archivoOrigen, String rutaDirectorioProducto,
+                             FileImporter.ProgressListener listener, boolean enLugar) throws IOException {
         if (archivoOrigen == null || !archivoOrigen.isFile()) {
             throw new IOException("Error: El archivo a cargar no es válido.");
         }
@@ -363,36 +818,23 @@ public class CatalogService {
             throw new IOException("Error: El archivo original no tiene extensión.");
         }
 
-        String baseNameWithoutExt = nombreArchivoOriginal.substring(0, nombreArchivoOriginal.lastIndexOf('.'));
+        String baseNameWithoutExt = PrintFileType.baseName(nombreArchivoOriginal);
 
         double pesoTotalDetectado = 0.0;
-        List<Double> pesosIndividuales = new ArrayList<>();
+        String usageDetailStr = "";
         try {
             List<File> filesToAnalyze = new ArrayList<>();
             filesToAnalyze.add(archivoOrigen);
-            FileParameterExtractor.PrintInfo info = fileExtractor.extract(filesToAnalyze);
+            refreshColorPalette();
+            PrintInfo info = fileExtractor.extract(filesToAnalyze);
 
-            // Iterar sobre los perfiles encontrados (T0, T1...)
-            for (FileParameterExtractor.FilamentProfile profile : info.filamentProfiles.values()) {
-                if (profile.filamentAmountG != null && !profile.filamentAmountG.equals("N/D")) {
-                    try {
-                        String cleanWeight = profile.filamentAmountG.replace(" g", "").trim();
-                        double val = Double.parseDouble(cleanWeight);
-                        if (val > 0) {
-                            pesoTotalDetectado += val;
-                            pesosIndividuales.add(val); // Guardamos cada peso > 0
-                        }
-                    } catch (NumberFormatException e) { }
-                }
-            }
+            // Detalle de cada perfil con peso > 0 (T0, T1...)
+            usageDetailStr = UsageDetail.format(info);
+            pesoTotalDetectado = info.totalGrams();
 
         } catch (Exception e) {
             System.err.println("⚠️ No se pudo extraer el peso del archivo: " + e.getMessage());
         }
-        // Convertir lista de pesos a String (Ej: "12.5;4.2")
-        String usageDetailStr = pesosIndividuales.stream()
-                .map(String::valueOf)
-                .collect(Collectors.joining(";"));
         // --- VALIDACIÓN 1: DUPLICADO (REQ 3) ---
         if (isDuplicate(directorioProductoFile, nombreArchivoOriginal)) {
             throw new IOException("Duplicado: Ya existe un archivo con el mismo nombre.");
@@ -411,7 +853,9 @@ public class CatalogService {
             String correlativeToUse = existingFullCode.substring(existingFullCode.length() - 3);
             finalCode = prefijoSeisLetras + correlativeToUse;
         } else {
-            finalCode = generateProductCode(nombreProducto, null);
+            synchronized (RESERVA_CODIGOS) {
+                finalCode = generateProductCode(nombreProducto, null);
+            }
         }
 
         // 🚨 FALTABA ESTO: DEFINIR EL NOMBRE Y RUTA FINAL
@@ -426,10 +870,29 @@ public class CatalogService {
             throw new IOException("Error: No se pudo guardar la pieza en la base de datos.");
         }
 
-        // Copia el archivo
-        Files.copy(archivoOrigen.toPath(), rutaDestinoFinalEnProducto, StandardCopyOption.REPLACE_EXISTING);
+        if (enLugar) {
+            // Renombre atómico al código: en ningún momento falta el archivo del usuario. Después el almacén
+            // copia su contenido a un blob y lo enlaza con el mismo nombre (BlobStore.store con origen = destino)
+            Path original = archivoOrigen.toPath();
+            try {
+                Files.move(original, rutaDestinoFinalEnProducto, StandardCopyOption.ATOMIC_MOVE);
+                blobStore.store(rutaDestinoFinalEnProducto, rutaDestinoFinalEnProducto, listener);
+            } catch (IOException | RuntimeException e) {
+                if (!Files.exists(original) && Files.exists(rutaDestinoFinalEnProducto)) {
+                    Files.move(rutaDestinoFinalEnProducto, original, StandardCopyOption.ATOMIC_MOVE);
+                }
+                productRepository.deleteByCode(finalCode);
+                throw e;
+            }
+        } else {
+            // Copia el archivo (al almacén por contenido)
+            blobStore.store(archivoOrigen.toPath(), rutaDestinoFinalEnProducto, listener);
+        }
+        catalogIndex.putPiece(rutaDestinoFinalEnProducto, nombreArchivoOriginal);
+        getThumbnail(rutaDestinoFinalEnProducto.toFile()); // Precarga la miniatura en la caché
 
         System.out.println("✅ Pieza '" + nombreArchivoFinal + "' agregada al producto '" + nombreProducto + "'.");
+        return rutaDestinoFinalEnProducto;
     }
     /**
      * Procesa la carga de un archivo como un NUEVO PRODUCTO.
@@ -439,6 +902,29 @@ public class CatalogService {
         this.procesarCargaProducto(java.util.List.of(archivoOrigen), nombreProducto);
     }
 
+    /**
+     * Devuelve la miniatura embebida de un archivo del repositorio (G-code, 3MF o bgcode) desde la caché
+     * en disco; si no está cacheada, se extrae en ese momento. No lee mallas.
+     * @param pieceFile Archivo de la pieza (Ej: SOPROJ001.gcode)
+     * @return Ruta de la imagen (PNG/JPG) o null si el archivo no trae miniatura.
+     */
+    public Path getThumbnail(File pieceFile) {
+        return thumbnailCache.getOrExtract(pieceFile);
+    }
+
+    /**
+     * Devuelve el índice de capas (capa -> byte, Z, herramienta, E acumulado) de un G-code del repositorio.
+     * Se lee del caché en disco; si no existe o el archivo cambió, se construye y se guarda.
+     * Para leer un rango de capas: LayerIndexStore.openLayers(...).
+     * @return El índice, o null si el archivo no es un .gcode plano.
+     */
+    public LayerIndex getLayerIndex(File pieceFile) {
+        if (pieceFile == null || PrintFileType.fromFileName(pieceFile.getName()) != PrintFileType.GCODE) {
+            return null;
+        }
+        return layerIndexStore.getOrBuild(pieceFile);
+    }
+
     /**
      * Busca los detalles completos de un producto o pieza por su código único.
      * @param code El código único (Ej: SOPROJ001)
@@ -482,9 +968,9 @@ public class CatalogService {
         String fileName = pieceFile.getName();
         String code = "";
         // Extraer código (nombre sin extensión)
-        int lastDotIndex = fileName.lastIndexOf('.');
-        if (lastDotIndex != -1 && lastDotIndex > 0) {
-            code = fileName.substring(0, lastDotIndex);
+        String extension = getFileExtension(fileName);
+        if (!extension.isEmpty() && fileName.length() > extension.length()) {
+            code = PrintFileType.baseName(fileName);
         } else {
             // Si no hay extensión o empieza con punto, no podemos obtener código válido para BD
             throw new IOException("Error: Formato de nombre de archivo de pieza inválido para obtener código: " + fileName);
@@ -494,17 +980,25 @@ public class CatalogService {
         File parentDir = pieceFile.getParentFile(); // Directorio del producto
         Path parentPath = parentDir.toPath();
 
-        // 1. Eliminar de la BD
-        productRepository.deleteByCode(code);
-
-        // 2. MOVER A LA PAPELERA en lugar de eliminar permanentemente
-        boolean movedToRecycleBin = RecycleBinManager.moveToRecycleBin(pieceFile);
+        // 1. MOVER A LA PAPELERA en lugar de eliminar permanentemente (se deshace si falla la BD)
+        Path enPapelera = RecycleBinManager.recycleFile(pieceFile);
 
-        if (!movedToRecycleBin) {
+        if (enPapelera == null) {
             // Si falla el movimiento a la papelera, lanzar excepción
             throw new IOException("No se pudo mover el archivo a la papelera de reciclaje: " + fileName);
         }
 
+        // 2. Eliminar de la BD; la fila queda en el manifiesto de la papelera para poder restaurarla
+        DeletedRows filas;
+        try {
+            filas = masterProductRepository.deleteProductWithPieces(null, List.of(code), List.of());
+        } catch (RuntimeException e) {
+            devolverDesdePapelera(enPapelera, pieceFile.toPath());
+            throw new IOException("No se pudo eliminar la pieza '" + code + "' de la BD: " + e.getMessage(), e);
+        }
+        RecycleBinManager.recordDeletion(enPapelera, pieceFile.toPath(), code, filas);
+
+        catalogIndex.removePiece(pieceFile.toPath());
         System.out.println("✅ Pieza eliminada de la BD y movida a papelera: " + code);
 
 
@@ -525,6 +1019,7 @@ public class CatalogService {
                 // Mover la carpeta vacía a la papelera en lugar de eliminarla
                 boolean dirMovedToRecycleBin = RecycleBinManager.moveDirectoryToRecycleBin(parentDir);
                 if (dirMovedToRecycleBin) {
+                    catalogIndex.removeFolder(parentPath);
                     System.out.println("✅ Carpeta de Producto vacía movida a papelera: " + parentPath.getFileName());
                 } else {
                     System.err.println("⚠️ No se pudo mover la carpeta vacía a la papelera: " + parentPath.getFileName());
@@ -535,6 +1030,9 @@ public class CatalogService {
 
     /**
      * Elimina un Producto completo (MUEVE su carpeta y todas las piezas dentro a la papelera) Y elimina el registro maestro de la BD.
+     * Los códigos de las piezas salen del índice del catálogo y las filas (piezas, stock de piezas, composición,
+     * stock final y maestro) se borran en una sola transacción. Si la BD falla, la carpeta vuelve a su lugar:
+     * el producto queda completo o no queda.
      */
     public void deleteProduct(File productDirectory) throws IOException {
 
@@ -546,61 +1044,120 @@ public class CatalogService {
         String masterCode = getMasterCodeByProductName(productName);
         Path productPath = productDirectory.toPath();
 
-        // Lista para almacenar los nombres base de las piezas para la limpieza de piece_stock
-        final List<String> pieceNamesToDeleteStock = new ArrayList<>();
-
-        // 1. Eliminar registros de la BD para cada archivo dentro del directorio (Piezas)
-        Files.walk(productPath)
-                .filter(Files::isRegularFile)
-                .forEach(path -> {
-                    File pieceFile = path.toFile();
-                    String fileName = pieceFile.getName();
-                    int lastDotIndex = fileName.lastIndexOf('.');
-
-                    if (lastDotIndex > 0) {
-                        String code = fileName.substring(0, lastDotIndex);
-
-                        // LÓGICA CRÍTICA: Obtener el nombre base ANTES de eliminar el registro de 'products'
-                        Product piece = productRepository.findByCode(code);
-                        if (piece != null) {
-                            String pieceNameBase = piece.getName().substring(0, piece.getName().lastIndexOf('.'));
-                            pieceNamesToDeleteStock.add(pieceNameBase);
-                        }
-
-                        // Eliminar registro de la tabla 'products'
-                        try {
-                            productRepository.deleteByCode(code);
-                        } catch (Exception e) {
-                            System.err.println("⚠️ Error al eliminar registro BD para pieza '" + code + "': " + e.getMessage());
-                        }
-                    } else {
-                        System.out.println("ℹ️ Archivo ignorado para borrado de BD (formato inválido): " + fileName);
-                    }
-                });
-
-        // 2. MOVER el Directorio Completo a la Papelera (en lugar de eliminarlo permanentemente)
-        boolean movedToRecycleBin = RecycleBinManager.moveDirectoryToRecycleBin(productDirectory);
+        // 1. Piezas registradas del producto (incluidas las de subcarpetas), sin recorrer el disco ni consultar la BD por pieza
+        Set<String> pieceCodes = new LinkedHashSet<>();
+        Set<String> pieceNamesToDeleteStock = new LinkedHashSet<>();
+        for (CatalogIndex.PieceEntry pieza : getCatalogIndex().listPiecesRecursively(productPath)) {
+            if (pieza.originalName == null) continue; // Sin fila en BD (Ej: archivo ajeno al catálogo)
+            pieceCodes.add(pieza.code);
+            // El stock de las piezas solo se limpia si el producto tiene registro maestro (como antes)
+            if (masterCode != null) pieceNamesToDeleteStock.add(PrintFileType.baseName(pieza.originalName));
+        }
 
-        if (!movedToRecycleBin) {
+        // 2. MOVER el Directorio Completo a la Papelera (es un renombrado: se deshace fácil si la BD falla)
+        Path enPapelera = RecycleBinManager.recycleDirectory(productDirectory);
+        if (enPapelera == null) {
             throw new IOException("No se pudo mover el producto a la papelera de reciclaje: " + productName);
         }
 
+        // 3. Maestro, composición, stock final, piezas y stock de piezas: una transacción.
+        //    Las filas borradas quedan en el manifiesto de la papelera para poder restaurarlas
+        DeletedRows filas;
+        try {
+            filas = masterProductRepository.deleteProductWithPieces(masterCode, pieceCodes, pieceNamesToDeleteStock);
+        } catch (RuntimeException e) {
+            devolverDesdePapelera(enPapelera, productPath);
+            throw new IOException("No se pudo eliminar el producto '" + productName + "' de la BD: " + e.getMessage(), e);
+        }
+        RecycleBinManager.recordDeletion(enPapelera, productPath, masterCode, filas);
+
+        catalogIndex.removeFolder(productPath);
         System.out.println("♻️ Producto completo movido a papelera: " + productName);
+        System.out.println("✅ Producto '" + productName + "' eliminado del catálogo (" + pieceCodes.size() + " piezas"
+                + (masterCode != null ? ", registro maestro " + masterCode : "") + ").");
+    }
 
-        // 3. Eliminar el registro de Producto Maestro y su Stock Final
-        if (masterCode != null) {
-            masterProductRepository.deleteProduct(masterCode);
+    // Deshace el movimiento a la papelera de un borrado que falló en la BD
+    private static void devolverDesdePapelera(Path enPapelera, Path original) {
+        try {
+            RecycleBinManager.restoreEntry(enPapelera, original);
+        } catch (IOException restoreError) {
+            System.err.println("❌ '" + original.getFileName() + "' quedó en la papelera (" + enPapelera.getFileName()
+                    + ") y no se pudo devolver: " + restoreError.getMessage());
+        }
+    }
 
-            // 4. LIMPIEZA CRÍTICA: Eliminar el Stock de las Piezas Asociadas (Limpia la tabla piece_stock)
-            pieceNamesToDeleteStock.stream().distinct().forEach(pieceNameBase -> {
-                productRepository.deletePieceStockByPieceNameBase(pieceNameBase);
-                System.out.println("✅ Stock de Pieza Base eliminado de piece_stock: " + pieceNameBase);
-            });
+    /**
+     * Restaura una entrada de la papelera (producto o pieza): vuelve a insertar sus filas de BD en una sola
+     * transacción y devuelve los archivos a su carpeta original. Si mover los archivos falla, las filas se
+     * vuelven a borrar. La entrada se busca en el manifiesto (RecycleBinManager.getEntry/findEntryByCode).
+     * @param entryName Nombre de la entrada en la papelera (RecycleBinManifest.Entry.name).
+     * @return La ruta restaurada en el repositorio.
+     * @throws IOException Si la entrada no existe, no tiene ruta original, su lugar está ocupado o sus códigos
+     *                     ya están en uso.
+     */
+    public Path restoreFromRecycleBin(String entryName) throws IOException {
+        RecycleBinManifest.Entry entry = RecycleBinManager.getEntry(entryName);
+        if (entry == null) {
+            throw new IOException("La entrada '" + entryName + "' no está en la papelera.");
+        }
+        if (entry.originalPath == null) {
+            throw new IOException("No se sabe de dónde salió '" + entryName + "' (anterior al manifiesto): restaurarla a mano.");
+        }
+        Path destino = entry.originalPath;
+        if (Files.exists(destino)) {
+            throw new IOException("Ya existe '" + destino.getFileName() + "' en el repositorio.");
+        }
 
-            System.out.println("✅ Registro Maestro y Stock final eliminados para: " + masterCode);
+        // 1. Filas de BD (falla sin tocar nada si algún código se volvió a usar)
+        DeletedRows filas = entry.rows;
+        if (!filas.isEmpty()) {
+            try {
+                masterProductRepository.restoreRows(filas);
+            } catch (RuntimeException e) {
+                throw new IOException("No se pudo restaurar '" + entryName + "': " + e.getMessage(), e);
+            }
+        }
+
+        // 2. Archivos a su lugar
+        try {
+            RecycleBinManager.restoreEntry(RecycleBinManager.getEntryPath(entry), destino);
+        } catch (IOException e) {
+            if (!filas.isEmpty()) {
+                List<String> codigos = new ArrayList<>();
+                for (Product pieza : filas.pieces) codigos.add(pieza.getCode());
+                Set<String> nombresBase = new LinkedHashSet<>();
+                for (PieceStockColorView stock : filas.pieceStock) nombresBase.add(stock.getPieceNameBase());
+                masterProductRepository.deleteProductWithPieces(
+                        filas.master != null ? filas.master.getMasterCode() : null, codigos, nombresBase);
+            }
+            throw e;
         }
 
-        System.out.println("✅ Producto '" + productName + "' eliminado del catálogo y movido a papelera.");
+        // 3. Índice del catálogo
+        if (catalogIndex.isBuilt()) {
+            Files.walkFileTree(destino, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (dir.getFileName().toString().startsWith(".")) return FileVisitResult.SKIP_SUBTREE;
+                    catalogIndex.putFolder(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path archivo, BasicFileAttributes attrs) {
+                    String nombre = archivo.getFileName().toString();
+                    if (nombre.startsWith(".") || !PrintFileType.isSupported(nombre)) return FileVisitResult.CONTINUE;
+                    Product pieza = filas.findPiece(PrintFileType.baseName(nombre));
+                    catalogIndex.putPiece(archivo, pieza != null ? pieza.getName() : null);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            catalogIndex.fireChanged(new CatalogIndex.Change(Set.of(destino.getParent()), true));
+        }
+        System.out.println("✅ '" + destino.getFileName() + "' restaurado desde la papelera"
+                + (entry.code != null ? " (" + entry.code + ")" : "") + ".");
+        return destino;
     }
 
     public void verifyPieceAvailability(String masterCode, int quantity) throws IOException {
@@ -652,18 +1209,8 @@ public class CatalogService {
             throw new IOException("Error: La pieza con código " + code + " no fue encontrada en la base de datos.");
         }
 
-        // 1. Obtener los detalles necesarios para la ruta
-        String pieceFileName = piece.getCode() + piece.getFileExtension(); // Ej: LLAROJ007.gcode
-        String productPrefix = piece.getCode().substring(0, 3); // Ej: LLA
-
-        // 2. Buscar el nombre de la carpeta (Ej: Llavero) usando el MasterProduct
-        MasterProduct masterProduct = findByProductPrefix(productPrefix);
-        // Usamos el nombre del MasterProduct como el nombre de la carpeta física
-        String productName = masterProduct != null ? masterProduct.getProductName() : "UnknownProduct";
-
-        // 3. Reconstruir la ruta física del archivo
-        File productDirectory = REPOSITORIO_BASE.resolve(productName).toFile();
-        File pieceFile = new File(productDirectory, pieceFileName);
+        // 1-3. Reconstruir la ruta física del archivo (carpeta del MasterProduct + código + extensión)
+        File pieceFile = resolvePieceFile(piece);
 
         if (!pieceFile.exists()) {
             // Si el archivo físico no se encuentra (Ej: eliminado manualmente), borramos solo el registro de BD.
@@ -675,6 +1222,19 @@ public class CatalogService {
         deletePiece(pieceFile);
     }
 
+    // Ruta física de una pieza: REPOSITORIO_BASE/<nombre del MasterProduct>/<código><extensión>
+    private File resolvePieceFile(Product piece) {
+        String pieceFileName = piece.getCode() + piece.getFileExtension(); // Ej: LLAROJ007.gcode
+        String productPrefix = piece.getCode().substring(0, 3); // Ej: LLA
+
+        // Buscar el nombre de la carpeta (Ej: Llavero) usando el MasterProduct
+        MasterProduct masterProduct = findByProductPrefix(productPrefix);
+        String productName = masterProduct != null ? masterProduct.getProductName() : "UnknownProduct";
+
+        File productDirectory = REPOSITORIO_BASE.resolve(productName).toFile();
+        return new File(productDirectory, pieceFileName);
+    }
+
     /**
      * Disminuye el stock disponible del Producto Maestro (Finished Stock).
      * @param masterCode El código del producto maestro (Ej: LLA01).
@@ -822,162 +1382,175 @@ public class CatalogService {
                 .sorted()
                 .collect(Collectors.toList());
     }
+
     /**
-     * HU3: Registra la producción de una pieza, verifica stock, descuenta insumos y devuelve reporte.
-     * @param pieceCode Código único de la pieza (Ej: SOPROJ001).
-     * @param selectedColors Lista de strings "COLOR TIPO" seleccionados (Ej: ["ROJO PLA", "AZUL ABS"]).
-     * @param quantity Cantidad de piezas producidas.
-     * @return Lista de mensajes detallados sobre el descuento realizado.
+     * Sugiere los insumos para producir una pieza (ver planPieceProduction).
+     * @return Claves "Nombre | COLOR TIPO" en el orden Color 1, Color 2...; null donde no hay insumo compatible.
      */
+    public List<String> suggestColorKeys(String pieceCode) {
+        DeductionPlan plan = planPieceProduction(pieceCode, 1);
+        return plan == null ? new ArrayList<>() : plan.getColorKeys();
+    }
+
     /**
-     * HU3: Registra la producción, verifica stock y descuenta insumos basándose en el consumo real por color.
-     * Regla: Los pesos extraídos del archivo se ordenan (Mayor a Menor) y se asignan a los colores seleccionados (Color 1, Color 2...).
-     * @return Lista de mensajes detallados sobre el descuento realizado.
+     * Arma el plan de descuento de insumos para producir una pieza, sin tocar la BD: cada herramienta del
+     * archivo (material, color, gramos) se asigna al insumo con stock del mismo material y color más cercano,
+     * validando todos los carretes del lote en una sola pasada.
+     * Las piezas cargadas con el detalle viejo (solo gramos) toman material y color del archivo.
+     * @return El plan (ver DeductionPlan.isValid), o null si la pieza no existe.
      */
-    public List<String> registerPieceProduction(String pieceCode, List<String> selectedColors, int quantity) {
-        List<String> reportMessages = new ArrayList<>();
-        System.out.println("--- DEBUG: Iniciando Registro de Producción (Lógica Ponderada) ---");
-        System.out.println("Pieza: " + pieceCode + " | Cantidad: " + quantity);
-
-        // 1. BUSCAR LA PIEZA Y SUS DETALLES DE CONSUMO
+    public DeductionPlan planPieceProduction(String pieceCode, int quantity) {
         Product piece = productRepository.findByCode(pieceCode);
-        if (piece == null) {
-            throw new RuntimeException("Pieza no encontrada con código: " + pieceCode);
+        if (piece == null) return null;
+
+        refreshColorPalette();
+        List<FilamentProfile> usages = UsageDetail.parse(piece.getUsageDetail());
+        boolean legacyDetail = usages.stream().noneMatch(u -> u.hasColor() || u.materialLabel != null);
+        if (legacyDetail) {
+            File pieceFile = resolvePieceFile(piece);
+            if (pieceFile.isFile()) {
+                List<FilamentProfile> fromFile = new ArrayList<>(fileExtractor.extract(List.of(pieceFile)).filamentProfiles.values());
+                fromFile.removeIf(p -> !p.hasAmountGrams() || p.amountGrams <= 0);
+                if (!fromFile.isEmpty()) usages = fromFile;
+            }
+        }
+        if (usages.isEmpty() && piece.getWeightGrams() > 0) {
+            // Piezas sin detalle: el peso total como un único consumo
+            FilamentProfile single = new FilamentProfile(0);
+            single.amountGrams = piece.getWeightGrams();
+            usages.add(single);
         }
 
-        // Recuperar y parsear los pesos individuales (ej: "12.5;4.2")
-        List<Double> weights = new ArrayList<>();
-        String detail = piece.getUsageDetail();
+        SupplyMatcher matcher = new SupplyMatcher(fileExtractor.getColorResolver());
+        return matcher.plan(usages, supplyRepository.listAll(), quantity);
+    }
 
-        if (detail != null && !detail.isEmpty()) {
-            for (String w : detail.split(";")) {
-                try {
-                    double val = Double.parseDouble(w);
-                    if (val > 0) weights.add(val);
-                } catch (NumberFormatException e) { /* Ignorar valores corruptos */ }
+    /**
+     * Igual que planPieceProduction(pieceCode, quantity), pero la línea i usa el insumo elegido en el Color i+1
+     * del diálogo (el stock se vuelve a validar con esa elección).
+     * @param selectedColorKeys Claves "Nombre | COLOR TIPO" por posición; null o vacío deja el insumo sugerido.
+     * @return El plan, o null si la pieza no existe.
+     */
+    public DeductionPlan planPieceProduction(String pieceCode, int quantity, List<String> selectedColorKeys) {
+        DeductionPlan suggested = planPieceProduction(pieceCode, quantity);
+        if (suggested == null || selectedColorKeys == null || selectedColorKeys.isEmpty()) return suggested;
+
+        List<Supply> allSupplies = supplyRepository.listAll();
+        List<Supply> chosen = new ArrayList<>();
+        List<String> unknown = new ArrayList<>();
+        for (String key : selectedColorKeys) {
+            Supply supply = null;
+            if (key != null && !key.isBlank()) {
+                supply = findSupplyByColorKey(allSupplies, key.trim());
+                if (supply == null) unknown.add(key.trim());
             }
+            chosen.add(supply);
         }
 
-        // Fallback: Si no hay detalle (piezas viejas), usamos el peso total como un único bloque
-        if (weights.isEmpty() && piece.getWeightGrams() > 0) {
-            weights.add(piece.getWeightGrams());
+        DeductionPlan plan = new SupplyMatcher(fileExtractor.getColorResolver()).withSupplies(suggested, chosen);
+        for (String key : unknown) {
+            plan.problems.add("No existe stock registrado para el insumo: " + key);
         }
+        return plan;
+    }
 
-        // 🚨 ORDENAR PESOS DE MAYOR A MENOR
-        // Para que el Color 1 (Principal) consuma la mayor cantidad
-        weights.sort(Comparator.reverseOrder());
-
-        if (weights.isEmpty()) {
-            reportMessages.add("⚠️ Advertencia: La pieza no tiene peso registrado (0g). No se descontará filamento.");
-            System.out.println("WARN: Peso 0g.");
+    /**
+     * HU3 automático: registra la producción con el plan de descuento armado por planPieceProduction.
+     * Cada línea descuenta sus gramos (totalGrams) de su propio insumo, todas en una sola transacción;
+     * no se vuelven a emparejar colores con pesos ordenados como en el registro manual.
+     * @throws RuntimeException Si el plan no es válido (insumo faltante o stock insuficiente).
+     */
+    public List<String> registerPieceProduction(String pieceCode, DeductionPlan plan) {
+        if (plan == null) {
+            throw new RuntimeException("Pieza no encontrada con código: " + pieceCode);
+        }
+        if (!plan.isValid()) {
+            throw new RuntimeException(String.join("\n", plan.problems));
+        }
+        Product piece = productRepository.findByCode(pieceCode);
+        if (piece == null) {
+            throw new RuntimeException("Pieza no encontrada con código: " + pieceCode);
         }
 
-        // 2. PRE-VALIDACIÓN DE STOCK
-        // Verificamos que TODOS los colores tengan suficiente material antes de tocar la BD.
-        if (!selectedColors.isEmpty() && !weights.isEmpty()) {
-            List<Supply> allSupplies = supplyRepository.listAll();
-
-            for (int i = 0; i < selectedColors.size(); i++) {
-                String colorKey = selectedColors.get(i);
-
-                // Asignar peso: El color i consume el peso i. Si hay más colores que pesos, consumen 0.
-                double weightForThisColorUnit = (i < weights.size()) ? weights.get(i) : 0.0;
-                double totalRequiredForBatch = weightForThisColorUnit * quantity;
-
-                if (totalRequiredForBatch > 0) {
-                    Supply supply = findSupplyByColorKey(allSupplies, colorKey);
+        // Dos herramientas pueden usar el mismo insumo: se suman en una sola deducción
+        Map<Long, Double> gramsBySupply = new LinkedHashMap<>();
+        Map<Long, Supply> supplyById = new LinkedHashMap<>();
+        for (DeductionPlan.Line line : plan.lines) {
+            if (line.supply == null || line.totalGrams <= 0) continue;
+            gramsBySupply.merge(line.supply.getId(), line.totalGrams, Double::sum);
+            supplyById.putIfAbsent(line.supply.getId(), line.supply);
+        }
 
-                    if (supply == null) {
-                        throw new RuntimeException("No existe stock registrado para el insumo: " + colorKey);
-                    }
+        List<String> reportMessages = new ArrayList<>();
+        Map<Long, Double> remaining = Map.of();
+        if (gramsBySupply.isEmpty()) {
+            reportMessages.add("⚠️ Advertencia: La pieza no tiene peso registrado (0g). No se descontará filamento.");
+        } else {
+            remaining = supplyRepository.deductStockBatch(gramsBySupply); // Todo o nada
+        }
 
-                    // Verificación estricta
-                    // Usamos un pequeño margen de error (epsilon) para evitar problemas de punto flotante
-                    if (supply.getCantidadDisponible() < (totalRequiredForBatch - 0.001)) {
-                        throw new RuntimeException("Stock insuficiente para " + colorKey +
-                                ".\nRequerido: " + String.format(Locale.US, "%.2f", totalRequiredForBatch) + "g" +
-                                "\nDisponible: " + String.format(Locale.US, "%.2f", supply.getCantidadDisponible()) + "g");
-                    }
-                }
+        for (int i = 0; i < plan.lines.size(); i++) {
+            DeductionPlan.Line line = plan.lines.get(i);
+            if (line.supply == null || line.totalGrams <= 0) {
+                reportMessages.add(String.format("• %s: No se detectó consumo asociado (0g).", line.getColorKey()));
+                continue;
             }
+            reportMessages.add(String.format("• %s (Prioridad %d): Descontado %.2fg. (Quedan %.2fg)",
+                    line.getColorKey(), i + 1, line.totalGrams, remaining.getOrDefault(line.supply.getId(), 0.0)));
         }
 
-        // 3. EJECUCIÓN: DESCUENTO DE STOCK
-        if (!selectedColors.isEmpty() && !weights.isEmpty()) {
-            // Recargamos la lista para encontrar la referencia por colorKey
-            List<Supply> allSupplies = supplyRepository.listAll();
-
-            for (int i = 0; i < selectedColors.size(); i++) {
-                String colorKey = selectedColors.get(i);
-                double weightForThisColorUnit = (i < weights.size()) ? weights.get(i) : 0.0;
-                double totalRequiredForBatch = weightForThisColorUnit * quantity;
-
-                if (totalRequiredForBatch > 0) {
-
-                    // Usamos findSupplyByColorKey solo para obtener el ID de referencia
-                    Supply supplyRef = findSupplyByColorKey(allSupplies, colorKey);
-                    if (supplyRef == null) continue;
-
-                    // OBTENER EL ESTADO FRESCO DEL INSUMO (CRÍTICO: antes de la deducción)
-                    Supply freshSupply = getSupplyById(supplyRef.getId()); // Carga el estado actual de la DB
-                    if (freshSupply == null) continue;
-
-                    // 1. Usar los valores FRESCOS
-                    double previousStock = freshSupply.getCantidadDisponible();
-                    double umbral = freshSupply.getUmbralAlerta();
-                    double newStock = previousStock - totalRequiredForBatch;
-                    if (newStock < 0) newStock = 0;
-
-                    // 2. Descontar (Llama a removeSupplyStock que modifica el DB)
-                    removeSupplyStock(freshSupply.getId(), totalRequiredForBatch);
-
-                    // --- INICIO DE LA VERIFICACIÓN DE UMBRAL (RF7) ROBUSTA ---
-
-                    final double EPSILON = 0.0001;
-
-                    // Check 1: El stock ANTERIOR debe haber estado por encima del umbral.
-                    // Usamos EPSILON para manejar la robustez de los puntos flotantes.
-                    boolean wasAboveUmbral = previousStock > umbral + EPSILON;
-
-                    // Check 2: El stock NUEVO debe estar en el umbral o por debajo.
-                    boolean isBelowOrAtUmbral = newStock < umbral + EPSILON;
-
-                    // LÍNEA DE DEBUG CRÍTICA: Muestra los valores y el resultado de la condición
-                    System.out.println("--- DEBUG UMBRAL CHECK ---");
-                    System.out.println("Insumo: " + colorKey + " | PrevStock: " + previousStock + " | Umbral: " + umbral + " | NewStock: " + newStock);
-                    System.out.println("Condición 1 (wasAbove): " + wasAboveUmbral + " | Condición 2 (isBelow): " + isBelowOrAtUmbral + " | ALERTA: " + (wasAboveUmbral && isBelowOrAtUmbral));
-                    System.out.println("--------------------------");
-
-                    if (wasAboveUmbral && isBelowOrAtUmbral) {
-                        reportMessages.add("🚨 ALERTA UMBRAL: " + colorKey +
-                                " ha caído por debajo del umbral de " + String.format(Locale.US, "%.2f", umbral) + "g. Stock actual: " + String.format(Locale.US, "%.2f", newStock) + "g.");
-                    }
-                    // --- FIN DE LA VERIFICACIÓN ---
-
-                    // Agregar al reporte
-                    reportMessages.add(String.format("• %s (Prioridad %d): Descontado %.2fg. (Quedan %.2fg)",
-                            colorKey, i + 1, totalRequiredForBatch, newStock));
-
-                    System.out.println(">> Descuento: " + colorKey + " -" + totalRequiredForBatch + "g");
-                } else {
-                    // Si el usuario seleccionó 3 colores pero el archivo solo usa 2, el 3ro es 0g
-                    reportMessages.add(String.format("• %s: No se detectó consumo asociado (0g).", colorKey));
-                }
+        // RF7: alerta si el insumo cruzó el umbral con este descuento
+        final double EPSILON = 0.0001;
+        for (Map.Entry<Long, Double> deduction : gramsBySupply.entrySet()) {
+            Supply supply = supplyById.get(deduction.getKey());
+            double newStock = remaining.getOrDefault(deduction.getKey(), 0.0);
+            double previousStock = newStock + deduction.getValue();
+            double umbral = supply.getUmbralAlerta();
+            if (previousStock > umbral + EPSILON && newStock < umbral + EPSILON) {
+                String colorKey = supply.getName() + " | " + supply.getColorFilamento() + " " + supply.getTipoFilamento();
+                reportMessages.add("🚨 ALERTA UMBRAL: " + colorKey +
+                        " ha caído por debajo del umbral de " + String.format(Locale.US, "%.2f", umbral) + "g. Stock actual: " + String.format(Locale.US, "%.2f", newStock) + "g.");
             }
         }
 
-        // 4. AUMENTAR STOCK DE PIEZA
-        // Usamos el nombre base (sin extensión) para que coincida con la vista de Inventario
-        String pieceName = piece.getName();
-        String pieceNameBase = pieceName.contains(".") ? pieceName.substring(0, pieceName.lastIndexOf('.')) : pieceName;
-        String combinationKey = String.join("|", selectedColors);
+        // Mismo orden de colores que el registro manual para la clave del stock de la pieza
+        String pieceNameBase = PrintFileType.baseName(piece.getName());
+        String combinationKey = String.join("|", plan.getColorKeys());
+        productRepository.increasePieceStockQuantity(pieceNameBase, combinationKey, plan.quantity);
 
-        productRepository.increasePieceStockQuantity(pieceNameBase, combinationKey, quantity);
+        System.out.println("✅ Stock aumentado para pieza: " + pieceNameBase + " | Color: " + combinationKey + " | Cant: " + plan.quantity);
+        return reportMessages;
+    }
 
-        System.out.println("✅ Stock aumentado para pieza: " + pieceNameBase + " | Color: " + combinationKey + " | Cant: " + quantity);
-        System.out.println("--- DEBUG: Fin Registro Producción ---");
+    // Rearma la paleta solo si cambiaron los colores de los insumos (la grilla de búsqueda cuesta construirla)
+    private synchronized void refreshColorPalette() {
+        try {
+            List<Supply> supplies = supplyRepository.listAll();
+            if (supplies == null) return;
+            String key = supplies.stream()
+                    .map(Supply::getColorFilamento)
+                    .filter(Objects::nonNull)
+                    .map(String::trim)
+                    .distinct()
+                    .sorted()
+                    .collect(Collectors.joining("|"));
+            if (key.equals(paletteKey)) return;
+            fileExtractor.setColorResolver(ColorResolver.withSupplies(supplies));
+            paletteKey = key;
+        } catch (RuntimeException e) {
+            System.err.println("⚠️ No se pudo armar la paleta con los insumos: " + e.getMessage());
+        }
+    }
 
-        return reportMessages;
+    /**
+     * HU3: Registra la producción con los insumos elegidos en el diálogo (Color 1, Color 2...).
+     * Se arma el mismo plan que planPieceProduction(pieceCode, quantity, selectedColors) y se descuenta en una sola transacción.
+     * @param selectedColors Claves "Nombre | COLOR TIPO" por posición (null o vacío = insumo sugerido).
+     * @return Lista de mensajes detallados sobre el descuento realizado.
+     * @throws RuntimeException Si la pieza no existe o el plan no es válido (insumo faltante o stock insuficiente).
+     */
+    public List<String> registerPieceProduction(String pieceCode, List<String> selectedColors, int quantity) {
+        return registerPieceProduction(pieceCode, planPieceProduction(pieceCode, quantity, selectedColors));
     }
     public void registerProductAssembly(String masterCode, List<PieceStockDeduction> componentsUsed, int quantityProduced) throws IOException {
         if (componentsUsed == null || componentsUsed.isEmpty()) {
@@ -0,0 +1,196 @@
+package com.calmasalud.hubi.core.service;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vigila el repositorio de archivos (WatchService sobre cada carpeta visible) y aplica los cambios hechos
+ * fuera de la aplicación con CatalogService.syncExternalChanges, que actualiza el índice del catálogo y la BD.
+ * Los eventos se agrupan: se procesan recién cuando pasan DEBOUNCE_MS sin eventos nuevos (una copia grande
+ * desde el explorador genera muchos avisos de modificación). Después de cada lote se avisa a las vistas
+ * con CatalogIndex.fireChanged. El hilo del watcher solo junta eventos: los lotes se aplican en un segundo
+ * hilo daemon (la extracción de parámetros de un archivo nuevo puede tardar) y los que llegan mientras tanto
+ * se unen en un único lote pendiente.
+ */
+public class CatalogWatcher implements AutoCloseable {
+
+    private static final long DEBOUNCE_MS = 750;
+
+    private final Path root;
+    private final CatalogService catalogService;
+    private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+    private WatchService watchService;
+    private ExecutorService syncExecutor;
+    private volatile boolean running;
+
+    // Rutas que esperan al hilo de sincronización (se unen los lotes mientras se procesa uno)
+    private final Set<Path> queued = new LinkedHashSet<>();
+    private boolean drainScheduled;
+
+    public CatalogWatcher(Path root, CatalogService catalogService) {
+        this.root = root.toAbsolutePath().normalize();
+        this.catalogService = catalogService;
+    }
+
+    /**
+     * Registra el árbol del repositorio y arranca el hilo del watcher.
+     */
+    public synchronized void start() throws IOException {
+        if (running) return;
+        Files.createDirectories(root);
+        watchService = root.getFileSystem().newWatchService();
+        registerTree(root);
+        syncExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "catalogo-sincronizacion");
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        Thread thread = new Thread(this::run, "catalogo-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("LOG: Vigilando el repositorio (" + watchedDirs.size() + " carpetas).");
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (watchService != null) {
+            try {
+                watchService.close(); // Despierta al hilo con ClosedWatchServiceException
+            } catch (IOException e) {
+                System.err.println("⚠️ Error al cerrar el watcher del catálogo: " + e.getMessage());
+            }
+        }
+        if (syncExecutor != null) {
+            syncExecutor.shutdown(); // El lote en curso termina; no se arrancan otros
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                Set<Path> pending = new LinkedHashSet<>();
+                boolean overflow = collect(watchService.take(), pending);
+                // Debounce: seguir juntando mientras lleguen eventos
+                WatchKey key;
+                while ((key = watchService.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS)) != null) {
+                    overflow |= collect(key, pending);
+                }
+                if (overflow) {
+                    // Se perdieron eventos: se revisa el repositorio completo (solo cambia lo que difiere del índice)
+                    pending.clear();
+                    pending.add(root);
+                    try {
+                        registerTree(root);
+                    } catch (IOException e) {
+                        System.err.println("⚠️ No se pudo volver a registrar el repositorio: " + e.getMessage());
+                    }
+                }
+                enqueue(pending);
+            }
+        } catch (ClosedWatchServiceException e) {
+            // close()
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Junta las rutas de los eventos de una clave; registra en el momento las carpetas nuevas
+    private boolean collect(WatchKey key, Set<Path> pending) {
+        Path dir = watchedDirs.get(key);
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            if (dir == null) continue;
+            Path child = dir.resolve((Path) event.context());
+            if (child.getFileName().toString().startsWith(".")) continue;
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child)) {
+                try {
+                    registerTree(child); // Antes de que se llene, para no perder sus eventos
+                } catch (IOException e) {
+                    System.err.println("⚠️ No se pudo vigilar la carpeta " + child.getFileName() + ": " + e.getMessage());
+                }
+            }
+            pending.add(child);
+        }
+        if (!key.reset()) {
+            watchedDirs.remove(key); // La carpeta ya no existe; su evento DELETE llega por el padre
+        }
+        return overflow;
+    }
+
+    // Pasa el lote al hilo de sincronización; si ya hay uno esperando, se suma a ese
+    private void enqueue(Set<Path> pending) {
+        if (pending.isEmpty()) return;
+        synchronized (queued) {
+            queued.addAll(pending);
+            if (drainScheduled) return;
+            drainScheduled = true;
+        }
+        try {
+            syncExecutor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // close()
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Set<Path> batch;
+            synchronized (queued) {
+                if (queued.isEmpty() || !running) {
+                    drainScheduled = false;
+                    return;
+                }
+                batch = new LinkedHashSet<>(queued);
+                queued.clear();
+            }
+            try {
+                process(batch);
+            } catch (RuntimeException e) {
+                System.err.println("⚠️ Error al sincronizar cambios externos: " + e.getMessage());
+            }
+        }
+    }
+
+    private void process(Set<Path> pending) {
+        CatalogIndex.Change change = catalogService.syncExternalChanges(pending);
+        if (change != null) {
+            System.out.println("LOG: Catálogo sincronizado (" + change.folders.size() + " carpetas con cambios externos).");
+            catalogService.getCatalogIndex().fireChanged(change);
+        }
+    }
+
+    private void registerTree(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return;
+        if (!watchedDirs.containsValue(dir)) {
+            WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watchedDirs.put(key, dir);
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, Files::isDirectory)) {
+            for (Path child : stream) {
+                if (!child.getFileName().toString().startsWith(".")) registerTree(child);
+            }
+        }
+    }
+}
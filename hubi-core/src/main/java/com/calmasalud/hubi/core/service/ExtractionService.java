@@ -0,0 +1,229 @@
+package com.calmasalud.hubi.core.service;
+
+import com.calmasalud.hubi.core.model.PrintFileType;
+import com.calmasalud.hubi.core.model.PrintInfo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Extracción de parámetros en lote: cada grupo de archivos (un .gcode con su .3mf compañero, por nombre base)
+ * se parsea en su propio hilo virtual, con un Semaphore que limita cuántos se parsean a la vez
+ * (el parseo es de I/O + CPU y cada uno retiene sus buffers).
+ * Los resultados se entregan a medida que terminan; la cancelación es cooperativa (interrupción de los
+ * hilos en curso, que los parsers revisan periódicamente).
+ * El listener se invoca desde los hilos de trabajo: en la UI hay que pasar por Platform.runLater.
+ */
+public class ExtractionService implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_CONCURRENCY = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    public enum Status { COMPLETED, FAILED, CANCELLED }
+
+    /**
+     * Resultado de un grupo de archivos.
+     */
+    public static final class Result {
+        public final String key;
+        public final List<File> files;
+        public final Status status;
+        public final PrintInfo info;      // null si falló o se canceló
+        public final Exception error;     // null si terminó bien
+        public final long elapsedMillis;
+
+        private Result(String key, List<File> files, Status status, PrintInfo info, Exception error, long elapsedMillis) {
+            this.key = key;
+            this.files = files;
+            this.status = status;
+            this.info = info;
+            this.error = error;
+            this.elapsedMillis = elapsedMillis;
+        }
+    }
+
+    /**
+     * Avance por grupo terminado (completed de total).
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void onProgress(Result result, int completed, int total);
+    }
+
+    /**
+     * Lote en curso: entrega los resultados en orden de finalización y permite cancelarlo.
+     */
+    public static final class Job {
+        private final int total;
+        private final AtomicInteger completed = new AtomicInteger();
+        private final AtomicInteger taken = new AtomicInteger();
+        private final LinkedBlockingQueue<Result> results = new LinkedBlockingQueue<>();
+        private final Set<Thread> running = ConcurrentHashMap.newKeySet();
+        private volatile boolean cancelled = false;
+
+        private Job(int total) {
+            this.total = total;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getCompleted() {
+            return completed.get();
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isDone() {
+            return completed.get() == total;
+        }
+
+        /**
+         * Cancela el lote: los grupos pendientes no se parsean y los que están en curso se interrumpen.
+         */
+        public void cancel() {
+            cancelled = true;
+            for (Thread thread : running) {
+                thread.interrupt();
+            }
+        }
+
+        /**
+         * Espera el siguiente resultado terminado.
+         * @return El resultado, o null si ya se entregaron todos.
+         */
+        public Result next() throws InterruptedException {
+            if (taken.getAndIncrement() >= total) {
+                taken.decrementAndGet();
+                return null;
+            }
+            return results.take();
+        }
+
+        /**
+         * Espera a que termine el lote y devuelve los resultados aún no entregados por next().
+         */
+        public List<Result> awaitAll() throws InterruptedException {
+            List<Result> all = new ArrayList<>();
+            Result result;
+            while ((result = next()) != null) {
+                all.add(result);
+            }
+            return all;
+        }
+    }
+
+    private final FileParameterExtractor extractor;
+    private final Semaphore permits;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public ExtractionService() {
+        this(new FileParameterExtractor(), DEFAULT_MAX_CONCURRENCY);
+    }
+
+    public ExtractionService(FileParameterExtractor extractor, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("La concurrencia máxima debe ser al menos 1.");
+        }
+        this.extractor = extractor;
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    /**
+     * Agrupa los archivos soportados por carpeta + nombre base (Ej: "pieza.gcode" y "pieza.3mf"), en el orden recibido.
+     */
+    public static Map<String, List<File>> groupCompanions(List<File> files) {
+        Map<String, List<File>> groups = new LinkedHashMap<>();
+        for (File file : files) {
+            if (!PrintFileType.isSupported(file.getName())) continue;
+            String parent = file.getAbsoluteFile().getParent();
+            String key = (parent == null ? "" : parent + File.separator) + PrintFileType.baseName(file.getName());
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(file);
+        }
+        return groups;
+    }
+
+    /**
+     * Extrae los parámetros de los archivos agrupando los compañeros por nombre base.
+     */
+    public Job submit(List<File> files, Listener listener) {
+        return submitGroups(groupCompanions(files), listener);
+    }
+
+    /**
+     * Extrae los parámetros de cada grupo ya armado (clave -> archivos que se analizan juntos).
+     */
+    public Job submitGroups(Map<String, List<File>> groups, Listener listener) {
+        Job job = new Job(groups.size());
+        System.out.println("LOG: Extracción en lote de " + groups.size() + " grupos (máx. " + permits.availablePermits() + " en paralelo)");
+        for (Map.Entry<String, List<File>> group : groups.entrySet()) {
+            String key = group.getKey();
+            List<File> files = Collections.unmodifiableList(new ArrayList<>(group.getValue()));
+            executor.execute(() -> run(job, key, files, listener));
+        }
+        return job;
+    }
+
+    private void run(Job job, String key, List<File> files, Listener listener) {
+        long start = System.nanoTime();
+        Result result;
+        job.running.add(Thread.currentThread());
+        try {
+            if (job.cancelled) {
+                result = new Result(key, files, Status.CANCELLED, null, null, 0);
+            } else {
+                permits.acquire();
+                try {
+                    PrintInfo info = job.cancelled ? null : extractor.extract(files);
+                    // El extractor registra y sigue ante errores de lectura: si hubo interrupción, el resultado es parcial
+                    boolean interrupted = Thread.currentThread().isInterrupted() || job.cancelled;
+                    result = interrupted
+                            ? new Result(key, files, Status.CANCELLED, null, null, elapsed(start))
+                            : new Result(key, files, Status.COMPLETED, info, null, elapsed(start));
+                } finally {
+                    permits.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            result = new Result(key, files, Status.CANCELLED, null, e, elapsed(start));
+        } catch (Exception e) {
+            System.err.println("⚠️ Error al extraer '" + key + "': " + e.getMessage());
+            result = new Result(key, files, Status.FAILED, null, e, elapsed(start));
+        } finally {
+            job.running.remove(Thread.currentThread());
+            Thread.interrupted(); // El hilo virtual no se reutiliza, pero no dejamos la marca colgando
+        }
+
+        int completed = job.completed.incrementAndGet();
+        job.results.add(result);
+        if (listener != null) {
+            try {
+                listener.onProgress(result, completed, job.total);
+            } catch (RuntimeException e) {
+                System.err.println("⚠️ Error en el listener de extracción: " + e.getMessage());
+            }
+        }
+    }
+
+    private static long elapsed(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,31 @@
+package com.calmasalud.hubi.core.service;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Clave de las cachés en disco derivadas de un archivo (miniaturas, índice de capas...).
+ * Combina ruta absoluta, tamaño y fecha de modificación: si el archivo se reemplaza, la clave cambia
+ * y la entrada vieja simplemente deja de usarse.
+ */
+public final class FileCacheKey {
+
+    private FileCacheKey() {
+    }
+
+    /**
+     * @return 32 caracteres hexadecimales (primeros 16 bytes del SHA-256 de la identidad del archivo).
+     */
+    public static String of(File source) {
+        String identity = source.getAbsolutePath() + "|" + source.length() + "|" + source.lastModified();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(identity.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible en esta JVM", e);
+        }
+    }
+}
@@ -1,14 +1,32 @@
 package com.calmasalud.hubi.core.service;
 
+import com.calmasalud.hubi.core.model.DeletedRows;
+import com.calmasalud.hubi.core.service.storage.BlobStore;
+import com.calmasalud.hubi.core.service.storage.GCodeCompactor;
+import com.calmasalud.hubi.core.service.storage.RetentionPolicy;
+import com.calmasalud.hubi.core.service.storage.StoragePolicy;
+
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.*;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Gestiona la papelera de reciclaje de la aplicación HUBI.
  * Los archivos eliminados del catálogo se mueven a esta papelera en lugar de borrarse permanentemente.
+ * Las piezas son enlaces al almacén por contenido (BlobStore): al moverlas se actualizan sus referencias
+ * y al purgarlas el contenido solo se borra del disco si ningún otro producto lo usa.
+ * Cada entrada queda registrada en el manifiesto de la papelera (RecycleBinManifest) con su ruta original
+ * y las filas de BD que se borraron con ella, para restaurarla (CatalogService.restoreFromRecycleBin) o
+ * purgarla según la política de retención (enforceRetention).
  */
 public class RecycleBinManager {
 
@@ -18,7 +36,13 @@ public class RecycleBinManager {
     private static final Path RECYCLE_BIN_PATH =
             Paths.get(System.getProperty("user.home"), "SistemaHUBI", "PapeleraReciclaje");
 
-    private static final SimpleDateFormat TIMESTAMP_FORMAT = new SimpleDateFormat("yyyyMMdd_HHmmss");
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+
+    private static volatile StoragePolicy storagePolicy = StoragePolicy.DISABLED;
+
+    private static volatile RetentionPolicy retentionPolicy = RetentionPolicy.DISABLED;
+
+    private static RecycleBinManifest manifest; // Se carga la primera vez que se usa
 
     /**
      * Asegura que el directorio de la papelera existe.
@@ -40,88 +64,390 @@ public class RecycleBinManager {
 
     /**
      * Mueve un archivo individual a la papelera de reciclaje.
-     * El archivo se renombra con un timestamp para evitar colisiones.
+     * El archivo se renombra con un timestamp (y un número si hace falta) para evitar colisiones.
      *
      * @param fileToDelete El archivo a mover a la papelera
      * @return true si se movió exitosamente, false en caso contrario
      */
     public static boolean moveToRecycleBin(File fileToDelete) {
+        return recycleFile(fileToDelete) != null;
+    }
+
+    /**
+     * Igual que moveToRecycleBin, pero devuelve dónde quedó el archivo (para registrar sus filas con
+     * recordDeletion o deshacer el movimiento con restoreEntry).
+     * @return Ruta de la entrada en la papelera, o null si no se pudo mover.
+     */
+    public static Path recycleFile(File fileToDelete) {
         if (fileToDelete == null || !fileToDelete.exists()) {
             System.err.println("⚠️ Archivo no válido para mover a papelera: " + fileToDelete);
-            return false;
+            return null;
         }
 
         if (!ensureRecycleBinExists()) {
             System.err.println("❌ No se pudo crear la papelera de reciclaje");
-            return false;
+            return null;
         }
 
         try {
-            String timestamp = TIMESTAMP_FORMAT.format(new Date());
             String originalName = fileToDelete.getName();
-            String newName = timestamp + "_" + originalName;
-
             Path sourcePath = fileToDelete.toPath();
-            Path targetPath = RECYCLE_BIN_PATH.resolve(newName);
 
             // Mover el archivo a la papelera
-            Files.move(sourcePath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+            Path targetPath = moveWithUniqueName(sourcePath);
+            String newName = targetPath.getFileName().toString();
+            updateBlobReferences(sourcePath, targetPath);
+            registerEntry(targetPath, sourcePath, null, DeletedRows.EMPTY);
 
             System.out.println("♻️ Archivo movido a papelera: " + originalName + " → " + newName);
-            return true;
+            return targetPath;
 
         } catch (IOException e) {
             System.err.println("❌ Error al mover archivo a papelera: " + e.getMessage());
             e.printStackTrace();
-            return false;
+            return null;
         }
     }
 
     /**
      * Mueve un directorio completo (producto) a la papelera de reciclaje.
-     * El directorio se renombra con un timestamp para evitar colisiones.
+     * El directorio se renombra con un timestamp (y un número si hace falta) para evitar colisiones.
      *
      * @param directoryToDelete El directorio a mover a la papelera
      * @return true si se movió exitosamente, false en caso contrario
      */
     public static boolean moveDirectoryToRecycleBin(File directoryToDelete) {
+        return recycleDirectory(directoryToDelete) != null;
+    }
+
+    /**
+     * Igual que moveDirectoryToRecycleBin, pero devuelve dónde quedó el directorio (para poder deshacerlo con
+     * restoreEntry si el resto de la operación falla).
+     * @return Ruta de la entrada en la papelera, o null si no se pudo mover.
+     */
+    public static Path recycleDirectory(File directoryToDelete) {
         if (directoryToDelete == null || !directoryToDelete.exists() || !directoryToDelete.isDirectory()) {
             System.err.println("⚠️ Directorio no válido para mover a papelera: " + directoryToDelete);
-            return false;
+            return null;
         }
 
         // No permitir mover el repositorio base
         if (directoryToDelete.toPath().equals(REPOSITORIO_BASE)) {
             System.err.println("⚠️ No se puede mover el repositorio base a la papelera");
-            return false;
+            return null;
         }
 
         if (!ensureRecycleBinExists()) {
             System.err.println("❌ No se pudo crear la papelera de reciclaje");
-            return false;
+            return null;
         }
 
         try {
-            String timestamp = TIMESTAMP_FORMAT.format(new Date());
             String originalDirName = directoryToDelete.getName();
-            String newDirName = timestamp + "_" + originalDirName;
-
             Path sourcePath = directoryToDelete.toPath();
-            Path targetPath = RECYCLE_BIN_PATH.resolve(newDirName);
 
             // Mover el directorio completo a la papelera
-            Files.move(sourcePath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+            Path targetPath = moveWithUniqueName(sourcePath);
+            String newDirName = targetPath.getFileName().toString();
+            updateBlobReferences(sourcePath, targetPath);
+            registerEntry(targetPath, sourcePath, null, DeletedRows.EMPTY);
 
             System.out.println("♻️ Directorio movido a papelera: " + originalDirName + " → " + newDirName);
-            return true;
+            return targetPath;
 
         } catch (IOException e) {
             System.err.println("❌ Error al mover directorio a papelera: " + e.getMessage());
             e.printStackTrace();
-            return false;
+            return null;
+        }
+    }
+
+    /**
+     * Mueve source a la papelera como yyyyMMdd_HHmmss_nombre; si ese nombre ya está tomado (dos borrados del
+     * mismo nombre en el mismo segundo) prueba yyyyMMdd_HHmmss-2_nombre, -3... Nunca pisa una entrada:
+     * el movimiento falla si el destino existe, y se reintenta con el siguiente número.
+     */
+    private static Path moveWithUniqueName(Path source) throws IOException {
+        String timestamp = LocalDateTime.now().format(TIMESTAMP_FORMAT);
+        String originalName = source.getFileName().toString();
+        RecycleBinManifest m = manifest();
+        for (int attempt = 1; ; attempt++) {
+            String name = (attempt == 1 ? timestamp : timestamp + "-" + attempt) + "_" + originalName;
+            if (m != null && m.get(name) != null) continue; // Registrada aunque ya no esté en disco
+            Path target = RECYCLE_BIN_PATH.resolve(name);
+            try {
+                return Files.move(source, target);
+            } catch (FileAlreadyExistsException e) {
+                // Otro borrado tomó este nombre: siguiente número
+            }
+        }
+    }
+
+    /**
+     * Devuelve una entrada de la papelera (archivo o carpeta) a su ubicación en el repositorio.
+     * @param entry Entrada dentro de la papelera.
+     * @param destination Ruta original; no debe existir.
+     */
+    public static void restoreEntry(Path entry, Path destination) throws IOException {
+        Path normalized = entry.toAbsolutePath().normalize();
+        if (!normalized.startsWith(RECYCLE_BIN_PATH.toAbsolutePath().normalize())) {
+            throw new IOException("Solo se pueden restaurar entradas de la papelera: " + entry);
+        }
+        if (Files.exists(destination)) {
+            throw new IOException("Ya existe " + destination.getFileName() + " en el repositorio.");
+        }
+        Files.createDirectories(destination.getParent());
+        Files.move(normalized, destination);
+        updateBlobReferences(normalized, destination);
+        unregisterEntry(normalized);
+        System.out.println("♻️ Entrada restaurada desde la papelera: " + normalized.getFileName() + " → " + destination.getFileName());
+    }
+
+    /**
+     * Completa el registro de una entrada recién movida con su código y las filas de BD que se borraron con ella.
+     * @param entry Ruta de la entrada en la papelera (la que devolvió recycleFile o recycleDirectory).
+     */
+    public static void recordDeletion(Path entry, Path originalPath, String code, DeletedRows rows) {
+        registerEntry(entry, originalPath, code, rows);
+    }
+
+    /**
+     * @return La entrada de la papelera con ese nombre (Ej: 20250101_120000_Soporte), o null.
+     */
+    public static RecycleBinManifest.Entry getEntry(String name) {
+        RecycleBinManifest m = manifest();
+        return m == null ? null : m.get(name);
+    }
+
+    /**
+     * @return La entrada más reciente que contiene ese código (maestro o de pieza), o null.
+     */
+    public static RecycleBinManifest.Entry findEntryByCode(String code) {
+        RecycleBinManifest m = manifest();
+        return m == null ? null : m.findByCode(code);
+    }
+
+    /**
+     * @return Las entradas de la papelera, de la más vieja a la más nueva.
+     */
+    public static List<RecycleBinManifest.Entry> listEntries() {
+        RecycleBinManifest m = manifest();
+        return m == null ? List.of() : m.list();
+    }
+
+    public static Path getEntryPath(RecycleBinManifest.Entry entry) {
+        return RECYCLE_BIN_PATH.resolve(entry.name);
+    }
+
+    // Manifiesto de la papelera; null (con aviso) si no se puede leer
+    private static synchronized RecycleBinManifest manifest() {
+        if (manifest == null && ensureRecycleBinExists()) {
+            try {
+                manifest = RecycleBinManifest.open(RECYCLE_BIN_PATH);
+            } catch (IOException e) {
+                System.err.println("⚠️ No se pudo leer el manifiesto de la papelera: " + e.getMessage());
+            }
+        }
+        return manifest;
+    }
+
+    // El movimiento ya se hizo: si falla el registro en el manifiesto solo se avisa (se recupera al reabrirlo)
+    private static void registerEntry(Path entry, Path originalPath, String code, DeletedRows rows) {
+        RecycleBinManifest m = manifest();
+        if (m == null) return;
+        try {
+            RecycleBinManifest.Entry previous = m.get(entry.getFileName().toString());
+            long size = previous != null ? previous.size : RecycleBinManifest.sizeOf(entry);
+            long deletedAt = previous != null ? previous.deletedAt : System.currentTimeMillis();
+            m.put(new RecycleBinManifest.Entry(entry.getFileName().toString(), originalPath, code, size, deletedAt, rows));
+        } catch (IOException e) {
+            System.err.println("⚠️ No se pudo registrar " + entry.getFileName() + " en el manifiesto de la papelera: " + e.getMessage());
         }
     }
 
+    private static void unregisterEntry(Path entry) {
+        if (!RECYCLE_BIN_PATH.equals(entry.getParent())) return; // Solo las entradas de primer nivel están registradas
+        RecycleBinManifest m = manifest();
+        if (m == null) return;
+        try {
+            m.remove(entry.getFileName().toString());
+        } catch (IOException e) {
+            System.err.println("⚠️ No se pudo actualizar el manifiesto de la papelera: " + e.getMessage());
+        }
+    }
+
+    // El movimiento ya se hizo: si falla el registro de referencias solo se avisa
+    private static void updateBlobReferences(Path sourcePath, Path targetPath) {
+        try {
+            BlobStore.getDefault().moved(sourcePath, targetPath);
+        } catch (IOException e) {
+            System.err.println("⚠️ No se pudieron actualizar las referencias de " + sourcePath.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Borra definitivamente una entrada de la papelera (archivo o carpeta de producto).
+     * El contenido de cada pieza se libera a través del BlobStore: los bytes solo se recuperan
+     * cuando se va la última referencia.
+     * @param entry Archivo o carpeta dentro de la papelera.
+     * @return Bytes liberados en disco.
+     */
+    public static long purge(Path entry) throws IOException {
+        Path normalized = entry.toAbsolutePath().normalize();
+        if (!normalized.startsWith(RECYCLE_BIN_PATH.toAbsolutePath().normalize()) || normalized.equals(RECYCLE_BIN_PATH.toAbsolutePath().normalize())) {
+            throw new IOException("Solo se pueden purgar entradas de la papelera: " + entry);
+        }
+        if (!Files.exists(normalized)) {
+            unregisterEntry(normalized); // Se borró por fuera de la aplicación
+            return 0;
+        }
+
+        BlobStore blobStore = BlobStore.getDefault();
+        long freed = 0;
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(normalized)) {
+            // Hijos antes que padres, para poder borrar las carpetas vacías al final
+            paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                Files.deleteIfExists(path);
+            } else {
+                freed += blobStore.release(path);
+            }
+        }
+        unregisterEntry(normalized);
+        System.out.println("🗑️ Entrada purgada de la papelera: " + normalized.getFileName() + " (" + freed + " bytes liberados)");
+        return freed;
+    }
+
+    /**
+     * Vacía la papelera completa.
+     * @return Bytes liberados en disco.
+     */
+    public static long emptyRecycleBin() throws IOException {
+        if (!recycleBinExists()) return 0;
+        List<Path> entries;
+        try (Stream<Path> list = Files.list(RECYCLE_BIN_PATH)) {
+            // Sin los archivos ocultos (el manifiesto)
+            entries = list.filter(p -> !p.getFileName().toString().startsWith(".")).collect(Collectors.toList());
+        }
+        long freed = 0;
+        for (Path entry : entries) {
+            freed += purge(entry);
+        }
+        return freed;
+    }
+
+    /**
+     * Política de retención de la papelera (antigüedad y tamaño máximos). Por defecto, desactivada.
+     */
+    public static void setRetentionPolicy(RetentionPolicy policy) {
+        retentionPolicy = policy == null ? RetentionPolicy.DISABLED : policy;
+    }
+
+    public static RetentionPolicy getRetentionPolicy() {
+        return retentionPolicy;
+    }
+
+    /**
+     * Purga las entradas que superan la antigüedad máxima y, si la papelera sigue pasada de tamaño,
+     * las más viejas hasta entrar en el límite. El orden sale del manifiesto; el tamaño se mide en disco
+     * (ver reclaimableBytes), no con el registrado al borrar, que no ve la compresión ni los blobs compartidos.
+     * @return Bytes liberados en disco.
+     */
+    public static long enforceRetention() {
+        RetentionPolicy policy = retentionPolicy;
+        RecycleBinManifest m = manifest();
+        if (!policy.isEnabled() || m == null) return 0;
+
+        long limite = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(policy.maxAgeDays);
+        long total = 0;
+        if (policy.maxTotalBytes > 0) {
+            try {
+                total = reclaimableBytes();
+            } catch (IOException e) {
+                System.err.println("⚠️ No se pudo medir la papelera; se aplica solo la antigüedad: " + e.getMessage());
+            }
+        }
+        long freed = 0;
+        int purgadas = 0;
+        for (RecycleBinManifest.Entry entry : m.list()) { // De la más vieja a la más nueva
+            boolean vencida = policy.maxAgeDays > 0 && entry.deletedAt < limite;
+            boolean excedida = policy.maxTotalBytes > 0 && total > policy.maxTotalBytes;
+            if (!vencida && !excedida) break;
+            try {
+                long liberados = purge(getEntryPath(entry));
+                freed += liberados;
+                total -= liberados;
+                purgadas++;
+            } catch (IOException e) {
+                System.err.println("⚠️ No se pudo purgar " + entry.name + " de la papelera: " + e.getMessage());
+            }
+        }
+        if (purgadas > 0) {
+            System.out.println("LOG: Retención de la papelera (" + policy + "): " + purgadas + " entradas purgadas, "
+                    + freed / 1024 + " KB liberados.");
+        }
+        return freed;
+    }
+
+    /**
+     * Bytes que liberaría vaciar la papelera, medidos en disco: los archivos que no están en el BlobStore y los
+     * blobs (ya comprimidos, si corresponde) cuyas referencias están todas en la papelera. Un blob que también
+     * usa una pieza del repositorio no cuenta, porque purgar no lo borra.
+     */
+    private static long reclaimableBytes() throws IOException {
+        if (!recycleBinExists()) return 0;
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(RECYCLE_BIN_PATH)) {
+            // Sin los archivos ocultos (el manifiesto y temporales de la compresión)
+            files = walk.filter(p -> !p.getFileName().toString().startsWith("."))
+                    .filter(Files::isRegularFile)
+                    .collect(Collectors.toList());
+        }
+        BlobStore blobStore = BlobStore.getDefault();
+        Map<String, Integer> referencesInBin = new HashMap<>();
+        long total = 0;
+        for (Path file : files) {
+            String hash = blobStore.hashOf(file);
+            if (hash == null) {
+                total += Files.size(file);
+            } else {
+                referencesInBin.merge(hash, 1, Integer::sum);
+            }
+        }
+        for (Map.Entry<String, Integer> blob : referencesInBin.entrySet()) {
+            Path blobPath = blobStore.blobPath(blob.getKey());
+            if (blob.getValue() >= blobStore.referenceCount(blob.getKey()) && Files.exists(blobPath)) {
+                total += Files.size(blobPath);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Política de almacenamiento de la papelera (compresión en disco de los G-code). Por defecto, desactivada.
+     */
+    public static void setStoragePolicy(StoragePolicy policy) {
+        storagePolicy = policy == null ? StoragePolicy.DISABLED : policy;
+    }
+
+    public static StoragePolicy getStoragePolicy() {
+        return storagePolicy;
+    }
+
+    /**
+     * Comprime en disco los G-code de la papelera si la política lo permite. Lo borrado no se vuelve a abrir
+     * (salvo para restaurarlo, y se sigue leyendo igual), así que no se esperan los días sin uso de la política.
+     * @return Resultado de la pasada.
+     */
+    public static GCodeCompactor.Result compactRecycleBin() {
+        StoragePolicy policy = storagePolicy;
+        StoragePolicy inmediata = new StoragePolicy(policy.compressGCode, 0, policy.minSizeBytes);
+        return new GCodeCompactor(BlobStore.getDefault()).compact(RECYCLE_BIN_PATH, inmediata, null);
+    }
+
     /**
      * Obtiene la ruta de la papelera de reciclaje.
      * @return Path de la papelera
@@ -0,0 +1,375 @@
+package com.calmasalud.hubi.core.service;
+
+import com.calmasalud.hubi.core.model.DeletedRows;
+import com.calmasalud.hubi.core.model.MasterProductView;
+import com.calmasalud.hubi.core.model.PieceStockColorView;
+import com.calmasalud.hubi.core.model.Product;
+import com.calmasalud.hubi.core.model.ProductComposition;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Manifiesto de la papelera (PapeleraReciclaje/.manifiesto): por cada entrada, de dónde salió, qué código
+ * tenía, cuánto ocupa, cuándo se borró y las filas de la BD que se borraron con ella (para restaurarla).
+ * Es un archivo de solo agregado, una línea por registro con campos separados por tabulador: primero las filas
+ * (M maestro, C composición, P pieza, S stock de pieza) y al final la línea E de la entrada, que confirma el
+ * registro (un registro cortado por un cierre inesperado no tiene su E y se descarta). X marca una entrada
+ * restaurada o purgada. Un registro posterior de la misma entrada reemplaza al anterior.
+ * Al abrirlo se carga en memoria, indexado por nombre de entrada y por código: buscar qué restaurar no
+ * recorre la papelera. Las entradas que no figuran (anteriores al manifiesto o copiadas a mano) se agregan
+ * al abrirlo, sin filas ni ruta original. Cuando los registros muertos superan a los vivos se reescribe.
+ */
+public class RecycleBinManifest {
+
+    /**
+     * Una entrada de la papelera (archivo o carpeta de producto).
+     */
+    public static final class Entry {
+        public final String name;          // Nombre en la papelera (Ej: 20250101_120000_Soporte)
+        public final Path originalPath;    // Dónde estaba en el repositorio, o null si no se sabe
+        public final String code;          // Código maestro o de pieza, o null
+        public final long size;            // Bytes de los archivos al borrarse (informativo: la retención mide el disco)
+        public final long deletedAt;
+        public final DeletedRows rows;
+
+        Entry(String name, Path originalPath, String code, long size, long deletedAt, DeletedRows rows) {
+            this.name = name;
+            this.originalPath = originalPath;
+            this.code = code;
+            this.size = size;
+            this.deletedAt = deletedAt;
+            this.rows = rows;
+        }
+    }
+
+    private static final String FILE_NAME = ".manifiesto";
+    private static final String NULL = "\\N";
+    private static final int MIN_LINES_TO_COMPACT = 200;
+
+    private final Path binPath;
+    private final Path file;
+    private final Map<String, Entry> byName = new LinkedHashMap<>();
+    private final Map<String, String> nameByCode = new HashMap<>();
+    private int lines; // Líneas del archivo (vivas y muertas), para decidir cuándo reescribirlo
+
+    private RecycleBinManifest(Path binPath) {
+        this.binPath = binPath;
+        this.file = binPath.resolve(FILE_NAME);
+    }
+
+    /**
+     * Carga el manifiesto de la papelera (creándolo si no existe) y lo pone al día con su contenido.
+     */
+    public static RecycleBinManifest open(Path binPath) throws IOException {
+        RecycleBinManifest manifest = new RecycleBinManifest(binPath);
+        manifest.load();
+        manifest.reconcile();
+        if (manifest.lines > MIN_LINES_TO_COMPACT && manifest.lines > 2 * manifest.liveLines()) {
+            manifest.rewrite();
+        }
+        return manifest;
+    }
+
+    public synchronized Entry get(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * @return La entrada borrada más recientemente con ese código (maestro, o de pieza aunque se haya borrado
+     *         con su producto), o null.
+     */
+    public synchronized Entry findByCode(String code) {
+        String name = nameByCode.get(code);
+        return name == null ? null : byName.get(name);
+    }
+
+    /**
+     * @return Todas las entradas, de la más vieja a la más nueva.
+     */
+    public synchronized List<Entry> list() {
+        List<Entry> entries = new ArrayList<>(byName.values());
+        entries.sort(Comparator.comparingLong(e -> e.deletedAt));
+        return entries;
+    }
+
+    /**
+     * Registra (o reemplaza) una entrada.
+     */
+    public synchronized void put(Entry entry) throws IOException {
+        append(recordLines(entry));
+        index(entry);
+    }
+
+    /**
+     * Quita una entrada (se restauró o se purgó).
+     */
+    public synchronized void remove(String name) throws IOException {
+        if (unindex(name) == null) return;
+        append(List.of(line("X", name)));
+    }
+
+    private void index(Entry entry) {
+        unindex(entry.name);
+        byName.put(entry.name, entry);
+        for (String code : codesOf(entry)) nameByCode.put(code, entry.name);
+    }
+
+    private Entry unindex(String name) {
+        Entry entry = byName.remove(name);
+        if (entry != null) {
+            for (String code : codesOf(entry)) nameByCode.remove(code, name);
+        }
+        return entry;
+    }
+
+    // Código de la entrada y de cada pieza que se borró con ella (una pieza de un producto se encuentra por su código)
+    private static List<String> codesOf(Entry entry) {
+        List<String> codes = new ArrayList<>();
+        if (entry.code != null) codes.add(entry.code);
+        for (Product piece : entry.rows.pieces) codes.add(piece.getCode());
+        return codes;
+    }
+
+    // Un registro por escritura, forzado a disco: o queda completo o le falta su E
+    private void append(List<String> record) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String l : record) sb.append(l).append('\n');
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(StandardCharsets.UTF_8.encode(sb.toString()));
+            channel.force(false);
+        }
+        lines += record.size();
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(file)) return;
+        Map<String, RowsBuilder> pending = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String raw;
+            while ((raw = reader.readLine()) != null) {
+                lines++;
+                try {
+                    String[] f = split(raw);
+                    String name = f[1];
+                    switch (f[0]) {
+                        case "M" -> pending.computeIfAbsent(name, n -> new RowsBuilder()).master = new MasterProductView(
+                                f[2], f[3], f[4], f[5], Integer.parseInt(f[6]), Double.parseDouble(f[7]));
+                        case "C" -> pending.computeIfAbsent(name, n -> new RowsBuilder()).composition.add(
+                                new ProductComposition(f[2], f[3], Integer.parseInt(f[4])));
+                        case "P" -> pending.computeIfAbsent(name, n -> new RowsBuilder()).pieces.add(
+                                new Product(f[2], f[3], f[4], Double.parseDouble(f[5]), f[6], Double.parseDouble(f[7])));
+                        case "S" -> pending.computeIfAbsent(name, n -> new RowsBuilder()).pieceStock.add(
+                                new PieceStockColorView(f[2], f[3], Integer.parseInt(f[4])));
+                        case "E" -> {
+                            RowsBuilder rows = pending.remove(name);
+                            index(new Entry(name, f[2] == null ? null : Paths.get(f[2]), f[3], Long.parseLong(f[4]),
+                                    Long.parseLong(f[5]), rows == null ? DeletedRows.EMPTY : rows.build()));
+                        }
+                        case "X" -> {
+                            pending.remove(name);
+                            unindex(name);
+                        }
+                        default -> throw new IOException("tipo de registro desconocido");
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // Línea cortada por un cierre inesperado: el registro no llegó a su E
+                    System.err.println("⚠️ Línea ilegible en el manifiesto de la papelera: " + e.getMessage());
+                }
+            }
+        }
+        // Si la última línea quedó cortada, el próximo registro empieza en una línea nueva
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            ByteBuffer last = ByteBuffer.allocate(1);
+            if (size > 0 && channel.read(last, size - 1) == 1 && last.get(0) != '\n') {
+                channel.write(ByteBuffer.wrap(new byte[]{'\n'}), size);
+            }
+        }
+    }
+
+    // Entradas en disco que no figuran (se agregan) y entradas registradas que ya no están (se quitan)
+    private void reconcile() throws IOException {
+        if (!Files.isDirectory(binPath)) return;
+        Map<String, Path> presentes = new HashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(binPath)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (!name.startsWith(".")) presentes.put(name, path);
+            }
+        }
+        for (String name : new ArrayList<>(byName.keySet())) {
+            if (!presentes.containsKey(name)) remove(name);
+        }
+        for (Map.Entry<String, Path> presente : presentes.entrySet()) {
+            if (byName.containsKey(presente.getKey())) continue;
+            Path path = presente.getValue();
+            put(new Entry(presente.getKey(), null, null, sizeOf(path), deletedAtOf(path), DeletedRows.EMPTY));
+        }
+    }
+
+    private int liveLines() {
+        int live = 0;
+        for (Entry entry : byName.values()) {
+            DeletedRows rows = entry.rows;
+            live += 1 + (rows.master != null ? 1 : 0) + rows.composition.size() + rows.pieces.size() + rows.pieceStock.size();
+        }
+        return live;
+    }
+
+    // Reescribe el manifiesto solo con las entradas vivas (temporal + renombre atómico)
+    private void rewrite() throws IOException {
+        Path tmp = binPath.resolve(FILE_NAME + ".tmp");
+        int written = 0;
+        try {
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (Entry entry : list()) {
+                    for (String l : recordLines(entry)) {
+                        writer.write(l);
+                        writer.write('\n');
+                        written++;
+                    }
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lines = written;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // Filas de la entrada y, al final, su línea E
+    private static List<String> recordLines(Entry entry) {
+        List<String> record = new ArrayList<>();
+        DeletedRows rows = entry.rows;
+        if (rows.master != null) {
+            MasterProductView m = rows.master;
+            record.add(line("M", entry.name, m.getMasterCode(), m.getProductPrefix(), m.getProductName(), m.getDescription(),
+                    Integer.toString(m.getQuantityAvailable()), Double.toString(m.getPrice())));
+        }
+        for (ProductComposition c : rows.composition) {
+            record.add(line("C", entry.name, c.getMasterCode(), c.getPieceNameBase(), Integer.toString(c.getRequiredQuantity())));
+        }
+        for (Product p : rows.pieces) {
+            record.add(line("P", entry.name, p.getCode(), p.getName(), p.getFileExtension(), Double.toString(p.getWeightGrams()),
+                    p.getUsageDetail(), Double.toString(p.getCost())));
+        }
+        for (PieceStockColorView st : rows.pieceStock) {
+            record.add(line("S", entry.name, st.getPieceNameBase(), st.getColorName(), Integer.toString(st.getQuantityAvailable())));
+        }
+        record.add(line("E", entry.name, entry.originalPath == null ? null : entry.originalPath.toString(), entry.code,
+                Long.toString(entry.size), Long.toString(entry.deletedAt)));
+        return record;
+    }
+
+    /**
+     * @return Bytes de un archivo o de todos los archivos de una carpeta.
+     */
+    static long sizeOf(Path path) throws IOException {
+        if (!Files.isDirectory(path)) return Files.size(path);
+        long[] total = {0};
+        Files.walkFileTree(path, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path f, BasicFileAttributes attrs) {
+                total[0] += attrs.size();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return total[0];
+    }
+
+    // Fecha del prefijo que pone RecycleBinManager (yyyyMMdd_HHmmss_nombre), o la de modificación
+    private static long deletedAtOf(Path path) throws IOException {
+        String name = path.getFileName().toString();
+        if (name.length() > 16 && name.charAt(15) == '_') {
+            try {
+                return new SimpleDateFormat("yyyyMMdd_HHmmss").parse(name.substring(0, 15)).getTime();
+            } catch (ParseException e) {
+                // Sin prefijo de fecha
+            }
+        }
+        return Files.getLastModifiedTime(path).toMillis();
+    }
+
+    private static String line(String type, String... fields) {
+        StringBuilder sb = new StringBuilder(type);
+        for (String field : fields) sb.append('\t').append(escape(field));
+        return sb.toString();
+    }
+
+    private static String[] split(String line) {
+        String[] parts = line.split("\t", -1);
+        String[] fields = new String[Math.max(parts.length, 2)];
+        fields[0] = parts[0];
+        for (int i = 1; i < parts.length; i++) fields[i] = unescape(parts[i]);
+        return fields;
+    }
+
+    private static String escape(String value) {
+        if (value == null) return NULL;
+        StringBuilder sb = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '\\' -> sb.append("\\\\");
+                case '\t' -> sb.append("\\t");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                default -> sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String unescape(String value) {
+        if (value.equals(NULL)) return null;
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\' || i + 1 == value.length()) {
+                sb.append(c);
+                continue;
+            }
+            char next = value.charAt(++i);
+            sb.append(switch (next) {
+                case 't' -> '\t';
+                case 'n' -> '\n';
+                case 'r' -> '\r';
+                default -> next;
+            });
+        }
+        return sb.toString();
+    }
+
+    // Filas de un registro mientras se lee, hasta su línea E
+    private static final class RowsBuilder {
+        MasterProductView master;
+        final List<ProductComposition> composition = new ArrayList<>();
+        final List<Product> pieces = new ArrayList<>();
+        final List<PieceStockColorView> pieceStock = new ArrayList<>();
+
+        DeletedRows build() {
+            return new DeletedRows(master, composition, pieces, pieceStock);
+        }
+    }
+}
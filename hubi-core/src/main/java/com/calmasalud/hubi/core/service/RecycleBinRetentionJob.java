@@ -0,0 +1,54 @@
+package com.calmasalud.hubi.core.service;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tarea en segundo plano que aplica la política de retención de la papelera (RecycleBinManager.enforceRetention).
+ * La primera pasada arranca poco después de iniciar y se repite cada INTERVAL_HOURS; cada pasada consulta
+ * el manifiesto y, si hay límite de tamaño, recorre la papelera una vez para medirla.
+ */
+public class RecycleBinRetentionJob implements AutoCloseable {
+
+    private static final long INITIAL_DELAY_MINUTES = 2;
+    private static final long INTERVAL_HOURS = 6;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Programa las pasadas. Sin límites en la política no hace nada.
+     */
+    public synchronized void start() {
+        if (scheduler != null) return;
+        if (!RecycleBinManager.getRetentionPolicy().isEnabled()) {
+            System.out.println("LOG: Retención de la papelera desactivada.");
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "retencion-papelera");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runOnce, INITIAL_DELAY_MINUTES * 60, INTERVAL_HOURS * 3600, TimeUnit.SECONDS);
+        System.out.println("LOG: Retención de la papelera programada: " + RecycleBinManager.getRetentionPolicy() + ".");
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private void runOnce() {
+        try {
+            RecycleBinManager.enforceRetention();
+        } catch (RuntimeException e) {
+            // Una excepción cancelaría las pasadas siguientes
+            System.err.println("⚠️ Error en la retención de la papelera: " + e.getMessage());
+        }
+    }
+}
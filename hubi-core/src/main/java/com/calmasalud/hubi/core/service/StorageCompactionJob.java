@@ -0,0 +1,59 @@
+package com.calmasalud.hubi.core.service;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tarea en segundo plano que aplica la política de almacenamiento (CatalogService.compactStorage).
+ * La primera pasada arranca unos minutos después de iniciar, para no competir con la carga de la aplicación,
+ * y después se repite cada INTERVAL_HOURS. Corre en un hilo daemon propio de prioridad baja.
+ */
+public class StorageCompactionJob implements AutoCloseable {
+
+    private static final long INITIAL_DELAY_MINUTES = 5;
+    private static final long INTERVAL_HOURS = 12;
+
+    private final CatalogService catalogService;
+    private ScheduledExecutorService scheduler;
+
+    public StorageCompactionJob(CatalogService catalogService) {
+        this.catalogService = catalogService;
+    }
+
+    /**
+     * Programa las pasadas. Con la política desactivada no hace nada.
+     */
+    public synchronized void start() {
+        if (scheduler != null) return;
+        if (!catalogService.getStoragePolicy().compressGCode) {
+            System.out.println("LOG: Compresión del repositorio desactivada.");
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "compactador-repositorio");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runOnce, INITIAL_DELAY_MINUTES * 60, INTERVAL_HOURS * 3600, TimeUnit.SECONDS);
+        System.out.println("LOG: Compresión del repositorio programada: " + catalogService.getStoragePolicy() + ".");
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow(); // Un archivo a medio comprimir se descarta (queda el original)
+            scheduler = null;
+        }
+    }
+
+    private void runOnce() {
+        try {
+            catalogService.compactStorage();
+        } catch (RuntimeException e) {
+            // Una excepción cancelaría las pasadas siguientes
+            System.err.println("⚠️ Error en la compresión del repositorio: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.calmasalud.hubi.core.service;
+
+import com.calmasalud.hubi.core.model.DeductionPlan;
+import com.calmasalud.hubi.core.model.FilamentMaterial;
+import com.calmasalud.hubi.core.model.FilamentProfile;
+import com.calmasalud.hubi.core.model.Supply;
+import com.calmasalud.hubi.core.service.color.ColorResolver;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Asigna a cada herramienta de un archivo (material, color, gramos) el insumo más adecuado:
+ * mismo material, color más cercano (CIEDE2000) y stock suficiente para todo el lote.
+ * Los insumos se recorren una sola vez para armar los candidatos y el stock se va reservando a medida
+ * que se asigna, así dos herramientas que caen en el mismo carrete se validan juntas.
+ */
+public class SupplyMatcher {
+
+    /** Distancia de color máxima aceptada (CIEDE2000; ~10 ya es otro color a simple vista). */
+    public static final double DEFAULT_MAX_COLOR_DISTANCE = 20.0;
+
+    // Penalización por material desconocido en el archivo o en el insumo (se prefiere el material exacto)
+    private static final double UNKNOWN_MATERIAL_PENALTY = 5.0;
+    private static final double EPSILON = 0.001;
+
+    private final ColorResolver colorResolver;
+    private final double maxColorDistance;
+
+    public SupplyMatcher(ColorResolver colorResolver) {
+        this(colorResolver, DEFAULT_MAX_COLOR_DISTANCE);
+    }
+
+    public SupplyMatcher(ColorResolver colorResolver, double maxColorDistance) {
+        this.colorResolver = colorResolver;
+        this.maxColorDistance = maxColorDistance;
+    }
+
+    // Datos del insumo precalculados en la única pasada sobre la lista
+    private static final class Candidate {
+        final Supply supply;
+        final FilamentMaterial material;
+        final int rgb;
+        double remaining;
+
+        Candidate(Supply supply, FilamentMaterial material, int rgb) {
+            this.supply = supply;
+            this.material = material;
+            this.rgb = rgb;
+            this.remaining = supply.getCantidadDisponible();
+        }
+    }
+
+    /**
+     * Arma el plan de descuento para producir quantity unidades.
+     * @param usages Consumo por herramienta (gramos por unidad).
+     * @param supplies Insumos registrados (se ignoran los que no tienen stock).
+     */
+    public DeductionPlan plan(List<FilamentProfile> usages, List<Supply> supplies, int quantity) {
+        DeductionPlan plan = new DeductionPlan(quantity);
+
+        List<Candidate> candidates = new ArrayList<>();
+        if (supplies != null) {
+            for (Supply supply : supplies) {
+                if (supply.getCantidadDisponible() <= 0) continue;
+                candidates.add(new Candidate(supply, FilamentMaterial.fromLabel(supply.getTipoFilamento()), supplyColor(supply)));
+            }
+        }
+
+        // El consumo más grande elige primero (es el "Color 1" del registro manual)
+        List<FilamentProfile> ordered = new ArrayList<>(usages);
+        ordered.removeIf(u -> !u.hasAmountGrams() || u.amountGrams <= 0);
+        ordered.sort(Comparator.comparingDouble((FilamentProfile u) -> u.amountGrams).reversed());
+
+        for (FilamentProfile usage : ordered) {
+            double required = usage.amountGrams * quantity;
+            Candidate best = null;
+            double bestScore = Double.MAX_VALUE;
+            double bestDistance = Double.NaN;
+            Candidate shortOfStock = null;
+
+            for (Candidate candidate : candidates) {
+                if (!compatible(usage.material, candidate.material)) continue;
+                double distance = colorDistance(usage, candidate.rgb);
+                if (!Double.isNaN(distance) && distance > maxColorDistance) continue;
+                if (candidate.remaining < required - EPSILON) {
+                    if (shortOfStock == null || candidate.remaining > shortOfStock.remaining) shortOfStock = candidate;
+                    continue;
+                }
+                double score = (Double.isNaN(distance) ? maxColorDistance : distance)
+                        + (usage.material == candidate.material ? 0 : UNKNOWN_MATERIAL_PENALTY);
+                // A igual puntaje, el carrete con más stock
+                if (score < bestScore || (score == bestScore && candidate.remaining > best.remaining)) {
+                    best = candidate;
+                    bestScore = score;
+                    bestDistance = distance;
+                }
+            }
+
+            if (best != null) {
+                best.remaining -= required;
+                plan.lines.add(new DeductionPlan.Line(usage, best.supply, usage.amountGrams, required, bestDistance));
+            } else {
+                plan.lines.add(new DeductionPlan.Line(usage, null, usage.amountGrams, required, Double.NaN));
+                plan.problems.add(shortOfStock != null
+                        ? String.format(Locale.US, "Stock insuficiente para %s (T%d): requerido %.2fg, disponible %.2fg.",
+                                shortOfStock.supply.getName(), usage.getToolIndex(), required, shortOfStock.remaining)
+                        : String.format(Locale.US, "No hay insumo compatible para T%d (%s).", usage.getToolIndex(), describe(usage)));
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Rearma un plan con los insumos elegidos a mano (Ej: los ComboBox del diálogo de producción).
+     * La línea i pasa a usar chosen.get(i); donde no hay elección (null o fuera de la lista) queda el sugerido.
+     * No se filtra por material ni color (es una decisión del usuario), pero el stock se vuelve a validar
+     * sumando lo que cada insumo aporta al lote.
+     */
+    public DeductionPlan withSupplies(DeductionPlan suggested, List<Supply> chosen) {
+        DeductionPlan plan = new DeductionPlan(suggested.quantity);
+        Map<Long, Double> reserved = new HashMap<>();
+
+        for (int i = 0; i < suggested.lines.size(); i++) {
+            DeductionPlan.Line line = suggested.lines.get(i);
+            Supply supply = (chosen != null && i < chosen.size() && chosen.get(i) != null) ? chosen.get(i) : line.supply;
+            if (supply == null) {
+                plan.lines.add(line);
+                plan.problems.add(String.format(Locale.US, "No hay insumo compatible para T%d (%s).",
+                        line.usage.getToolIndex(), describe(line.usage)));
+                continue;
+            }
+
+            double before = reserved.getOrDefault(supply.getId(), 0.0);
+            double available = supply.getCantidadDisponible() - before;
+            if (available < line.totalGrams - EPSILON) {
+                plan.problems.add(String.format(Locale.US, "Stock insuficiente para %s (T%d): requerido %.2fg, disponible %.2fg.",
+                        supply.getName(), line.usage.getToolIndex(), line.totalGrams, Math.max(available, 0)));
+            }
+            reserved.put(supply.getId(), before + line.totalGrams);
+            plan.lines.add(new DeductionPlan.Line(line.usage, supply, line.gramsPerUnit, line.totalGrams,
+                    colorDistance(line.usage, supplyColor(supply))));
+        }
+        return plan;
+    }
+
+    private static boolean compatible(FilamentMaterial used, FilamentMaterial available) {
+        return used == available || used == FilamentMaterial.UNKNOWN || available == FilamentMaterial.UNKNOWN;
+    }
+
+    // NaN cuando alguno de los dos no tiene color conocido
+    private double colorDistance(FilamentProfile usage, int supplyRgb) {
+        if (supplyRgb == FilamentProfile.NO_COLOR) return Double.NaN;
+        int usageRgb = usage.hasColor() ? usage.colorRgb : colorResolver.colorOf(usage.colorLabel);
+        if (usageRgb == FilamentProfile.NO_COLOR) return Double.NaN;
+        return ColorResolver.distance(usageRgb, supplyRgb);
+    }
+
+    // El color del insumo es un hex o un nombre de la paleta
+    private int supplyColor(Supply supply) {
+        String color = supply.getColorFilamento();
+        if (color == null) return FilamentProfile.NO_COLOR;
+        int rgb = FilamentProfile.parseHexColor(color.trim());
+        return rgb != FilamentProfile.NO_COLOR ? rgb : colorResolver.colorOf(color);
+    }
+
+    private static String describe(FilamentProfile usage) {
+        String material = usage.materialLabel == null ? "material desconocido" : usage.materialLabel;
+        String color = usage.hasColor() ? usage.getColorHex() : (usage.colorLabel == null ? "color desconocido" : usage.colorLabel);
+        return material + ", " + color;
+    }
+}
@@ -0,0 +1,59 @@
+package com.calmasalud.hubi.core.service.bgcode;
+
+import com.calmasalud.hubi.core.model.PrintInfo;
+import com.calmasalud.hubi.core.service.gcode.GCodeParser;
+import com.calmasalud.hubi.core.service.gcode.SlicerDialect;
+import com.calmasalud.hubi.core.service.gcode.SlicerDialects;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extrae los parámetros de un .bgcode leyendo solo sus bloques de metadatos.
+ * Los pares "clave=valor" se convierten en comentarios "; clave = valor" y pasan por los
+ * handlers del dialecto (PrusaSlicer), así que las reglas son las mismas que para el G-code de texto.
+ * La lectura se corta en el primer bloque de G-code: los metadatos siempre van antes.
+ */
+public final class BGCodeParser {
+
+    private BGCodeParser() {
+    }
+
+    /**
+     * @return El dialecto utilizado.
+     */
+    public static SlicerDialect parse(Path bgcode, PrintInfo info) throws IOException {
+        List<String> commentLines = new ArrayList<>();
+        String producer = null;
+        int metadataBlocks = 0;
+
+        try (BGCodeReader reader = new BGCodeReader(bgcode)) {
+            BGCodeReader.Block block;
+            while ((block = reader.nextBlock()) != null) {
+                if (block.type == BGCodeReader.GCODE) break;
+                if (!block.isMetadata()) continue;
+                try {
+                    Map<String, String> metadata = reader.readMetadata(block);
+                    metadataBlocks++;
+                    if (block.type == BGCodeReader.FILE_METADATA && metadata.containsKey("Producer")) {
+                        producer = metadata.get("Producer");
+                    }
+                    metadata.forEach((key, value) -> commentLines.add("; " + key + " = " + value));
+                } catch (IOException e) {
+                    System.err.println("⚠️ Bloque de metadatos " + block.type + " ignorado: " + e.getMessage());
+                }
+            }
+        }
+
+        SlicerDialect dialect = producer != null ? SlicerDialects.detect("; generated by " + producer) : null;
+        if (dialect == null) {
+            dialect = SlicerDialects.generic();
+        }
+
+        GCodeParser.parseComments(commentLines, dialect, info);
+        return dialect;
+    }
+}
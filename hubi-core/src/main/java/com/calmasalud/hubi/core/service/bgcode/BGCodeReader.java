@@ -0,0 +1,251 @@
+package com.calmasalud.hubi.core.service.bgcode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Lector por bloques del G-code binario de PrusaSlicer (.bgcode, formato libbgcode v1).
+ * Estructura (little-endian):
+ * - Cabecera: "GCDE" | versión (u32) | tipo de checksum (u16: 0 ninguno, 1 CRC32).
+ * - Bloques: tipo (u16) | compresión (u16) | tamaño sin comprimir (u32) | [tamaño comprimido (u32)]
+ *   | parámetros | datos | [CRC32].
+ * Solo se leen las cabeceras y se salta con el FileChannel; los datos se leen únicamente
+ * al pedir un bloque de metadatos o miniatura, por lo que el toolpath nunca se descomprime.
+ */
+public class BGCodeReader implements Closeable {
+
+    private static final int MAGIC = 0x45444347; // "GCDE"
+    private static final int FILE_HEADER_SIZE = 10;
+    private static final int CHECKSUM_CRC32 = 1;
+    private static final int MAX_METADATA_SIZE = 16 * 1024 * 1024;
+
+    // Tipos de bloque
+    public static final int FILE_METADATA = 0;
+    public static final int GCODE = 1;
+    public static final int SLICER_METADATA = 2;
+    public static final int PRINTER_METADATA = 3;
+    public static final int PRINT_METADATA = 4;
+    public static final int THUMBNAIL = 5;
+
+    // Compresión
+    public static final int COMPRESSION_NONE = 0;
+    public static final int COMPRESSION_DEFLATE = 1;
+    // 2 y 3: Heatshrink 11/12 (usado en los bloques de G-code, que no se decodifican)
+
+    // Formatos de miniatura
+    public static final int THUMBNAIL_PNG = 0;
+    public static final int THUMBNAIL_JPG = 1;
+    public static final int THUMBNAIL_QOI = 2;
+
+    private final FileChannel channel;
+    private final boolean crc32;
+    private final long size;
+    private long position = FILE_HEADER_SIZE;
+
+    /**
+     * Cabecera de un bloque y la ubicación de sus partes dentro del archivo.
+     */
+    public static final class Block {
+        public final int type;
+        public final int compression;
+        public final long uncompressedSize;
+        public final long compressedSize;
+        public final long offset;        // Inicio de la cabecera del bloque
+        public final long paramsOffset;
+        public final int paramsSize;
+
+        private Block(int type, int compression, long uncompressedSize, long compressedSize,
+                      long offset, long paramsOffset, int paramsSize) {
+            this.type = type;
+            this.compression = compression;
+            this.uncompressedSize = uncompressedSize;
+            this.compressedSize = compressedSize;
+            this.offset = offset;
+            this.paramsOffset = paramsOffset;
+            this.paramsSize = paramsSize;
+        }
+
+        public long dataOffset() {
+            return paramsOffset + paramsSize;
+        }
+
+        /** Tamaño de los datos tal como están en disco. */
+        public long storedSize() {
+            return compression == COMPRESSION_NONE ? uncompressedSize : compressedSize;
+        }
+
+        public boolean isMetadata() {
+            return type == FILE_METADATA || type == SLICER_METADATA || type == PRINTER_METADATA || type == PRINT_METADATA;
+        }
+    }
+
+    /**
+     * Miniatura embebida (los bytes son el archivo PNG/JPG/QOI completo).
+     */
+    public static final class Thumbnail {
+        public final int format;
+        public final int width;
+        public final int height;
+        public final byte[] data;
+
+        private Thumbnail(int format, int width, int height, byte[] data) {
+            this.format = format;
+            this.width = width;
+            this.height = height;
+            this.data = data;
+        }
+    }
+
+    public BGCodeReader(Path bgcode) throws IOException {
+        this.channel = FileChannel.open(bgcode, StandardOpenOption.READ);
+        try {
+            this.size = channel.size();
+            ByteBuffer header = read(0, FILE_HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("El archivo no es un G-code binario (falta la firma GCDE).");
+            }
+            int version = header.getInt();
+            if (version != 1) {
+                System.out.println("⚠️ Versión de bgcode no verificada: " + version);
+            }
+            this.crc32 = (header.getShort() & 0xFFFF) == CHECKSUM_CRC32;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Lee la cabecera del siguiente bloque y avanza hasta el siguiente sin leer los datos.
+     * @return El bloque, o null al final del archivo.
+     */
+    public Block nextBlock() throws IOException {
+        if (position + 8 > size) return null;
+        long offset = position;
+        ByteBuffer header = read(offset, 8);
+        int type = header.getShort() & 0xFFFF;
+        int compression = header.getShort() & 0xFFFF;
+        long uncompressed = header.getInt() & 0xFFFFFFFFL;
+        long compressed = uncompressed;
+        long paramsOffset = offset + 8;
+        if (compression != COMPRESSION_NONE) {
+            compressed = read(paramsOffset, 4).getInt() & 0xFFFFFFFFL;
+            paramsOffset += 4;
+        }
+        int paramsSize = type == THUMBNAIL ? 6 : 2;
+        Block block = new Block(type, compression, uncompressed, compressed, offset, paramsOffset, paramsSize);
+
+        position = block.dataOffset() + block.storedSize() + (crc32 ? 4 : 0);
+        if (position > size) {
+            throw new IOException("Bloque truncado en la posición " + offset + ".");
+        }
+        return block;
+    }
+
+    /**
+     * Decodifica un bloque de metadatos (codificación INI "clave=valor" por línea).
+     */
+    public Map<String, String> readMetadata(Block block) throws IOException {
+        if (!block.isMetadata()) {
+            throw new IllegalArgumentException("El bloque " + block.type + " no es de metadatos.");
+        }
+        String text = new String(readData(block), StandardCharsets.UTF_8);
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String line : text.split("\n")) {
+            int eq = line.indexOf('=');
+            if (eq <= 0) continue;
+            values.put(line.substring(0, eq).trim(), line.substring(eq + 1).trim());
+        }
+        return values;
+    }
+
+    /**
+     * Lee una miniatura (formato y tamaño están en los parámetros del bloque).
+     */
+    public Thumbnail readThumbnail(Block block) throws IOException {
+        if (block.type != THUMBNAIL) {
+            throw new IllegalArgumentException("El bloque " + block.type + " no es una miniatura.");
+        }
+        ByteBuffer params = read(block.paramsOffset, 6);
+        int format = params.getShort() & 0xFFFF;
+        int width = params.getShort() & 0xFFFF;
+        int height = params.getShort() & 0xFFFF;
+        return new Thumbnail(format, width, height, readData(block));
+    }
+
+    private byte[] readData(Block block) throws IOException {
+        if (block.storedSize() > MAX_METADATA_SIZE || block.uncompressedSize > MAX_METADATA_SIZE) {
+            throw new IOException("Bloque demasiado grande para leerlo en memoria: " + block.uncompressedSize + " bytes.");
+        }
+        ByteBuffer stored = read(block.dataOffset(), (int) block.storedSize());
+        if (crc32) verifyChecksum(block);
+
+        byte[] bytes = new byte[stored.remaining()];
+        stored.get(bytes);
+        return switch (block.compression) {
+            case COMPRESSION_NONE -> bytes;
+            case COMPRESSION_DEFLATE -> inflate(bytes, (int) block.uncompressedSize);
+            default -> throw new IOException("Compresión de bloque no soportada: " + block.compression);
+        };
+    }
+
+    private void verifyChecksum(Block block) throws IOException {
+        int length = (int) (block.dataOffset() + block.storedSize() - block.offset);
+        ByteBuffer whole = read(block.offset, length);
+        CRC32 crc = new CRC32();
+        crc.update(whole);
+        long expected = read(block.offset + length, 4).getInt() & 0xFFFFFFFFL;
+        if (crc.getValue() != expected) {
+            throw new IOException("CRC32 inválido en el bloque de la posición " + block.offset + ".");
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int uncompressedSize) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] out = new byte[uncompressedSize];
+            int total = 0;
+            while (total < uncompressedSize && !inflater.finished()) {
+                int n = inflater.inflate(out, total, uncompressedSize - total);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                total += n;
+            }
+            if (total != uncompressedSize) {
+                throw new IOException("Bloque deflate incompleto: " + total + " de " + uncompressedSize + " bytes.");
+            }
+            return out;
+        } catch (DataFormatException e) {
+            throw new IOException("Bloque deflate inválido: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Fin de archivo inesperado en la posición " + (offset + buffer.position()) + ".");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
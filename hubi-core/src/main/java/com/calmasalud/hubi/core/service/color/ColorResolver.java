@@ -0,0 +1,332 @@
+package com.calmasalud.hubi.core.service.color;
+
+import com.calmasalud.hubi.core.model.FilamentProfile;
+import com.calmasalud.hubi.core.model.Supply;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Resuelve un color sRGB al nombre de filamento más cercano perceptualmente (CIEDE2000 en CIELAB).
+ * La paleta es configurable y puede incluir los colores de los insumos del taller: si un insumo se llama
+ * como un color de la paleta (Ej: "ROJO"), se usa su nombre tal cual, así el color del archivo coincide
+ * directamente con Supply.colorFilamento. Un insumo cuyo color es un hex (#RRGGBB) agrega su propio punto.
+ * Las distancias se precalculan en una grilla de 32x32x32 (5 bits por canal), así que resolve() es
+ * una sola lectura de arreglo, O(1) y sin asignaciones.
+ */
+public final class ColorResolver {
+
+    private static final int BITS = 5;
+    private static final int SIZE = 1 << BITS;       // 32 celdas por canal
+    private static final int SHIFT = 8 - BITS;
+
+    /** Paleta base de colores de filamento más comunes (nombre -> 0xRRGGBB). */
+    private static final Map<String, Integer> BASE_PALETTE = createBasePalette();
+
+    private static volatile ColorResolver defaultResolver;
+
+    private final String[] names;
+    private final int[] colors;
+    private final byte[] lut;  // Índice de la paleta por celda (la paleta admite hasta 255 colores)
+
+    private static Map<String, Integer> createBasePalette() {
+        Map<String, Integer> palette = new LinkedHashMap<>();
+        palette.put("Blanco", 0xF4F4F4);
+        palette.put("Negro", 0x161616);
+        palette.put("Gris", 0x808080);
+        palette.put("Gris Oscuro", 0x4A4A4A);
+        palette.put("Plata", 0xC0C0C0);
+        palette.put("Rojo", 0xD32F2F);
+        palette.put("Bordó", 0x7B1F2B);
+        palette.put("Naranja", 0xFF8C00);
+        palette.put("Amarillo", 0xFBD22A);
+        palette.put("Dorado", 0xB8932F);
+        palette.put("Beige", 0xD8C7A0);
+        palette.put("Marrón", 0x6D4C33);
+        palette.put("Verde", 0x2E9E44);
+        palette.put("Verde Oscuro", 0x1E5631);
+        palette.put("Verde Lima", 0xA4D233);
+        palette.put("Turquesa", 0x26A69A);
+        palette.put("Cian", 0x00BCD4);
+        palette.put("Celeste", 0x7EC8F0);
+        palette.put("Azul", 0x1E56C8);
+        palette.put("Azul Marino", 0x1A2A5A);
+        palette.put("Violeta", 0x7B4BB5);
+        palette.put("Magenta", 0xD0208F);
+        palette.put("Rosa", 0xF48FB1);
+        palette.put("Piel", 0xE9BE9C);
+        return Collections.unmodifiableMap(palette);
+    }
+
+    /**
+     * @param palette Nombre -> color 0xRRGGBB (entre 1 y 255 entradas).
+     */
+    public ColorResolver(Map<String, Integer> palette) {
+        if (palette.isEmpty() || palette.size() > 255) {
+            throw new IllegalArgumentException("La paleta debe tener entre 1 y 255 colores.");
+        }
+        this.names = palette.keySet().toArray(new String[0]);
+        this.colors = new int[names.length];
+        double[][] labs = new double[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            colors[i] = palette.get(names[i]) & 0xFFFFFF;
+            labs[i] = toLab(colors[i]);
+        }
+        this.lut = buildLut(labs);
+    }
+
+    /**
+     * @return Resolver con la paleta base (compartido; se construye una sola vez).
+     */
+    public static ColorResolver defaultResolver() {
+        ColorResolver resolver = defaultResolver;
+        if (resolver == null) {
+            synchronized (ColorResolver.class) {
+                resolver = defaultResolver;
+                if (resolver == null) {
+                    resolver = new ColorResolver(BASE_PALETTE);
+                    defaultResolver = resolver;
+                }
+            }
+        }
+        return resolver;
+    }
+
+    /**
+     * @return Copia editable de la paleta base, para armar paletas propias.
+     */
+    public static Map<String, Integer> basePalette() {
+        return new LinkedHashMap<>(BASE_PALETTE);
+    }
+
+    /**
+     * Paleta base + colores de los insumos. Un insumo cuyo color coincide (sin mayúsculas ni acentos)
+     * con un nombre de la paleta lo reemplaza con su nombre; uno con color hex agrega una entrada nueva.
+     * Los demás (nombres desconocidos sin hex) no tienen posición en el espacio de color y se ignoran.
+     */
+    public static ColorResolver withSupplies(Collection<Supply> supplies) {
+        if (supplies == null || supplies.isEmpty()) return defaultResolver();
+        Map<String, Integer> palette = new LinkedHashMap<>();
+        Map<String, String> baseByKey = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : BASE_PALETTE.entrySet()) {
+            baseByKey.put(normalize(entry.getKey()), entry.getKey());
+        }
+        Map<String, String> renamed = new LinkedHashMap<>();
+        List<String> ignored = new ArrayList<>();
+        Map<String, Integer> fromHex = new LinkedHashMap<>();
+
+        for (Supply supply : supplies) {
+            String color = supply.getColorFilamento();
+            if (color == null || color.isBlank()) continue;
+            String trimmed = color.trim();
+            int rgb = FilamentProfile.parseHexColor(trimmed);
+            String baseName = baseByKey.get(normalize(trimmed));
+            if (baseName != null) {
+                renamed.putIfAbsent(baseName, trimmed);
+            } else if (rgb != FilamentProfile.NO_COLOR) {
+                fromHex.putIfAbsent(trimmed, rgb);
+            } else {
+                ignored.add(trimmed);
+            }
+        }
+        for (Map.Entry<String, Integer> entry : BASE_PALETTE.entrySet()) {
+            palette.put(renamed.getOrDefault(entry.getKey(), entry.getKey()), entry.getValue());
+        }
+        fromHex.forEach(palette::putIfAbsent);
+        if (!ignored.isEmpty()) {
+            System.out.println("⚠️ Colores de insumo sin equivalente en la paleta: " + ignored);
+        }
+        return new ColorResolver(palette);
+    }
+
+    /**
+     * @return Nombre del color más cercano (O(1), sin asignaciones).
+     */
+    public String resolve(int rgb) {
+        int r = (rgb >> 16) & 0xFF;
+        int g = (rgb >> 8) & 0xFF;
+        int b = rgb & 0xFF;
+        return names[lut[((r >> SHIFT) << (2 * BITS)) | ((g >> SHIFT) << BITS) | (b >> SHIFT)] & 0xFF];
+    }
+
+    /**
+     * @return Nombre del color más cercano al hex ("#RRGGBB" o "#RRGGBBAA"), o null si el texto no es un hex.
+     */
+    public String resolveHex(String hex) {
+        int rgb = FilamentProfile.parseHexColor(hex);
+        return rgb == FilamentProfile.NO_COLOR ? null : resolve(rgb);
+    }
+
+    /**
+     * @return El nombre de la paleta que coincide con el texto (sin mayúsculas ni acentos), o el texto tal cual.
+     */
+    public String canonicalName(String label) {
+        if (label == null) return null;
+        String key = normalize(label);
+        for (String name : names) {
+            if (normalize(name).equals(key)) return name;
+        }
+        return label.trim();
+    }
+
+    /**
+     * @return Color de referencia (0xRRGGBB) de un nombre de la paleta, o FilamentProfile.NO_COLOR.
+     */
+    public int colorOf(String name) {
+        if (name == null) return FilamentProfile.NO_COLOR;
+        String key = normalize(name);
+        for (int i = 0; i < names.length; i++) {
+            if (normalize(names[i]).equals(key)) return colors[i];
+        }
+        return FilamentProfile.NO_COLOR;
+    }
+
+    /**
+     * @return true si los dos nombres de color son el mismo (sin distinguir mayúsculas ni acentos).
+     */
+    public static boolean sameColorName(String a, String b) {
+        return a != null && b != null && normalize(a).equals(normalize(b));
+    }
+
+    public List<String> getNames() {
+        return List.of(names);
+    }
+
+    /**
+     * @return Diferencia perceptual CIEDE2000 entre dos colores 0xRRGGBB (0 = idénticos).
+     */
+    public static double distance(int rgb1, int rgb2) {
+        return deltaE2000(toLab(rgb1), toLab(rgb2));
+    }
+
+    // --- GRILLA PRECALCULADA ---
+
+    private static byte[] buildLut(double[][] paletteLabs) {
+        byte[] table = new byte[SIZE * SIZE * SIZE];
+        int half = 1 << (SHIFT - 1); // Centro de la celda
+        for (int r = 0; r < SIZE; r++) {
+            for (int g = 0; g < SIZE; g++) {
+                for (int b = 0; b < SIZE; b++) {
+                    int rgb = (((r << SHIFT) + half) << 16) | (((g << SHIFT) + half) << 8) | ((b << SHIFT) + half);
+                    double[] lab = toLab(rgb);
+                    int best = 0;
+                    double bestDistance = Double.MAX_VALUE;
+                    for (int i = 0; i < paletteLabs.length; i++) {
+                        double d = deltaE2000(lab, paletteLabs[i]);
+                        if (d < bestDistance) {
+                            bestDistance = d;
+                            best = i;
+                        }
+                    }
+                    table[(r << (2 * BITS)) | (g << BITS) | b] = (byte) best;
+                }
+            }
+        }
+        return table;
+    }
+
+    // --- CONVERSIONES DE COLOR ---
+
+    /**
+     * sRGB (0xRRGGBB) -> CIELAB (D65).
+     */
+    static double[] toLab(int rgb) {
+        double r = linear(((rgb >> 16) & 0xFF) / 255.0);
+        double g = linear(((rgb >> 8) & 0xFF) / 255.0);
+        double b = linear((rgb & 0xFF) / 255.0);
+
+        double x = (0.4124564 * r + 0.3575761 * g + 0.1804375 * b) / 0.95047;
+        double y = 0.2126729 * r + 0.7151522 * g + 0.0721750 * b;
+        double z = (0.0193339 * r + 0.1191920 * g + 0.9503041 * b) / 1.08883;
+
+        double fx = labF(x), fy = labF(y), fz = labF(z);
+        return new double[]{116 * fy - 16, 500 * (fx - fy), 200 * (fy - fz)};
+    }
+
+    private static double linear(double c) {
+        return c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+    }
+
+    private static double labF(double t) {
+        return t > 216.0 / 24389.0 ? Math.cbrt(t) : (24389.0 / 27.0 * t + 16) / 116;
+    }
+
+    /**
+     * Diferencia de color CIEDE2000 (Sharma, Wu y Dalal, 2005).
+     */
+    static double deltaE2000(double[] lab1, double[] lab2) {
+        double l1 = lab1[0], a1 = lab1[1], b1 = lab1[2];
+        double l2 = lab2[0], a2 = lab2[1], b2 = lab2[2];
+
+        double c1 = Math.hypot(a1, b1), c2 = Math.hypot(a2, b2);
+        double cMean = (c1 + c2) / 2;
+        double cMean7 = Math.pow(cMean, 7);
+        double g = 0.5 * (1 - Math.sqrt(cMean7 / (cMean7 + 6103515625.0))); // 25^7
+        double a1p = (1 + g) * a1, a2p = (1 + g) * a2;
+        double c1p = Math.hypot(a1p, b1), c2p = Math.hypot(a2p, b2);
+        double h1p = hueAngle(b1, a1p), h2p = hueAngle(b2, a2p);
+
+        double dLp = l2 - l1;
+        double dCp = c2p - c1p;
+        double dhp;
+        if (c1p * c2p == 0) {
+            dhp = 0;
+        } else if (Math.abs(h2p - h1p) <= 180) {
+            dhp = h2p - h1p;
+        } else if (h2p - h1p > 180) {
+            dhp = h2p - h1p - 360;
+        } else {
+            dhp = h2p - h1p + 360;
+        }
+        double dHp = 2 * Math.sqrt(c1p * c2p) * Math.sin(Math.toRadians(dhp / 2));
+
+        double lMeanP = (l1 + l2) / 2;
+        double cMeanP = (c1p + c2p) / 2;
+        double hMeanP;
+        if (c1p * c2p == 0) {
+            hMeanP = h1p + h2p;
+        } else if (Math.abs(h1p - h2p) <= 180) {
+            hMeanP = (h1p + h2p) / 2;
+        } else if (h1p + h2p < 360) {
+            hMeanP = (h1p + h2p + 360) / 2;
+        } else {
+            hMeanP = (h1p + h2p - 360) / 2;
+        }
+
+        double t = 1 - 0.17 * Math.cos(Math.toRadians(hMeanP - 30))
+                + 0.24 * Math.cos(Math.toRadians(2 * hMeanP))
+                + 0.32 * Math.cos(Math.toRadians(3 * hMeanP + 6))
+                - 0.20 * Math.cos(Math.toRadians(4 * hMeanP - 63));
+        double dTheta = 30 * Math.exp(-Math.pow((hMeanP - 275) / 25, 2));
+        double cMeanP7 = Math.pow(cMeanP, 7);
+        double rc = 2 * Math.sqrt(cMeanP7 / (cMeanP7 + 6103515625.0));
+        double lMinus50Sq = (lMeanP - 50) * (lMeanP - 50);
+        double sl = 1 + 0.015 * lMinus50Sq / Math.sqrt(20 + lMinus50Sq);
+        double sc = 1 + 0.045 * cMeanP;
+        double sh = 1 + 0.015 * cMeanP * t;
+        double rt = -Math.sin(Math.toRadians(2 * dTheta)) * rc;
+
+        double tl = dLp / sl, tc = dCp / sc, th = dHp / sh;
+        return Math.sqrt(tl * tl + tc * tc + th * th + rt * tc * th);
+    }
+
+    private static double hueAngle(double b, double ap) {
+        if (b == 0 && ap == 0) return 0;
+        double h = Math.toDegrees(Math.atan2(b, ap));
+        return h < 0 ? h + 360 : h;
+    }
+
+    /**
+     * Clave de comparación de nombres: sin acentos, mayúsculas y espacios colapsados.
+     */
+    static String normalize(String name) {
+        String stripped = Normalizer.normalize(name.trim(), Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return stripped.toUpperCase(Locale.ROOT).replaceAll("\\s+", " ");
+    }
+}
@@ -0,0 +1,44 @@
+package com.calmasalud.hubi.core.service.gcode;
+
+import java.util.List;
+import java.util.Locale;
+
+import static com.calmasalud.hubi.core.service.gcode.GCodeHandlers.*;
+
+/**
+ * BambuStudio: "; BambuStudio 01.09.00.70" dentro de HEADER_BLOCK.
+ * Informa longitud y peso totales por filamento en el encabezado.
+ */
+public class BambuStudioDialect implements SlicerDialect {
+
+    private static final List<GCodeLineHandler> HANDLERS = List.of(
+            TOTAL_ESTIMATED_TIME,
+            TIME_HMS_TEXT,
+            TOTAL_LAYERS,
+            TOTAL_FILAMENT_LENGTH_LIST,
+            TOTAL_FILAMENT_WEIGHT_LIST,
+            FILAMENT_USED_MM_LIST,
+            FILAMENT_USED_G_LIST,
+            FILAMENT_TYPE_SEMICOLON_LIST,
+            FILAMENT_COLOUR_SEMICOLON_LIST,
+            FILAMENT_DENSITY_LIST,
+            FILAMENT_DIAMETER_LIST,
+            LAYER_HEIGHT,
+            OBJECT);
+
+    @Override
+    public String getName() {
+        return "BambuStudio";
+    }
+
+    @Override
+    public boolean detects(String headerLine) {
+        String l = headerLine.toLowerCase(Locale.ROOT);
+        return l.startsWith(";") && l.contains("bambustudio");
+    }
+
+    @Override
+    public List<GCodeLineHandler> commentHandlers() {
+        return HANDLERS;
+    }
+}
@@ -0,0 +1,39 @@
+package com.calmasalud.hubi.core.service.gcode;
+
+import java.util.List;
+import java.util.Locale;
+
+import static com.calmasalud.hubi.core.service.gcode.GCodeHandlers.*;
+
+/**
+ * UltiMaker Cura: ";FLAVOR:Marlin" / ";Generated with Cura_SteamEngine 5.6.0".
+ * Informa el tiempo en segundos (;TIME:) y el filamento en metros (;Filament used: 1.23m).
+ */
+public class CuraDialect implements SlicerDialect {
+
+    private static final List<GCodeLineHandler> HANDLERS = List.of(
+            TIME_SECONDS,
+            TIME_ELAPSED,
+            LAYER_COUNT,
+            CURA_LAYER_HEIGHT,
+            LEGACY_TOTAL_M,
+            LEGACY_MATERIAL,
+            LEGACY_COLOR,
+            OBJECT);
+
+    @Override
+    public String getName() {
+        return "Cura";
+    }
+
+    @Override
+    public boolean detects(String headerLine) {
+        String l = headerLine.toLowerCase(Locale.ROOT);
+        return l.startsWith(";flavor:") || l.contains("generated with cura");
+    }
+
+    @Override
+    public List<GCodeLineHandler> commentHandlers() {
+        return HANDLERS;
+    }
+}
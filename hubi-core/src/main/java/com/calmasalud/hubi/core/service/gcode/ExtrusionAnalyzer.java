@@ -0,0 +1,90 @@
+package com.calmasalud.hubi.core.service.gcode;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.calmasalud.hubi.core.service.gcode.GCodeCommands.*;
+
+/**
+ * Analizador de movimientos que acumula el filamento extruido (mm) por herramienta.
+ * Soporta extrusión absoluta (M82/G90) y relativa (M83/G91), reseteo de E (G92 E) y cambios de herramienta (Tn).
+ * Las retracciones se restan, por lo que el resultado es el largo neto consumido.
+ * Los comandos se parsean a mano (GCodeCommands) porque se ejecuta sobre cada línea de movimiento.
+ */
+public class ExtrusionAnalyzer {
+
+    private boolean relativeE = false; // Marlin arranca en M82 (absoluto)
+    private double lastE = 0.0;
+    private int currentTool = 0;
+
+    private final Map<Integer, Double> extrudedMm = new TreeMap<>();
+    private double totalExtrudedMm = 0.0;
+
+    /**
+     * Procesa una línea de comando ya recortada (sin comentarios al inicio).
+     */
+    public void accept(String line) {
+        int length = commandEnd(line);
+        if (length < 2) return;
+        char letter = Character.toUpperCase(line.charAt(0));
+
+        if (letter == 'G') {
+            int code = parseCode(line, length);
+            if (code >= 0 && code <= 3) {
+                double e = parseParam(line, length, 'E');
+                if (!Double.isNaN(e)) extrude(e);
+            } else if (code == 90) {
+                relativeE = false;
+            } else if (code == 91) {
+                relativeE = true; // G91 también pone el extrusor en relativo (Marlin)
+            } else if (code == 92) {
+                double e = parseParam(line, length, 'E');
+                if (!Double.isNaN(e)) lastE = e;
+            }
+        } else if (letter == 'M') {
+            int code = parseCode(line, length);
+            if (code == 82) {
+                relativeE = false;
+            } else if (code == 83) {
+                relativeE = true;
+            }
+        } else if (letter == 'T') {
+            int tool = parseCode(line, length);
+            if (tool >= 0) setTool(tool);
+        }
+    }
+
+    public void setTool(int tool) {
+        this.currentTool = tool;
+    }
+
+    private void extrude(double e) {
+        double delta;
+        if (relativeE) {
+            delta = e;
+        } else {
+            delta = e - lastE;
+            lastE = e;
+        }
+        extrudedMm.merge(currentTool, delta, Double::sum);
+        totalExtrudedMm += delta;
+    }
+
+    /**
+     * @return Largo neto extruido hasta el momento (mm, todas las herramientas).
+     */
+    public double getTotalExtrudedMm() {
+        return totalExtrudedMm;
+    }
+
+    /**
+     * @return Largo neto extruido (mm, > 0) por herramienta, ordenado por índice.
+     */
+    public Map<Integer, Double> getExtrudedMm() {
+        Map<Integer, Double> result = new TreeMap<>();
+        extrudedMm.forEach((tool, mm) -> {
+            if (mm > 0) result.put(tool, mm);
+        });
+        return result;
+    }
+}
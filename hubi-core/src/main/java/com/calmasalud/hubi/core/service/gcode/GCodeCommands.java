@@ -0,0 +1,53 @@
+package com.calmasalud.hubi.core.service.gcode;
+
+/**
+ * Parseo manual (sin regex) de comandos G-code como "G1 X10.5 Y3 E0.42 F1800 ; comentario".
+ * Se usa en las líneas de movimiento, que son la gran mayoría del archivo.
+ */
+final class GCodeCommands {
+
+    private GCodeCommands() {
+    }
+
+    /**
+     * @return Fin del comando: posición del primer ';' o largo de la línea.
+     */
+    static int commandEnd(String line) {
+        int idx = line.indexOf(';');
+        return idx < 0 ? line.length() : idx;
+    }
+
+    /**
+     * @return Número entero que sigue a la letra del comando (Ej: "G1" -> 1, "T2" -> 2), o -1 si no hay.
+     */
+    static int parseCode(String line, int end) {
+        int value = -1;
+        for (int i = 1; i < end; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') break;
+            value = (value < 0 ? 0 : value * 10) + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * @return Valor del parámetro (Ej: 'E' en "G1 X10 E0.53"), o NaN si no aparece.
+     */
+    static double parseParam(String line, int end, char param) {
+        for (int i = 1; i < end; i++) {
+            char c = Character.toUpperCase(line.charAt(i));
+            if (c == param && Character.isWhitespace(line.charAt(i - 1))) {
+                int start = i + 1;
+                int stop = start;
+                while (stop < end && !Character.isWhitespace(line.charAt(stop))) stop++;
+                if (stop == start) return Double.NaN;
+                try {
+                    return Double.parseDouble(line.substring(start, stop));
+                } catch (NumberFormatException e) {
+                    return Double.NaN;
+                }
+            }
+        }
+        return Double.NaN;
+    }
+}
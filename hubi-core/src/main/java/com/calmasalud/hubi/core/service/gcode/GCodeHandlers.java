@@ -0,0 +1,304 @@
+package com.calmasalud.hubi.core.service.gcode;
+
+import com.calmasalud.hubi.core.model.FilamentProfile;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Catálogo de handlers de comentarios de G-code reutilizables por los dialectos.
+ * Cada dialecto compone solo los que su slicer realmente escribe.
+ */
+public final class GCodeHandlers {
+
+    private GCodeHandlers() {
+    }
+
+    // --- FÁBRICAS ---
+
+    /**
+     * Handler que ejecuta la acción cuando la línea coincide completa con el patrón.
+     */
+    public static GCodeLineHandler onMatch(Pattern pattern, BiConsumer<Matcher, GCodeParseState> action) {
+        return (line, state) -> {
+            Matcher m = pattern.matcher(line);
+            if (m.matches()) action.accept(m, state);
+        };
+    }
+
+    /**
+     * Handler de lista por extrusor (Ej: "; filament_type = PLA;PETG"): el valor i se asigna al perfil Ti.
+     * Los valores vacíos o "N/D" se ignoran.
+     */
+    public static GCodeLineHandler list(Pattern pattern, String separatorRegex,
+                                        BiConsumer<FilamentProfile, String> setter) {
+        return onMatch(pattern, (m, state) -> {
+            String[] values = m.group(1).split(separatorRegex);
+            for (int i = 0; i < values.length; i++) {
+                String value = values[i].trim();
+                if (!value.isEmpty() && !value.equalsIgnoreCase("N/D")) {
+                    setter.accept(state.profile(i), value);
+                    state.indexedDataFound = true;
+                }
+            }
+        });
+    }
+
+    /**
+     * Igual que list(...) pero para valores numéricos; los no válidos se ignoran.
+     */
+    public static GCodeLineHandler numericList(Pattern pattern, String separatorRegex,
+                                               NumericSetter setter) {
+        return onMatch(pattern, (m, state) -> {
+            String[] values = m.group(1).split(separatorRegex);
+            for (int i = 0; i < values.length; i++) {
+                double value = GCodeValues.parseNumber(values[i]);
+                if (!Double.isNaN(value)) {
+                    setter.accept(state.profile(i), value);
+                    state.indexedDataFound = true;
+                }
+            }
+        });
+    }
+
+    /**
+     * Handler de valor indexado (Ej: "; filament_type[1] = PETG"): grupo 1 = herramienta, grupo 2 = valor.
+     */
+    public static GCodeLineHandler indexed(Pattern pattern, BiConsumer<FilamentProfile, String> setter) {
+        return onMatch(pattern, (m, state) -> {
+            setter.accept(state.profile(Integer.parseInt(m.group(1))), m.group(2));
+            state.indexedDataFound = true;
+        });
+    }
+
+    @FunctionalInterface
+    public interface NumericSetter {
+        void accept(FilamentProfile profile, double value);
+    }
+
+    // --- SEPARADORES ---
+    public static final String COMMA = ",";
+    public static final String SEMICOLON = ";";
+    public static final String COMMA_OR_SEMICOLON = "[,;]";
+
+    // --- TIEMPO, CAPAS Y OBJETOS ---
+
+    public static final GCodeLineHandler TIME_SECONDS = onMatch(
+            Pattern.compile("^;\\s*TIME\\s*:\\s*(\\d+)\\s*$", Pattern.CASE_INSENSITIVE),
+            (m, state) -> state.info.timeSeconds = Long.parseLong(m.group(1)));
+
+    public static final GCodeLineHandler TIME_HMS_TEXT = onMatch(
+            Pattern.compile("^;\\s*estimated printing time.*?=\\s*([0-9dhms :]+).*$", Pattern.CASE_INSENSITIVE),
+            (m, state) -> {
+                long seconds = GCodeValues.parseDurationSeconds(m.group(1));
+                if (seconds >= 0) state.info.timeSeconds = seconds;
+            });
+
+    // BambuStudio: "; model printing time: 1h 2m 3s; total estimated time: 1h 10m 3s"
+    public static final GCodeLineHandler TOTAL_ESTIMATED_TIME = onMatch(
+            Pattern.compile("^;.*total estimated time\\s*:\\s*([0-9dhms :]+).*$", Pattern.CASE_INSENSITIVE),
+            (m, state) -> {
+                long seconds = GCodeValues.parseDurationSeconds(m.group(1));
+                if (seconds >= 0) state.info.timeSeconds = seconds;
+            });
+
+    public static final GCodeLineHandler TIME_ELAPSED = onMatch(
+            Pattern.compile("^;\\s*TIME_ELAPSED\\s*:\\s*([0-9.]+).*$", Pattern.CASE_INSENSITIVE),
+            (m, state) -> {
+                if (!state.info.hasTime()) state.info.timeSeconds = Math.round(Double.parseDouble(m.group(1)));
+            });
+
+    public static final GCodeLineHandler TOTAL_LAYERS = onMatch(
+            Pattern.compile("^;\\s*total layer number:?\\s*(\\d+).*$", Pattern.CASE_INSENSITIVE),
+            (m, state) -> state.info.totalLayers = Integer.parseInt(m.group(1)));
+
+    // Cura: ";LAYER_COUNT:120"
+    public static final GCodeLineHandler LAYER_COUNT = onMatch(
+            Pattern.compile("^;\\s*LAYER_COUNT\\s*:\\s*(\\d+)\\s*$", Pattern.CASE_INSENSITIVE),
+            (m, state) -> state.info.totalLayers = Integer.parseInt(m.group(1)));
+
+    public static final GCodeLineHandler LAYER_HEIGHT = onMatch(
+            Pattern.compile("^;\\s*layer_height\\s*=\\s*([0-9.]+).*$", Pattern.CASE_INSENSITIVE),
+            (m, state) -> state.info.layerHeightMm = Double.parseDouble(m.group(1)));
+
+    // Cura: ";Layer height: 0.2"
+    public static final GCodeLineHandler CURA_LAYER_HEIGHT = onMatch(
+            Pattern.compile("^;\\s*Layer height\\s*:\\s*([0-9.]+)\\s*$", Pattern.CASE_INSENSITIVE),
+            (m, state) -> state.info.layerHeightMm = Double.parseDouble(m.group(1)));
+
+    public static final GCodeLineHandler OBJECT = onMatch(
+            Pattern.compile("^;\\s*(OBJECT|MESH)\\s*:\\s*(.+)$", Pattern.CASE_INSENSITIVE),
+            (m, state) -> {
+                if (!m.group(2).trim().equalsIgnoreCase("NONMESH")) {
+                    state.info.pieces = Math.max(state.info.pieces, 1); // Simplificado para GCode
+                }
+            });
+
+    // --- LISTAS POR EXTRUSOR (Prusa / Orca / Bambu) ---
+
+    public static final GCodeLineHandler FILAMENT_USED_MM_LIST = numericList(
+            Pattern.compile("^;\\s*filament used\\s*\\[mm\\]\\s*=\\s*([0-9.,\\s]+)$", Pattern.CASE_INSENSITIVE),
+            COMMA, (p, mm) -> p.amountMeters = mm / 1000.0);
+
+    public static final GCodeLineHandler FILAMENT_USED_G_LIST = numericList(
+            Pattern.compile("^;\\s*filament used\\s*\\[g\\]\\s*=\\s*([0-9.,\\s]+)$", Pattern.CASE_INSENSITIVE),
+            COMMA, (p, g) -> p.amountGrams = g);
+
+    // BambuStudio: "; total filament length [mm] : 1234.56,0.00"
+    public static final GCodeLineHandler TOTAL_FILAMENT_LENGTH_LIST = numericList(
+            Pattern.compile("^;\\s*total filament length\\s*\\[mm\\]\\s*:\\s*([0-9.,\\s]+)$", Pattern.CASE_INSENSITIVE),
+            COMMA, (p, mm) -> p.amountMeters = mm / 1000.0);
+
+    // BambuStudio: "; total filament weight [g] : 3.70,0.00"
+    public static final GCodeLineHandler TOTAL_FILAMENT_WEIGHT_LIST = numericList(
+            Pattern.compile("^;\\s*total filament weight\\s*\\[g\\]\\s*:\\s*([0-9.,\\s]+)$", Pattern.CASE_INSENSITIVE),
+            COMMA, (p, g) -> p.amountGrams = g);
+
+    public static final GCodeLineHandler FILAMENT_USED_BY_EXTRUDER = onMatch(
+            Pattern.compile("^;\\s*filament used by extruder (\\d+)\\s*:\\s*([0-9.]+) m\\s*([0-9.]+) g.*$", Pattern.CASE_INSENSITIVE),
+            (m, state) -> {
+                int t = Integer.parseInt(m.group(1));
+                FilamentProfile fp = state.profile(t);
+                fp.amountMeters = Double.parseDouble(m.group(2));
+                fp.amountGrams = Double.parseDouble(m.group(3));
+            });
+
+    public static final GCodeLineHandler EXTRUDER_COLOUR = list(
+            Pattern.compile("^;\\s*extruder_colour\\s*=\\s*(.+)$", Pattern.CASE_INSENSITIVE),
+            SEMICOLON, FilamentProfile::setColor);
+
+    public static final GCodeLineHandler FILAMENT_TYPE_SEMICOLON_LIST = list(
+            Pattern.compile("^;\\s*filament_type\\s*=\\s*([A-Za-z0-9;\\s]+)$", Pattern.CASE_INSENSITIVE),
+            SEMICOLON, FilamentProfile::setMaterial);
+
+    // Bloque de configuración final: "; filament_colour = #FF8000;#0000FF"
+    public static final GCodeLineHandler FILAMENT_COLOUR_SEMICOLON_LIST = list(
+            Pattern.compile("^;\\s*filament_colour\\s*=\\s*([#\\sA-Za-z0-9;]+)$", Pattern.CASE_INSENSITIVE),
+            SEMICOLON, FilamentProfile::setColor);
+
+    // Acepta ':' (encabezado Orca/Bambu) e '=' (bloque de configuración)
+    public static final GCodeLineHandler FILAMENT_DENSITY_LIST = numericList(
+            Pattern.compile("^;\\s*filament_density\\s*[:=]\\s*([0-9.,;\\s]+)$", Pattern.CASE_INSENSITIVE),
+            COMMA_OR_SEMICOLON, (p, d) -> p.densityGcm3 = d);
+
+    public static final GCodeLineHandler FILAMENT_DIAMETER_LIST = numericList(
+            Pattern.compile("^;\\s*filament_diameter\\s*[:=]\\s*([0-9.,;\\s]+)$", Pattern.CASE_INSENSITIVE),
+            COMMA_OR_SEMICOLON, (p, d) -> p.diameterMm = d);
+
+    public static final GCodeLineHandler FILAMENT_TYPE_COMMA_LIST = list(
+            Pattern.compile("^;\\s*filament_type:\\s*([A-Za-z0-9,\\s]+)$", Pattern.CASE_INSENSITIVE),
+            COMMA, FilamentProfile::setMaterial);
+
+    public static final GCodeLineHandler FILAMENT_COLOUR_COMMA_LIST = list(
+            Pattern.compile("^;\\s*filament_colour:\\s*([#\\sA-Za-z0-9,]+)$", Pattern.CASE_INSENSITIVE),
+            COMMA, FilamentProfile::setColor);
+
+    // --- VALORES INDEXADOS (filament_xxx[n]) ---
+
+    public static final GCodeLineHandler FILAMENT_USED_MM_INDEXED = onMatch(
+            Pattern.compile("^;\\s*filament_used\\[(\\d+)\\]\\s*=\\s*([0-9.]+)\\s*\\[mm\\].*$", Pattern.CASE_INSENSITIVE),
+            (m, state) -> {
+                int toolIdx = Integer.parseInt(m.group(1));
+                state.accumulatedMM.put(toolIdx, Double.parseDouble(m.group(2)));
+                state.indexedDataFound = true;
+            });
+
+    public static final GCodeLineHandler FILAMENT_USED_G_INDEXED = onMatch(
+            Pattern.compile("^;\\s*filament_used\\[(\\d+)\\]\\s*=\\s*([0-9.]+)\\s*\\[g\\].*$", Pattern.CASE_INSENSITIVE),
+            (m, state) -> {
+                int toolIdx = Integer.parseInt(m.group(1));
+                state.accumulatedG.put(toolIdx, Double.parseDouble(m.group(2)));
+                state.indexedDataFound = true;
+            });
+
+    public static final GCodeLineHandler FILAMENT_TYPE_INDEXED = indexed(
+            Pattern.compile("^;\\s*filament_type\\[(\\d+)\\]\\s*=\\s*(\\S+).*$", Pattern.CASE_INSENSITIVE),
+            FilamentProfile::setMaterial);
+
+    public static final GCodeLineHandler FILAMENT_COLOUR_INDEXED = indexed(
+            Pattern.compile("^;\\s*filament_colour\\[(\\d+)\\]\\s*=\\s*(#[0-9a-fA-F]{6}|\\S+).*$", Pattern.CASE_INSENSITIVE),
+            FilamentProfile::setColor);
+
+    public static final GCodeLineHandler FILAMENT_DENSITY_INDEXED = indexed(
+            Pattern.compile("^;\\s*filament_density\\[(\\d+)\\]\\s*:\\s*([0-9.]+)\\b.*$", Pattern.CASE_INSENSITIVE),
+            (p, v) -> p.densityGcm3 = Double.parseDouble(v));
+
+    public static final GCodeLineHandler FILAMENT_DIAMETER_INDEXED = indexed(
+            Pattern.compile("^;\\s*filament_diameter\\[(\\d+)\\]\\s*:\\s*([0-9.]+)\\b.*$", Pattern.CASE_INSENSITIVE),
+            (p, v) -> p.diameterMm = Double.parseDouble(v));
+
+    public static final List<GCodeLineHandler> INDEXED = List.of(
+            FILAMENT_USED_MM_INDEXED, FILAMENT_USED_G_INDEXED,
+            FILAMENT_TYPE_INDEXED, FILAMENT_COLOUR_INDEXED,
+            FILAMENT_DENSITY_INDEXED, FILAMENT_DIAMETER_INDEXED);
+
+    // --- LEGACY (valor único, se aplica a T0) ---
+
+    public static final GCodeLineHandler LEGACY_FILAMENT_MM = onMatch(
+            Pattern.compile("^;\\s*filament used\\s*\\[mm\\]\\s*=\\s*([0-9.]+)\\b\\s*$", Pattern.CASE_INSENSITIVE),
+            (m, state) -> {
+                state.legacyFilamentMM = Double.parseDouble(m.group(1));
+            });
+
+    public static final GCodeLineHandler LEGACY_FILAMENT_G = onMatch(
+            Pattern.compile("^;\\s*filament used\\s*\\[g\\]\\s*=\\s*([0-9.]+)\\b\\s*$", Pattern.CASE_INSENSITIVE),
+            (m, state) -> {
+                state.legacyFilamentG = Double.parseDouble(m.group(1));
+            });
+
+    public static final GCodeLineHandler LEGACY_TOTAL_M = onMatch(
+            Pattern.compile("^;\\s*Filament used\\s*:\\s*([0-9.]+)\\s*m\\b.*$", Pattern.CASE_INSENSITIVE),
+            (m, state) -> {
+                state.legacyTotalM = Double.parseDouble(m.group(1));
+            });
+
+    public static final GCodeLineHandler LEGACY_TOTAL_G = onMatch(
+            Pattern.compile("^;\\s*filament\\s*used\\s*=\\s*([0-9.]+)\\s*g\\b.*$", Pattern.CASE_INSENSITIVE),
+            (m, state) -> {
+                state.legacyTotalG = Double.parseDouble(m.group(1));
+            });
+
+    public static final GCodeLineHandler LEGACY_DENSITY = onMatch(
+            Pattern.compile("^;\\s*filament_density\\s*:\\s*([0-9.]+)\\b\\s*$", Pattern.CASE_INSENSITIVE),
+            (m, state) -> state.profile(0).densityGcm3 = Double.parseDouble(m.group(1)));
+
+    public static final GCodeLineHandler LEGACY_DIAMETER = onMatch(
+            Pattern.compile("^;\\s*filament_diameter\\s*:\\s*([0-9.]+)\\b\\s*$", Pattern.CASE_INSENSITIVE),
+            (m, state) -> state.profile(0).diameterMm = Double.parseDouble(m.group(1)));
+
+    private static final Pattern P_FILAMENT_TYPE = Pattern.compile("^;\\s*filament_type\\s*=\\s*(\\S+).*$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern P_MATERIAL = Pattern.compile("^;\\s*MATERIAL:?\\s*(\\S+).*$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern P_FILAMENT_COLOR = Pattern.compile("^;\\s*filament_colour\\s*=\\s*(#[0-9a-fA-F]{6}|\\S+).*$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern P_MATERIAL_COLOR = Pattern.compile("^;\\s*MATERIAL_COLOR:?\\s*(#[0-9a-fA-F]{6}|\\S+).*$", Pattern.CASE_INSENSITIVE);
+
+    // Tipo: "filament_type = X" tiene prioridad sobre ";MATERIAL: X"
+    public static final GCodeLineHandler LEGACY_MATERIAL = (line, state) -> {
+        Matcher m = P_FILAMENT_TYPE.matcher(line);
+        if (m.matches() || (m = P_MATERIAL.matcher(line)).matches()) {
+            state.profile(0).setMaterial(m.group(1));
+        }
+    };
+
+    public static final GCodeLineHandler LEGACY_COLOR = (line, state) -> {
+        Matcher m = P_FILAMENT_COLOR.matcher(line);
+        if (m.matches() || (m = P_MATERIAL_COLOR.matcher(line)).matches()) {
+            state.profile(0).setColor(m.group(1));
+        }
+    };
+
+    public static final List<GCodeLineHandler> LEGACY = List.of(
+            LEGACY_FILAMENT_MM, LEGACY_FILAMENT_G, LEGACY_TOTAL_M, LEGACY_TOTAL_G,
+            LEGACY_DENSITY, LEGACY_DIAMETER, LEGACY_MATERIAL, LEGACY_COLOR);
+
+    /**
+     * Aplica los handlers legacy solo mientras no se hayan encontrado datos indexados.
+     */
+    public static final GCodeLineHandler LEGACY_UNLESS_INDEXED = (line, state) -> {
+        if (state.indexedDataFound) return;
+        for (GCodeLineHandler handler : LEGACY) {
+            handler.handle(line, state);
+        }
+    };
+}
@@ -0,0 +1,9 @@
+package com.calmasalud.hubi.core.service.gcode;
+
+/**
+ * Procesa una línea de G-code (ya recortada) y vuelca lo que reconozca en el estado del parseo.
+ */
+@FunctionalInterface
+public interface GCodeLineHandler {
+    void handle(String line, GCodeParseState state);
+}
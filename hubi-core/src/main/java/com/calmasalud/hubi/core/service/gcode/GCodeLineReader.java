@@ -0,0 +1,98 @@
+package com.calmasalud.hubi.core.service.gcode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Lector de líneas que, a diferencia de BufferedReader, informa el byte donde empieza cada línea.
+ * Corta en '\n' (quitando el '\r' final) y decodifica cada línea como UTF-8.
+ * Lo usa el parser para construir el índice de capas sin una segunda lectura.
+ */
+public class GCodeLineReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int pos = 0;
+    private int limit = 0;
+    private long bufferStart;  // Byte del archivo que corresponde a buffer[0]
+    private long lineOffset = -1;
+    private byte[] lineBuffer = new byte[256];
+
+    public GCodeLineReader(InputStream in) {
+        this(in, 0L);
+    }
+
+    /**
+     * @param startOffset Byte del archivo en el que está posicionado el stream (para lecturas por rango).
+     */
+    public GCodeLineReader(InputStream in, long startOffset) {
+        this.in = in;
+        this.bufferStart = startOffset;
+    }
+
+    /**
+     * @return La siguiente línea sin el fin de línea, o null al final del stream.
+     */
+    public String readLine() throws IOException {
+        int length = 0;
+        boolean started = false;
+        while (true) {
+            if (pos >= limit && !fill()) {
+                if (!started) return null;
+                break;
+            }
+            if (!started) {
+                lineOffset = bufferStart + pos;
+                started = true;
+            }
+            int start = pos;
+            while (pos < limit && buffer[pos] != '\n') pos++;
+            int chunk = pos - start;
+            if (length + chunk > lineBuffer.length) {
+                lineBuffer = Arrays.copyOf(lineBuffer, Math.max(lineBuffer.length * 2, length + chunk));
+            }
+            System.arraycopy(buffer, start, lineBuffer, length, chunk);
+            length += chunk;
+            if (pos < limit) {
+                pos++; // Consume el '\n'
+                break;
+            }
+        }
+        if (length > 0 && lineBuffer[length - 1] == '\r') length--;
+        return new String(lineBuffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return Byte donde empieza la última línea devuelta por readLine().
+     */
+    public long lineOffset() {
+        return lineOffset;
+    }
+
+    /**
+     * @return Byte siguiente a lo consumido (al final del stream, el largo leído).
+     */
+    public long position() {
+        return bufferStart + pos;
+    }
+
+    private boolean fill() throws IOException {
+        bufferStart += limit;
+        pos = 0;
+        limit = 0;
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) return false;
+        limit = n;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
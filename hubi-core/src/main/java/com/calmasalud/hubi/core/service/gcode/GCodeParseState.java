@@ -0,0 +1,154 @@
+package com.calmasalud.hubi.core.service.gcode;
+
+import com.calmasalud.hubi.core.model.FilamentProfile;
+import com.calmasalud.hubi.core.model.LayerIndex;
+import com.calmasalud.hubi.core.model.PrintInfo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Estado compartido entre los handlers durante el parseo de un G-code.
+ * Los valores indexados (filament_used[n]) y legacy se acumulan y se asignan en finish().
+ * Si aun así falta el peso de una herramienta, se estima a partir de la extrusión medida.
+ */
+public class GCodeParseState {
+
+    public final PrintInfo info;
+
+    public int currentTool = -1;
+    public boolean indexedDataFound = false;
+
+    // Valores reportados en el header (por índice)
+    public final Map<Integer, Double> accumulatedMM = new HashMap<>();
+    public final Map<Integer, Double> accumulatedG = new HashMap<>();
+
+    // Valores legacy (solo T0)
+    public double legacyFilamentMM = Double.NaN;
+    public double legacyFilamentG = Double.NaN;
+    public double legacyTotalM = Double.NaN;
+    public double legacyTotalG = Double.NaN;
+
+    // Extrusión real por herramienta (fallback cuando el header no informa el peso)
+    public final ExtrusionAnalyzer extrusion = new ExtrusionAnalyzer();
+
+    // Tiempo estimado a partir de los movimientos (fallback cuando no hay encabezado de tiempo)
+    public final PrintTimeEstimator timeEstimator = new PrintTimeEstimator();
+
+    // Índice de capas: solo cuando el lector informa los bytes de cada línea (null en caso contrario)
+    public final LayerIndex.Builder layers;
+    public long lineOffset = -1;
+    private long zChangeOffset = 0;
+    private double zChangeExtrudedMm = 0.0;
+    private int zChangeColorChanges = 0;
+
+    public GCodeParseState(PrintInfo info) {
+        this(info, false);
+    }
+
+    public GCodeParseState(PrintInfo info, boolean indexLayers) {
+        this.info = info;
+        this.layers = indexLayers ? new LayerIndex.Builder() : null;
+    }
+
+    public FilamentProfile profile(int toolIndex) {
+        return info.profile(toolIndex);
+    }
+
+    /**
+     * Asigna los acumulados indexados y aplica el fallback legacy sobre T0.
+     */
+    public void finish() {
+        // 1. Peso/Largo de los acumuladores indexados (multi-color)
+        accumulatedMM.forEach((toolId, mm) -> {
+            if (mm > 0) profile(toolId).amountMeters = mm / 1000.0;
+        });
+        accumulatedG.forEach((toolId, g) -> {
+            if (g > 0) profile(toolId).amountGrams = g;
+        });
+
+        // 2. Fallback legacy para T0
+        FilamentProfile t0 = profile(0);
+        if (!Double.isNaN(legacyFilamentMM)) {
+            t0.amountMeters = legacyFilamentMM / 1000.0;
+        } else if (!Double.isNaN(legacyTotalM)) {
+            t0.amountMeters = legacyTotalM;
+        }
+        if (!Double.isNaN(legacyFilamentG)) {
+            t0.amountGrams = legacyFilamentG;
+        } else if (!Double.isNaN(legacyTotalG)) {
+            t0.amountGrams = legacyTotalG;
+        }
+
+        applyExtrusionFallback();
+
+        timeEstimator.finish();
+        info.estimatedSeconds = Math.round(timeEstimator.getTotalSeconds());
+        info.layerSeconds.clear();
+        info.layerSeconds.addAll(timeEstimator.getLayerSeconds());
+    }
+
+    /**
+     * Envía un comando de máquina (G/M/T) a los analizadores de movimiento.
+     */
+    public void acceptCommand(String line) {
+        if (layers == null) {
+            extrusion.accept(line);
+            timeEstimator.accept(line);
+            return;
+        }
+        double extrudedBefore = extrusion.getTotalExtrudedMm();
+        double zBefore = timeEstimator.getZ();
+        int layersBefore = timeEstimator.getLayerCount();
+        extrusion.accept(line);
+        timeEstimator.accept(line);
+
+        // La capa empieza en la línea que subió la Z (antes del primer movimiento que extruye a esa altura)
+        if (timeEstimator.getZ() != zBefore) {
+            zChangeOffset = lineOffset;
+            zChangeExtrudedMm = extrudedBefore;
+            zChangeColorChanges = info.colorChanges;
+        }
+        if (timeEstimator.getLayerCount() > layersBefore) {
+            if (zChangeOffset > layers.lastOffset()) {
+                layers.add(zChangeOffset, timeEstimator.getZ(), Math.max(currentTool, 0), zChangeExtrudedMm, zChangeColorChanges);
+            } else {
+                layers.add(lineOffset, timeEstimator.getZ(), Math.max(currentTool, 0), extrudedBefore, info.colorChanges);
+            }
+        }
+    }
+
+    /**
+     * Cierra el índice de capas con el largo total leído.
+     */
+    public void finishLayers(long endOffset) {
+        if (layers == null) return;
+        info.layerIndex = layers.build(endOffset, info.colorChanges);
+    }
+
+    /**
+     * Completa los gramos de las herramientas sin peso informado: primero a partir del largo
+     * del header (si existe) y si no, del largo neto extruido en los movimientos.
+     */
+    private void applyExtrusionFallback() {
+        Map<Integer, Double> extruded = extrusion.getExtrudedMm();
+        for (Map.Entry<Integer, Double> entry : extruded.entrySet()) {
+            profile(entry.getKey()); // Asegura el perfil de cada herramienta que extruyó
+        }
+        for (FilamentProfile profile : info.filamentProfiles.values()) {
+            if (profile.hasAmountGrams()) continue;
+
+            double lengthMm;
+            if (profile.hasAmountMeters()) {
+                lengthMm = profile.amountMeters * 1000.0;
+            } else {
+                Double mm = extruded.get(profile.getToolIndex());
+                if (mm == null) continue;
+                lengthMm = mm;
+                profile.amountMeters = mm / 1000.0;
+            }
+            profile.amountGrams = profile.estimateGrams(lengthMm);
+            profile.amountEstimated = true;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.calmasalud.hubi.core.service.gcode;
+
+import com.calmasalud.hubi.core.model.PrintInfo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Bucle común de parseo de G-code. Detecta el slicer en las primeras líneas de comentario
+ * y luego aplica solo los handlers de ese dialecto. Los movimientos (G0/G1...) no pasan por regex:
+ * solo alimentan al ExtrusionAnalyzer y al PrintTimeEstimator.
+ */
+public final class GCodeParser {
+
+    /** Cantidad máxima de líneas iniciales que se inspeccionan para detectar el slicer. */
+    public static final int DETECTION_WINDOW = 50;
+
+    // Cada cuántas líneas se revisa si el hilo fue interrumpido (cancelación cooperativa)
+    private static final int INTERRUPT_CHECK_LINES = 8192;
+
+    private static final Pattern P_COLOR_CHANGE = Pattern.compile("^(;\\s*COLOR_CHANGE|M600)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern P_TOOL_CHANGE = Pattern.compile("^T(\\d+)\\s*(;.*)?$");
+
+    private GCodeParser() {
+    }
+
+    /**
+     * Parsea el G-code completo volcando los resultados en info.
+     * @return El dialecto utilizado.
+     */
+    public static SlicerDialect parse(BufferedReader reader, PrintInfo info) throws IOException {
+        GCodeParseState state = new GCodeParseState(info);
+        SlicerDialect dialect = parse(reader::readLine, () -> -1L, state);
+        state.finish();
+        return dialect;
+    }
+
+    /**
+     * Igual que parse(BufferedReader, ...) pero, como el lector informa el byte de cada línea,
+     * además construye el índice de capas (info.layerIndex).
+     */
+    public static SlicerDialect parse(GCodeLineReader reader, PrintInfo info) throws IOException {
+        GCodeParseState state = new GCodeParseState(info, true);
+        SlicerDialect dialect = parse(reader::readLine, reader::lineOffset, state);
+        state.finishLayers(reader.position());
+        state.finish();
+        return dialect;
+    }
+
+    @FunctionalInterface
+    private interface LineSupplier {
+        String readLine() throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface OffsetSupplier {
+        long lineOffset();
+    }
+
+    private static SlicerDialect parse(LineSupplier reader, OffsetSupplier offsets, GCodeParseState state) throws IOException {
+        // 1. Detección: se guardan las líneas leídas para reprocesarlas con el dialecto elegido
+        List<String> header = new ArrayList<>();
+        List<Long> headerOffsets = new ArrayList<>();
+        SlicerDialect dialect = null;
+        String line;
+        while (dialect == null && header.size() < DETECTION_WINDOW && (line = reader.readLine()) != null) {
+            header.add(line);
+            headerOffsets.add(offsets.lineOffset());
+            String l = line.trim();
+            if (l.startsWith(";")) {
+                dialect = SlicerDialects.detect(l);
+            }
+        }
+        if (dialect == null) {
+            dialect = SlicerDialects.generic();
+        }
+
+        // 2. Parseo con los handlers del dialecto
+        List<GCodeLineHandler> handlers = dialect.commentHandlers();
+        for (int i = 0; i < header.size(); i++) {
+            state.lineOffset = headerOffsets.get(i);
+            processLine(header.get(i), handlers, state);
+        }
+        long lines = 0;
+        while ((line = reader.readLine()) != null) {
+            if (++lines % INTERRUPT_CHECK_LINES == 0 && Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Parseo de G-code cancelado");
+            }
+            state.lineOffset = offsets.lineOffset();
+            processLine(line, handlers, state);
+        }
+        return dialect;
+    }
+
+    /**
+     * Aplica los handlers de comentarios de un dialecto a líneas ya extraídas ("; clave = valor"),
+     * sin movimientos. Lo usa el lector de G-code binario, cuyos metadatos van en bloques aparte.
+     */
+    public static void parseComments(Iterable<String> commentLines, SlicerDialect dialect, PrintInfo info) {
+        GCodeParseState state = new GCodeParseState(info);
+        List<GCodeLineHandler> handlers = dialect.commentHandlers();
+        for (String line : commentLines) {
+            processLine(line, handlers, state);
+        }
+        state.finish();
+    }
+
+    private static void processLine(String rawLine, List<GCodeLineHandler> handlers, GCodeParseState state) {
+        String l = rawLine.trim();
+        if (l.isEmpty()) return;
+
+        char first = l.charAt(0);
+        if (first == ';') {
+            for (GCodeLineHandler handler : handlers) {
+                handler.handle(l, state);
+            }
+            if (P_COLOR_CHANGE.matcher(l).find()) {
+                state.info.colorChanges++;
+            }
+        } else if (first == 'G') {
+            // Movimientos: solo interesan para la extrusión y el tiempo estimado
+            state.acceptCommand(l);
+        } else if (first == 'T') {
+            // Solo contamos el cambio de color si la herramienta anterior fue inicializada
+            Matcher m = P_TOOL_CHANGE.matcher(l);
+            if (m.matches()) {
+                int newTool = Integer.parseInt(m.group(1));
+                if (state.currentTool != -1 && newTool != state.currentTool) {
+                    state.info.colorChanges++;
+                }
+                state.currentTool = newTool;
+                state.extrusion.setTool(newTool);
+            }
+        } else if (first == 'M' || first == 'm') {
+            if (P_COLOR_CHANGE.matcher(l).find()) {
+                state.info.colorChanges++;
+            } else {
+                state.acceptCommand(l);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.calmasalud.hubi.core.service.gcode;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Conversión de los valores de texto de los encabezados de slicer (números y duraciones).
+ */
+public final class GCodeValues {
+
+    // Patrones de duración ("1d 2h 3m 4s" / "01:02:03")
+    private static final Pattern P_DURATION_PART = Pattern.compile("(\\d+)([dhms])");
+    private static final Pattern P_DURATION_CLOCK = Pattern.compile("(\\d+):(\\d{2})(?::(\\d{2}))?");
+
+    private GCodeValues() {
+    }
+
+    /**
+     * Convierte un tiempo legible ("1d 2h 3m 4s", "2h 15m", "01:02:03") a segundos.
+     * @return Los segundos, o -1 si el formato no se reconoce.
+     */
+    public static long parseDurationSeconds(String raw) {
+        if (raw == null) return -1;
+        String t = raw.toLowerCase(Locale.ROOT).replaceAll("\\s+", "");
+        Matcher parts = P_DURATION_PART.matcher(t);
+        long total = 0;
+        boolean found = false;
+        while (parts.find()) {
+            long value = Long.parseLong(parts.group(1));
+            switch (parts.group(2)) {
+                case "d" -> total += value * 86400;
+                case "h" -> total += value * 3600;
+                case "m" -> total += value * 60;
+                default -> total += value;
+            }
+            found = true;
+        }
+        if (found) return total;
+        Matcher clock = P_DURATION_CLOCK.matcher(raw);
+        if (clock.find()) {
+            long h = Long.parseLong(clock.group(1));
+            long m = Long.parseLong(clock.group(2));
+            long s = clock.group(3) != null ? Long.parseLong(clock.group(3)) : 0;
+            return h * 3600 + m * 60 + s;
+        }
+        return -1;
+    }
+
+    /**
+     * Parsea un valor numérico de una lista del header (acepta coma decimal y unidad final "m"/"g").
+     * @return El valor, o NaN si no es válido.
+     */
+    public static double parseNumber(String raw) {
+        if (raw == null) return Double.NaN;
+        String value = raw.trim().replace(',', '.');
+        if (value.endsWith("m") || value.endsWith("g")) {
+            value = value.substring(0, value.length() - 1).trim();
+        }
+        if (value.isEmpty() || value.equalsIgnoreCase("N/A") || value.equalsIgnoreCase("N/D")) return Double.NaN;
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.calmasalud.hubi.core.service.gcode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.calmasalud.hubi.core.service.gcode.GCodeHandlers.*;
+
+/**
+ * Dialecto de respaldo cuando no se reconoce el slicer: aplica todos los patrones conocidos
+ * (el comportamiento histórico del extractor). No se registra en ServiceLoader.
+ */
+public class GenericDialect implements SlicerDialect {
+
+    private static final List<GCodeLineHandler> HANDLERS;
+
+    static {
+        List<GCodeLineHandler> handlers = new ArrayList<>(List.of(
+                FILAMENT_TYPE_SEMICOLON_LIST,
+                FILAMENT_USED_MM_LIST,
+                FILAMENT_USED_G_LIST,
+                FILAMENT_USED_BY_EXTRUDER,
+                TIME_SECONDS,
+                EXTRUDER_COLOUR,
+                TIME_HMS_TEXT,
+                TIME_ELAPSED,
+                TOTAL_LAYERS,
+                FILAMENT_DENSITY_LIST,
+                FILAMENT_DIAMETER_LIST,
+                FILAMENT_TYPE_COMMA_LIST,
+                FILAMENT_COLOUR_COMMA_LIST));
+        handlers.addAll(INDEXED);
+        handlers.add(LEGACY_UNLESS_INDEXED);
+        handlers.add(LAYER_HEIGHT);
+        handlers.add(OBJECT);
+        HANDLERS = Collections.unmodifiableList(handlers);
+    }
+
+    @Override
+    public String getName() {
+        return "Genérico";
+    }
+
+    @Override
+    public boolean detects(String headerLine) {
+        return false;
+    }
+
+    @Override
+    public List<GCodeLineHandler> commentHandlers() {
+        return HANDLERS;
+    }
+}
@@ -0,0 +1,273 @@
+package com.calmasalud.hubi.core.service.gcode;
+
+import com.calmasalud.hubi.core.model.LayerIndex;
+import com.calmasalud.hubi.core.model.PrintInfo;
+import com.calmasalud.hubi.core.service.FileCacheKey;
+import com.calmasalud.hubi.core.service.storage.StoredContent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Persistencia de índices de capas en SistemaHUBI/CacheCapas (junto a la caché de miniaturas),
+ * en binario compacto: cabecera + por capa (offset, z, herramienta, E acumulado, cambios de color).
+ * La clave es FileCacheKey, así que un G-code modificado invalida su índice. Como en ThumbnailCache, el tamaño
+ * total está acotado: se descartan primero los índices menos usados (LRU por fecha de modificación).
+ * También resuelve las lecturas por rango de capas con I/O posicional sobre el FileChannel; si el G-code está
+ * comprimido en disco (StoragePolicy) los offsets son del contenido original y el rango se lee descomprimiendo.
+ */
+public class LayerIndexStore {
+
+    public static final Path CACHE_BASE =
+            Paths.get(System.getProperty("user.home"), "SistemaHUBI", "CacheCapas");
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    private static final int MAGIC = 0x484C5831; // "HLX1"
+    private static final String EXTENSION = ".layers";
+
+    private final Path directory;
+    private final long maxBytes;
+
+    public LayerIndexStore() {
+        this(CACHE_BASE, DEFAULT_MAX_BYTES);
+    }
+
+    public LayerIndexStore(Path directory) {
+        this(directory, DEFAULT_MAX_BYTES);
+    }
+
+    public LayerIndexStore(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return El índice persistido del G-code, o null si no existe o quedó desactualizado.
+     */
+    public LayerIndex load(File gcode) {
+        Path file = directory.resolve(FileCacheKey.of(gcode) + EXTENSION);
+        if (!Files.isRegularFile(file)) return null;
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis())); // Acierto: pasa al final de la LRU
+        } catch (IOException e) {
+            return null; // Se acaba de descartar
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) return null;
+            int count = in.readInt();
+            long endOffset = in.readLong();
+            int totalColorChanges = in.readInt();
+            long[] offsets = new long[count];
+            double[] z = new double[count];
+            int[] tools = new int[count];
+            double[] cumulativeE = new double[count];
+            int[] colorChanges = new int[count];
+            for (int i = 0; i < count; i++) {
+                offsets[i] = in.readLong();
+                z[i] = in.readFloat();
+                tools[i] = in.readShort();
+                cumulativeE[i] = in.readDouble();
+                colorChanges[i] = in.readInt();
+            }
+            return new LayerIndex(offsets, z, tools, cumulativeE, colorChanges, endOffset, totalColorChanges);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("⚠️ Índice de capas ilegible para " + gcode.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void save(File gcode, LayerIndex index) {
+        try {
+            Files.createDirectories(directory);
+            Path target = directory.resolve(FileCacheKey.of(gcode) + EXTENSION);
+            Path tmp = Files.createTempFile(directory, "capas", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(index.size());
+                out.writeLong(index.getEndOffset());
+                out.writeInt(index.getTotalColorChanges());
+                for (int i = 0; i < index.size(); i++) {
+                    out.writeLong(index.offset(i));
+                    out.writeFloat((float) index.z(i)); // Precisión de float sobra para alturas de capa
+                    out.writeShort(index.tool(i));
+                    out.writeDouble(index.cumulativeE(i));
+                    out.writeInt(index.colorChangesBefore(i));
+                }
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            evictIfNeeded();
+        } catch (IOException e) {
+            System.err.println("⚠️ No se pudo guardar el índice de capas de " + gcode.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Borra los índices menos usados hasta que la caché quede por debajo del límite.
+     * Solo cuenta los .layers: los temporales de otra escritura en curso no se tocan.
+     */
+    private synchronized void evictIfNeeded() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path entry : stream) {
+                try {
+                    total += Files.size(entry);
+                    entries.add(entry);
+                } catch (IOException e) {
+                    // Descartado por otra instancia mientras se recorría
+                }
+            }
+        }
+        if (total <= maxBytes) return;
+
+        entries.sort(Comparator.comparing(LayerIndexStore::lastModified));
+        for (Path entry : entries) {
+            if (total <= maxBytes) break;
+            try {
+                long size = Files.size(entry);
+                if (Files.deleteIfExists(entry)) total -= size;
+            } catch (IOException e) {
+                // Ya no está
+            }
+        }
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /**
+     * Devuelve el índice persistido o, si no existe, lo construye con un parseo completo y lo guarda.
+     * @return El índice, o null si el archivo no se pudo leer.
+     */
+    public LayerIndex getOrBuild(File gcode) {
+        LayerIndex index = load(gcode);
+        if (index != null) return index;
+        try (GCodeLineReader reader = new GCodeLineReader(StoredContent.newInputStream(gcode.toPath()))) {
+            PrintInfo info = new PrintInfo();
+            GCodeParser.parse(reader, info);
+            index = info.layerIndex;
+        } catch (IOException e) {
+            System.err.println("⚠️ No se pudo indexar " + gcode.getName() + ": " + e.getMessage());
+            return null;
+        }
+        save(gcode, index);
+        return index;
+    }
+
+    /**
+     * Abre un lector sobre las capas [fromLayer, toLayer] leyendo solo ese rango de bytes.
+     */
+    public static BufferedReader openLayers(Path gcode, LayerIndex index, int fromLayer, int toLayer) throws IOException {
+        if (fromLayer < 0 || toLayer >= index.size() || fromLayer > toLayer) {
+            throw new IllegalArgumentException("Rango de capas inválido: " + fromLayer + ".." + toLayer);
+        }
+        long start = index.offset(fromLayer);
+        long end = index.endOffset(toLayer);
+        InputStream range;
+        if (StoredContent.isCompressed(gcode)) {
+            // Sin acceso posicional: se descomprime (sin guardar) hasta el inicio del rango
+            InputStream in = StoredContent.newInputStream(gcode);
+            try {
+                in.skipNBytes(start);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            range = new LimitedInputStream(in, end - start);
+        } else {
+            FileChannel channel = FileChannel.open(gcode, StandardOpenOption.READ);
+            range = new RangeInputStream(channel, start, end);
+        }
+        return new BufferedReader(new InputStreamReader(range, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * InputStream que corta después de limit bytes (rango de un G-code comprimido).
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = in.read();
+            if (b >= 0) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) remaining -= n;
+            return n;
+        }
+    }
+
+    /**
+     * InputStream sobre [start, end) de un FileChannel con lecturas posicionales (no mueve la posición del canal).
+     */
+    private static final class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        RangeInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) return -1;
+            int toRead = (int) Math.min(len, end - position);
+            int n = channel.read(ByteBuffer.wrap(b, off, toRead), position);
+            if (n < 0) return -1;
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
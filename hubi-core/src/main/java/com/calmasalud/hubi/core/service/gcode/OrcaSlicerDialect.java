@@ -0,0 +1,46 @@
+package com.calmasalud.hubi.core.service.gcode;
+
+import java.util.List;
+import java.util.Locale;
+
+import static com.calmasalud.hubi.core.service.gcode.GCodeHandlers.*;
+
+/**
+ * OrcaSlicer: "; generated by OrcaSlicer 2.1.1 on ...".
+ * Encabezado con listas separadas por coma (filament_density: 1.24,1.27) y número total de capas.
+ */
+public class OrcaSlicerDialect implements SlicerDialect {
+
+    private static final List<GCodeLineHandler> HANDLERS = List.of(
+            TIME_HMS_TEXT,
+            TOTAL_LAYERS,
+            FILAMENT_USED_MM_LIST,
+            FILAMENT_USED_G_LIST,
+            EXTRUDER_COLOUR,
+            FILAMENT_TYPE_SEMICOLON_LIST,
+            FILAMENT_COLOUR_SEMICOLON_LIST,
+            FILAMENT_TYPE_COMMA_LIST,
+            FILAMENT_COLOUR_COMMA_LIST,
+            FILAMENT_DENSITY_LIST,
+            FILAMENT_DIAMETER_LIST,
+            FILAMENT_USED_MM_INDEXED,
+            FILAMENT_USED_G_INDEXED,
+            LAYER_HEIGHT,
+            OBJECT);
+
+    @Override
+    public String getName() {
+        return "OrcaSlicer";
+    }
+
+    @Override
+    public boolean detects(String headerLine) {
+        String l = headerLine.toLowerCase(Locale.ROOT);
+        return l.startsWith(";") && l.contains("generated by orcaslicer");
+    }
+
+    @Override
+    public List<GCodeLineHandler> commentHandlers() {
+        return HANDLERS;
+    }
+}
@@ -0,0 +1,339 @@
+package com.calmasalud.hubi.core.service.gcode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.calmasalud.hubi.core.service.gcode.GCodeCommands.*;
+
+/**
+ * Estimador cinemático del tiempo de impresión para G-code sin encabezado de tiempo.
+ * Modela cada movimiento (G0/G1/G2/G3) como un trapecio de velocidad (aceleración, crucero, frenado)
+ * con la velocidad de unión entre movimientos calculada por desvío de unión (junction deviation).
+ * Usa un único movimiento de anticipación, por lo que recorre el archivo en una pasada y con memoria acotada
+ * (solo crece la lista de tiempos por capa).
+ * Límites soportados: F (modal), M204 S/P/T/R (aceleraciones), M205 J (desvío de unión), G4 (pausa).
+ */
+public class PrintTimeEstimator {
+
+    public static final double DEFAULT_ACCELERATION = 1500.0;      // mm/s²
+    public static final double DEFAULT_JUNCTION_DEVIATION = 0.013; // mm
+    public static final double DEFAULT_FEEDRATE = 50.0;            // mm/s
+
+    private static final double EPSILON = 1e-9;
+    private static final double LAYER_Z_TOLERANCE = 1e-4;
+
+    // --- Estado de la máquina ---
+    private boolean absoluteXYZ = true;
+    private boolean relativeE = false;
+    private double x, y, z, e;
+    private double feedrate = DEFAULT_FEEDRATE; // mm/s
+    private double printAcceleration = DEFAULT_ACCELERATION;
+    private double travelAcceleration = DEFAULT_ACCELERATION;
+    private double retractAcceleration = DEFAULT_ACCELERATION;
+    private double junctionDeviation = DEFAULT_JUNCTION_DEVIATION;
+
+    // --- Movimiento pendiente (anticipación de un movimiento) ---
+    private Move pending;
+    private double lastExitSpeed = 0.0;
+
+    // --- Resultados ---
+    private double totalSeconds = 0.0;
+    private double preambleSeconds = 0.0; // Tiempo antes de la primera capa (calentado, homing...)
+    private final List<Double> layerSeconds = new ArrayList<>();
+    private double layerZ = Double.NaN;
+
+    /** Movimiento ya resuelto en longitud, velocidad nominal, aceleración y direcciones de entrada/salida. */
+    private static final class Move {
+        double length;
+        double nominal;
+        double acceleration;
+        double entrySpeed;
+        double[] entryDir; // null si no hay desplazamiento XYZ (solo extrusor)
+        double[] exitDir;
+        boolean startsLayer;
+    }
+
+    /**
+     * Procesa una línea de comando ya recortada (G/M).
+     */
+    public void accept(String line) {
+        int end = commandEnd(line);
+        if (end < 2) return;
+        char letter = Character.toUpperCase(line.charAt(0));
+        int code = parseCode(line, end);
+        if (code < 0) return;
+
+        if (letter == 'G') {
+            switch (code) {
+                case 0, 1 -> linearMove(line, end);
+                case 2, 3 -> arcMove(line, end, code == 2);
+                case 4 -> dwell(line, end);
+                case 90 -> { absoluteXYZ = true; relativeE = false; }
+                case 91 -> { absoluteXYZ = false; relativeE = true; }
+                case 92 -> setPosition(line, end);
+                default -> { }
+            }
+        } else if (letter == 'M') {
+            switch (code) {
+                case 82 -> relativeE = false;
+                case 83 -> relativeE = true;
+                case 204 -> setAccelerations(line, end);
+                case 205 -> {
+                    double j = parseParam(line, end, 'J');
+                    if (j > 0) junctionDeviation = j;
+                }
+                default -> { }
+            }
+        }
+    }
+
+    // --- COMANDOS ---
+
+    private void linearMove(String line, int end) {
+        updateFeedrate(line, end);
+        double tx = target(parseParam(line, end, 'X'), x);
+        double ty = target(parseParam(line, end, 'Y'), y);
+        double tz = target(parseParam(line, end, 'Z'), z);
+        double de = extrusionDelta(parseParam(line, end, 'E'));
+
+        double dx = tx - x, dy = ty - y, dz = tz - z;
+        double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        x = tx; y = ty; z = tz;
+
+        if (length > EPSILON) {
+            double[] dir = {dx / length, dy / length, dz / length};
+            queue(length, de, dir, dir);
+        } else if (Math.abs(de) > EPSILON) {
+            // Retracción / desretracción: solo se mueve el extrusor
+            queue(Math.abs(de), de, null, null);
+        }
+    }
+
+    private void arcMove(String line, int end, boolean clockwise) {
+        updateFeedrate(line, end);
+        double sx = x, sy = y;
+        double tx = target(parseParam(line, end, 'X'), x);
+        double ty = target(parseParam(line, end, 'Y'), y);
+        double tz = target(parseParam(line, end, 'Z'), z);
+        double de = extrusionDelta(parseParam(line, end, 'E'));
+
+        double i = parseParam(line, end, 'I');
+        double j = parseParam(line, end, 'J');
+        double r = parseParam(line, end, 'R');
+        double cx, cy;
+        if (!Double.isNaN(i) || !Double.isNaN(j)) {
+            cx = sx + (Double.isNaN(i) ? 0 : i);
+            cy = sy + (Double.isNaN(j) ? 0 : j);
+        } else if (!Double.isNaN(r)) {
+            // Centro a partir del radio (misma convención que Marlin/grbl)
+            double ex = tx - sx, ey = ty - sy;
+            double chord = Math.hypot(ex, ey);
+            if (chord < EPSILON) return;
+            double h = -Math.sqrt(Math.max(0, 4 * r * r - chord * chord)) / chord;
+            if (!clockwise) h = -h;
+            if (r < 0) h = -h;
+            cx = sx + (ex - ey * h) / 2;
+            cy = sy + (ey + ex * h) / 2;
+        } else {
+            return;
+        }
+
+        double radius = Math.hypot(sx - cx, sy - cy);
+        double a0 = Math.atan2(sy - cy, sx - cx);
+        double a1 = Math.atan2(ty - cy, tx - cx);
+        double sweep = clockwise ? a0 - a1 : a1 - a0;
+        if (sweep <= EPSILON) sweep += 2 * Math.PI;
+        double dz = tz - z;
+        double length = Math.hypot(radius * sweep, dz);
+        x = tx; y = ty; z = tz;
+        if (length <= EPSILON || radius <= EPSILON) return;
+
+        // Tangentes al inicio y al final del arco (para la velocidad de unión)
+        double sign = clockwise ? -1 : 1;
+        double[] entryDir = {-sign * (sy - cy) / radius, sign * (sx - cx) / radius, 0};
+        double[] exitDir = {-sign * (ty - cy) / radius, sign * (tx - cx) / radius, 0};
+        queue(length, de, entryDir, exitDir);
+    }
+
+    private void dwell(String line, int end) {
+        double ms = parseParam(line, end, 'P');
+        double s = parseParam(line, end, 'S');
+        double seconds = !Double.isNaN(s) ? s : (!Double.isNaN(ms) ? ms / 1000.0 : 0);
+        if (seconds > 0) {
+            flushPending(0.0);
+            addTime(seconds);
+        }
+    }
+
+    private void setPosition(String line, int end) {
+        double px = parseParam(line, end, 'X');
+        double py = parseParam(line, end, 'Y');
+        double pz = parseParam(line, end, 'Z');
+        double pe = parseParam(line, end, 'E');
+        if (!Double.isNaN(px)) x = px;
+        if (!Double.isNaN(py)) y = py;
+        if (!Double.isNaN(pz)) z = pz;
+        if (!Double.isNaN(pe)) e = pe;
+    }
+
+    private void setAccelerations(String line, int end) {
+        double s = parseParam(line, end, 'S');
+        double p = parseParam(line, end, 'P');
+        double t = parseParam(line, end, 'T');
+        double r = parseParam(line, end, 'R');
+        if (s > 0) { printAcceleration = s; travelAcceleration = s; }
+        if (p > 0) printAcceleration = p;
+        if (t > 0) travelAcceleration = t;
+        if (r > 0) retractAcceleration = r;
+    }
+
+    private void updateFeedrate(String line, int end) {
+        double f = parseParam(line, end, 'F');
+        if (f > 0) feedrate = f / 60.0; // mm/min -> mm/s
+    }
+
+    private double target(double value, double current) {
+        if (Double.isNaN(value)) return current;
+        return absoluteXYZ ? value : current + value;
+    }
+
+    private double extrusionDelta(double value) {
+        if (Double.isNaN(value)) return 0.0;
+        double delta = relativeE ? value : value - e;
+        e = relativeE ? e + value : value;
+        return delta;
+    }
+
+    // --- PLANIFICACIÓN ---
+
+    private void queue(double length, double de, double[] entryDir, double[] exitDir) {
+        Move move = new Move();
+        move.length = length;
+        move.nominal = feedrate;
+        move.entryDir = entryDir;
+        move.exitDir = exitDir;
+
+        boolean travels = entryDir != null;
+        if (!travels) {
+            move.acceleration = retractAcceleration;
+        } else {
+            move.acceleration = de > EPSILON ? printAcceleration : travelAcceleration;
+        }
+
+        // Nueva capa: primer movimiento que extruye a una Z mayor que la capa actual
+        if (travels && de > EPSILON && (Double.isNaN(layerZ) || z > layerZ + LAYER_Z_TOLERANCE)) {
+            move.startsLayer = true;
+            layerZ = z;
+        }
+
+        double junction = pending == null ? 0.0 : junctionSpeed(pending, move);
+        flushPending(junction);
+        move.entrySpeed = lastExitSpeed;
+        if (move.startsLayer) {
+            startLayer();
+        }
+        pending = move;
+    }
+
+    /**
+     * Cierra el movimiento pendiente con la velocidad de salida indicada (acotada por lo alcanzable).
+     */
+    private void flushPending(double requestedExit) {
+        if (pending == null) {
+            lastExitSpeed = 0.0;
+            return;
+        }
+        double reachable = Math.sqrt(pending.entrySpeed * pending.entrySpeed + 2 * pending.acceleration * pending.length);
+        double exit = Math.min(Math.min(requestedExit, pending.nominal), reachable);
+        addTime(trapezoidTime(pending.length, pending.entrySpeed, exit, pending.nominal, pending.acceleration));
+        lastExitSpeed = exit;
+        pending = null;
+    }
+
+    private double junctionSpeed(Move previous, Move next) {
+        if (previous.exitDir == null || next.entryDir == null) return 0.0;
+        double[] a = previous.exitDir;
+        double[] b = next.entryDir;
+        double cosTheta = -(a[0] * b[0] + a[1] * b[1] + a[2] * b[2]);
+        double maxSpeed = Math.min(previous.nominal, next.nominal);
+        if (cosTheta > 0.999999) return 0.0;        // Inversión de sentido
+        if (cosTheta < -0.999999) return maxSpeed;  // Movimiento en línea recta
+        double sinHalfTheta = Math.sqrt(0.5 * (1.0 - cosTheta));
+        double acceleration = Math.min(previous.acceleration, next.acceleration);
+        double speed = Math.sqrt(acceleration * junctionDeviation * sinHalfTheta / (1.0 - sinHalfTheta));
+        return Math.min(speed, maxSpeed);
+    }
+
+    /**
+     * Tiempo de un trapecio de velocidad (o triángulo si no llega a la velocidad nominal).
+     */
+    static double trapezoidTime(double length, double entry, double exit, double nominal, double acceleration) {
+        if (length <= 0 || nominal <= 0) return 0.0;
+        entry = Math.min(entry, nominal);
+        exit = Math.min(exit, nominal);
+        if (acceleration <= 0) return length / nominal;
+
+        double accelDist = (nominal * nominal - entry * entry) / (2 * acceleration);
+        double decelDist = (nominal * nominal - exit * exit) / (2 * acceleration);
+        if (accelDist + decelDist <= length) {
+            double cruise = length - accelDist - decelDist;
+            return (nominal - entry) / acceleration + cruise / nominal + (nominal - exit) / acceleration;
+        }
+
+        double peak = Math.sqrt((2 * acceleration * length + entry * entry + exit * exit) / 2);
+        if (peak >= Math.max(entry, exit)) {
+            return (peak - entry) / acceleration + (peak - exit) / acceleration;
+        }
+        // No alcanza a frenar (o acelerar) dentro del movimiento: rampa única
+        double reached = entry > exit
+                ? Math.sqrt(Math.max(0, entry * entry - 2 * acceleration * length))
+                : Math.sqrt(entry * entry + 2 * acceleration * length);
+        return 2 * length / (entry + reached);
+    }
+
+    private void startLayer() {
+        layerSeconds.add(layerSeconds.isEmpty() ? preambleSeconds : 0.0);
+    }
+
+    private void addTime(double seconds) {
+        totalSeconds += seconds;
+        if (layerSeconds.isEmpty()) {
+            preambleSeconds += seconds;
+        } else {
+            layerSeconds.set(layerSeconds.size() - 1, layerSeconds.get(layerSeconds.size() - 1) + seconds);
+        }
+    }
+
+    /**
+     * Cierra el último movimiento (frenando a 0). Llamar al terminar el archivo.
+     */
+    public void finish() {
+        flushPending(0.0);
+    }
+
+    public double getTotalSeconds() {
+        return totalSeconds;
+    }
+
+    /**
+     * @return Z actual de la boquilla (mm).
+     */
+    public double getZ() {
+        return z;
+    }
+
+    /**
+     * @return Capas detectadas hasta el momento.
+     */
+    public int getLayerCount() {
+        return layerSeconds.size();
+    }
+
+    /**
+     * @return Segundos por capa (el tiempo previo a la primera capa se suma a la capa 0).
+     */
+    public List<Double> getLayerSeconds() {
+        return Collections.unmodifiableList(layerSeconds);
+    }
+}
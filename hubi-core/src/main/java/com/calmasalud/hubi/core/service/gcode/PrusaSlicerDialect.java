@@ -0,0 +1,42 @@
+package com.calmasalud.hubi.core.service.gcode;
+
+import java.util.List;
+import java.util.Locale;
+
+import static com.calmasalud.hubi.core.service.gcode.GCodeHandlers.*;
+
+/**
+ * PrusaSlicer (y derivados como SuperSlicer): "; generated by PrusaSlicer 2.7.1 on ...".
+ * Informa los consumos como listas por extrusor y el resto en el bloque de configuración final.
+ */
+public class PrusaSlicerDialect implements SlicerDialect {
+
+    private static final List<GCodeLineHandler> HANDLERS = List.of(
+            TIME_HMS_TEXT,
+            FILAMENT_USED_MM_LIST,
+            FILAMENT_USED_G_LIST,
+            FILAMENT_USED_BY_EXTRUDER,
+            EXTRUDER_COLOUR,
+            FILAMENT_TYPE_SEMICOLON_LIST,
+            FILAMENT_COLOUR_SEMICOLON_LIST,
+            FILAMENT_DENSITY_LIST,
+            FILAMENT_DIAMETER_LIST,
+            LAYER_HEIGHT,
+            OBJECT);
+
+    @Override
+    public String getName() {
+        return "PrusaSlicer";
+    }
+
+    @Override
+    public boolean detects(String headerLine) {
+        String l = headerLine.toLowerCase(Locale.ROOT);
+        return l.startsWith(";") && (l.contains("generated by prusaslicer") || l.contains("generated by superslicer"));
+    }
+
+    @Override
+    public List<GCodeLineHandler> commentHandlers() {
+        return HANDLERS;
+    }
+}
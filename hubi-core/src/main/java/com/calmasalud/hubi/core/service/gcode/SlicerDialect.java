@@ -0,0 +1,28 @@
+package com.calmasalud.hubi.core.service.gcode;
+
+import java.util.List;
+
+/**
+ * SPI de dialecto de slicer (PrusaSlicer, OrcaSlicer, BambuStudio, Cura...).
+ * Las implementaciones se registran en META-INF/services y se descubren con ServiceLoader.
+ * Una vez detectado el slicer, solo se ejecutan los handlers de su dialecto.
+ */
+public interface SlicerDialect {
+
+    /**
+     * @return Nombre legible del slicer (Ej: "PrusaSlicer").
+     */
+    String getName();
+
+    /**
+     * Indica si una línea de comentario del encabezado identifica a este slicer.
+     * @param headerLine Línea ya recortada (Ej: "; generated by PrusaSlicer 2.7.1").
+     */
+    boolean detects(String headerLine);
+
+    /**
+     * @return Handlers que se aplican a cada línea de comentario (';'), en orden.
+     * Los cambios de herramienta (Tn) y de color (M600) los resuelve el parser común.
+     */
+    List<GCodeLineHandler> commentHandlers();
+}
@@ -0,0 +1,49 @@
+package com.calmasalud.hubi.core.service.gcode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Registro de dialectos descubiertos con ServiceLoader (META-INF/services).
+ * Para agregar un slicer basta con implementar SlicerDialect y registrarlo en ese archivo.
+ */
+public final class SlicerDialects {
+
+    private static final List<SlicerDialect> DIALECTS = load();
+    private static final SlicerDialect GENERIC = new GenericDialect();
+
+    private SlicerDialects() {
+    }
+
+    private static List<SlicerDialect> load() {
+        List<SlicerDialect> dialects = new ArrayList<>();
+        for (SlicerDialect dialect : ServiceLoader.load(SlicerDialect.class, SlicerDialect.class.getClassLoader())) {
+            dialects.add(dialect);
+        }
+        System.out.println("✅ Dialectos de slicer registrados: " + dialects.size());
+        return Collections.unmodifiableList(dialects);
+    }
+
+    public static List<SlicerDialect> all() {
+        return DIALECTS;
+    }
+
+    /**
+     * @return El primer dialecto que reconoce la línea, o null si ninguno la reconoce.
+     */
+    public static SlicerDialect detect(String headerLine) {
+        for (SlicerDialect dialect : DIALECTS) {
+            if (dialect.detects(headerLine)) return dialect;
+        }
+        return null;
+    }
+
+    /**
+     * @return Dialecto de respaldo que aplica todos los patrones conocidos.
+     */
+    public static SlicerDialect generic() {
+        return GENERIC;
+    }
+}
@@ -0,0 +1,371 @@
+package com.calmasalud.hubi.core.service.storage;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Almacén de archivos por contenido (RepositorioArchivos/.blobs/ab/&lt;sha256&gt;).
+ * Cada archivo de pieza de un producto es un enlace duro al blob de su contenido, así el mismo G-code
+ * subido en varios productos ocupa el disco una sola vez. Si el sistema de archivos no admite enlaces
+ * se copia el blob (se pierde el ahorro, no la consistencia).
+ * Las referencias (ruta relativa a SistemaHUBI -> hash) se guardan en un registro de solo-agregado
+ * (.blobs/refs.log) que se compacta cuando crece; un blob se borra cuando se libera su última referencia,
+ * esté en el repositorio o en la papelera.
+ * Los archivos del repositorio se tratan como inmutables: editar uno en el lugar cambiaría todos sus enlaces.
+ * Por eso el contenido entra siempre copiado por FileImporter, nunca enlazado al archivo original
+ * del usuario: se lee y escribe cada byte una vez más al importar, a cambio de que una edición posterior
+ * del original no altere en silencio un blob ya registrado con otro hash.
+ */
+public class BlobStore {
+
+    public static final Path DEFAULT_ROOT =
+            Paths.get(System.getProperty("user.home"), "SistemaHUBI", "RepositorioArchivos", ".blobs");
+
+    private static final String LOG_NAME = "refs.log";
+    private static final String TMP_DIR = "tmp";
+    private static final int COMPACT_MIN_LINES = 1000;
+
+    private static volatile BlobStore defaultStore;
+
+    private final Path root;
+    private final Path referenceBase;
+    private final FileImporter importer;
+
+    // Estado en memoria (se carga del registro la primera vez que se usa)
+    private Map<String, String> hashByPath;
+    private Map<String, Integer> referenceCount;
+    private int logLines;
+    private boolean linksUnsupportedLogged = false;
+
+    /**
+     * @param root Carpeta de los blobs.
+     * @param referenceBase Carpeta contra la que se guardan las rutas de las referencias (SistemaHUBI).
+     */
+    public BlobStore(Path root, Path referenceBase) {
+        this(root, referenceBase, new FileImporter());
+    }
+
+    /**
+     * @param importer Importador con el que entra el contenido (copia verificada contra el hash del origen).
+     */
+    public BlobStore(Path root, Path referenceBase, FileImporter importer) {
+        this.root = root;
+        this.referenceBase = referenceBase.toAbsolutePath().normalize();
+        this.importer = importer;
+    }
+
+    /**
+     * @return El almacén del repositorio de la aplicación (referencias relativas a SistemaHUBI).
+     */
+    public static BlobStore getDefault() {
+        BlobStore store = defaultStore;
+        if (store == null) {
+            synchronized (BlobStore.class) {
+                store = defaultStore;
+                if (store == null) {
+                    store = new BlobStore(DEFAULT_ROOT, DEFAULT_ROOT.getParent().getParent());
+                    defaultStore = store;
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Guarda el contenido de source y deja target como referencia a su blob (reemplaza target si existía).
+     */
+    public String store(Path source, Path target) throws IOException {
+        return store(source, target, null);
+    }
+
+    /**
+     * Guarda el contenido de source y deja target como referencia a su blob (reemplaza target si existía).
+     * El origen se copia siempre con FileImporter a un temporal, verificado contra el hash del origen;
+     * si el contenido ya estaba guardado se descarta el temporal y target se enlaza al blob existente.
+     * Se puede llamar desde varios hilos; solo el registro de la referencia es secuencial.
+     * @param listener Avance de la importación, o null.
+     * @return El SHA-256 del contenido.
+     */
+    public String store(Path source, Path target, FileImporter.ProgressListener listener) throws IOException {
+        synchronized (this) {
+            ensureLoaded(); // Antes de crear el temporal: la carga limpia los que quedaron de otra ejecución
+        }
+        Path tmpDir = root.resolve(TMP_DIR);
+        Files.createDirectories(tmpDir);
+        Path tmp = tmpDir.resolve("ingreso-" + UUID.randomUUID() + ".tmp");
+        String hash;
+        try {
+            hash = importer.importFile(source, tmp, listener).sha256;
+            synchronized (this) {
+                String key = key(target);
+                String previous = hashByPath.get(key);
+                if (hash.equals(previous) && Files.isRegularFile(target)) {
+                    return hash; // target ya referencia este contenido: nada que hacer
+                }
+                Path blob = blobPath(hash);
+                if (!Files.exists(blob)) { // Contenido repetido: se reutiliza el blob existente
+                    Files.createDirectories(blob.getParent());
+                    Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE);
+                }
+                // Primero el enlace nuevo en su lugar y recién después se libera la referencia anterior:
+                // si target era la última referencia del mismo blob, liberarla antes lo borraría
+                linkInPlace(blob, target);
+                if (!hash.equals(previous)) {
+                    if (previous != null) {
+                        hashByPath.remove(key);
+                        appendLog("-\t" + key);
+                        dropReference(previous);
+                    }
+                    addReference(key, hash);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return hash;
+    }
+
+    /**
+     * Reemplaza el contenido de target por el de source sin que target deje de existir (Ej: al comprimirlo):
+     * el blob nuevo se enlaza con un nombre oculto junto a target y se renombra encima; recién después se
+     * libera la referencia al contenido anterior. Si target se movió o se borró mientras tanto, o ya no
+     * referencia a expectedHash, no se toca.
+     * @param expectedHash Hash que target debe referenciar todavía (null si no estaba registrado).
+     * @return El SHA-256 del contenido nuevo, o null si target cambió y no se reemplazó.
+     */
+    public String replace(Path source, Path target, String expectedHash) throws IOException {
+        synchronized (this) {
+            ensureLoaded();
+        }
+        Path tmpDir = root.resolve(TMP_DIR);
+        Files.createDirectories(tmpDir);
+        Path tmp = tmpDir.resolve("reemplazo-" + UUID.randomUUID() + ".tmp");
+        try {
+            String hash = importer.importFile(source, tmp, null).sha256;
+            synchronized (this) {
+                String key = key(target);
+                String previous = hashByPath.get(key);
+                if (!Files.isRegularFile(target) || !Objects.equals(previous, expectedHash)) {
+                    return null;
+                }
+                if (hash.equals(previous)) return hash; // Mismo contenido: nada que reemplazar
+                Path blob = blobPath(hash);
+                if (!Files.exists(blob)) {
+                    Files.createDirectories(blob.getParent());
+                    Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE);
+                }
+                linkInPlace(blob, target);
+                if (previous != null) {
+                    hashByPath.remove(key);
+                    appendLog("-\t" + key);
+                    dropReference(previous);
+                }
+                addReference(key, hash);
+                return hash;
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Borra target y libera su referencia; el blob se borra solo si era la última.
+     * Un archivo sin referencia registrada (cargado antes del almacén) simplemente se borra.
+     * @return Bytes liberados en disco (0 si el contenido sigue referenciado desde otro lado).
+     */
+    public synchronized long release(Path target) throws IOException {
+        ensureLoaded();
+        return releaseLocked(target);
+    }
+
+    /**
+     * Actualiza las referencias de un archivo o carpeta que se movió (Ej: a la papelera).
+     */
+    public synchronized void moved(Path from, Path to) throws IOException {
+        ensureLoaded();
+        String fromKey = key(from);
+        String toKey = key(to);
+        if (applyMove(fromKey, toKey)) {
+            appendLog(">\t" + fromKey + "\t" + toKey);
+        }
+    }
+
+    /**
+     * @return El hash del contenido referenciado por path, o null si no está registrado.
+     */
+    public synchronized String hashOf(Path path) throws IOException {
+        ensureLoaded();
+        return hashByPath.get(key(path));
+    }
+
+    /**
+     * @return Cantidad de archivos (repositorio y papelera) que referencian el hash.
+     */
+    public synchronized int referenceCount(String hash) throws IOException {
+        ensureLoaded();
+        return referenceCount.getOrDefault(hash, 0);
+    }
+
+    public Path blobPath(String hash) {
+        return root.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    // --- REFERENCIAS ---
+
+    private long releaseLocked(Path target) throws IOException {
+        String key = key(target);
+        String hash = hashByPath.remove(key);
+        if (hash == null) {
+            long size = Files.isRegularFile(target) ? Files.size(target) : 0;
+            return Files.deleteIfExists(target) ? size : 0;
+        }
+        Files.deleteIfExists(target);
+        appendLog("-\t" + key);
+        return dropReference(hash);
+    }
+
+    // Descuenta una referencia al hash; el blob se borra con la última
+    private long dropReference(String hash) throws IOException {
+        int remaining = referenceCount.merge(hash, -1, Integer::sum);
+        if (remaining > 0) return 0;
+        referenceCount.remove(hash);
+        Path blob = blobPath(hash);
+        long size = Files.exists(blob) ? Files.size(blob) : 0;
+        Files.deleteIfExists(blob);
+        return size;
+    }
+
+    private void addReference(String key, String hash) throws IOException {
+        hashByPath.put(key, hash);
+        referenceCount.merge(hash, 1, Integer::sum);
+        appendLog("+\t" + hash + "\t" + key);
+    }
+
+    // Mueve la referencia exacta o todas las que cuelgan de la carpeta
+    private boolean applyMove(String fromKey, String toKey) {
+        String prefix = fromKey + "/";
+        List<String> affected = new ArrayList<>();
+        for (String key : hashByPath.keySet()) {
+            if (key.equals(fromKey) || key.startsWith(prefix)) affected.add(key);
+        }
+        for (String key : affected) {
+            String hash = hashByPath.remove(key);
+            hashByPath.put(toKey + key.substring(fromKey.length()), hash);
+        }
+        return !affected.isEmpty();
+    }
+
+    private String key(Path path) {
+        Path absolute = path.toAbsolutePath().normalize();
+        Path relative = absolute.startsWith(referenceBase) ? referenceBase.relativize(absolute) : absolute;
+        return relative.toString().replace('\\', '/');
+    }
+
+    // --- REGISTRO EN DISCO ---
+
+    private void ensureLoaded() throws IOException {
+        if (hashByPath != null) return;
+        hashByPath = new HashMap<>();
+        referenceCount = new HashMap<>();
+        logLines = 0;
+
+        Path log = root.resolve(LOG_NAME);
+        if (Files.exists(log)) {
+            for (String line : Files.readAllLines(log, StandardCharsets.UTF_8)) {
+                String[] parts = line.split("\t");
+                logLines++;
+                switch (parts[0]) {
+                    case "+" -> {
+                        if (parts.length < 3) continue;
+                        String previous = hashByPath.put(parts[2], parts[1]);
+                        if (previous != null) referenceCount.merge(previous, -1, Integer::sum);
+                        referenceCount.merge(parts[1], 1, Integer::sum);
+                    }
+                    case "-" -> {
+                        if (parts.length < 2) continue;
+                        String hash = hashByPath.remove(parts[1]);
+                        if (hash != null) referenceCount.merge(hash, -1, Integer::sum);
+                    }
+                    case ">" -> {
+                        if (parts.length >= 3) applyMove(parts[1], parts[2]);
+                    }
+                    default -> System.err.println("⚠️ Línea desconocida en el registro de blobs: " + line);
+                }
+            }
+            referenceCount.values().removeIf(count -> count <= 0);
+        }
+        cleanTemporaryFiles();
+    }
+
+    private void appendLog(String line) throws IOException {
+        Files.createDirectories(root);
+        Files.writeString(root.resolve(LOG_NAME), line + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        logLines++;
+        if (logLines > COMPACT_MIN_LINES && logLines > 2 * hashByPath.size()) {
+            compact();
+        }
+    }
+
+    // Reescribe el registro con solo las referencias vigentes (escritura atómica)
+    private void compact() throws IOException {
+        Path tmp = Files.createTempFile(root, LOG_NAME, ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> entry : hashByPath.entrySet()) {
+                writer.write("+\t" + entry.getValue() + "\t" + entry.getKey() + "\n");
+            }
+        }
+        Files.move(tmp, root.resolve(LOG_NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logLines = hashByPath.size();
+        System.out.println("LOG: Registro de blobs compactado (" + logLines + " referencias).");
+    }
+
+    // Copias de una carga que se cortó a la mitad
+    private void cleanTemporaryFiles() throws IOException {
+        Path tmpDir = root.resolve(TMP_DIR);
+        if (!Files.isDirectory(tmpDir)) return;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(tmpDir)) {
+            for (Path entry : stream) Files.deleteIfExists(entry);
+        }
+    }
+
+    // --- ARCHIVOS ---
+
+    // Enlaza el blob con un nombre oculto junto a target y lo renombra encima (target nunca deja de existir)
+    private void linkInPlace(Path blob, Path target) throws IOException {
+        Path link = target.resolveSibling("." + target.getFileName() + ".reemplazo");
+        try {
+            Files.deleteIfExists(link);
+            link(blob, link);
+            Files.move(link, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(link);
+        }
+    }
+
+    private void link(Path blob, Path target) throws IOException {
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        try {
+            Files.createLink(target, blob);
+        } catch (UnsupportedOperationException | IOException e) {
+            if (!linksUnsupportedLogged) {
+                System.err.println("⚠️ No se pueden crear enlaces duros en " + target.getParent() + ", se copian los archivos: " + e.getMessage());
+                linksUnsupportedLogged = true;
+            }
+            Files.copy(blob, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.calmasalud.hubi.core.service.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Capa de I/O de la importación de archivos al repositorio.
+ * El origen se copia siempre (el repositorio nunca comparte el inodo con el archivo del usuario) por bloques
+ * con I/O posicional. Cada bloque se suma al SHA-256 del origen al leerlo y se vuelve a leer del destino,
+ * todavía en la caché del sistema, para el hash de lo que realmente quedó escrito: si los dos no coinciden
+ * la copia se descarta.
+ * El avance se informa por bloque; el listener se invoca desde el hilo que importa.
+ */
+public class FileImporter {
+
+    /**
+     * Avance de una importación: bytes procesados de un total (el total es el tamaño del origen).
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(long bytesDone, long totalBytes);
+    }
+
+    /**
+     * Resultado de una importación.
+     */
+    public static final class Result {
+        public final String sha256;
+        public final long bytes;
+
+        Result(String sha256, long bytes) {
+            this.sha256 = sha256;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final long REPORT_INTERVAL = 16L * 1024 * 1024;
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    /**
+     * Importa source en target (que no debe existir).
+     * @param listener Avance, o null.
+     * @return El SHA-256 del origen (igual al de la copia).
+     * @throws IOException Si falla la copia, el origen cambió durante la copia o lo escrito no coincide con lo
+     *                     leído del origen (en esos casos target se borra).
+     */
+    public Result importFile(Path source, Path target, ProgressListener listener) throws IOException {
+        long size = Files.size(source);
+        try {
+            return transfer(source, target, size, listener);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+    }
+
+    private Result transfer(Path source, Path target, long size, ProgressListener listener) throws IOException {
+        MessageDigest sourceDigest = sha256();
+        MessageDigest writtenDigest = sha256();
+        ByteBuffer block = ByteBuffer.allocateDirect(BLOCK_SIZE);
+        ByteBuffer check = ByteBuffer.allocateDirect(BLOCK_SIZE);
+        long position = 0;
+        long nextReport = REPORT_INTERVAL;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+            while (position < size) {
+                block.clear();
+                block.limit((int) Math.min(block.capacity(), size - position));
+                int read = in.read(block, position);
+                if (read <= 0) break; // El origen se acortó
+                block.flip();
+                sourceDigest.update(block.duplicate());
+                writeBlock(out, block, position);
+                hashWritten(out, position, read, check, writtenDigest);
+                position += read;
+                if (listener != null && (position >= nextReport || position == size)) {
+                    listener.onProgress(position, size);
+                    nextReport = position + REPORT_INTERVAL;
+                }
+            }
+            checkSize(position, size, source);
+            if (in.size() != size) {
+                throw new IOException("El archivo " + source.getFileName() + " cambió durante la copia.");
+            }
+            out.force(false);
+        }
+        String sha256 = HexFormat.of().formatHex(sourceDigest.digest());
+        String written = HexFormat.of().formatHex(writtenDigest.digest());
+        if (!sha256.equals(written)) {
+            throw new IOException("La copia de " + source.getFileName() + " no coincide con el origen (SHA-256 "
+                    + written + " en lugar de " + sha256 + ").");
+        }
+        return new Result(sha256, size);
+    }
+
+    /**
+     * Escribe un bloque leído del origen en su posición del destino.
+     */
+    protected void writeBlock(FileChannel out, ByteBuffer block, long position) throws IOException {
+        while (block.hasRemaining()) {
+            position += out.write(block, position);
+        }
+    }
+
+    // Relee del destino el bloque recién transferido
+    private static void hashWritten(FileChannel out, long position, long length, ByteBuffer buffer, MessageDigest digest) throws IOException {
+        long done = 0;
+        while (done < length) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), length - done));
+            int read = out.read(buffer, position + done);
+            if (read < 0) throw new IOException("No se pudo releer el bloque copiado en la posición " + (position + done));
+            buffer.flip();
+            digest.update(buffer);
+            done += read;
+        }
+    }
+
+    private static void checkSize(long done, long expected, Path source) throws IOException {
+        if (done != expected) {
+            throw new IOException("Copia incompleta de " + source.getFileName() + ": " + done + " de " + expected + " bytes.");
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible en esta JVM", e);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.calmasalud.hubi.core.service.storage;
+
+import com.calmasalud.hubi.core.model.PrintFileType;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresión en disco de los G-code que no se usan (StoragePolicy).
+ * Recorre una carpeta (el repositorio o la papelera, sin sus carpetas ocultas) y cada .gcode plano que lleva
+ * idleDays sin abrirse se reemplaza por su versión gzip con el mismo nombre, a través de BlobStore.replace:
+ * el contenido comprimido es un blob más y el original se borra cuando nadie más lo referencia.
+ * gzip es determinístico, así que las copias de un mismo G-code en varios productos terminan en un único blob
+ * comprimido; dentro de una pasada ni siquiera se vuelven a comprimir. Se conserva la fecha de modificación.
+ * Los lectores (StoredContent) reciben el contenido original sin notar la diferencia.
+ */
+public class GCodeCompactor {
+
+    /**
+     * Aviso por cada archivo comprimido (Ej: para actualizar el índice del catálogo).
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void onCompressed(Path file);
+    }
+
+    /**
+     * Resultado de una pasada.
+     */
+    public static final class Result {
+        public final int filesCompressed;
+        public final long bytesBefore;   // Tamaño original de los archivos comprimidos
+        public final long bytesAfter;
+        public final int errors;
+
+        Result(int filesCompressed, long bytesBefore, long bytesAfter, int errors) {
+            this.filesCompressed = filesCompressed;
+            this.bytesBefore = bytesBefore;
+            this.bytesAfter = bytesAfter;
+            this.errors = errors;
+        }
+
+        @Override
+        public String toString() {
+            return filesCompressed + " archivos comprimidos (" + bytesBefore / 1024 + " KB -> " + bytesAfter / 1024 + " KB)"
+                    + (errors > 0 ? ", " + errors + " errores" : "");
+        }
+    }
+
+    private static final String TMP_SUFFIX = ".gz.tmp";
+    private static final String REPLACE_SUFFIX = ".reemplazo"; // Enlace temporal de BlobStore.replace
+    private static final double MAX_RATIO = 0.9;               // Si gzip no ahorra al menos un 10% se deja plano
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final BlobStore blobStore;
+
+    public GCodeCompactor(BlobStore blobStore) {
+        this.blobStore = blobStore;
+    }
+
+    /**
+     * Comprime los G-code de root que cumplen la política. Un error en un archivo se informa y se sigue.
+     * Se ejecuta una pasada a la vez.
+     * @param listener Aviso por archivo comprimido, o null.
+     */
+    public synchronized Result compact(Path root, StoragePolicy policy, Listener listener) {
+        if (!policy.compressGCode || !Files.isDirectory(root)) {
+            return new Result(0, 0, 0, 0);
+        }
+        long limite = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(policy.idleDays);
+        Map<String, Path> comprimidoPorHash = new HashMap<>(); // Hash del original -> archivo ya comprimido
+        int[] comprimidos = {0, 0};                                // {archivos, errores}
+        long[] bytes = {0, 0};                                     // {antes, después}
+
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    return !dir.equals(root) && esOculto(dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    String nombre = file.getFileName().toString();
+                    try {
+                        if (esOculto(file)) {
+                            // Restos de una pasada cortada
+                            if (nombre.endsWith(TMP_SUFFIX) || nombre.endsWith(REPLACE_SUFFIX)) Files.deleteIfExists(file);
+                            return FileVisitResult.CONTINUE;
+                        }
+                        if (PrintFileType.fromFileName(nombre) != PrintFileType.GCODE
+                                || attrs.size() < policy.minSizeBytes
+                                || ultimoUso(attrs) > limite
+                                || StoredContent.isCompressed(file)) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                        long despues = comprimir(file, attrs, comprimidoPorHash);
+                        if (despues >= 0) {
+                            comprimidos[0]++;
+                            bytes[0] += attrs.size();
+                            bytes[1] += despues;
+                            if (listener != null) listener.onCompressed(file);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        comprimidos[1]++;
+                        System.err.println("⚠️ No se pudo comprimir " + nombre + ": " + e.getMessage());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    comprimidos[1]++;
+                    System.err.println("⚠️ No se pudo leer " + file + ": " + e.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            comprimidos[1]++;
+            System.err.println("⚠️ Compresión interrumpida en " + root + ": " + e.getMessage());
+        }
+
+        Result result = new Result(comprimidos[0], bytes[0], bytes[1], comprimidos[1]);
+        if (result.filesCompressed > 0 || result.errors > 0) {
+            System.out.println("LOG: Compresión de G-code en " + root.getFileName() + ": " + result);
+        }
+        return result;
+    }
+
+    // @return Tamaño comprimido, o -1 si no se reemplazó (no ahorra o el archivo cambió mientras tanto)
+    private long comprimir(Path file, BasicFileAttributes attrs, Map<String, Path> comprimidoPorHash) throws IOException {
+        String hashOriginal = blobStore.hashOf(file);
+        FileTime modificado = attrs.lastModifiedTime();
+
+        Path yaComprimido = hashOriginal == null ? null : comprimidoPorHash.get(hashOriginal);
+        if (yaComprimido != null && Files.isRegularFile(yaComprimido)) {
+            // Otra copia del mismo G-code: se enlaza el mismo blob comprimido
+            if (blobStore.replace(yaComprimido, file, hashOriginal) == null) return -1;
+            Files.setLastModifiedTime(file, modificado);
+            return Files.size(file);
+        }
+
+        Path tmp = file.resolveSibling("." + file.getFileName() + TMP_SUFFIX);
+        try {
+            try (OutputStream out = new GZIPOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp), BUFFER_SIZE), BUFFER_SIZE)) {
+                Files.copy(file, out);
+            } finally {
+                // Leerlo actualiza el último acceso del blob, que comparten las otras copias: se devuelve el anterior
+                // para que no parezcan en uso (y no esperen otros idleDays)
+                Files.getFileAttributeView(file, BasicFileAttributeView.class).setTimes(null, attrs.lastAccessTime(), null);
+            }
+            long comprimido = Files.size(tmp);
+            if (comprimido > attrs.size() * MAX_RATIO) return -1;
+            if (blobStore.replace(tmp, file, hashOriginal) == null) return -1;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        // La fecha es la del blob (compartido por las copias): se deja la del original
+        Files.setLastModifiedTime(file, modificado);
+        if (hashOriginal != null) comprimidoPorHash.put(hashOriginal, file);
+        return Files.size(file);
+    }
+
+    // Último acceso o modificación (en volúmenes montados sin registro de accesos, solo la modificación)
+    private static long ultimoUso(BasicFileAttributes attrs) {
+        return Math.max(attrs.lastAccessTime().toMillis(), attrs.lastModifiedTime().toMillis());
+    }
+
+    private static boolean esOculto(Path path) {
+        Path nombre = path.getFileName();
+        return nombre != null && nombre.toString().startsWith(".");
+    }
+}
@@ -0,0 +1,198 @@
+package com.calmasalud.hubi.core.service.storage;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Diario de las cargas de productos en curso (RepositorioArchivos/.journal/&lt;id&gt;.journal).
+ * Una carga copia sus archivos a RepositorioArchivos/.staging/&lt;id&gt;/ (mismo volumen que el repositorio),
+ * registra todas sus filas en una sola transacción y recién entonces mueve la carpeta a su lugar.
+ * Mientras dura, su entrada guarda lo necesario para terminarla o deshacerla si la aplicación se cierra
+ * a la mitad: en STAGING todavía no hay nada en BD, en COMMITTED falta solo mover la carpeta.
+ * Cada entrada se reescribe completa y de forma atómica; al terminar la carga se borra.
+ */
+public class IngestionJournal {
+
+    private static final String JOURNAL_DIR = ".journal";
+    private static final String STAGING_DIR = ".staging";
+    private static final String EXTENSION = ".journal";
+
+    public enum State {
+        /** Archivos copiándose a la carpeta temporal; la BD todavía no tiene las filas. */
+        STAGING,
+        /** Filas confirmadas en BD; falta mover la carpeta temporal a su lugar. */
+        COMMITTED
+    }
+
+    /**
+     * Una carga en curso. Los correlativos son los reservados para la carga (para devolverlos si se deshace).
+     */
+    public static final class Entry {
+        public final String id;
+        public final Path stagingDir;
+        public Path targetDir;
+        public String productName;
+        public String masterCode;
+        public String piecePrefix;      // Ej: SOPROJ
+        public int firstCorrelative;
+        public int lastCorrelative;     // Último valor reservado en product_correlatives
+        public String firstPieceCode;   // Si existe en BD, la transacción se confirmó
+        public State state = State.STAGING;
+        public long startedAt;
+
+        Entry(String id, Path stagingDir) {
+            this.id = id;
+            this.stagingDir = stagingDir;
+        }
+    }
+
+    private final Path journalDir;
+    private final Path stagingBase;
+
+    /**
+     * @param repositoryBase Carpeta del repositorio; el diario y las carpetas temporales cuelgan de ella
+     *                       para que el movimiento final sea un simple renombre.
+     */
+    public IngestionJournal(Path repositoryBase) {
+        this.journalDir = repositoryBase.resolve(JOURNAL_DIR);
+        this.stagingBase = repositoryBase.resolve(STAGING_DIR);
+    }
+
+    /**
+     * Crea una entrada nueva, todavía sin escribir y sin carpeta temporal (se crea recién después
+     * de escribir la entrada, así nunca queda una carpeta temporal sin su entrada).
+     */
+    public Entry newEntry(Path targetDir, String productName) {
+        String id = UUID.randomUUID().toString();
+        Entry entry = new Entry(id, stagingBase.resolve(id));
+        entry.targetDir = targetDir;
+        entry.productName = productName;
+        entry.startedAt = System.currentTimeMillis();
+        return entry;
+    }
+
+    /**
+     * Escribe (o reemplaza) la entrada en disco: primero a un temporal, después un renombre atómico.
+     */
+    public void write(Entry entry) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("id", entry.id);
+        props.setProperty("stagingDir", entry.stagingDir.toString());
+        props.setProperty("targetDir", entry.targetDir.toString());
+        props.setProperty("productName", entry.productName);
+        props.setProperty("masterCode", nullToEmpty(entry.masterCode));
+        props.setProperty("piecePrefix", nullToEmpty(entry.piecePrefix));
+        props.setProperty("firstCorrelative", Integer.toString(entry.firstCorrelative));
+        props.setProperty("lastCorrelative", Integer.toString(entry.lastCorrelative));
+        props.setProperty("firstPieceCode", nullToEmpty(entry.firstPieceCode));
+        props.setProperty("state", entry.state.name());
+        props.setProperty("startedAt", Long.toString(entry.startedAt));
+
+        Files.createDirectories(journalDir);
+        Path tmp = journalDir.resolve(entry.id + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            props.store(writer, "Carga de producto en curso");
+        }
+        Files.move(tmp, journalDir.resolve(entry.id + EXTENSION), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Marca la entrada como confirmada en BD.
+     */
+    public void markCommitted(Entry entry) throws IOException {
+        entry.state = State.COMMITTED;
+        write(entry);
+    }
+
+    /**
+     * Quita la entrada del diario (la carga terminó o se deshizo por completo).
+     */
+    public void delete(Entry entry) throws IOException {
+        Files.deleteIfExists(journalDir.resolve(entry.id + EXTENSION));
+    }
+
+    /**
+     * @return Las cargas que quedaron sin terminar, de la más vieja a la más nueva.
+     *         Una entrada ilegible se informa y se deja en disco para revisarla a mano.
+     */
+    public List<Entry> pending() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        if (!Files.isDirectory(journalDir)) return entries;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(journalDir)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.deleteIfExists(file); // Escritura cortada: la entrada anterior sigue siendo válida
+                    continue;
+                }
+                if (!name.endsWith(EXTENSION)) continue;
+                try {
+                    entries.add(read(file));
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("⚠️ Entrada del diario de cargas ilegible: " + file + " (" + e.getMessage() + ")");
+                }
+            }
+        }
+        entries.sort(Comparator.comparingLong(e -> e.startedAt));
+        return entries;
+    }
+
+    /**
+     * @return Carpetas temporales que no pertenecen a ninguna entrada del diario (restos de una limpieza cortada).
+     */
+    public List<Path> orphanStagingDirs() throws IOException {
+        List<Path> orphans = new ArrayList<>();
+        if (!Files.isDirectory(stagingBase)) return orphans;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(stagingBase)) {
+            for (Path dir : stream) {
+                if (!Files.exists(journalDir.resolve(dir.getFileName() + EXTENSION))) orphans.add(dir);
+            }
+        }
+        return orphans;
+    }
+
+    private Entry read(Path file) throws IOException {
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            props.load(reader);
+        }
+        Entry entry = new Entry(required(props, "id"), Paths.get(required(props, "stagingDir")));
+        entry.targetDir = Paths.get(required(props, "targetDir"));
+        entry.productName = required(props, "productName");
+        entry.masterCode = emptyToNull(props.getProperty("masterCode"));
+        entry.piecePrefix = emptyToNull(props.getProperty("piecePrefix"));
+        entry.firstCorrelative = Integer.parseInt(props.getProperty("firstCorrelative", "0"));
+        entry.lastCorrelative = Integer.parseInt(props.getProperty("lastCorrelative", "0"));
+        entry.firstPieceCode = emptyToNull(props.getProperty("firstPieceCode"));
+        entry.state = State.valueOf(props.getProperty("state", State.STAGING.name()));
+        entry.startedAt = Long.parseLong(props.getProperty("startedAt", "0"));
+        return entry;
+    }
+
+    private static String required(Properties props, String key) throws IOException {
+        String value = props.getProperty(key);
+        if (value == null || value.isEmpty()) throw new IOException("Falta el campo '" + key + "'");
+        return value;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
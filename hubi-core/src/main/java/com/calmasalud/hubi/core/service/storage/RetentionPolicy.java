@@ -0,0 +1,43 @@
+package com.calmasalud.hubi.core.service.storage;
+
+/**
+ * Política de retención de la papelera: cuánto tiempo y cuánto espacio puede ocupar lo borrado.
+ * Las entradas que superan maxAgeDays se purgan; si después la papelera sigue ocupando más de maxTotalBytes,
+ * se purgan las más viejas hasta entrar. Un límite en 0 no se aplica. Por defecto está desactivada
+ * (la papelera solo se vacía a mano, como antes).
+ */
+public final class RetentionPolicy {
+
+    public static final RetentionPolicy DISABLED = new RetentionPolicy(0, 0);
+
+    public final int maxAgeDays;      // 0 = sin límite de antigüedad
+    public final long maxTotalBytes;  // 0 = sin límite de tamaño
+
+    public RetentionPolicy(int maxAgeDays, long maxTotalBytes) {
+        if (maxAgeDays < 0 || maxTotalBytes < 0) {
+            throw new IllegalArgumentException("Los límites de la papelera no pueden ser negativos.");
+        }
+        this.maxAgeDays = maxAgeDays;
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    /**
+     * @param maxSizeMegabytes Tamaño máximo en MB (0 = sin límite).
+     */
+    public static RetentionPolicy of(int maxAgeDays, int maxSizeMegabytes) {
+        return maxAgeDays <= 0 && maxSizeMegabytes <= 0
+                ? DISABLED
+                : new RetentionPolicy(Math.max(0, maxAgeDays), Math.max(0, maxSizeMegabytes) * 1024L * 1024L);
+    }
+
+    public boolean isEnabled() {
+        return maxAgeDays > 0 || maxTotalBytes > 0;
+    }
+
+    @Override
+    public String toString() {
+        if (!isEnabled()) return "sin límites";
+        return (maxAgeDays > 0 ? "hasta " + maxAgeDays + " días" : "sin límite de antigüedad")
+                + ", " + (maxTotalBytes > 0 ? "hasta " + maxTotalBytes / (1024 * 1024) + " MB" : "sin límite de tamaño");
+    }
+}
@@ -0,0 +1,44 @@
+package com.calmasalud.hubi.core.service.storage;
+
+/**
+ * Política de almacenamiento del repositorio: cuándo se comprime un G-code en disco.
+ * Un .gcode que no se abre hace idleDays días se guarda comprimido (gzip achica el G-code entre 5 y 10 veces)
+ * con el mismo nombre; se sigue leyendo igual a través de StoredContent. Los archivos chicos no se tocan:
+ * lo que se ahorra no compensa. Por defecto está desactivada.
+ * Limitación: el archivo comprimido conserva la extensión .gcode, así que un programa externo que lo abra
+ * directamente desde el repositorio (slicer, explorador, copia a la impresora) recibe los bytes gzip.
+ * Para usarlo fuera de la aplicación hay que leerlo con StoredContent o descomprimirlo antes.
+ */
+public final class StoragePolicy {
+
+    public static final StoragePolicy DISABLED = new StoragePolicy(false, 0, 0);
+
+    public static final long DEFAULT_MIN_SIZE_BYTES = 256L * 1024;
+
+    public final boolean compressGCode;
+    public final int idleDays;        // Días sin acceso (ni modificación) para comprimir
+    public final long minSizeBytes;   // Tamaño mínimo para que valga la pena
+
+    public StoragePolicy(boolean compressGCode, int idleDays, long minSizeBytes) {
+        if (idleDays < 0 || minSizeBytes < 0) {
+            throw new IllegalArgumentException("Los días y el tamaño mínimo no pueden ser negativos.");
+        }
+        this.compressGCode = compressGCode;
+        this.idleDays = idleDays;
+        this.minSizeBytes = minSizeBytes;
+    }
+
+    /**
+     * @return Política que comprime los G-code sin uso hace days días, o DISABLED si days es 0 o negativo.
+     */
+    public static StoragePolicy compressAfterDays(int days) {
+        return days > 0 ? new StoragePolicy(true, days, DEFAULT_MIN_SIZE_BYTES) : DISABLED;
+    }
+
+    @Override
+    public String toString() {
+        return compressGCode
+                ? "comprimir G-code sin uso hace " + idleDays + " días (desde " + (minSizeBytes / 1024) + " KB)"
+                : "sin compresión";
+    }
+}
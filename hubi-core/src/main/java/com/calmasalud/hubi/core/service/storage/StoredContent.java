@@ -0,0 +1,54 @@
+package com.calmasalud.hubi.core.service.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Lectura de archivos del repositorio que pueden estar comprimidos en disco (ver GCodeCompactor).
+ * Un G-code archivado conserva su nombre (Ej: SOPROJ001.gcode), así la búsqueda por código no cambia;
+ * se reconoce por la firma de gzip al principio (un G-code de texto nunca empieza con esos bytes)
+ * y quien lo lee recibe el contenido original, descomprimido en streaming.
+ */
+public final class StoredContent {
+
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private StoredContent() {
+    }
+
+    /**
+     * @return true si el archivo está guardado comprimido con gzip.
+     */
+    public static boolean isCompressed(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return in.read() == GZIP_MAGIC_1 && in.read() == GZIP_MAGIC_2;
+        }
+    }
+
+    /**
+     * Abre el archivo para leer su contenido original, esté o no comprimido.
+     * Un archivo plano no pasa por un buffer extra: solo se devuelven los dos bytes leídos para reconocerlo.
+     */
+    public static InputStream newInputStream(Path file) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(Files.newInputStream(file), 2);
+        try {
+            int first = in.read();
+            int second = first < 0 ? -1 : in.read();
+            if (second >= 0) in.unread(second);
+            if (first >= 0) in.unread(first);
+            if (first == GZIP_MAGIC_1 && second == GZIP_MAGIC_2) {
+                return new GZIPInputStream(in, GZIP_BUFFER_SIZE);
+            }
+            return in;
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+}
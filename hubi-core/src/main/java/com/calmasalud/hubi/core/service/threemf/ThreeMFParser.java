@@ -0,0 +1,442 @@
+package com.calmasalud.hubi.core.service.threemf;
+
+import com.calmasalud.hubi.core.model.FilamentProfile;
+import com.calmasalud.hubi.core.model.ModelObjectInfo;
+import com.calmasalud.hubi.core.model.PrintInfo;
+import com.calmasalud.hubi.core.service.gcode.GCodeParser;
+import com.calmasalud.hubi.core.service.gcode.GCodeValues;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Parser de 3MF en streaming: recorre el zip una sola vez (ZipInputStream) y nunca carga una entrada completa.
+ * - Archivos .model: StAX, cuenta objetos, ítems de build y triángulos por objeto.
+ * - Archivos .config / .ini: líneas "clave = valor" resueltas con un mapa de handlers precompilado.
+ * - Proyectos de BambuStudio / OrcaSlicer: Metadata/slice_info.config (StAX) y Metadata/plate_N.json
+ *   con el consumo por placa y por filamento, expuesto en PrintInfo.plates.
+ * - Archivos .gcode.3mf: el G-code de cada placa (Metadata/plate_N.gcode) se parsea desde el stream de la entrada
+ *   en su propio PrintInfo, que completa la placa de slice_info.config (o es la placa, si el proyecto no la declara).
+ * El resultado global es la suma explícita de las placas (ver aggregatePlates).
+ */
+public class ThreeMFParser {
+
+    private static final String ROOT_MODEL = "3d/3dmodel.model";
+    private static final String SLICE_INFO = "metadata/slice_info.config";
+    private static final int MAX_PLATE_JSON_BYTES = 1 << 20; // Los plate_N.json pesan pocos KB
+
+    // Metadata/plate_1.json -> índice 1
+    private static final Pattern P_PLATE_JSON = Pattern.compile("^metadata/plate_(\\d+)\\.json$");
+    private static final Pattern P_PLATE_GCODE = Pattern.compile("^metadata/plate_(\\d+)\\.gcode$");
+    private static final Pattern P_JSON_COLORS = Pattern.compile("\"filament_colou?rs\"\\s*:\\s*\\[([^\\]]*)\\]");
+    private static final Pattern P_JSON_IDS = Pattern.compile("\"filament_ids\"\\s*:\\s*\\[([^\\]]*)\\]");
+
+    private static final XMLInputFactory XML_FACTORY = createXmlFactory();
+
+    // "; filament_type = PLA" o "layer_height = 0.2"
+    private static final Pattern P_KEY_VALUE = Pattern.compile("^;?\\s*([A-Za-z_][^=]*?)\\s*=\\s*(.*)$");
+    private static final Pattern P_AMOUNT = Pattern.compile("([0-9.]+)\\s*(m|g)\\b", Pattern.CASE_INSENSITIVE);
+    private static final String LIST_SEPARATOR = "[;,]";
+
+    @FunctionalInterface
+    private interface ConfigHandler {
+        void apply(String value, PrintInfo info);
+    }
+
+    private static final Map<String, ConfigHandler> KEY_HANDLERS = new HashMap<>();
+
+    static {
+        KEY_HANDLERS.put("filament_type", (v, info) -> forEachValue(v, info, FilamentProfile::setMaterial));
+        KEY_HANDLERS.put("filament_colour", (v, info) -> forEachValue(v, info, FilamentProfile::setColor));
+        KEY_HANDLERS.put("filament_density", (v, info) -> forEachValue(v, info, (p, s) -> {
+            double d = GCodeValues.parseNumber(s);
+            if (!Double.isNaN(d)) p.densityGcm3 = d;
+        }));
+        KEY_HANDLERS.put("filament_diameter", (v, info) -> forEachValue(v, info, (p, s) -> {
+            double d = GCodeValues.parseNumber(s);
+            if (!Double.isNaN(d)) p.diameterMm = d;
+        }));
+        KEY_HANDLERS.put("layer_height", (v, info) -> {
+            double h = GCodeValues.parseNumber(v);
+            if (!Double.isNaN(h)) info.layerHeightMm = h;
+        });
+        KEY_HANDLERS.put("filament used [mm]", (v, info) -> forEachValue(v, info, (p, s) -> {
+            double mm = GCodeValues.parseNumber(s);
+            if (!Double.isNaN(mm)) p.amountMeters = mm / 1000.0;
+        }));
+        KEY_HANDLERS.put("filament used [g]", (v, info) -> forEachValue(v, info, (p, s) -> {
+            double g = GCodeValues.parseNumber(s);
+            if (!Double.isNaN(g)) p.amountGrams = g;
+        }));
+        ConfigHandler amount = (v, info) -> {
+            Matcher m = P_AMOUNT.matcher(v);
+            if (!m.find()) return;
+            double value = Double.parseDouble(m.group(1));
+            if (m.group(2).equalsIgnoreCase("m")) {
+                info.profile(0).amountMeters = value;
+            } else {
+                info.profile(0).amountGrams = value;
+            }
+        };
+        KEY_HANDLERS.put("filament used", amount);
+        KEY_HANDLERS.put("filament total", amount);
+    }
+
+    private static XMLInputFactory createXmlFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // Sin DTD ni entidades externas: los .model vienen de terceros
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    }
+
+    /**
+     * Parsea el 3MF completo volcando los resultados en info.
+     */
+    public void parse(Path threeMF, PrintInfo info) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(threeMF))) {
+            parse(in, info);
+        }
+    }
+
+    /**
+     * Parsea un 3MF desde un stream (no lo cierra).
+     */
+    public void parse(InputStream in, PrintInfo info) throws IOException {
+        ZipInputStream zip = new ZipInputStream(in);
+        // Colores de plate_N.json: se aplican al final porque pueden aparecer antes que slice_info.config
+        Map<Integer, Map<Integer, String>> plateColors = new HashMap<>();
+        // G-code embebido por placa: cada uno en su PrintInfo (dos placas no se pisan tiempo, gramos ni capas)
+        Map<Integer, PrintInfo> plateGCode = new TreeMap<>();
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Lectura del 3MF cancelada");
+            }
+            if (entry.isDirectory()) continue;
+            String name = entry.getName();
+            String lower = name.toLowerCase(Locale.ROOT);
+            try {
+                Matcher plateJson = P_PLATE_JSON.matcher(lower);
+                if (lower.endsWith(".model")) {
+                    parseModel(name, lower.equals(ROOT_MODEL), nonClosing(zip), info);
+                } else if (lower.equals(SLICE_INFO)) {
+                    parseSliceInfo(nonClosing(zip), info);
+                } else if (plateJson.matches()) {
+                    plateColors.put(Integer.parseInt(plateJson.group(1)), parsePlateColors(zip));
+                } else if (lower.endsWith(".gcode")) {
+                    // .gcode.3mf: G-code de la placa embebido (Metadata/plate_N.gcode), leído desde el inflater
+                    Matcher plateName = P_PLATE_GCODE.matcher(lower);
+                    PrintInfo plate = new PrintInfo();
+                    plate.plateIndex = plateName.matches() ? Integer.parseInt(plateName.group(1)) : plateGCode.size() + 1;
+                    GCodeParser.parse(new BufferedReader(new InputStreamReader(nonClosing(zip), StandardCharsets.UTF_8)), plate);
+                    plateGCode.put(plate.plateIndex, plate);
+                } else if (lower.endsWith(".config") || lower.endsWith(".ini")) {
+                    parseConfig(nonClosing(zip), info);
+                }
+            } catch (XMLStreamException | RuntimeException e) {
+                System.err.println("⚠️ No se pudo leer la entrada " + name + " del 3MF: " + e.getMessage());
+            }
+            zip.closeEntry();
+        }
+        mergePlateGCode(info, plateGCode);
+        applyPlateColors(info, plateColors);
+        aggregatePlates(info);
+    }
+
+    // --- MODELO (StAX) ---
+
+    private void parseModel(String entryName, boolean rootModel, InputStream in, PrintInfo info) throws XMLStreamException {
+        XMLStreamReader reader = XML_FACTORY.createXMLStreamReader(in, StandardCharsets.UTF_8.name());
+        try {
+            ModelObjectInfo current = null;
+            boolean inBuild = false;
+            int objects = 0;
+            int items = 0;
+
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (reader.getLocalName()) {
+                        case "object" -> {
+                            current = new ModelObjectInfo(entryName, reader.getAttributeValue(null, "id"));
+                            current.name = reader.getAttributeValue(null, "name");
+                            current.type = reader.getAttributeValue(null, "type");
+                            objects++;
+                        }
+                        case "vertex" -> { if (current != null) current.vertices++; }
+                        case "triangle" -> { if (current != null) current.triangles++; }
+                        case "component" -> { if (current != null) current.components++; }
+                        case "build" -> inBuild = true;
+                        case "item" -> { if (inBuild) items++; }
+                        default -> { }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    String local = reader.getLocalName();
+                    if (local.equals("object") && current != null) {
+                        info.modelObjects.add(current);
+                        current = null;
+                    } else if (local.equals("build")) {
+                        inBuild = false;
+                    }
+                }
+            }
+
+            if (rootModel) {
+                if (objects > 0) info.pieces = Math.max(info.pieces, objects);
+                info.buildItems += items;
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    // --- PLACAS (BambuStudio / OrcaSlicer) ---
+
+    /**
+     * Lee Metadata/slice_info.config:
+     * &lt;plate&gt; &lt;metadata key="index|prediction|weight" value=".."/&gt; &lt;object name=".."/&gt;
+     * &lt;filament id="1" type="PLA" color="#FFFFFF" used_m="1.2" used_g="3.4"/&gt; &lt;/plate&gt;
+     */
+    private void parseSliceInfo(InputStream in, PrintInfo info) throws XMLStreamException {
+        XMLStreamReader reader = XML_FACTORY.createXMLStreamReader(in, StandardCharsets.UTF_8.name());
+        try {
+            PrintInfo plate = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String local = reader.getLocalName();
+                    if (local.equals("plate")) {
+                        plate = new PrintInfo();
+                        plate.plateIndex = info.plates.size() + 1;
+                    } else if (plate != null && local.equals("metadata")) {
+                        applyPlateMetadata(plate, reader.getAttributeValue(null, "key"), reader.getAttributeValue(null, "value"));
+                    } else if (plate != null && local.equals("object")) {
+                        if (!"true".equalsIgnoreCase(reader.getAttributeValue(null, "skipped"))) {
+                            plate.pieces++;
+                        }
+                    } else if (plate != null && local.equals("filament")) {
+                        applyPlateFilament(plate, reader);
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("plate") && plate != null) {
+                    info.plates.add(plate);
+                    plate = null;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void applyPlateMetadata(PrintInfo plate, String key, String value) {
+        if (key == null || value == null) return;
+        double number = GCodeValues.parseNumber(value);
+        if (Double.isNaN(number)) return;
+        switch (key) {
+            case "index" -> plate.plateIndex = (int) number;
+            case "prediction" -> plate.timeSeconds = Math.round(number);
+            default -> { }
+        }
+    }
+
+    // El id de filamento es 1-based (ranura del AMS / extrusor): T(id - 1)
+    private static void applyPlateFilament(PrintInfo plate, XMLStreamReader reader) {
+        double id = GCodeValues.parseNumber(reader.getAttributeValue(null, "id"));
+        int tool = Double.isNaN(id) ? 0 : Math.max(0, (int) id - 1);
+        FilamentProfile profile = plate.profile(tool);
+        profile.setMaterial(reader.getAttributeValue(null, "type"));
+        profile.setColor(reader.getAttributeValue(null, "color"));
+        double meters = GCodeValues.parseNumber(reader.getAttributeValue(null, "used_m"));
+        double grams = GCodeValues.parseNumber(reader.getAttributeValue(null, "used_g"));
+        if (!Double.isNaN(meters)) profile.amountMeters = meters;
+        if (!Double.isNaN(grams)) profile.amountGrams = grams;
+    }
+
+    /**
+     * Lee "filament_ids" y "filament_colors" de un plate_N.json (lectura acotada, sin librería JSON).
+     * @return Mapa herramienta -> color HEX.
+     */
+    private static Map<Integer, String> parsePlateColors(InputStream in) throws IOException {
+        String json = new String(in.readNBytes(MAX_PLATE_JSON_BYTES), StandardCharsets.UTF_8);
+        Map<Integer, String> colors = new HashMap<>();
+        Matcher mColors = P_JSON_COLORS.matcher(json);
+        if (!mColors.find()) return colors;
+        String[] values = mColors.group(1).split(",");
+
+        String[] ids = null;
+        Matcher mIds = P_JSON_IDS.matcher(json);
+        if (mIds.find() && !mIds.group(1).isBlank()) ids = mIds.group(1).split(",");
+
+        for (int i = 0; i < values.length; i++) {
+            String color = values[i].trim().replace("\"", "");
+            if (color.isEmpty()) continue;
+            int tool = i;
+            if (ids != null && i < ids.length) {
+                double id = GCodeValues.parseNumber(ids[i]);
+                if (!Double.isNaN(id)) tool = (int) id;
+            }
+            colors.put(tool, color);
+        }
+        return colors;
+    }
+
+    private static void applyPlateColors(PrintInfo info, Map<Integer, Map<Integer, String>> plateColors) {
+        for (PrintInfo plate : info.plates) {
+            Map<Integer, String> colors = plateColors.get(plate.plateIndex);
+            if (colors == null) continue;
+            colors.forEach((tool, color) -> {
+                FilamentProfile profile = plate.filamentProfiles.get(tool);
+                if (profile != null && !profile.hasColor()) profile.setColor(color);
+            });
+        }
+    }
+
+    /**
+     * Suma el G-code embebido de cada placa a la placa que declaró slice_info.config (lo declarado ahí manda;
+     * el G-code completa lo que falte, Ej: cambios de color y capas). Si el proyecto no declara la placa
+     * (Ej: .gcode.3mf de PrusaSlicer), el G-code es la placa.
+     */
+    private static void mergePlateGCode(PrintInfo info, Map<Integer, PrintInfo> plateGCode) {
+        if (plateGCode.isEmpty()) return;
+        for (PrintInfo parsed : plateGCode.values()) {
+            PrintInfo plate = null;
+            for (PrintInfo declared : info.plates) {
+                if (declared.plateIndex == parsed.plateIndex) plate = declared;
+            }
+            if (plate == null) {
+                info.plates.add(parsed);
+                continue;
+            }
+            if (!plate.hasTime()) plate.timeSeconds = parsed.timeSeconds;
+            plate.colorChanges = parsed.colorChanges;
+            plate.totalLayers = parsed.totalLayers;
+            if (Double.isNaN(plate.layerHeightMm)) plate.layerHeightMm = parsed.layerHeightMm;
+            plate.estimatedSeconds = parsed.estimatedSeconds;
+            plate.layerSeconds.addAll(parsed.layerSeconds);
+            for (FilamentProfile source : parsed.filamentProfiles.values()) {
+                FilamentProfile target = plate.filamentProfiles.get(source.getToolIndex());
+                if (target == null) {
+                    plate.filamentProfiles.put(source.getToolIndex(), source);
+                    continue;
+                }
+                if (target.materialLabel == null && source.materialLabel != null) target.setMaterial(source.materialLabel);
+                if (!target.hasColor() && source.hasColor()) target.colorRgb = source.colorRgb;
+                if (Double.isNaN(target.densityGcm3)) target.densityGcm3 = source.densityGcm3;
+                if (Double.isNaN(target.diameterMm)) target.diameterMm = source.diameterMm;
+                if (!target.hasAmountGrams() && source.hasAmountGrams()) {
+                    target.amountGrams = source.amountGrams;
+                    target.amountEstimated = source.amountEstimated;
+                }
+                if (!target.hasAmountMeters() && source.hasAmountMeters()) target.amountMeters = source.amountMeters;
+            }
+        }
+        info.plates.sort(Comparator.comparingInt(p -> p.plateIndex));
+    }
+
+    /**
+     * Completa el resultado global con la suma de las placas: tiempo, piezas, cambios de color, capas, tiempo
+     * estimado y gramos/metros por herramienta. Lo que el archivo ya traía como total propio no se pisa.
+     */
+    private static void aggregatePlates(PrintInfo info) {
+        if (info.plates.isEmpty()) return;
+
+        boolean hasGlobalGrams = !info.gramsByTool().isEmpty();
+        long totalSeconds = 0;
+        long totalEstimatedSeconds = 0;
+        int totalPieces = 0;
+        int totalColorChanges = 0;
+        int totalLayers = 0;
+        for (PrintInfo plate : info.plates) {
+            if (plate.hasTime()) totalSeconds += plate.timeSeconds;
+            if (plate.estimatedSeconds > 0) totalEstimatedSeconds += plate.estimatedSeconds;
+            totalPieces += plate.pieces;
+            totalColorChanges += plate.colorChanges;
+            totalLayers += plate.totalLayers;
+            if (Double.isNaN(info.layerHeightMm)) info.layerHeightMm = plate.layerHeightMm;
+            for (FilamentProfile source : plate.filamentProfiles.values()) {
+                FilamentProfile target = info.profile(source.getToolIndex());
+                if (target.materialLabel == null && source.materialLabel != null) target.setMaterial(source.materialLabel);
+                if (!target.hasColor() && source.hasColor()) target.colorRgb = source.colorRgb;
+                if (Double.isNaN(target.densityGcm3)) target.densityGcm3 = source.densityGcm3;
+                if (!hasGlobalGrams && source.hasAmountGrams()) {
+                    target.amountGrams = (target.hasAmountGrams() ? target.amountGrams : 0) + source.amountGrams;
+                    if (source.hasAmountMeters()) {
+                        target.amountMeters = (target.hasAmountMeters() ? target.amountMeters : 0) + source.amountMeters;
+                    }
+                }
+            }
+        }
+        if (!info.hasTime() && totalSeconds > 0) info.timeSeconds = totalSeconds;
+        if (info.estimatedSeconds < 0 && totalEstimatedSeconds > 0) info.estimatedSeconds = totalEstimatedSeconds;
+        if (info.colorChanges == 0) info.colorChanges = totalColorChanges;
+        if (info.totalLayers == 0) info.totalLayers = totalLayers;
+        info.pieces = Math.max(info.pieces, totalPieces);
+    }
+
+    // --- CONFIGURACIÓN (clave = valor) ---
+
+    private void parseConfig(InputStream in, PrintInfo info) throws IOException {
+        BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = br.readLine()) != null) {
+            String l = line.trim();
+            if (l.isEmpty() || l.charAt(0) == '<' || l.charAt(0) == '{' || l.charAt(0) == '"') continue;
+
+            Matcher m = P_KEY_VALUE.matcher(l);
+            if (!m.matches()) continue;
+            String key = m.group(1).trim().toLowerCase(Locale.ROOT);
+            String value = m.group(2).trim();
+
+            ConfigHandler handler = KEY_HANDLERS.get(key);
+            if (handler != null) {
+                handler.apply(value, info);
+            } else if (key.startsWith("estimated printing time")) {
+                long seconds = GCodeValues.parseDurationSeconds(value);
+                if (seconds >= 0) info.timeSeconds = seconds;
+            }
+        }
+    }
+
+    private static void forEachValue(String raw, PrintInfo info, BiConsumer<FilamentProfile, String> setter) {
+        String[] values = raw.split(LIST_SEPARATOR);
+        for (int i = 0; i < values.length; i++) {
+            String value = values[i].trim();
+            if (!value.isEmpty() && !value.equalsIgnoreCase("N/D")) {
+                setter.accept(info.profile(i), value);
+            }
+        }
+    }
+
+    // Evita que los lectores cierren el ZipInputStream al terminar una entrada
+    private static InputStream nonClosing(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public void close() {
+                // No cerrar: la entrada la cierra el bucle principal con closeEntry()
+            }
+        };
+    }
+}
@@ -0,0 +1,154 @@
+package com.calmasalud.hubi.core.service.thumbnail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Decodificador QOI ("Quite OK Image", usado por PrusaSlicer para las miniaturas de la MK4/XL)
+ * que re-codifica la imagen como PNG, porque JavaFX no lee QOI.
+ * Implementación directa de la especificación 1.0, sin dependencias de AWT.
+ */
+final class QoiDecoder {
+
+    private static final int QOI_OP_INDEX = 0x00;
+    private static final int QOI_OP_DIFF = 0x40;
+    private static final int QOI_OP_LUMA = 0x80;
+    private static final int QOI_OP_RUN = 0xC0;
+    private static final int QOI_OP_RGB = 0xFE;
+    private static final int QOI_OP_RGBA = 0xFF;
+    private static final int MASK_2 = 0xC0;
+    private static final int HEADER_SIZE = 14;
+    private static final int MAX_PIXELS = 4096 * 4096;
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private QoiDecoder() {
+    }
+
+    /**
+     * @return La imagen como PNG RGBA de 8 bits.
+     */
+    static byte[] toPng(byte[] qoi) throws IOException {
+        if (qoi.length < HEADER_SIZE || qoi[0] != 'q' || qoi[1] != 'o' || qoi[2] != 'i' || qoi[3] != 'f') {
+            throw new IOException("La miniatura no es QOI válida.");
+        }
+        int width = readInt(qoi, 4);
+        int height = readInt(qoi, 8);
+        if (width <= 0 || height <= 0 || (long) width * height > MAX_PIXELS) {
+            throw new IOException("Dimensiones QOI inválidas: " + width + "x" + height);
+        }
+
+        // Filas PNG: 1 byte de filtro (0 = ninguno) + 4 bytes por píxel
+        int stride = width * 4 + 1;
+        byte[] raw = new byte[stride * height];
+        int[] index = new int[64];
+        int r = 0, g = 0, b = 0, a = 255;
+        int run = 0;
+        int p = HEADER_SIZE;
+        int end = qoi.length - 8; // Padding final de 8 bytes
+
+        for (int y = 0; y < height; y++) {
+            int o = y * stride + 1;
+            for (int x = 0; x < width; x++, o += 4) {
+                if (run > 0) {
+                    run--;
+                } else if (p < end) {
+                    int b1 = qoi[p++] & 0xFF;
+                    if (b1 == QOI_OP_RGB) {
+                        r = qoi[p++] & 0xFF;
+                        g = qoi[p++] & 0xFF;
+                        b = qoi[p++] & 0xFF;
+                    } else if (b1 == QOI_OP_RGBA) {
+                        r = qoi[p++] & 0xFF;
+                        g = qoi[p++] & 0xFF;
+                        b = qoi[p++] & 0xFF;
+                        a = qoi[p++] & 0xFF;
+                    } else if ((b1 & MASK_2) == QOI_OP_INDEX) {
+                        int px = index[b1];
+                        r = (px >>> 24) & 0xFF;
+                        g = (px >>> 16) & 0xFF;
+                        b = (px >>> 8) & 0xFF;
+                        a = px & 0xFF;
+                    } else if ((b1 & MASK_2) == QOI_OP_DIFF) {
+                        r = (r + ((b1 >> 4) & 0x03) - 2) & 0xFF;
+                        g = (g + ((b1 >> 2) & 0x03) - 2) & 0xFF;
+                        b = (b + (b1 & 0x03) - 2) & 0xFF;
+                    } else if ((b1 & MASK_2) == QOI_OP_LUMA) {
+                        int b2 = qoi[p++] & 0xFF;
+                        int vg = (b1 & 0x3F) - 32;
+                        r = (r + vg - 8 + ((b2 >> 4) & 0x0F)) & 0xFF;
+                        g = (g + vg) & 0xFF;
+                        b = (b + vg - 8 + (b2 & 0x0F)) & 0xFF;
+                    } else if ((b1 & MASK_2) == QOI_OP_RUN) {
+                        run = b1 & 0x3F;
+                    }
+                    index[(r * 3 + g * 5 + b * 7 + a * 11) % 64] = (r << 24) | (g << 16) | (b << 8) | a;
+                }
+                raw[o] = (byte) r;
+                raw[o + 1] = (byte) g;
+                raw[o + 2] = (byte) b;
+                raw[o + 3] = (byte) a;
+            }
+        }
+        return encodePng(width, height, raw);
+    }
+
+    private static byte[] encodePng(int width, int height, byte[] raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4);
+        out.write(PNG_SIGNATURE);
+
+        byte[] ihdr = new byte[13];
+        writeInt(ihdr, 0, width);
+        writeInt(ihdr, 4, height);
+        ihdr[8] = 8;  // Bits por canal
+        ihdr[9] = 6;  // RGBA
+        writeChunk(out, "IHDR", ihdr);
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream idat = new ByteArrayOutputStream(raw.length / 4);
+            byte[] buffer = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                idat.write(buffer, 0, n);
+            }
+            writeChunk(out, "IDAT", idat.toByteArray());
+        } finally {
+            deflater.end();
+        }
+        writeChunk(out, "IEND", new byte[0]);
+        return out.toByteArray();
+    }
+
+    private static void writeChunk(ByteArrayOutputStream out, String type, byte[] data) throws IOException {
+        byte[] length = new byte[4];
+        writeInt(length, 0, data.length);
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+        byte[] crcBytes = new byte[4];
+        writeInt(crcBytes, 0, (int) crc.getValue());
+
+        out.write(length);
+        out.write(typeBytes);
+        out.write(data);
+        out.write(crcBytes);
+    }
+
+    private static int readInt(byte[] b, int off) {
+        return ((b[off] & 0xFF) << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+    }
+
+    private static void writeInt(byte[] b, int off, int value) {
+        b[off] = (byte) (value >>> 24);
+        b[off + 1] = (byte) (value >>> 16);
+        b[off + 2] = (byte) (value >>> 8);
+        b[off + 3] = (byte) value;
+    }
+}
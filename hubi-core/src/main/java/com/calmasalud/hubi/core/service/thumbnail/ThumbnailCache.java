@@ -0,0 +1,114 @@
+package com.calmasalud.hubi.core.service.thumbnail;
+
+import com.calmasalud.hubi.core.model.Thumbnail;
+import com.calmasalud.hubi.core.service.FileCacheKey;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Caché en disco de miniaturas, junto al repositorio (SistemaHUBI/CacheMiniaturas).
+ * La clave es FileCacheKey (ruta + tamaño + fecha de modificación), así que un archivo
+ * reemplazado nunca devuelve una miniatura vieja. Los archivos sin miniatura dejan un marcador vacío
+ * para no volver a leerlos. El tamaño total está acotado: se descartan primero los menos usados (LRU
+ * por fecha de modificación, que se actualiza en cada acierto).
+ */
+public class ThumbnailCache {
+
+    public static final Path CACHE_BASE =
+            Paths.get(System.getProperty("user.home"), "SistemaHUBI", "CacheMiniaturas");
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final String EMPTY_MARKER = ".none";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final ThumbnailExtractor extractor;
+
+    public ThumbnailCache() {
+        this(CACHE_BASE, DEFAULT_MAX_BYTES, new ThumbnailExtractor());
+    }
+
+    public ThumbnailCache(Path directory, long maxBytes, ThumbnailExtractor extractor) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.extractor = extractor;
+    }
+
+    /**
+     * Devuelve la miniatura cacheada del archivo, extrayéndola si todavía no está en caché.
+     * @return Ruta de la imagen (PNG/JPG) o null si el archivo no trae miniatura.
+     */
+    public synchronized Path getOrExtract(File source) {
+        if (source == null || !source.isFile()) return null;
+        try {
+            String key = FileCacheKey.of(source);
+            if (Files.exists(directory.resolve(key + EMPTY_MARKER))) return null;
+            for (Thumbnail.Format format : Thumbnail.Format.values()) {
+                Path cached = directory.resolve(key + format.getExtension());
+                if (Files.exists(cached)) {
+                    Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis()));
+                    return cached;
+                }
+            }
+
+            Files.createDirectories(directory);
+            Thumbnail thumbnail = extractor.extract(source);
+            if (thumbnail == null) {
+                Files.write(directory.resolve(key + EMPTY_MARKER), new byte[0]);
+                return null;
+            }
+            Path target = directory.resolve(key + thumbnail.format.getExtension());
+            // Escritura atómica: el visor nunca ve una imagen a medio escribir
+            Path tmp = Files.createTempFile(directory, key, ".tmp");
+            Files.write(tmp, thumbnail.data);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            evictIfNeeded();
+            return target;
+        } catch (IOException e) {
+            System.err.println("⚠️ Error en la caché de miniaturas para " + source.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Borra las entradas menos usadas hasta que la caché quede por debajo del límite.
+     */
+    private void evictIfNeeded() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                if (!Files.isRegularFile(entry)) continue;
+                entries.add(entry);
+                total += Files.size(entry);
+            }
+        }
+        if (total <= maxBytes) return;
+
+        entries.sort(Comparator.comparing(ThumbnailCache::lastModified));
+        for (Path entry : entries) {
+            if (total <= maxBytes) break;
+            long size = Files.size(entry);
+            if (Files.deleteIfExists(entry)) total -= size;
+        }
+        System.out.println("LOG: Caché de miniaturas recortada a " + total + " bytes.");
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.calmasalud.hubi.core.service.thumbnail;
+
+import com.calmasalud.hubi.core.model.PrintFileType;
+import com.calmasalud.hubi.core.model.Thumbnail;
+import com.calmasalud.hubi.core.service.bgcode.BGCodeReader;
+import com.calmasalud.hubi.core.service.storage.StoredContent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Extrae la miniatura más grande embebida en un archivo de impresión:
+ * - G-code (.gcode / .gcode.gz): bloques base64 "; thumbnail[_PNG|_JPG|_QOI] begin WxH LEN" del encabezado.
+ *   La lectura se corta en el primer comando, así que nunca se recorre el toolpath.
+ * - 3MF / .gcode.3mf: imágenes PNG en Metadata/ (thumbnail.png, plate_N.png...).
+ * - bgcode: bloques de miniatura, antes del primer bloque de G-code.
+ * Las miniaturas QOI se convierten a PNG para que JavaFX pueda mostrarlas.
+ */
+public class ThumbnailExtractor {
+
+    private static final Pattern P_BEGIN = Pattern.compile(
+            "^;\\s*thumbnail(?:_(PNG|JPG|QOI))?\\s+begin\\s+(\\d+)\\s*x\\s*(\\d+)(?:\\s+\\d+)?.*$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern P_END = Pattern.compile("^;\\s*thumbnail(?:_\\w+)?\\s+end\\b.*$", Pattern.CASE_INSENSITIVE);
+
+    private static final long MAX_ENTRY_SIZE = 8L * 1024 * 1024;
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G'};
+
+    /**
+     * @return La miniatura más grande del archivo, o null si no tiene (o no es un tipo con miniaturas, como STL).
+     */
+    public Thumbnail extract(File file) {
+        PrintFileType type = PrintFileType.fromFileName(file.getName());
+        if (type == null || !file.isFile()) return null;
+        Path path = file.toPath();
+        try {
+            Thumbnail thumbnail = switch (type) {
+                case GCODE -> fromGCode(StoredContent.newInputStream(path)); // Plano o comprimido en disco
+                case GCODE_GZ -> fromGCode(new GZIPInputStream(Files.newInputStream(path), 64 * 1024));
+                case THREE_MF, GCODE_3MF -> fromZip(path);
+                case BGCODE -> fromBGCode(path);
+                default -> null;
+            };
+            if (thumbnail != null && thumbnail.format == Thumbnail.Format.QOI) {
+                thumbnail = new Thumbnail(Thumbnail.Format.PNG, thumbnail.width, thumbnail.height, QoiDecoder.toPng(thumbnail.data));
+            }
+            if (thumbnail != null) {
+                System.out.println("LOG: Miniatura extraída de " + file.getName() + ": " + thumbnail);
+            }
+            return thumbnail;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("⚠️ No se pudo extraer la miniatura de " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // --- G-CODE DE TEXTO ---
+
+    private Thumbnail fromGCode(InputStream in) throws IOException {
+        Thumbnail best = null;
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            StringBuilder base64 = null;
+            Thumbnail.Format format = null;
+            int width = 0;
+            int height = 0;
+            while ((line = br.readLine()) != null) {
+                String l = line.trim();
+                if (l.isEmpty()) continue;
+                if (!l.startsWith(";")) {
+                    if (base64 == null) break; // Primer comando: ya no quedan miniaturas de encabezado
+                    continue;
+                }
+                if (base64 == null) {
+                    Matcher m = P_BEGIN.matcher(l);
+                    if (m.matches()) {
+                        format = m.group(1) == null ? Thumbnail.Format.PNG : Thumbnail.Format.valueOf(m.group(1).toUpperCase(Locale.ROOT));
+                        width = Integer.parseInt(m.group(2));
+                        height = Integer.parseInt(m.group(3));
+                        base64 = new StringBuilder();
+                    }
+                } else if (P_END.matcher(l).matches()) {
+                    Thumbnail candidate = new Thumbnail(format, width, height, Base64.getMimeDecoder().decode(base64.toString()));
+                    if (best == null || candidate.area() > best.area()) best = candidate;
+                    base64 = null;
+                } else {
+                    base64.append(l, 1, l.length());
+                }
+            }
+        }
+        return best;
+    }
+
+    // --- 3MF ---
+
+    private Thumbnail fromZip(Path zipPath) throws IOException {
+        Thumbnail best = null;
+        try (ZipInputStream zip = new ZipInputStream(new BufferedInputStream(Files.newInputStream(zipPath)))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String name = entry.getName().toLowerCase(Locale.ROOT);
+                // pick_N.png es un mapa de colores por objeto, no una vista previa
+                if (entry.isDirectory() || !name.startsWith("metadata/") || !name.endsWith(".png") || name.contains("pick_")) {
+                    continue;
+                }
+                if (entry.getSize() > MAX_ENTRY_SIZE) continue;
+                byte[] data = zip.readNBytes((int) MAX_ENTRY_SIZE);
+                Thumbnail candidate = fromPng(data);
+                if (candidate != null && (best == null || candidate.area() > best.area())) best = candidate;
+            }
+        }
+        return best;
+    }
+
+    // Dimensiones a partir del chunk IHDR (siempre el primero)
+    private static Thumbnail fromPng(byte[] data) {
+        if (data.length < 24) return null;
+        for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+            if (data[i] != PNG_SIGNATURE[i]) return null;
+        }
+        int width = readIntBigEndian(data, 16);
+        int height = readIntBigEndian(data, 20);
+        return new Thumbnail(Thumbnail.Format.PNG, width, height, data);
+    }
+
+    private static int readIntBigEndian(byte[] b, int off) {
+        return ((b[off] & 0xFF) << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+    }
+
+    // --- BGCODE ---
+
+    private Thumbnail fromBGCode(Path bgcode) throws IOException {
+        Thumbnail best = null;
+        try (BGCodeReader reader = new BGCodeReader(bgcode)) {
+            BGCodeReader.Block block;
+            while ((block = reader.nextBlock()) != null) {
+                if (block.type == BGCodeReader.GCODE) break;
+                if (block.type != BGCodeReader.THUMBNAIL) continue;
+                BGCodeReader.Thumbnail t = reader.readThumbnail(block);
+                Thumbnail.Format format = switch (t.format) {
+                    case BGCodeReader.THUMBNAIL_PNG -> Thumbnail.Format.PNG;
+                    case BGCodeReader.THUMBNAIL_JPG -> Thumbnail.Format.JPG;
+                    case BGCodeReader.THUMBNAIL_QOI -> Thumbnail.Format.QOI;
+                    default -> null;
+                };
+                if (format == null) continue;
+                Thumbnail candidate = new Thumbnail(format, t.width, t.height, t.data);
+                if (best == null || candidate.area() > best.area()) best = candidate;
+            }
+        }
+        return best;
+    }
+}
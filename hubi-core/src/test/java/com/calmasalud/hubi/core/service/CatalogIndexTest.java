@@ -0,0 +1,202 @@
+package com.calmasalud.hubi.core.service;
+
+import com.calmasalud.hubi.core.model.PieceStockColorView;
+import com.calmasalud.hubi.core.model.PieceStockDeduction;
+import com.calmasalud.hubi.core.model.Product;
+import com.calmasalud.hubi.core.repository.IProductRepository;
+import com.calmasalud.hubi.corpus.Corpus;
+import com.calmasalud.hubi.corpus.CorpusSpec;
+import com.calmasalud.hubi.corpus.SlicerFlavor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CatalogIndexTest {
+
+    private static final long SMALL = 64 * 1024;
+
+    @TempDir
+    Path corpusDir;
+
+    @TempDir
+    Path repository;
+
+    private final CatalogIndex index = new CatalogIndex();
+    private final Map<String, List<Product>> rows = new HashMap<>();
+    private final AtomicInteger findByCodeCalls = new AtomicInteger();
+    private boolean listAll = true;
+
+    // Repositorio en memoria: sólo findAll y findByCode, que son los que usa el índice
+    private final IProductRepository productRepository = new IProductRepository() {
+        @Override public List<Product> findAll() {
+            if (!listAll) return List.of();
+            List<Product> all = new ArrayList<>();
+            rows.values().forEach(all::addAll);
+            return all;
+        }
+
+        @Override public Product findByCode(String code) {
+            findByCodeCalls.incrementAndGet();
+            List<Product> products = rows.get(code);
+            return products == null ? null : products.get(0);
+        }
+
+        @Override public String getNextCorrelative(String prefijoSeisLetras) { return null; }
+        @Override public long save(Product product) { return -1; }
+        @Override public void updateProductCost(String code, double cost) {}
+        @Override public void deleteByCode(String code) {}
+        @Override public List<Product> findPiecesByMasterPrefix(String masterPrefix) { return List.of(); }
+        @Override public int getPieceStockQuantity(String pieceNameBase) { return 0; }
+        @Override public void increasePieceStockQuantity(String pieceNameBase, String colorName, int quantity) {}
+        @Override public List<PieceStockColorView> getStockByPieceNameBase(String pieceNameBase) { return List.of(); }
+        @Override public void deletePieceStockByPieceNameBase(String pieceNameBase) {}
+        @Override public void decreasePieceStockQuantity(String pieceNameBase, String colorName, int quantity) {}
+        @Override public void decreasePieceStockBatch(List<PieceStockDeduction> deductions) {}
+    };
+
+    private Path soportes;
+    private Path llaveros;
+
+    // Repositorio con dos productos: SOP (G-code, STL y un .gcode.3mf) y LLA, dentro de una subcarpeta, más carpetas ocultas
+    @BeforeEach
+    void createRepository() throws IOException {
+        soportes = Files.createDirectories(repository.resolve("SOP"));
+        llaveros = Files.createDirectories(repository.resolve("Varios").resolve("LLA"));
+        Files.createDirectories(repository.resolve(".blobs").resolve("ab"));
+
+        piece(soportes.resolve("SOPROJ001.gcode"), Corpus.gcode(new CorpusSpec(SlicerFlavor.PRUSA, SMALL, 1), corpusDir));
+        piece(soportes.resolve("SOPROJ001.stl"), null);
+        piece(soportes.resolve("SOPAZU002.gcode.3mf"), Corpus.gcode3MF(new CorpusSpec(SlicerFlavor.BAMBU, SMALL, 2), corpusDir));
+        piece(llaveros.resolve("LLANEG001.gcode"), Corpus.gcode(new CorpusSpec(SlicerFlavor.ORCA, SMALL, 3), corpusDir));
+        Files.writeString(soportes.resolve("notas.txt"), "No es una pieza");
+        Files.writeString(soportes.resolve(".SOPROJ003.gcode"), "; oculto");
+        Files.writeString(repository.resolve(".blobs").resolve("ab").resolve("SOPROJ004.gcode"), "; blob");
+
+        rows.put("SOPROJ001", List.of(new Product("SOPROJ001", "Soporte.stl", ".stl", 0),
+                new Product("SOPROJ001", "Soporte.gcode", ".gcode", 0)));
+        rows.put("SOPAZU002", List.of(new Product("SOPAZU002", "Soporte Azul.gcode.3mf", ".gcode.3mf", 0)));
+        rows.put("LLANEG001", List.of(new Product("LLANEG001", "Llavero.gcode", ".gcode", 0)));
+    }
+
+    private static void piece(Path target, Path source) throws IOException {
+        if (source == null) Files.writeString(target, "solid vacio\nendsolid vacio\n");
+        else Files.copy(source, target);
+    }
+
+    @Test
+    void build_IndexesVisibleFoldersAndPiecesWithOneQuery() throws IOException {
+        index.build(repository, productRepository);
+
+        assertTrue(index.isBuilt());
+        assertEquals(0, findByCodeCalls.get(), "Los nombres originales salen de findAll.");
+        assertEquals(List.of(soportes.toFile(), repository.resolve("Varios").toFile()), index.listFolders(repository));
+        assertEquals(List.of(llaveros.toFile()), index.listFolders(repository.resolve("Varios")));
+        assertFalse(index.containsFolder(repository.resolve(".blobs")));
+
+        List<CatalogIndex.PieceEntry> pieces = index.listPieces(soportes);
+        assertEquals(List.of("SOPAZU002.gcode.3mf", "SOPROJ001.gcode", "SOPROJ001.stl"),
+                pieces.stream().map(p -> p.path.getFileName().toString()).toList());
+        CatalogIndex.PieceEntry gcode = pieces.get(1);
+        assertEquals("SOPROJ001", gcode.code);
+        assertEquals(".gcode", gcode.extension);
+        assertEquals("Soporte.gcode", gcode.originalName, "Se usa la fila de la misma extensión.");
+        assertEquals(Files.size(gcode.path), gcode.size);
+        assertEquals(Files.getLastModifiedTime(gcode.path).toMillis(), gcode.lastModified);
+        assertEquals("Soporte.stl", pieces.get(2).originalName);
+        assertEquals(".gcode.3mf", pieces.get(0).extension);
+        assertEquals("SOPAZU002", pieces.get(0).code);
+        assertEquals(4, index.listPiecesRecursively(repository).size(), "Incluye el llavero de la subcarpeta.");
+    }
+
+    @Test
+    void build_LooksUpEachCodeWhenTheRepositoryCannotListItsRows() {
+        listAll = false;
+
+        index.build(repository, productRepository);
+
+        assertEquals(4, findByCodeCalls.get());
+        assertEquals("Llavero.gcode", index.getPiece(llaveros.resolve("LLANEG001.gcode")).originalName);
+        assertEquals(1, index.listPieces(llaveros).size());
+    }
+
+    @Test
+    void queries_FindDuplicatesAndTheComplementaryFile() {
+        rows.remove("SOPAZU002");
+        index.build(repository, productRepository);
+
+        assertTrue(index.containsOriginalName(soportes, "Soporte.gcode"));
+        assertFalse(index.containsOriginalName(llaveros, "Soporte.gcode"));
+        assertNull(index.getPiece(soportes.resolve("SOPAZU002.gcode.3mf")).originalName, "Sin fila en BD.");
+
+        assertEquals("SOPROJ001", index.findCorrelative(soportes, "SOPORTE", true));
+        assertEquals("SOPROJ001", index.findCorrelative(soportes, "soporte", false));
+        assertNull(index.findCorrelative(llaveros, "Llavero", false), "No hay STL del llavero.");
+        assertNull(index.findCorrelative(repository.resolve("NoExiste"), "Soporte", true));
+    }
+
+    @Test
+    void updates_KeepFoldersPiecesAndMissingFilesInSync() throws IOException {
+        index.build(repository, productRepository);
+
+        Path nueva = repository.resolve("Nuevos").resolve("TAP");
+        Files.createDirectories(nueva);
+        Path tapa = Files.copy(Corpus.gcode(new CorpusSpec(SlicerFlavor.CURA, SMALL, 4), corpusDir), nueva.resolve("TAPBLA001.gcode"));
+        index.putPiece(tapa, "Tapa.gcode");
+
+        assertEquals(List.of(nueva.toFile()), index.listFolders(repository.resolve("Nuevos")), "Se crean las carpetas intermedias.");
+        assertTrue(index.listFolders(repository).contains(repository.resolve("Nuevos").toFile()));
+        assertEquals(Files.size(tapa), index.getPiece(tapa).size);
+        assertEquals("TAPBLA001", index.findCorrelative(nueva, "tapa", true));
+
+        Path llavero = llaveros.resolve("LLANEG001.gcode");
+        index.markMissing(llavero);
+        assertTrue(index.isMissing(llavero));
+        assertNull(index.getPiece(llavero));
+        assertEquals(List.of("LLANEG001"), index.getMissingPieces().stream().map(p -> p.code).toList());
+        index.putPiece(llavero, "Llavero.gcode");
+        assertFalse(index.isMissing(llavero), "El archivo reapareció.");
+
+        index.removePiece(soportes.resolve("SOPROJ001.stl"));
+        assertNull(index.findCorrelative(soportes, "Soporte", false));
+        assertTrue(index.containsOriginalName(soportes, "Soporte.gcode"));
+
+        index.removeFolder(repository.resolve("Varios"));
+        assertFalse(index.containsFolder(llaveros));
+        assertFalse(index.listFolders(repository).contains(repository.resolve("Varios").toFile()));
+        index.removeFolder(repository);
+        assertTrue(index.containsFolder(repository), "La raíz no se quita.");
+    }
+
+    @Test
+    void fireChanged_NotifiesEveryListenerEvenIfOneFails() {
+        List<CatalogIndex.Change> received = new ArrayList<>();
+        CatalogIndex.ChangeListener failing = change -> {
+            throw new IllegalStateException("Vista cerrada");
+        };
+        CatalogIndex.ChangeListener recording = received::add;
+        index.addListener(failing);
+        index.addListener(recording);
+
+        CatalogIndex.Change change = new CatalogIndex.Change(Set.of(soportes), false);
+        index.fireChanged(change);
+        index.removeListener(recording);
+        index.fireChanged(new CatalogIndex.Change(Set.of(llaveros), true));
+
+        assertEquals(List.of(change), received);
+    }
+}
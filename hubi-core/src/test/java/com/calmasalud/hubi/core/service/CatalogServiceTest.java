@@ -1,5 +1,8 @@
 package com.calmasalud.hubi.core.service;
 
+import com.calmasalud.hubi.core.model.DeductionPlan;
+import com.calmasalud.hubi.core.model.DeletedRows;
+import com.calmasalud.hubi.core.model.FilamentProfile;
 import com.calmasalud.hubi.core.model.Product;
 import com.calmasalud.hubi.core.model.MasterProduct;
 import com.calmasalud.hubi.core.model.ProductComposition;
@@ -13,13 +16,20 @@ import com.calmasalud.hubi.core.model.Supply;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
@@ -30,6 +40,7 @@ class CatalogServiceTest {
     private final AtomicInteger deleteCallCount = new AtomicInteger(0);
     private final AtomicInteger modifyCallCount = new AtomicInteger(0);
     private final AtomicReference<Supply> modifiedSupplyRef = new AtomicReference<>();
+    private final Map<Long, Double> deductedGrams = new LinkedHashMap<>();
 
     // Mocks de datos específicos para los nuevos tests (para findByID)
     private final Supply supplyForTest1 = new Supply(1L, "AZUPLA001", "Filamento Azul PLA", "PLA", "Azul", 0.0, 50.0); // Stock 0
@@ -59,6 +70,15 @@ class CatalogServiceTest {
 
         @Override public List<Supply> listAll() { return List.of(); }
         @Override public String getNextCorrelativeCode(String colorName, String tipoFilamento) { return null; }
+
+        @Override public Map<Long, Double> deductStockBatch(Map<Long, Double> gramsBySupplyId) {
+            Map<Long, Double> remaining = new LinkedHashMap<>();
+            gramsBySupplyId.forEach((id, grams) -> {
+                deductedGrams.merge(id, grams, Double::sum);
+                remaining.put(id, findByID(id).getCantidadDisponible() - grams);
+            });
+            return remaining;
+        }
     };
 
     // Funcion auxiliar para restablecer los contadores y datos antes de cada prueba de insumos
@@ -66,6 +86,7 @@ class CatalogServiceTest {
         deleteCallCount.set(0);
         modifyCallCount.set(0);
         modifiedSupplyRef.set(null);
+        deductedGrams.clear();
         // Es crucial resetear la cantidad disponible si la modificamos en los tests
         supplyForTest1.setCantidadDisponible(0.0);
         supplyForTest2.setCantidadDisponible(100.5);
@@ -96,11 +117,14 @@ class CatalogServiceTest {
             @Override public String getPrefixFromName(String productName) { return null; }
             @Override public String getNextMasterCode(String masterPrefix) { return null; }
             @Override public long saveNewProduct(MasterProduct product, double initialPrice) { return 0; }
+            @Override public long saveNewProductWithPieces(MasterProduct product, double initialPrice, List<Product> pieces) { return 0; }
             @Override public void increaseStock(String masterCode, int quantity) {}
             @Override public MasterProduct findByMasterCode(String masterCode) { return null; }
             @Override public List<MasterProduct> findAll() { return List.of(); }
             @Override public long save(MasterProduct product) { return 0; }
             @Override public void deleteProduct(String masterCode) {}
+            @Override public DeletedRows deleteProductWithPieces(String masterCode, Collection<String> pieceCodes, Collection<String> pieceNameBases) { return DeletedRows.EMPTY; }
+            @Override public void restoreRows(DeletedRows rows) {}
             @Override public void decreaseStock(String masterCode, int quantity) {}
             @Override public MasterProduct findByProductName(String productName) { return null; }
             @Override public MasterProduct findByProductPrefix(String prefix) { return null; }
@@ -326,4 +350,108 @@ class CatalogServiceTest {
         Supply modifiedSupply = modifiedSupplyRef.get();
         assertTrue(modifiedSupply.getCantidadDisponible() < 0.01, "El stock modificado debe ser 0.0.");
     }
-}
\ No newline at end of file
+
+    @Test
+    void registerPieceProduction_WithPlan_DeductsEachLineFromItsOwnSupply() {
+        resetSupplyMockState();
+        // Herramienta 0 (gris) consume menos que la herramienta 1 (verde): el orden de herramientas no es el de pesos
+        Product piece = new Product("SOPROJ001", "Soporte.gcode", ".gcode", 25.0, "0:PLA:#808080:5.0;1:ABS:#00FF00:20.0");
+        AtomicReference<String> combinationRef = new AtomicReference<>();
+        IProductRepository productRepository = new IProductRepository() {
+            @Override public String getNextCorrelative(String prefijoSeisLetras) { return null; }
+            @Override public long save(Product product) { return 0; }
+            @Override public Product findByCode(String code) { return piece; }
+            @Override public void deleteByCode(String code) {}
+            @Override public List<Product> findPiecesByMasterPrefix(String masterPrefix) { return new ArrayList<>(); }
+            @Override public int getPieceStockQuantity(String pieceNameBase) { return 0; }
+            @Override public void increasePieceStockQuantity(String pieceNameBase, String colorName, int quantity) { combinationRef.set(colorName); }
+            @Override public List<PieceStockColorView> getStockByPieceNameBase(String pieceNameBase) { return new ArrayList<>(); }
+            @Override public void deletePieceStockByPieceNameBase(String pieceNameBase) {}
+            @Override public void decreasePieceStockQuantity(String pieceNameBase, String colorName, int quantity){}
+            @Override public void decreasePieceStockBatch(List<PieceStockDeduction> deductions) {}
+            @Override public void updateProductCost(String code, double cost) {}
+        };
+        CatalogService service = new CatalogService(productRepository, createMasterProductRepoStub(), createCompositionRepoStub(), mockSupplyRepository);
+
+        DeductionPlan plan = new DeductionPlan(2);
+        plan.lines.add(new DeductionPlan.Line(new FilamentProfile(0), supplyForTest4, 5.0, 10.0, 0.0));
+        plan.lines.add(new DeductionPlan.Line(new FilamentProfile(1), supplyForTest2, 20.0, 40.0, 0.0));
+
+        service.registerPieceProduction("SOPROJ001", plan);
+
+        assertEquals(10.0, deductedGrams.get(4L), 0.0001, "El gris debe descontar los gramos de su línea.");
+        assertEquals(40.0, deductedGrams.get(2L), 0.0001, "El verde debe descontar los gramos de su línea.");
+        assertEquals(0, modifyCallCount.get(), "El descuento debe hacerse en un solo lote, no insumo por insumo.");
+        assertEquals(String.join("|", plan.getColorKeys()), combinationRef.get());
+    }
+
+    @Test
+    void deleteProduct_WithSharedPrefix_OnlyDeletesThePiecesOfItsOwnFolder() throws IOException {
+        // Soporte y Sopapa comparten el prefijo SOP; SOPROJ003 es una fila sin archivo que no es de ninguno
+        Path repositorio = Paths.get(System.getProperty("user.home"), "SistemaHUBI", "RepositorioArchivos");
+        Path soporte = Files.createDirectories(repositorio.resolve("Soporte"));
+        Path sopapa = Files.createDirectories(repositorio.resolve("Sopapa"));
+        Files.writeString(soporte.resolve("SOPROJ001.gcode"), "G1 X1\n");
+        Files.writeString(sopapa.resolve("SOPROJ002.gcode"), "G1 X2\n");
+        List<Product> rows = List.of(
+                new Product("SOPROJ001", "Base.gcode", ".gcode", 0.0),
+                new Product("SOPROJ002", "Ventosa.gcode", ".gcode", 0.0),
+                new Product("SOPROJ003", "Huerfana.gcode", ".gcode", 0.0));
+
+        IProductRepository productRepository = new IProductRepository() {
+            @Override public String getNextCorrelative(String prefijoSeisLetras) { return null; }
+            @Override public long save(Product product) { return 0; }
+            @Override public Product findByCode(String code) { return null; }
+            @Override public List<Product> findAll() { return rows; }
+            @Override public void deleteByCode(String code) {}
+            @Override public List<Product> findPiecesByMasterPrefix(String masterPrefix) { return new ArrayList<>(); }
+            @Override public int getPieceStockQuantity(String pieceNameBase) { return 0; }
+            @Override public void increasePieceStockQuantity(String pieceNameBase, String colorName, int quantity) {}
+            @Override public List<PieceStockColorView> getStockByPieceNameBase(String pieceNameBase) { return new ArrayList<>(); }
+            @Override public void deletePieceStockByPieceNameBase(String pieceNameBase) {}
+            @Override public void decreasePieceStockQuantity(String pieceNameBase, String colorName, int quantity){}
+            @Override public void decreasePieceStockBatch(List<PieceStockDeduction> deductions) {}
+            @Override public void updateProductCost(String code, double cost) {}
+        };
+        AtomicReference<String> deletedMaster = new AtomicReference<>();
+        List<String> deletedPieces = new ArrayList<>();
+        IMasterProductRepository masterRepository = new IMasterProductRepository() {
+            @Override public String getPrefixFromName(String productName) { return null; }
+            @Override public String getNextMasterCode(String masterPrefix) { return null; }
+            @Override public long saveNewProduct(MasterProduct product, double initialPrice) { return 0; }
+            @Override public long saveNewProductWithPieces(MasterProduct product, double initialPrice, List<Product> pieces) { return 0; }
+            @Override public void increaseStock(String masterCode, int quantity) {}
+            @Override public MasterProduct findByMasterCode(String masterCode) { return null; }
+            @Override public List<MasterProduct> findAll() { return List.of(); }
+            @Override public long save(MasterProduct product) { return 0; }
+            @Override public void deleteProduct(String masterCode) {}
+            @Override public DeletedRows deleteProductWithPieces(String masterCode, Collection<String> pieceCodes, Collection<String> pieceNameBases) {
+                deletedMaster.set(masterCode);
+                deletedPieces.addAll(pieceCodes);
+                return DeletedRows.EMPTY;
+            }
+            @Override public void restoreRows(DeletedRows rows) {}
+            @Override public void decreaseStock(String masterCode, int quantity) {}
+            @Override public MasterProduct findByProductName(String productName) {
+                if ("Soporte".equals(productName)) return new MasterProduct("SOP01", "SOP", "Soporte", "");
+                if ("Sopapa".equals(productName)) return new MasterProduct("SOP02", "SOP", "Sopapa", "");
+                return null;
+            }
+            @Override public MasterProduct findByProductPrefix(String prefix) { return null; }
+        };
+        CatalogService service = new CatalogService(productRepository, masterRepository, createCompositionRepoStub(), mockSupplyRepository);
+
+        try {
+            service.rebuildCatalogIndex();
+            service.deleteProduct(soporte.toFile());
+
+            assertEquals("SOP01", deletedMaster.get());
+            assertEquals(List.of("SOPROJ001"), deletedPieces, "Solo se borran las piezas que el índice tiene en la carpeta del producto.");
+            assertFalse(Files.exists(soporte), "La carpeta del producto debe ir a la papelera.");
+            assertTrue(Files.exists(sopapa.resolve("SOPROJ002.gcode")), "El otro producto con el mismo prefijo no se toca.");
+        } finally {
+            Files.deleteIfExists(sopapa.resolve("SOPROJ002.gcode"));
+            Files.deleteIfExists(sopapa);
+        }
+    }
+}
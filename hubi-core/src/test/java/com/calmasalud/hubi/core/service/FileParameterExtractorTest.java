@@ -0,0 +1,143 @@
+package com.calmasalud.hubi.core.service;
+
+import com.calmasalud.hubi.core.model.FilamentMaterial;
+import com.calmasalud.hubi.core.model.FilamentProfile;
+import com.calmasalud.hubi.core.model.PrintInfo;
+import com.calmasalud.hubi.corpus.Corpus;
+import com.calmasalud.hubi.corpus.CorpusPlan;
+import com.calmasalud.hubi.corpus.CorpusSpec;
+import com.calmasalud.hubi.corpus.SlicerFlavor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileParameterExtractorTest {
+
+    private static final long ONE_MB = 1024 * 1024;
+    private static final double GRAMS_DELTA = 0.005;
+
+    @TempDir
+    Path corpusDir;
+
+    private final FileParameterExtractor extractor = new FileParameterExtractor();
+
+    // --- 1. G-CODE POR DIALECTO ---
+
+    @Test
+    void extractsDeclaredValuesFromPrusaGCode() throws IOException {
+        assertMatchesPlan(new CorpusSpec(SlicerFlavor.PRUSA, ONE_MB, 7).tools(3).colorChanges(2));
+    }
+
+    @Test
+    void extractsDeclaredValuesFromOrcaGCode() throws IOException {
+        assertMatchesPlan(new CorpusSpec(SlicerFlavor.ORCA, ONE_MB, 11).tools(2));
+    }
+
+    @Test
+    void extractsDeclaredValuesFromBambuGCode() throws IOException {
+        assertMatchesPlan(new CorpusSpec(SlicerFlavor.BAMBU, ONE_MB, 13).tools(4).colorChanges(1));
+    }
+
+    @Test
+    void extractsTimeAndLengthFromCuraGCode() throws IOException {
+        CorpusSpec spec = new CorpusSpec(SlicerFlavor.CURA, ONE_MB, 17);
+        CorpusPlan plan = new CorpusPlan(spec);
+        PrintInfo info = extractor.extract(List.of(Corpus.gcode(spec, corpusDir).toFile()));
+
+        assertEquals(plan.timeSeconds, info.timeSeconds);
+        assertEquals(plan.totalMeters(), info.profile(0).amountMeters, 0.001);
+        assertEquals(FilamentMaterial.fromLabel(plan.materials[0]), info.profile(0).material);
+        assertEquals(plan.layers, info.layerIndex.size());
+    }
+
+    private void assertMatchesPlan(CorpusSpec spec) throws IOException {
+        CorpusPlan plan = new CorpusPlan(spec);
+        Path gcode = Corpus.gcode(spec, corpusDir);
+        PrintInfo info = extractor.extract(List.of(gcode.toFile()));
+
+        assertEquals(plan.timeSeconds, info.timeSeconds, "Tiempo declarado");
+        assertEquals(plan.expectedColorChanges(), info.colorChanges, "Cambios de herramienta + M600");
+        assertEquals(plan.layers, info.layerIndex.size(), "Capas indexadas");
+        assertProfilesMatch(plan, info);
+    }
+
+    // --- 2. 3MF ---
+
+    @Test
+    void extractsPlateFilamentsFromBambuProject() throws IOException {
+        CorpusSpec spec = new CorpusSpec(SlicerFlavor.BAMBU, ONE_MB, 23).tools(2);
+        CorpusPlan plan = new CorpusPlan(spec);
+        PrintInfo info = extractor.extract(List.of(Corpus.threeMF(spec, corpusDir).toFile()));
+
+        assertEquals(1, info.plates.size());
+        assertEquals(plan.timeSeconds, info.timeSeconds);
+        assertProfilesMatch(plan, info);
+    }
+
+    @Test
+    void readsPrusaProjectConfigAndModel() throws IOException {
+        CorpusSpec spec = new CorpusSpec(SlicerFlavor.PRUSA, ONE_MB, 4).tools(2); // Semilla 4 -> 2 objetos
+        CorpusPlan plan = new CorpusPlan(spec);
+        PrintInfo info = extractor.extract(List.of(Corpus.threeMF(spec, corpusDir).toFile()));
+
+        assertEquals(2, info.pieces);
+        assertEquals(2, info.buildItems);
+        for (int t = 0; t < spec.tools; t++) {
+            FilamentProfile profile = info.profile(t);
+            assertEquals(FilamentMaterial.fromLabel(plan.materials[t]), profile.material);
+            assertEquals(FilamentProfile.parseHexColor(plan.colors[t]), profile.colorRgb);
+        }
+    }
+
+    @Test
+    void gcode3mfMatchesPlainGCode() throws IOException {
+        CorpusSpec spec = new CorpusSpec(SlicerFlavor.ORCA, ONE_MB, 29).tools(3).colorChanges(1);
+        PrintInfo plain = extractor.extract(List.of(Corpus.gcode(spec, corpusDir).toFile()));
+        PrintInfo embedded = extractor.extract(List.of(Corpus.gcode3MF(spec, corpusDir).toFile()));
+
+        assertEquals(plain.timeSeconds, embedded.timeSeconds);
+        assertEquals(plain.colorChanges, embedded.colorChanges);
+        assertEquals(plain.gramsByTool(), embedded.gramsByTool());
+    }
+
+    // --- 3. GENERADOR ---
+
+    @Test
+    void corpusIsDeterministicAndNearTargetSize() throws IOException {
+        CorpusSpec spec = new CorpusSpec(SlicerFlavor.PRUSA, 2 * ONE_MB, 99).tools(2);
+        Path first = Corpus.gcode(spec, corpusDir.resolve("a"));
+        Path second = Corpus.gcode(spec, corpusDir.resolve("b"));
+
+        assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+        long size = Files.size(first);
+        assertTrue(Math.abs(size - spec.targetBytes) < spec.targetBytes * 0.15, "Tamaño generado: " + size);
+    }
+
+    @Test
+    void corpusGCodeIsValidUtf8() throws IOException {
+        Path gcode = Corpus.gcode(new CorpusSpec(SlicerFlavor.PRUSA, ONE_MB / 4, 31), corpusDir);
+
+        // Files.readString decodifica UTF-8 estricto (falla con MalformedInputException)
+        String text = Files.readString(gcode, StandardCharsets.UTF_8);
+        assertTrue(text.contains("M83 ; extrusión relativa"));
+        assertEquals(Files.size(gcode), text.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private static void assertProfilesMatch(CorpusPlan plan, PrintInfo info) {
+        for (int t = 0; t < plan.spec.tools; t++) {
+            FilamentProfile profile = info.profile(t);
+            assertEquals(plan.gramsPerTool[t], profile.amountGrams, GRAMS_DELTA, "Gramos T" + t);
+            assertEquals(FilamentMaterial.fromLabel(plan.materials[t]), profile.material, "Material T" + t);
+            assertEquals(FilamentProfile.parseHexColor(plan.colors[t]), profile.colorRgb, "Color T" + t);
+        }
+    }
+}
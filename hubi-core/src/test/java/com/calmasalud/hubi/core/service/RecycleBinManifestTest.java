@@ -0,0 +1,195 @@
+package com.calmasalud.hubi.core.service;
+
+import com.calmasalud.hubi.core.model.DeletedRows;
+import com.calmasalud.hubi.core.model.MasterProductView;
+import com.calmasalud.hubi.core.model.PieceStockColorView;
+import com.calmasalud.hubi.core.model.Product;
+import com.calmasalud.hubi.core.model.ProductComposition;
+import com.calmasalud.hubi.corpus.Corpus;
+import com.calmasalud.hubi.corpus.CorpusSpec;
+import com.calmasalud.hubi.corpus.SlicerFlavor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecycleBinManifestTest {
+
+    private static final long SMALL = 64 * 1024;
+
+    @TempDir
+    Path corpusDir;
+
+    @TempDir
+    Path bin;
+
+    // Entrada de la papelera: una carpeta de producto con un G-code del corpus
+    private Path productEntry(String name, long seed) throws IOException {
+        Path dir = Files.createDirectories(bin.resolve(name));
+        Files.copy(Corpus.gcode(new CorpusSpec(SlicerFlavor.PRUSA, SMALL, seed), corpusDir), dir.resolve("SOPROJ001.gcode"));
+        return dir;
+    }
+
+    private Path pieceEntry(String name, long seed) throws IOException {
+        return Files.copy(Corpus.gcode(new CorpusSpec(SlicerFlavor.ORCA, SMALL, seed), corpusDir), bin.resolve(name));
+    }
+
+    private static DeletedRows productRows(String description) {
+        return new DeletedRows(
+                new MasterProductView("SOP", "SOPROJ", "Soporte", description, 3, 1250.5),
+                List.of(new ProductComposition("SOP", "Soporte base", 2), new ProductComposition("SOP", "Tapa", 1)),
+                List.of(new Product("SOPROJ001", "Soporte base.gcode", ".gcode", 12.5, "T0: 12.50 g", 80.0),
+                        new Product("SOPROJ002", "Tapa.stl", ".stl", 0.0, "", 0.0)),
+                List.of(new PieceStockColorView("Soporte base", "Rojo", 4)));
+    }
+
+    private static RecycleBinManifest.Entry entry(Path path, Path originalPath, String code, long deletedAt, DeletedRows rows)
+            throws IOException {
+        return new RecycleBinManifest.Entry(path.getFileName().toString(), originalPath, code,
+                RecycleBinManifest.sizeOf(path), deletedAt, rows);
+    }
+
+    private Path manifestFile() {
+        return bin.resolve(".manifiesto");
+    }
+
+    @Test
+    void open_ReplaysEveryRecordTypeWrittenByPut() throws IOException {
+        Path product = productEntry("20250101_120000_SOP", 1);
+        Path piece = pieceEntry("20250102_090000_LLANEG001.gcode", 2);
+        // Tabulador, salto de línea y barra invertida en los campos de texto
+        DeletedRows rows = productRows("Soporte\tpara\nrepisa \\ pared");
+        Path original = Path.of("/repositorio", "Soportes", "SOP");
+
+        RecycleBinManifest manifest = RecycleBinManifest.open(bin);
+        manifest.put(entry(piece, null, "LLANEG001", 2000, DeletedRows.EMPTY));
+        manifest.put(entry(product, original, "SOP", 1000, rows));
+
+        RecycleBinManifest reopened = RecycleBinManifest.open(bin);
+        RecycleBinManifest.Entry loaded = reopened.get(product.getFileName().toString());
+        assertEquals(original, loaded.originalPath);
+        assertEquals("SOP", loaded.code);
+        assertEquals(Files.size(product.resolve("SOPROJ001.gcode")), loaded.size);
+        assertEquals(1000, loaded.deletedAt);
+        assertEquals("Soporte\tpara\nrepisa \\ pared", loaded.rows.master.getDescription());
+        assertEquals(3, loaded.rows.master.getQuantityAvailable());
+        assertEquals(1250.5, loaded.rows.master.getPrice());
+        assertEquals(List.of("Soporte base", "Tapa"), loaded.rows.composition.stream().map(ProductComposition::getPieceNameBase).toList());
+        assertEquals(2, loaded.rows.composition.get(0).getRequiredQuantity());
+        Product soporte = loaded.rows.findPiece("SOPROJ001");
+        assertEquals("Soporte base.gcode", soporte.getName());
+        assertEquals(12.5, soporte.getWeightGrams());
+        assertEquals("T0: 12.50 g", soporte.getUsageDetail());
+        assertEquals(80.0, soporte.getCost());
+        assertEquals("Rojo", loaded.rows.pieceStock.get(0).getColorName());
+        assertEquals(4, loaded.rows.pieceStock.get(0).getQuantityAvailable());
+
+        assertNull(reopened.get(piece.getFileName().toString()).originalPath);
+        assertTrue(reopened.get(piece.getFileName().toString()).rows.isEmpty());
+        assertEquals(product.getFileName().toString(), reopened.findByCode("SOPROJ002").name, "Pieza borrada con su producto.");
+        assertEquals(List.of(1000L, 2000L), reopened.list().stream().map(e -> e.deletedAt).toList());
+    }
+
+    @Test
+    void open_DiscardsARecordCutBeforeItsEntryLine() throws IOException {
+        Path product = productEntry("20250101_120000_SOP", 3);
+        Path piece = pieceEntry("20250103_100000_TAPBLA001.gcode", 4);
+        RecycleBinManifest.open(bin).put(entry(product, null, "SOP", 1000, productRows("Completo")));
+        // Cierre inesperado a mitad del registro de la pieza: dos filas y una tercera cortada, sin su E
+        String name = piece.getFileName().toString();
+        Files.writeString(manifestFile(), "P\t" + name + "\tTAPBLA001\tTapa.gcode\t.gcode\t5.0\t\t0.0\n"
+                + "S\t" + name + "\tTapa\tBlanco\t2\n" + "S\t" + name + "\tTa", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        RecycleBinManifest reopened = RecycleBinManifest.open(bin);
+
+        assertEquals("Completo", reopened.get(product.getFileName().toString()).rows.master.getDescription());
+        RecycleBinManifest.Entry recovered = reopened.get(name);
+        assertTrue(recovered.rows.isEmpty(), "Las filas del registro cortado no se asignan a la entrada.");
+        assertNull(recovered.code);
+        assertNull(reopened.findByCode("TAPBLA001"));
+
+        // El registro nuevo empieza en su propia línea y se lee completo
+        reopened.put(entry(piece, Path.of("/repositorio", "TAP", name), "TAPBLA001", 3000,
+                new DeletedRows(null, List.of(), List.of(new Product("TAPBLA001", "Tapa.gcode", ".gcode", 0)), List.of())));
+        RecycleBinManifest again = RecycleBinManifest.open(bin);
+        assertEquals(name, again.findByCode("TAPBLA001").name);
+        assertEquals(3000, again.get(name).deletedAt);
+        assertEquals(2, again.list().size());
+    }
+
+    @Test
+    void open_ReconcilesTheManifestWithTheEntriesOnDisk() throws Exception {
+        Path registered = pieceEntry("20250101_120000_SOPROJ001.gcode", 5);
+        RecycleBinManifest.open(bin).put(entry(registered, null, "SOPROJ001", 1000, DeletedRows.EMPTY));
+        Files.delete(registered);
+        Path copied = productEntry("20240615_083000_LLA", 6); // Copiada a mano, sin registro
+        Path undated = pieceEntry("Suelto.gcode", 7);
+
+        RecycleBinManifest manifest = RecycleBinManifest.open(bin);
+
+        assertNull(manifest.get(registered.getFileName().toString()));
+        assertNull(manifest.findByCode("SOPROJ001"));
+        RecycleBinManifest.Entry added = manifest.get(copied.getFileName().toString());
+        assertEquals(new SimpleDateFormat("yyyyMMdd_HHmmss").parse("20240615_083000").getTime(), added.deletedAt);
+        assertEquals(RecycleBinManifest.sizeOf(copied), added.size);
+        assertEquals(Files.getLastModifiedTime(undated).toMillis(), manifest.get("Suelto.gcode").deletedAt);
+        assertEquals(2, RecycleBinManifest.open(bin).list().size());
+    }
+
+    @Test
+    void findByCode_ReturnsTheSurvivingDeletionAfterRetentionPurgesTheOlderOne() throws IOException {
+        Path older = productEntry("20250101_120000_SOP", 8);
+        Path newer = productEntry("20250201_120000_SOP", 9);
+        RecycleBinManifest manifest = RecycleBinManifest.open(bin);
+        manifest.put(entry(older, null, "SOP", 1000, productRows("Primera")));
+        manifest.put(entry(newer, null, "SOP", 2000, productRows("Segunda")));
+        assertEquals(newer.getFileName().toString(), manifest.findByCode("SOPROJ001").name);
+
+        // La retención purga primero la más vieja (como RecycleBinManager.purge: borra y registra la X)
+        deleteTree(older);
+        manifest.remove(older.getFileName().toString());
+        RecycleBinManifest reopened = RecycleBinManifest.open(bin);
+        assertEquals("Segunda", reopened.findByCode("SOP").rows.master.getDescription());
+        assertEquals("Segunda", reopened.findByCode("SOPROJ002").rows.master.getDescription());
+
+        // Restaurar la que queda la saca del manifiesto: el código ya no tiene nada que restaurar
+        Files.move(newer, corpusDir.resolve("SOP"));
+        reopened.remove(newer.getFileName().toString());
+        assertNull(reopened.findByCode("SOP"));
+        assertNull(RecycleBinManifest.open(bin).findByCode("SOPROJ001"));
+        assertTrue(RecycleBinManifest.open(bin).list().isEmpty());
+    }
+
+    @Test
+    void open_RewritesTheManifestWhenDeadRecordsDominate() throws IOException {
+        Path product = productEntry("20250101_120000_SOP", 10);
+        RecycleBinManifest manifest = RecycleBinManifest.open(bin);
+        // Al abrirla se registró la carpeta (una E); cada registro son 6 filas (M, 2 C, 2 P, S) más su E
+        for (int i = 0; i < 50; i++) manifest.put(entry(product, null, "SOP", 1000 + i, productRows("Versión " + i)));
+        assertEquals(1 + 50 * 7, Files.readAllLines(manifestFile()).size());
+
+        RecycleBinManifest compacted = RecycleBinManifest.open(bin);
+
+        assertEquals(7, Files.readAllLines(manifestFile()).size());
+        assertEquals("Versión 49", compacted.get(product.getFileName().toString()).rows.master.getDescription());
+        assertEquals(1049, RecycleBinManifest.open(bin).findByCode("SOPROJ001").deletedAt);
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) Files.delete(path);
+        }
+    }
+}
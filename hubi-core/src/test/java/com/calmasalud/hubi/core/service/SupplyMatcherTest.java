@@ -0,0 +1,108 @@
+package com.calmasalud.hubi.core.service;
+
+import com.calmasalud.hubi.core.model.DeductionPlan;
+import com.calmasalud.hubi.core.model.FilamentProfile;
+import com.calmasalud.hubi.core.model.Supply;
+import com.calmasalud.hubi.core.service.color.ColorResolver;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SupplyMatcherTest {
+
+    private final SupplyMatcher matcher = new SupplyMatcher(ColorResolver.defaultResolver());
+
+    private static FilamentProfile usage(int tool, String material, String hex, double grams) {
+        FilamentProfile profile = new FilamentProfile(tool);
+        profile.setMaterial(material);
+        profile.colorRgb = FilamentProfile.parseHexColor(hex);
+        profile.amountGrams = grams;
+        return profile;
+    }
+
+    private static Supply supply(long id, String material, String color, double stock) {
+        return new Supply(id, "INS" + id, "Insumo " + id, material, color, stock, 50.0);
+    }
+
+    @Test
+    void plan_MapsEachToolToTheClosestColourOfItsMaterial() {
+        Supply rojoPetg = supply(1, "PETG", "#FF0000", 500);
+        Supply azulPla = supply(2, "PLA", "#0000FF", 500);
+        Supply rojoPla = supply(3, "PLA", "#FA0505", 500);
+
+        // T0 consume menos que T1: las líneas quedan de mayor a menor consumo (Color 1 = T1)
+        List<FilamentProfile> usages = Arrays.asList(usage(0, "PLA", "#0000FF", 4.0), usage(1, "PLA", "#FF0000", 10.0));
+        DeductionPlan plan = matcher.plan(usages, Arrays.asList(rojoPetg, azulPla, rojoPla), 3);
+
+        assertTrue(plan.isValid(), "Plan con problemas: " + plan.problems);
+        assertEquals(2, plan.lines.size());
+        assertEquals(1, plan.lines.get(0).usage.getToolIndex());
+        assertSame(rojoPla, plan.lines.get(0).supply, "El rojo PLA debe ganarle al rojo PETG aunque el color sea exacto.");
+        assertEquals(30.0, plan.lines.get(0).totalGrams, 0.0001);
+        assertEquals(0, plan.lines.get(1).usage.getToolIndex());
+        assertSame(azulPla, plan.lines.get(1).supply);
+        assertEquals(12.0, plan.lines.get(1).totalGrams, 0.0001);
+    }
+
+    @Test
+    void plan_RejectsColoursBeyondTheCiede2000CutOff() {
+        Supply casiRojo = supply(1, "PLA", "#F00A0A", 500);
+        double distance = ColorResolver.distance(0xFF0000, 0xF00A0A);
+        List<FilamentProfile> usages = List.of(usage(0, "PLA", "#FF0000", 10.0));
+
+        DeductionPlan within = new SupplyMatcher(ColorResolver.defaultResolver(), distance + 0.5).plan(usages, List.of(casiRojo), 1);
+        assertTrue(within.isValid());
+        assertEquals(distance, within.lines.get(0).colorDistance, 0.0001);
+
+        DeductionPlan beyond = new SupplyMatcher(ColorResolver.defaultResolver(), distance - 0.5).plan(usages, List.of(casiRojo), 1);
+        assertFalse(beyond.isValid());
+        assertNull(beyond.lines.get(0).supply);
+        assertTrue(beyond.problems.get(0).startsWith("No hay insumo compatible para T0"), beyond.problems.get(0));
+
+        // Con el corte por defecto, el verde no pasa por rojo
+        DeductionPlan verde = matcher.plan(usages, List.of(supply(2, "PLA", "#00FF00", 500)), 1);
+        assertFalse(verde.isValid());
+    }
+
+    @Test
+    void plan_ReportsInsufficientStockWhenTwoToolsShareASpool() {
+        Supply rojo = supply(1, "PLA", "#FF0000", 10.0);
+        List<FilamentProfile> usages = Arrays.asList(usage(0, "PLA", "#FF0000", 6.0), usage(1, "PLA", "#FE0000", 5.0));
+
+        DeductionPlan plan = matcher.plan(usages, List.of(rojo), 1);
+
+        assertFalse(plan.isValid());
+        assertSame(rojo, plan.lines.get(0).supply, "El consumo más grande reserva primero.");
+        assertNull(plan.lines.get(1).supply);
+        assertEquals(1, plan.problems.size());
+        assertTrue(plan.problems.get(0).startsWith("Stock insuficiente para Insumo 1 (T1)"), plan.problems.get(0));
+        assertTrue(plan.problems.get(0).contains("disponible 4.00g"), plan.problems.get(0));
+    }
+
+    @Test
+    void withSupplies_UsesTheChosenSupplyAndRevalidatesStock() {
+        Supply rojo = supply(1, "PLA", "#FF0000", 500);
+        Supply negro = supply(2, "PLA", "#000000", 15.0);
+        List<FilamentProfile> usages = Arrays.asList(usage(0, "PLA", "#FF0000", 10.0), usage(1, "PLA", "#FF0000", 8.0));
+        DeductionPlan suggested = matcher.plan(usages, Arrays.asList(rojo, negro), 1);
+        assertSame(rojo, suggested.lines.get(1).supply);
+
+        // Color 1 sin elección (queda el sugerido), Color 2 pasa al negro
+        DeductionPlan chosen = matcher.withSupplies(suggested, Arrays.asList(null, negro));
+        assertTrue(chosen.isValid(), "Plan con problemas: " + chosen.problems);
+        assertSame(rojo, chosen.lines.get(0).supply);
+        assertSame(negro, chosen.lines.get(1).supply);
+
+        // Las dos líneas en el negro superan sus 15g
+        DeductionPlan overdrawn = matcher.withSupplies(suggested, Arrays.asList(negro, negro));
+        assertFalse(overdrawn.isValid());
+        assertTrue(overdrawn.problems.get(0).startsWith("Stock insuficiente para Insumo 2 (T1)"), overdrawn.problems.get(0));
+    }
+}
@@ -0,0 +1,136 @@
+package com.calmasalud.hubi.core.service.bgcode;
+
+import com.calmasalud.hubi.core.model.PrintInfo;
+import com.calmasalud.hubi.corpus.BGCodeCorpusGenerator;
+import com.calmasalud.hubi.corpus.Corpus;
+import com.calmasalud.hubi.corpus.CorpusPlan;
+import com.calmasalud.hubi.corpus.CorpusSpec;
+import com.calmasalud.hubi.corpus.QoiCorpusImage;
+import com.calmasalud.hubi.corpus.SlicerFlavor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BGCodeReaderTest {
+
+    private static final long HALF_MB = 512 * 1024;
+    private static final double GRAMS_DELTA = 0.005;
+
+    @TempDir
+    Path corpusDir;
+
+    private List<BGCodeReader.Block> blocks(Path bgcode) throws IOException {
+        List<BGCodeReader.Block> blocks = new ArrayList<>();
+        try (BGCodeReader reader = new BGCodeReader(bgcode)) {
+            BGCodeReader.Block block;
+            while ((block = reader.nextBlock()) != null) blocks.add(block);
+        }
+        return blocks;
+    }
+
+    @Test
+    void nextBlock_WalksTheHeadersUpToTheEndOfTheFile() throws IOException {
+        Path bgcode = Corpus.bgcode(new CorpusSpec(SlicerFlavor.PRUSA, HALF_MB, 3), corpusDir);
+
+        List<BGCodeReader.Block> blocks = blocks(bgcode);
+
+        assertEquals(List.of(BGCodeReader.FILE_METADATA, BGCodeReader.PRINTER_METADATA, BGCodeReader.THUMBNAIL,
+                BGCodeReader.PRINT_METADATA, BGCodeReader.SLICER_METADATA), blocks.subList(0, 5).stream().map(b -> b.type).toList());
+        assertTrue(blocks.size() > 6, "El G-code va en varios bloques.");
+        assertTrue(blocks.subList(5, blocks.size()).stream().allMatch(b -> b.type == BGCodeReader.GCODE));
+        assertEquals(BGCodeReader.COMPRESSION_DEFLATE, blocks.get(1).compression);
+        assertTrue(blocks.get(1).compressedSize < blocks.get(1).uncompressedSize);
+        BGCodeReader.Block last = blocks.get(blocks.size() - 1);
+        assertEquals(Files.size(bgcode), last.dataOffset() + last.storedSize() + 4, "El último bloque termina con su CRC32.");
+    }
+
+    @Test
+    void readMetadataAndThumbnail_DecodeOnlyTheRequestedBlocks() throws IOException {
+        CorpusSpec spec = new CorpusSpec(SlicerFlavor.PRUSA, HALF_MB, 5).tools(2);
+        CorpusPlan plan = new CorpusPlan(spec);
+        BGCodeCorpusGenerator generator = new BGCodeCorpusGenerator(plan);
+        Path bgcode = Corpus.bgcode(spec, corpusDir);
+
+        try (BGCodeReader reader = new BGCodeReader(bgcode)) {
+            Map<String, String> file = reader.readMetadata(reader.nextBlock());
+            assertEquals("PrusaSlicer 2.7.1", file.get("Producer"));
+
+            Map<String, String> printer = reader.readMetadata(reader.nextBlock()); // Deflate
+            assertEquals(String.join(";", plan.materials), printer.get("filament_type"));
+            assertEquals("MK4", printer.get("printer_model"));
+
+            BGCodeReader.Thumbnail thumbnail = reader.readThumbnail(reader.nextBlock());
+            QoiCorpusImage image = generator.thumbnail();
+            assertEquals(BGCodeReader.THUMBNAIL_QOI, thumbnail.format);
+            assertEquals(image.width, thumbnail.width);
+            assertEquals(image.height, thumbnail.height);
+            assertArrayEquals(image.toQoi(), thumbnail.data);
+
+            reader.nextBlock();
+            reader.nextBlock();
+            BGCodeReader.Block gcode = reader.nextBlock();
+            assertEquals(BGCodeReader.GCODE, gcode.type);
+            assertThrows(IllegalArgumentException.class, () -> reader.readMetadata(gcode), "El toolpath no se decodifica.");
+        }
+    }
+
+    @Test
+    void parse_FillsPrintInfoFromTheMetadataBlocks() throws IOException {
+        CorpusSpec spec = new CorpusSpec(SlicerFlavor.PRUSA, HALF_MB, 6).tools(3);
+        CorpusPlan plan = new CorpusPlan(spec);
+
+        PrintInfo info = new PrintInfo();
+        BGCodeParser.parse(Corpus.bgcode(spec, corpusDir), info);
+
+        assertEquals(plan.timeSeconds, info.timeSeconds);
+        assertEquals(0.2, info.layerHeightMm, 1e-9);
+        for (int t = 0; t < spec.tools; t++) {
+            assertEquals(plan.gramsPerTool[t], info.profile(t).amountGrams, GRAMS_DELTA, "Gramos T" + t);
+            assertEquals(plan.materials[t], info.profile(t).materialLabel, "Material T" + t);
+            assertEquals(plan.colors[t], info.profile(t).getColorHex(), "Color T" + t);
+        }
+        assertEquals(0, info.totalLayers, "Las capas están en el toolpath, que no se lee.");
+    }
+
+    @Test
+    void readMetadata_RejectsABlockWithABadChecksum() throws IOException {
+        Path bgcode = Corpus.bgcode(new CorpusSpec(SlicerFlavor.PRUSA, HALF_MB, 7), corpusDir);
+        BGCodeReader.Block printer = blocks(bgcode).get(1);
+        Path corrupted = corpusDir.resolve("corrupto.bgcode");
+        byte[] bytes = Files.readAllBytes(bgcode);
+        bytes[(int) printer.dataOffset()] ^= 0x01;
+        Files.write(corrupted, bytes);
+
+        try (BGCodeReader reader = new BGCodeReader(corrupted)) {
+            reader.nextBlock();
+            BGCodeReader.Block block = reader.nextBlock();
+            IOException error = assertThrows(IOException.class, () -> reader.readMetadata(block));
+            assertTrue(error.getMessage().startsWith("CRC32 inválido"), error.getMessage());
+        }
+    }
+
+    @Test
+    void reader_RejectsTruncatedAndForeignFiles() throws IOException {
+        Path bgcode = Corpus.bgcode(new CorpusSpec(SlicerFlavor.PRUSA, HALF_MB, 8), corpusDir);
+        byte[] bytes = Files.readAllBytes(bgcode);
+        Path truncated = Files.write(corpusDir.resolve("truncado.bgcode"), Arrays.copyOf(bytes, bytes.length - 100));
+
+        IOException error = assertThrows(IOException.class, () -> blocks(truncated));
+        assertTrue(error.getMessage().startsWith("Bloque truncado"), error.getMessage());
+
+        Path text = Corpus.gcode(new CorpusSpec(SlicerFlavor.PRUSA, HALF_MB, 8), corpusDir);
+        assertThrows(IOException.class, () -> new BGCodeReader(text).close());
+    }
+}
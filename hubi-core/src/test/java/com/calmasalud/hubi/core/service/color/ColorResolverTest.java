@@ -0,0 +1,125 @@
+package com.calmasalud.hubi.core.service.color;
+
+import com.calmasalud.hubi.core.model.FilamentProfile;
+import com.calmasalud.hubi.core.model.Supply;
+import com.calmasalud.hubi.corpus.CorpusPlan;
+import com.calmasalud.hubi.corpus.CorpusSpec;
+import com.calmasalud.hubi.corpus.SlicerFlavor;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColorResolverTest {
+
+    private final ColorResolver resolver = ColorResolver.defaultResolver();
+
+    @Test
+    void deltaE2000_MatchesTheReferenceDataOfSharmaWuAndDalal() {
+        double[][][] pairs = {
+                {{50.0000, 2.6772, -79.7751}, {50.0000, 0.0000, -82.7485}, {2.0425}},
+                {{50.0000, 3.1571, -77.2803}, {50.0000, 0.0000, -82.7485}, {2.8615}},
+                {{50.0000, -1.3802, -84.2814}, {50.0000, 0.0000, -82.7485}, {1.0000}},
+                {{50.0000, 2.4900, -0.0010}, {50.0000, -2.4900, 0.0009}, {7.1792}},
+                {{50.0000, 2.5000, 0.0000}, {73.0000, 25.0000, -18.0000}, {27.1492}},
+                {{60.2574, -34.0099, 36.2677}, {60.4626, -34.1751, 39.4387}, {1.2644}},
+                {{2.0776, 0.0795, -1.1350}, {0.9033, -0.0636, -0.5514}, {0.9082}},
+        };
+        for (double[][] pair : pairs) {
+            assertEquals(pair[2][0], ColorResolver.deltaE2000(pair[0], pair[1]), 1e-4);
+            assertEquals(pair[2][0], ColorResolver.deltaE2000(pair[1], pair[0]), 1e-4, "La distancia es simétrica.");
+        }
+    }
+
+    @Test
+    void toLab_ConvertsSrgbWithTheD65WhitePoint() {
+        assertArrayEquals(new double[]{100.0, 0.0, 0.0}, ColorResolver.toLab(0xFFFFFF), 0.01);
+        assertArrayEquals(new double[]{0.0, 0.0, 0.0}, ColorResolver.toLab(0x000000), 0.01);
+        assertArrayEquals(new double[]{53.24, 80.09, 67.20}, ColorResolver.toLab(0xFF0000), 0.01);
+        assertArrayEquals(new double[]{32.30, 79.19, -107.86}, ColorResolver.toLab(0x0000FF), 0.01);
+    }
+
+    @Test
+    void resolve_MatchesTheExactSearchAtTheCentreOfEachGridCell() {
+        int total = 0, exact = 0;
+        for (long seed = 1; seed <= 20; seed++) {
+            CorpusPlan plan = new CorpusPlan(new CorpusSpec(SlicerFlavor.BAMBU, CorpusSpec.MIN_BYTES, seed).tools(16));
+            for (String hex : plan.colors) {
+                int rgb = FilamentProfile.parseHexColor(hex);
+                String resolved = resolver.resolveHex(hex);
+                assertEquals(resolved, resolver.resolve(rgb));
+                assertEquals(nearest(cellCentre(rgb)), resolved, hex + " se resuelve por el centro de su celda.");
+                total++;
+                if (resolved.equals(nearest(rgb))) exact++;
+            }
+        }
+        // La cuantización sólo cambia la respuesta cerca del límite entre dos colores de la paleta
+        assertTrue(exact >= total * 0.9, exact + " de " + total + " coinciden con la búsqueda exacta.");
+        assertEquals("Rojo", resolver.resolve(0xFF0000));
+        assertEquals("Negro", resolver.resolve(0x000000));
+        assertEquals("Blanco", resolver.resolve(0xFFFFFF));
+        assertNull(resolver.resolveHex("rojo"));
+    }
+
+    @Test
+    void withSupplies_UsesTheSupplyNamesAndAddsTheirHexColours() {
+        Supply rojo = new Supply(1, "INS1", "Rojo PLA", "PLA", "ROJO", 500, 50);
+        Supply propio = new Supply(2, "INS2", "Verde agua", "PLA", "#40E0B0", 500, 50);
+        Supply desconocido = new Supply(3, "INS3", "Sin hex", "PLA", "Fucsia Neón", 500, 50);
+
+        ColorResolver conInsumos = ColorResolver.withSupplies(List.of(rojo, propio, desconocido));
+
+        assertEquals(resolver.getNames().size() + 1, conInsumos.getNames().size());
+        assertEquals("ROJO", conInsumos.resolve(0xD32F2F), "El nombre del insumo reemplaza al de la paleta.");
+        assertEquals("#40E0B0", conInsumos.resolve(0x40E0B0));
+        assertFalse(conInsumos.getNames().contains("Rojo"));
+        assertEquals(resolver.getNames(), ColorResolver.withSupplies(List.of()).getNames());
+    }
+
+    @Test
+    void names_AreComparedWithoutCaseOrAccents() {
+        assertEquals("Bordó", resolver.canonicalName("  bordo "));
+        assertEquals("Lila", resolver.canonicalName("Lila"), "Un nombre desconocido queda tal cual.");
+        assertTrue(ColorResolver.sameColorName("Marrón", "MARRON"));
+        assertFalse(ColorResolver.sameColorName("Marrón", null));
+        assertEquals(0x1A2A5A, resolver.colorOf("azul  marino"));
+        assertEquals(FilamentProfile.NO_COLOR, resolver.colorOf("Lila"));
+    }
+
+    @Test
+    void constructor_RejectsEmptyAndOversizedPalettes() {
+        Map<String, Integer> grande = new HashMap<>();
+        for (int i = 0; i < 256; i++) grande.put("C" + i, i);
+
+        assertThrows(IllegalArgumentException.class, () -> new ColorResolver(Map.of()));
+        assertThrows(IllegalArgumentException.class, () -> new ColorResolver(grande));
+        assertEquals("Único", new ColorResolver(Map.of("Único", 0x123456)).resolve(0xFFFFFF));
+    }
+
+    // Búsqueda exacta por ΔE00 contra toda la paleta, sin la tabla
+    private String nearest(int rgb) {
+        String best = null;
+        double bestDistance = Double.MAX_VALUE;
+        for (String name : resolver.getNames()) {
+            double d = ColorResolver.distance(rgb, resolver.colorOf(name));
+            if (d < bestDistance) {
+                bestDistance = d;
+                best = name;
+            }
+        }
+        return best;
+    }
+
+    // Centro de la celda de 8x8x8 niveles de la tabla de 32x32x32
+    private static int cellCentre(int rgb) {
+        return (rgb & 0xF8F8F8) | 0x040404;
+    }
+}
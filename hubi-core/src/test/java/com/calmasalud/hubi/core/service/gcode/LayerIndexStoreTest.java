@@ -0,0 +1,93 @@
+package com.calmasalud.hubi.core.service.gcode;
+
+import com.calmasalud.hubi.core.model.LayerIndex;
+import com.calmasalud.hubi.core.model.PrintInfo;
+import com.calmasalud.hubi.core.service.FileParameterExtractor;
+import com.calmasalud.hubi.corpus.Corpus;
+import com.calmasalud.hubi.corpus.CorpusSpec;
+import com.calmasalud.hubi.corpus.SlicerFlavor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LayerIndexStoreTest {
+
+    private static final long SMALL = 64 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void extract_PersistsTheIndexOnlyForRepositoryFiles() throws IOException {
+        Path cache = tempDir.resolve("cache");
+        Path repository = Files.createDirectories(tempDir.resolve("repositorio"));
+        Path outside = Files.createDirectories(tempDir.resolve("descargas"));
+        FileParameterExtractor extractor = new FileParameterExtractor(new LayerIndexStore(cache), repository);
+
+        CorpusSpec spec = new CorpusSpec(SlicerFlavor.PRUSA, SMALL, 3);
+        PrintInfo loose = extractor.extract(List.of(Corpus.gcode(spec, outside).toFile()));
+        assertNotNull(loose.layerIndex, "El índice se arma igual en memoria.");
+        assertEquals(0, countIndexes(cache), "Un archivo fuera del repositorio no deja índice en disco.");
+
+        Path stored = Corpus.gcode(spec, repository);
+        extractor.extract(List.of(stored.toFile()));
+        assertEquals(1, countIndexes(cache));
+        assertEquals(loose.layerIndex.size(), new LayerIndexStore(cache).load(stored.toFile()).size());
+    }
+
+    @Test
+    void save_EvictsTheLeastRecentlyUsedIndexesOverTheLimit() throws IOException {
+        Path cache = tempDir.resolve("cache");
+        LayerIndexStore unbounded = new LayerIndexStore(cache);
+        Path first = Corpus.gcode(new CorpusSpec(SlicerFlavor.PRUSA, SMALL, 1), Files.createDirectories(tempDir.resolve("a")));
+        LayerIndex index = unbounded.getOrBuild(first.toFile());
+        long entryBytes;
+        try (Stream<Path> files = Files.list(cache)) {
+            entryBytes = Files.size(files.findFirst().orElseThrow());
+        }
+
+        // Límite para dos índices: al guardar el tercero se descarta el menos usado
+        LayerIndexStore store = new LayerIndexStore(cache, 2 * entryBytes);
+        Path second = Corpus.gcode(new CorpusSpec(SlicerFlavor.PRUSA, SMALL, 1), Files.createDirectories(tempDir.resolve("b")));
+        Path third = Corpus.gcode(new CorpusSpec(SlicerFlavor.PRUSA, SMALL, 1), Files.createDirectories(tempDir.resolve("c")));
+        store.save(second.toFile(), index);
+        ageAllIndexes(cache);
+        assertNotNull(store.load(first.toFile()), "Un acierto lo vuelve el más reciente.");
+
+        store.save(third.toFile(), index);
+
+        assertEquals(2, countIndexes(cache));
+        assertNotNull(store.load(first.toFile()));
+        assertNull(store.load(second.toFile()), "El menos usado se descarta.");
+        assertNotNull(store.load(third.toFile()));
+    }
+
+    private static long countIndexes(Path cache) throws IOException {
+        if (!Files.isDirectory(cache)) return 0;
+        try (Stream<Path> files = Files.list(cache)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(".layers")).count();
+        }
+    }
+
+    // Fechas en el pasado para que el orden LRU no dependa de la resolución del reloj del sistema de archivos
+    private static void ageAllIndexes(Path cache) throws IOException {
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+        try (Stream<Path> files = Files.list(cache)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.setLastModifiedTime(file, old);
+            }
+        }
+        assertTrue(countIndexes(cache) > 0);
+    }
+}
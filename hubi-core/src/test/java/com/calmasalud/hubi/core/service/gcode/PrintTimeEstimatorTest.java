@@ -0,0 +1,91 @@
+package com.calmasalud.hubi.core.service.gcode;
+
+import com.calmasalud.hubi.corpus.CorpusPlan;
+import com.calmasalud.hubi.corpus.CorpusSpec;
+import com.calmasalud.hubi.corpus.GCodeCorpusGenerator;
+import com.calmasalud.hubi.corpus.SlicerFlavor;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrintTimeEstimatorTest {
+
+    private static final long QUARTER_MB = 256 * 1024;
+    private static final double DELTA = 1e-6;
+
+    private static PrintTimeEstimator run(String... lines) {
+        PrintTimeEstimator estimator = new PrintTimeEstimator();
+        for (String line : lines) estimator.accept(line);
+        estimator.finish();
+        return estimator;
+    }
+
+    private static PrintTimeEstimator run(CorpusPlan plan) throws IOException {
+        PrintTimeEstimator estimator = new PrintTimeEstimator();
+        for (String line : GCodeCorpusGenerator.toText(plan).split("\n")) {
+            estimator.accept(line.trim());
+        }
+        estimator.finish();
+        return estimator;
+    }
+
+    @Test
+    void trapezoidTime_CruisesOrPeaksDependingOnTheLength() {
+        // 100 mm a 50 mm/s con 1000 mm/s²: 0.05 s acelerando (1.25 mm), 1.95 s de crucero, 0.05 s frenando
+        assertEquals(2.05, PrintTimeEstimator.trapezoidTime(100, 0, 0, 50, 1000), DELTA);
+        // 2 mm no alcanza la velocidad nominal: pico de sqrt(2000) mm/s a mitad de camino
+        assertEquals(2 * Math.sqrt(2000) / 1000, PrintTimeEstimator.trapezoidTime(2, 0, 0, 50, 1000), DELTA);
+        // Sin aceleración el movimiento es a velocidad constante
+        assertEquals(2.0, PrintTimeEstimator.trapezoidTime(100, 0, 0, 50, 0), DELTA);
+    }
+
+    @Test
+    void accept_KeepsTheSpeedThroughCollinearMovesAndStopsOnReversals() {
+        PrintTimeEstimator single = run("M204 S1000", "G1 X100 F3000");
+        PrintTimeEstimator split = run("M204 S1000", "G1 X50 F3000", "G1 X100");
+        PrintTimeEstimator reversal = run("M204 S1000", "G1 X50 F3000", "G1 X0");
+
+        assertEquals(2.05, single.getTotalSeconds(), DELTA);
+        assertEquals(single.getTotalSeconds(), split.getTotalSeconds(), DELTA, "En línea recta no frena entre movimientos.");
+        assertEquals(2 * PrintTimeEstimator.trapezoidTime(50, 0, 0, 50, 1000), reversal.getTotalSeconds(), DELTA,
+                "Al invertir el sentido frena hasta cero.");
+    }
+
+    @Test
+    void accept_AddsDwellsAndUsesTheArcLength() {
+        assertEquals(2.5, run("G4 P500", "G4 S2").getTotalSeconds(), DELTA);
+
+        // Media vuelta de radio 10 (longitud 10π) contra la recta equivalente
+        PrintTimeEstimator arc = run("M204 S1000", "G1 X10 Y0 F3000", "G4 S0.001", "G2 X-10 Y0 I-10 J0");
+        PrintTimeEstimator line = run("M204 S1000", "G1 X10 Y0 F3000", "G4 S0.001", "G1 X" + (10 - 10 * Math.PI));
+        assertEquals(line.getTotalSeconds(), arc.getTotalSeconds(), DELTA);
+    }
+
+    @Test
+    void accept_CountsOneLayerPerCorpusLayerAndSplitsTheTotal() throws IOException {
+        CorpusPlan plan = new CorpusPlan(new CorpusSpec(SlicerFlavor.PRUSA, QUARTER_MB, 7).tools(2).colorChanges(1));
+
+        PrintTimeEstimator estimator = run(plan);
+
+        assertEquals(plan.layers, estimator.getLayerCount());
+        double sum = 0;
+        for (double seconds : estimator.getLayerSeconds()) {
+            assertTrue(seconds > 0, "Cada capa tiene movimientos.");
+            sum += seconds;
+        }
+        assertEquals(estimator.getTotalSeconds(), sum, 1e-6, "El preámbulo se suma a la primera capa.");
+    }
+
+    @Test
+    void accept_DependsOnlyOnTheMovesNotOnTheSlicerComments() throws IOException {
+        // Misma semilla: mismo cuerpo de movimientos con encabezados y marcas de capa distintos
+        PrintTimeEstimator prusa = run(new CorpusPlan(new CorpusSpec(SlicerFlavor.PRUSA, QUARTER_MB, 9)));
+        PrintTimeEstimator cura = run(new CorpusPlan(new CorpusSpec(SlicerFlavor.CURA, QUARTER_MB, 9)));
+
+        assertEquals(prusa.getLayerCount(), cura.getLayerCount());
+        assertEquals(prusa.getTotalSeconds(), cura.getTotalSeconds(), DELTA);
+    }
+}
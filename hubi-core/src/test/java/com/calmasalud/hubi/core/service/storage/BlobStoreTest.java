@@ -0,0 +1,73 @@
+package com.calmasalud.hubi.core.service.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class BlobStoreTest {
+
+    @TempDir
+    Path base;
+
+    private BlobStore store;
+    private Path source;
+    private Path target;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        store = new BlobStore(base.resolve("repo").resolve(".blobs"), base);
+        source = Files.writeString(base.resolve("pieza.gcode"), "G1 X10 Y10 E0.5\n", StandardCharsets.UTF_8);
+        target = base.resolve("repo").resolve("PRODUCTO").resolve("SOPROJ001.gcode");
+        Files.createDirectories(target.getParent());
+    }
+
+    @Test
+    void storingSameTargetTwiceKeepsTheBlob() throws IOException {
+        String first = store.store(source, target);
+        String second = store.store(source, target);
+
+        assertEquals(first, second);
+        assertTrue(Files.isRegularFile(store.blobPath(first)));
+        assertEquals(1, store.referenceCount(first));
+        assertEquals(Files.readString(source), Files.readString(target));
+
+        // Recargar el registro desde disco da el mismo conteo
+        BlobStore reloaded = new BlobStore(base.resolve("repo").resolve(".blobs"), base);
+        assertEquals(1, reloaded.referenceCount(first));
+    }
+
+    @Test
+    void storingNewContentOverTargetReleasesTheOldBlob() throws IOException {
+        String first = store.store(source, target);
+        Files.writeString(source, "G1 X20 Y20 E1.0\n", StandardCharsets.UTF_8);
+        String second = store.store(source, target);
+
+        assertNotEquals(first, second);
+        assertFalse(Files.exists(store.blobPath(first)));
+        assertEquals(0, store.referenceCount(first));
+        assertEquals(1, store.referenceCount(second));
+        assertEquals(Files.readString(source), Files.readString(target));
+    }
+
+    @Test
+    void editingTheOriginalAfterStoringDoesNotChangeTheBlob() throws IOException {
+        String hash = store.store(source, target);
+        String stored = Files.readString(target);
+
+        // Edición en el lugar (mismo inodo) del archivo del usuario
+        Files.writeString(source, "G1 X99 Y99 E9.9\n", StandardCharsets.UTF_8);
+
+        assertEquals(stored, Files.readString(target));
+        assertEquals(stored, Files.readString(store.blobPath(hash)));
+    }
+}
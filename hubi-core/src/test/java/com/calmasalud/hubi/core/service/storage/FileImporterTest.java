@@ -0,0 +1,79 @@
+package com.calmasalud.hubi.core.service.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileImporterTest {
+
+    @TempDir
+    Path base;
+
+    // Simula un disco que altera lo escrito: invierte el primer byte de cada bloque
+    private static final class CorruptingImporter extends FileImporter {
+        @Override
+        protected void writeBlock(FileChannel out, ByteBuffer block, long position) throws IOException {
+            ByteBuffer copy = ByteBuffer.allocate(block.remaining());
+            copy.put(block).flip();
+            copy.put(0, (byte) ~copy.get(0));
+            super.writeBlock(out, copy, position);
+        }
+    }
+
+    @Test
+    void importFile_CopiesTheSourceAndReturnsItsHash() throws IOException, NoSuchAlgorithmException {
+        byte[] content = new byte[3 * 1024 * 1024 + 17]; // Más de un bloque, el último incompleto
+        for (int i = 0; i < content.length; i++) content[i] = (byte) (i * 31);
+        Path source = Files.write(base.resolve("pieza.gcode"), content);
+        Path target = base.resolve("copia.gcode");
+
+        FileImporter.Result result = new FileImporter().importFile(source, target, null);
+
+        assertArrayEquals(content, Files.readAllBytes(target));
+        assertEquals(content.length, result.bytes);
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content)), result.sha256);
+    }
+
+    @Test
+    void importFile_RejectsACopyThatDoesNotMatchTheSource() throws IOException {
+        Path source = Files.writeString(base.resolve("pieza.gcode"), "G1 X10 Y10 E0.5\n", StandardCharsets.UTF_8);
+        Path target = base.resolve("copia.gcode");
+
+        IOException error = assertThrows(IOException.class, () -> new CorruptingImporter().importFile(source, target, null));
+
+        assertTrue(error.getMessage().contains("no coincide con el origen"), error.getMessage());
+        assertFalse(Files.exists(target), "La copia corrupta se borra.");
+    }
+
+    @Test
+    void blobStore_DoesNotRegisterACorruptedCopy() throws IOException {
+        Path blobs = base.resolve("repo").resolve(".blobs");
+        BlobStore store = new BlobStore(blobs, base, new CorruptingImporter());
+        Path source = Files.writeString(base.resolve("pieza.gcode"), "G1 X10 Y10 E0.5\n", StandardCharsets.UTF_8);
+        Path target = Files.createDirectories(base.resolve("repo").resolve("PRODUCTO")).resolve("SOPROJ001.gcode");
+
+        assertThrows(IOException.class, () -> store.store(source, target));
+
+        assertFalse(Files.exists(target));
+        try (Stream<Path> files = Files.walk(blobs)) {
+            assertEquals(0, files.filter(Files::isRegularFile).filter(f -> !f.getFileName().toString().equals("refs.log")).count(),
+                    "No queda ningún blob ni temporal.");
+        }
+    }
+}
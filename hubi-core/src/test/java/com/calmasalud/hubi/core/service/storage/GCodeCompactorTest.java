@@ -0,0 +1,83 @@
+package com.calmasalud.hubi.core.service.storage;
+
+import com.calmasalud.hubi.corpus.Corpus;
+import com.calmasalud.hubi.corpus.CorpusSpec;
+import com.calmasalud.hubi.corpus.SlicerFlavor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GCodeCompactorTest {
+
+    private static final long HALF_MB = 512 * 1024;
+
+    @TempDir
+    Path base;
+
+    @Test
+    void compact_KeepsTheNameAndStoredContentReadsTheOriginal() throws IOException {
+        Path repo = base.resolve("repo");
+        BlobStore store = new BlobStore(repo.resolve(".blobs"), base);
+        Path source = Corpus.gcode(new CorpusSpec(SlicerFlavor.PRUSA, HALF_MB, 11), Files.createDirectories(base.resolve("corpus")));
+        byte[] original = Files.readAllBytes(source);
+        Path pieza = Files.createDirectories(repo.resolve("PRODUCTO")).resolve("SOPROJ001.gcode");
+        Path copia = Files.createDirectories(repo.resolve("OTRO")).resolve("OTRROJ001.gcode");
+        String hashOriginal = store.store(source, pieza);
+        store.store(source, copia);
+        FileTime modificado = envejecer(pieza);
+
+        GCodeCompactor.Result result = new GCodeCompactor(store).compact(repo, new StoragePolicy(true, 1, 0), null);
+
+        assertEquals(2, result.filesCompressed);
+        assertTrue(Files.isRegularFile(pieza), "El archivo conserva su nombre.");
+        assertTrue(StoredContent.isCompressed(pieza));
+        assertTrue(Files.size(pieza) < original.length);
+        assertEquals(modificado, Files.getLastModifiedTime(pieza));
+        try (InputStream in = StoredContent.newInputStream(pieza)) {
+            assertArrayEquals(original, in.readAllBytes());
+        }
+
+        String hashComprimido = store.hashOf(pieza);
+        assertNotEquals(hashOriginal, hashComprimido);
+        assertEquals(hashComprimido, store.hashOf(copia), "Las copias comparten el blob comprimido.");
+        assertEquals(2, store.referenceCount(hashComprimido));
+        assertFalse(Files.exists(store.blobPath(hashOriginal)), "El original sin referencias se borra.");
+    }
+
+    @Test
+    void compact_SkipsFilesUsedWithinTheIdleDays() throws IOException {
+        Path repo = base.resolve("repo");
+        BlobStore store = new BlobStore(repo.resolve(".blobs"), base);
+        Path source = Corpus.gcode(new CorpusSpec(SlicerFlavor.PRUSA, HALF_MB, 12), Files.createDirectories(base.resolve("corpus")));
+        Path pieza = Files.createDirectories(repo.resolve("PRODUCTO")).resolve("SOPROJ001.gcode");
+        store.store(source, pieza);
+
+        GCodeCompactor.Result result = new GCodeCompactor(store).compact(repo, new StoragePolicy(true, 1, 0), null);
+
+        assertEquals(0, result.filesCompressed);
+        assertFalse(StoredContent.isCompressed(pieza));
+        try (InputStream in = StoredContent.newInputStream(pieza)) {
+            assertArrayEquals(Files.readAllBytes(source), in.readAllBytes());
+        }
+    }
+
+    // Último acceso y modificación hace 10 días (el blob es compartido: vale para todas sus copias)
+    private static FileTime envejecer(Path file) throws IOException {
+        FileTime viejo = FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(10));
+        Files.getFileAttributeView(file, BasicFileAttributeView.class).setTimes(viejo, viejo, null);
+        return viejo;
+    }
+}
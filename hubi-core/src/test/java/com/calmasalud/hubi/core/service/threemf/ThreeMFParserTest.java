@@ -0,0 +1,167 @@
+package com.calmasalud.hubi.core.service.threemf;
+
+import com.calmasalud.hubi.core.model.FilamentProfile;
+import com.calmasalud.hubi.core.model.ModelObjectInfo;
+import com.calmasalud.hubi.core.model.PrintInfo;
+import com.calmasalud.hubi.corpus.Corpus;
+import com.calmasalud.hubi.corpus.CorpusPlan;
+import com.calmasalud.hubi.corpus.CorpusSpec;
+import com.calmasalud.hubi.corpus.SlicerFlavor;
+import com.calmasalud.hubi.corpus.ThreeMFCorpusGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ThreeMFParserTest {
+
+    private static final long HALF_MB = 512 * 1024;
+    private static final double GRAMS_DELTA = 0.005;
+
+    @TempDir
+    Path corpusDir;
+
+    private final ThreeMFParser parser = new ThreeMFParser();
+
+    @Test
+    void parse_KeepsEachEmbeddedPlateApartAndSumsThem() throws IOException {
+        CorpusSpec first = new CorpusSpec(SlicerFlavor.BAMBU, HALF_MB, 41).tools(2).colorChanges(1);
+        CorpusSpec second = new CorpusSpec(SlicerFlavor.BAMBU, HALF_MB, 43).tools(2).colorChanges(2);
+        CorpusPlan plan1 = new CorpusPlan(first);
+        CorpusPlan plan2 = new CorpusPlan(second);
+
+        PrintInfo info = new PrintInfo();
+        parser.parse(Corpus.multiPlateGCode3MF(List.of(first, second), corpusDir), info);
+
+        assertEquals(2, info.plates.size());
+        assertPlateMatches(plan1, info.plates.get(0));
+        assertPlateMatches(plan2, info.plates.get(1));
+
+        assertEquals(plan1.timeSeconds + plan2.timeSeconds, info.timeSeconds);
+        assertEquals(plan1.expectedColorChanges() + plan2.expectedColorChanges(), info.colorChanges);
+        assertEquals(plan1.layers + plan2.layers, info.totalLayers);
+        for (int t = 0; t < 2; t++) {
+            assertEquals(plan1.gramsPerTool[t] + plan2.gramsPerTool[t], info.profile(t).amountGrams, GRAMS_DELTA, "Gramos T" + t);
+        }
+    }
+
+    @Test
+    void parse_UsesTheEmbeddedGCodeAsThePlateWhenTheProjectDoesNotDeclareIt() throws IOException {
+        // PrusaSlicer no escribe slice_info.config: las placas salen solo del G-code
+        CorpusSpec first = new CorpusSpec(SlicerFlavor.PRUSA, HALF_MB, 5).tools(1).colorChanges(1);
+        CorpusSpec second = new CorpusSpec(SlicerFlavor.PRUSA, HALF_MB, 6).tools(1);
+        CorpusPlan plan1 = new CorpusPlan(first);
+        CorpusPlan plan2 = new CorpusPlan(second);
+
+        PrintInfo info = new PrintInfo();
+        parser.parse(Corpus.multiPlateGCode3MF(List.of(first, second), corpusDir), info);
+
+        assertEquals(2, info.plates.size());
+        assertEquals(1, info.plates.get(0).plateIndex);
+        assertEquals(2, info.plates.get(1).plateIndex);
+        assertPlateMatches(plan1, info.plates.get(0));
+        assertPlateMatches(plan2, info.plates.get(1));
+        assertEquals(plan1.timeSeconds + plan2.timeSeconds, info.timeSeconds);
+        assertEquals(plan1.gramsPerTool[0] + plan2.gramsPerTool[0], info.profile(0).amountGrams, GRAMS_DELTA);
+    }
+
+    @Test
+    void parse_CountsObjectsBuildItemsAndTrianglesOfTheModel() throws IOException {
+        CorpusSpec spec = new CorpusSpec(SlicerFlavor.PRUSA, 2 * HALF_MB, 2); // Semilla 2: tres objetos
+        ThreeMFCorpusGenerator generator = new ThreeMFCorpusGenerator(new CorpusPlan(spec), false);
+
+        PrintInfo info = new PrintInfo();
+        parser.parse(Corpus.threeMF(spec, corpusDir), info);
+
+        assertEquals(generator.objectCount(), info.modelObjects.size());
+        assertEquals(generator.objectCount(), info.buildItems);
+        assertEquals(generator.objectCount(), info.pieces);
+        for (int i = 0; i < info.modelObjects.size(); i++) {
+            ModelObjectInfo object = info.modelObjects.get(i);
+            assertEquals("3D/3dmodel.model", object.modelPath);
+            assertEquals("pieza_" + (i + 1), object.name);
+            assertEquals((long) generator.gridSide() * generator.gridSide(), object.vertices);
+            assertEquals(generator.trianglesPerObject(), object.triangles);
+        }
+    }
+
+    @Test
+    void parse_ReadsMaterialsColoursAndLayerHeightFromTheConfig() throws IOException {
+        CorpusSpec spec = new CorpusSpec(SlicerFlavor.PRUSA, HALF_MB, 8).tools(3).layerHeight(0.28);
+        CorpusPlan plan = new CorpusPlan(spec);
+
+        PrintInfo info = new PrintInfo();
+        parser.parse(Corpus.threeMF(spec, corpusDir), info);
+
+        assertEquals(0.28, info.layerHeightMm, 1e-9);
+        for (int t = 0; t < spec.tools; t++) {
+            FilamentProfile profile = info.profile(t);
+            assertEquals(plan.materials[t], profile.materialLabel, "Material T" + t);
+            assertEquals(plan.colors[t], profile.getColorHex(), "Color T" + t);
+            assertEquals(plan.densities[t], profile.densityGcm3, 1e-9, "Densidad T" + t);
+            assertEquals(1.75, profile.diameterMm, 1e-9);
+        }
+    }
+
+    @Test
+    void parse_ReadsThePlateOfABambuProjectWithoutGCode() throws IOException {
+        CorpusSpec spec = new CorpusSpec(SlicerFlavor.BAMBU, HALF_MB, 4).tools(2);
+        CorpusPlan plan = new CorpusPlan(spec);
+
+        PrintInfo info = new PrintInfo();
+        parser.parse(Corpus.threeMF(spec, corpusDir), info);
+
+        assertEquals(1, info.plates.size());
+        assertEquals(plan.timeSeconds, info.timeSeconds);
+        for (int t = 0; t < spec.tools; t++) {
+            assertEquals(plan.gramsPerTool[t], info.profile(t).amountGrams, GRAMS_DELTA, "Gramos T" + t);
+            assertEquals(plan.colors[t], info.profile(t).getColorHex(), "Color T" + t);
+            assertEquals(plan.materials[t], info.plates.get(0).profile(t).materialLabel);
+        }
+    }
+
+    @Test
+    void parse_ReadsTheArchiveInASinglePass() throws IOException {
+        CorpusSpec spec = new CorpusSpec(SlicerFlavor.BAMBU, HALF_MB, 21).tools(2).colorChanges(1);
+        Path file = Corpus.gcode3MF(spec, corpusDir);
+        long[] read = {0};
+
+        PrintInfo info = new PrintInfo();
+        try (InputStream in = new FilterInputStream(Files.newInputStream(file)) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) read[0]++;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int n = super.read(buffer, offset, length);
+                if (n > 0) read[0] += n;
+                return n;
+            }
+        }) {
+            parser.parse(in, info);
+        }
+
+        assertTrue(read[0] <= Files.size(file), "Bytes leídos: " + read[0] + " de " + Files.size(file));
+        assertEquals(new CorpusPlan(spec).expectedColorChanges(), info.colorChanges);
+    }
+
+    private static void assertPlateMatches(CorpusPlan plan, PrintInfo plate) {
+        assertEquals(plan.timeSeconds, plate.timeSeconds, "Tiempo de la placa " + plate.plateIndex);
+        assertEquals(plan.expectedColorChanges(), plate.colorChanges, "Cambios de color de la placa " + plate.plateIndex);
+        for (int t = 0; t < plan.spec.tools; t++) {
+            assertEquals(plan.gramsPerTool[t], plate.profile(t).amountGrams, GRAMS_DELTA, "Gramos T" + t + " placa " + plate.plateIndex);
+        }
+    }
+}
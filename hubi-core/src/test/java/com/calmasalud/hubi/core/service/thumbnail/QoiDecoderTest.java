@@ -0,0 +1,141 @@
+package com.calmasalud.hubi.core.service.thumbnail;
+
+import com.calmasalud.hubi.core.model.Thumbnail;
+import com.calmasalud.hubi.corpus.BGCodeCorpusGenerator;
+import com.calmasalud.hubi.corpus.Corpus;
+import com.calmasalud.hubi.corpus.CorpusPlan;
+import com.calmasalud.hubi.corpus.CorpusSpec;
+import com.calmasalud.hubi.corpus.QoiCorpusImage;
+import com.calmasalud.hubi.corpus.SlicerFlavor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class QoiDecoderTest {
+
+    private static final long SMALL = 64 * 1024;
+
+    @TempDir
+    Path corpusDir;
+
+    @Test
+    void toPng_DecodesEveryOperationOfTheCorpusImages() throws IOException {
+        // Cuadrada, impar y una muy ancha (franja plana de 200 píxeles: varias corridas de 62)
+        for (QoiCorpusImage image : new QoiCorpusImage[]{
+                new QoiCorpusImage(16, 16, 1), new QoiCorpusImage(61, 37, 2), new QoiCorpusImage(200, 3, 3)}) {
+            assertArrayEquals(image.rgba, decodePng(QoiDecoder.toPng(image.toQoi()), image.width, image.height),
+                    "Imagen " + image.width + "x" + image.height);
+        }
+    }
+
+    @Test
+    void toPng_RejectsDataThatIsNotQoi() {
+        byte[] qoi = new QoiCorpusImage(4, 4, 1).toQoi();
+        byte[] magic = Arrays.copyOf(qoi, qoi.length);
+        magic[0] = 'p';
+        byte[] empty = Arrays.copyOf(qoi, qoi.length);
+        Arrays.fill(empty, 4, 8, (byte) 0); // Ancho 0
+
+        assertThrows(IOException.class, () -> QoiDecoder.toPng(magic));
+        assertThrows(IOException.class, () -> QoiDecoder.toPng(empty));
+        assertThrows(IOException.class, () -> QoiDecoder.toPng(Arrays.copyOf(qoi, 10)));
+    }
+
+    @Test
+    void extract_ConvertsTheLargestEmbeddedQoiOfAGCodeToPng() throws IOException {
+        QoiCorpusImage small = new QoiCorpusImage(8, 8, 4);
+        QoiCorpusImage large = new QoiCorpusImage(24, 16, 5);
+        byte[] smallPng = QoiDecoder.toPng(small.toQoi());
+        Path source = Corpus.gcode(new CorpusSpec(SlicerFlavor.PRUSA, SMALL, 4), corpusDir);
+        Path gcode = corpusDir.resolve("con_miniaturas.gcode");
+        Files.writeString(gcode, thumbnailBlock("thumbnail", small, smallPng) + thumbnailBlock("thumbnail_QOI", large, large.toQoi())
+                + Files.readString(source, StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+
+        Thumbnail thumbnail = new ThumbnailExtractor().extract(gcode.toFile());
+
+        assertNotNull(thumbnail);
+        assertEquals(Thumbnail.Format.PNG, thumbnail.format);
+        assertEquals(large.width, thumbnail.width);
+        assertArrayEquals(large.rgba, decodePng(thumbnail.data, large.width, large.height));
+    }
+
+    @Test
+    void extract_ConvertsTheQoiBlockOfABGCodeToPng() throws IOException {
+        CorpusSpec spec = new CorpusSpec(SlicerFlavor.PRUSA, SMALL, 6);
+        QoiCorpusImage image = new BGCodeCorpusGenerator(new CorpusPlan(spec)).thumbnail();
+
+        Thumbnail thumbnail = new ThumbnailExtractor().extract(Corpus.bgcode(spec, corpusDir).toFile());
+
+        assertNotNull(thumbnail);
+        assertEquals(Thumbnail.Format.PNG, thumbnail.format);
+        assertArrayEquals(image.rgba, decodePng(thumbnail.data, image.width, image.height));
+    }
+
+    // Bloque "; thumbnail begin WxH LEN" con el base64 en líneas de 78 caracteres, como PrusaSlicer
+    private static String thumbnailBlock(String tag, QoiCorpusImage image, byte[] data) {
+        String base64 = Base64.getEncoder().encodeToString(data);
+        StringBuilder sb = new StringBuilder("; " + tag + " begin " + image.width + "x" + image.height + " " + base64.length() + "\n");
+        for (int i = 0; i < base64.length(); i += 78) {
+            sb.append("; ").append(base64, i, Math.min(base64.length(), i + 78)).append('\n');
+        }
+        return sb.append("; ").append(tag).append(" end\n;\n").toString();
+    }
+
+    // Lee el PNG RGBA de 8 bits sin filtros que escribe QoiDecoder: un entero 0xRRGGBBAA por píxel
+    private static int[] decodePng(byte[] png, int width, int height) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(png, 8, png.length - 8);
+        ByteArrayOutputStream idat = new ByteArrayOutputStream();
+        while (in.remaining() >= 12) {
+            int length = in.getInt();
+            byte[] type = new byte[4];
+            in.get(type);
+            byte[] data = new byte[length];
+            in.get(data);
+            in.getInt(); // CRC
+            String name = new String(type, StandardCharsets.US_ASCII);
+            if (name.equals("IHDR")) {
+                ByteBuffer ihdr = ByteBuffer.wrap(data);
+                assertEquals(width, ihdr.getInt());
+                assertEquals(height, ihdr.getInt());
+            } else if (name.equals("IDAT")) {
+                idat.write(data);
+            }
+        }
+        Inflater inflater = new Inflater();
+        byte[] raw = new byte[(width * 4 + 1) * height];
+        try {
+            inflater.setInput(idat.toByteArray());
+            int total = 0;
+            while (total < raw.length && !inflater.finished()) total += inflater.inflate(raw, total, raw.length - total);
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            int row = y * (width * 4 + 1);
+            assertEquals(0, raw[row], "Fila sin filtro");
+            for (int x = 0; x < width; x++) {
+                int o = row + 1 + x * 4;
+                pixels[y * width + x] = (raw[o] & 0xFF) << 24 | (raw[o + 1] & 0xFF) << 16 | (raw[o + 2] & 0xFF) << 8 | (raw[o + 3] & 0xFF);
+            }
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,148 @@
+package com.calmasalud.hubi.corpus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Escribe un G-code binario sintético (.bgcode de PrusaSlicer, formato libbgcode v1 con CRC32): metadatos del
+ * archivo, de la impresora, una miniatura QOI, metadatos de impresión y del slicer, y después el G-code del plan
+ * en bloques de 64 KB.
+ * Los metadatos de impresora y slicer van comprimidos con deflate y los demás sin comprimir, como los archivos reales.
+ * Los bloques de G-code se marcan como Heatshrink pero guardan el texto plano: quien lee un .bgcode nunca debe
+ * decodificar el toolpath, así que un lector que lo intente falla en lugar de pasar inadvertido.
+ */
+public class BGCodeCorpusGenerator {
+
+    // Tipos de bloque
+    public static final int FILE_METADATA = 0;
+    public static final int GCODE = 1;
+    public static final int SLICER_METADATA = 2;
+    public static final int PRINTER_METADATA = 3;
+    public static final int PRINT_METADATA = 4;
+    public static final int THUMBNAIL = 5;
+
+    public static final int THUMBNAIL_SIZE = 16;      // Lado de la miniatura (px)
+    private static final int COMPRESSION_NONE = 0;
+    private static final int COMPRESSION_DEFLATE = 1;
+    private static final int COMPRESSION_HEATSHRINK_12 = 3;
+    private static final int THUMBNAIL_QOI = 2;
+    private static final int GCODE_BLOCK_SIZE = 64 * 1024;
+
+    private final CorpusPlan plan;
+
+    public BGCodeCorpusGenerator(CorpusPlan plan) {
+        this.plan = plan;
+    }
+
+    /**
+     * @return La miniatura embebida (la misma en cada escritura del plan).
+     */
+    public QoiCorpusImage thumbnail() {
+        return new QoiCorpusImage(THUMBNAIL_SIZE, THUMBNAIL_SIZE, plan.spec.seed);
+    }
+
+    /**
+     * @return Los pares de los metadatos de impresión (lo que un lector debe terminar informando).
+     */
+    public String printMetadata() {
+        return "filament used [mm]=" + joined(plan.metersPerTool, 1000.0) + "\n"
+                + "filament used [g]=" + joined(plan.gramsPerTool, 1.0) + "\n"
+                + "estimated printing time (normal mode)=" + GCodeCorpusGenerator.hms(plan.timeSeconds) + "\n";
+    }
+
+    /**
+     * Escribe el .bgcode completo en out (no lo cierra).
+     */
+    public void write(OutputStream out) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(10).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[]{'G', 'C', 'D', 'E'}).putInt(1).putShort((short) 1);
+        out.write(header.array());
+
+        writeBlock(out, FILE_METADATA, COMPRESSION_NONE, encodingParams(), text("Producer=PrusaSlicer 2.7.1\n"));
+        writeBlock(out, PRINTER_METADATA, COMPRESSION_DEFLATE, encodingParams(), text(
+                "printer_model=MK4\n"
+                        + "filament_type=" + String.join(";", plan.materials) + "\n"
+                        + "nozzle_diameter=0.4\n"
+                        + printMetadata()));
+
+        QoiCorpusImage image = thumbnail();
+        ByteBuffer thumbnailParams = ByteBuffer.allocate(6).order(ByteOrder.LITTLE_ENDIAN);
+        thumbnailParams.putShort((short) THUMBNAIL_QOI).putShort((short) image.width).putShort((short) image.height);
+        writeBlock(out, THUMBNAIL, COMPRESSION_NONE, thumbnailParams.array(), image.toQoi());
+
+        writeBlock(out, PRINT_METADATA, COMPRESSION_NONE, encodingParams(), text(printMetadata()));
+        writeBlock(out, SLICER_METADATA, COMPRESSION_DEFLATE, encodingParams(), text(
+                "filament_colour=" + String.join(";", plan.colors) + "\n"
+                        + "filament_density=" + joined(plan.densities, 1.0) + "\n"
+                        + "layer_height=" + String.format(Locale.ROOT, "%.2f", plan.spec.layerHeightMm) + "\n"));
+
+        byte[] gcode = GCodeCorpusGenerator.toText(plan).getBytes(StandardCharsets.UTF_8);
+        for (int from = 0; from < gcode.length; from += GCODE_BLOCK_SIZE) {
+            int length = Math.min(GCODE_BLOCK_SIZE, gcode.length - from);
+            byte[] chunk = new byte[length];
+            System.arraycopy(gcode, from, chunk, 0, length);
+            writeBlock(out, GCODE, COMPRESSION_HEATSHRINK_12, encodingParams(), chunk);
+        }
+        out.flush();
+    }
+
+    // Cabecera | parámetros | datos | CRC32 de todo lo anterior
+    private static void writeBlock(OutputStream out, int type, int compression, byte[] params, byte[] data) throws IOException {
+        byte[] stored = compression == COMPRESSION_DEFLATE ? deflate(data) : data;
+        ByteBuffer header = ByteBuffer.allocate(compression == COMPRESSION_NONE ? 8 : 12).order(ByteOrder.LITTLE_ENDIAN);
+        header.putShort((short) type).putShort((short) compression).putInt(data.length);
+        if (compression != COMPRESSION_NONE) header.putInt(stored.length);
+
+        CRC32 crc = new CRC32();
+        crc.update(header.array());
+        crc.update(params);
+        crc.update(stored);
+        ByteBuffer checksum = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt((int) crc.getValue());
+
+        out.write(header.array());
+        out.write(params);
+        out.write(stored);
+        out.write(checksum.array());
+    }
+
+    // Codificación INI (metadatos) o sin codificar (G-code): 0 en ambos casos
+    private static byte[] encodingParams() {
+        return new byte[]{0, 0};
+    }
+
+    private static byte[] text(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static String joined(double[] values, double factor) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) sb.append(", ");
+            GCodeCorpusGenerator.appendFixed(sb, values[i] * factor, 2);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,86 @@
+package com.calmasalud.hubi.corpus;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Punto de entrada para tests (JUnit) y benchmarks (JMH): genera los archivos en un directorio y los reutiliza
+ * si ya existen (el nombre depende de todo el spec y la salida es determinista), así un archivo de 2 GB
+ * se escribe una sola vez. La escritura es atómica: nunca queda un archivo a medio generar con el nombre final.
+ */
+public final class Corpus {
+
+    private Corpus() {
+    }
+
+    /**
+     * @return Ruta de "&lt;spec&gt;.gcode" dentro de directory, generándolo si no existe.
+     */
+    public static Path gcode(CorpusSpec spec, Path directory) throws IOException {
+        CorpusPlan plan = new CorpusPlan(spec);
+        return materialize(directory.resolve(spec.fileStem() + ".gcode"), out -> new GCodeCorpusGenerator(plan).write(out));
+    }
+
+    /**
+     * @return Ruta de "&lt;spec&gt;.bgcode" (G-code binario de PrusaSlicer) dentro de directory, generándolo si no existe.
+     */
+    public static Path bgcode(CorpusSpec spec, Path directory) throws IOException {
+        CorpusPlan plan = new CorpusPlan(spec);
+        return materialize(directory.resolve(spec.fileStem() + ".bgcode"), out -> new BGCodeCorpusGenerator(plan).write(out));
+    }
+
+    /**
+     * @return Ruta de "&lt;spec&gt;.3mf" (proyecto sin G-code) dentro de directory, generándolo si no existe.
+     */
+    public static Path threeMF(CorpusSpec spec, Path directory) throws IOException {
+        CorpusPlan plan = new CorpusPlan(spec);
+        return materialize(directory.resolve(spec.fileStem() + ".3mf"), out -> new ThreeMFCorpusGenerator(plan, false).write(out));
+    }
+
+    /**
+     * @return Ruta de "&lt;spec&gt;.gcode.3mf" (G-code embebido) dentro de directory, generándolo si no existe.
+     */
+    public static Path gcode3MF(CorpusSpec spec, Path directory) throws IOException {
+        CorpusPlan plan = new CorpusPlan(spec);
+        return materialize(directory.resolve(spec.fileStem() + ".gcode.3mf"), out -> new ThreeMFCorpusGenerator(plan, true).write(out));
+    }
+
+    /**
+     * @return Ruta de un .gcode.3mf con una placa por spec (plate_1, plate_2...), generándolo si no existe.
+     */
+    public static Path multiPlateGCode3MF(List<CorpusSpec> plates, Path directory) throws IOException {
+        List<CorpusPlan> plans = new ArrayList<>();
+        StringBuilder stem = new StringBuilder("placas");
+        for (CorpusSpec spec : plates) {
+            plans.add(new CorpusPlan(spec));
+            stem.append('+').append(spec.fileStem());
+        }
+        return materialize(directory.resolve(stem + ".gcode.3mf"), out -> new ThreeMFCorpusGenerator(plans, true).write(out));
+    }
+
+    @FunctionalInterface
+    private interface Writer {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private static Path materialize(Path target, Writer writer) throws IOException {
+        if (Files.isRegularFile(target)) return target;
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempFile(target.getParent(), "corpus", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                writer.write(out);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        System.out.println("LOG: Corpus generado: " + target.getFileName() + " (" + Files.size(target) + " bytes)");
+        return target;
+    }
+}
@@ -0,0 +1,96 @@
+package com.calmasalud.hubi.corpus;
+
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Valores de un archivo sintético calculados antes de escribirlo: lo que declara el encabezado
+ * (gramos, metros, tiempo, materiales y colores por herramienta) y la forma del cuerpo (capas, movimientos).
+ * Los tests comparan lo que extrae el parser contra estos valores sin volver a leer el archivo.
+ */
+public class CorpusPlan {
+
+    // Bytes promedio de una línea de movimiento ("G1 X123.456 Y78.901 E0.04567")
+    static final int BYTES_PER_MOVE = 30;
+    // Reserva para encabezado, pie y marcas de capa
+    static final int RESERVED_BYTES = 4096;
+
+    private static final String[] MATERIALS = {"PLA", "PETG", "ABS", "ASA", "TPU", "PLA", "PETG", "PLA"};
+    private static final double[] DENSITIES = {1.24, 1.27, 1.04, 1.07, 1.21, 1.24, 1.27, 1.24};
+    private static final double DIAMETER_MM = 1.75;
+
+    public final CorpusSpec spec;
+    public final int layers;
+    public final int movesPerLayer;
+    public final String[] materials;
+    public final double[] densities;
+    public final String[] colors;        // "#RRGGBB"
+    public final double[] gramsPerTool;  // Redondeado a 2 decimales, como se escribe
+    public final double[] metersPerTool; // Redondeado a 2 decimales, como se escribe
+    public final long timeSeconds;
+    public final int[] colorChangeLayers; // Capas donde se inserta un M600
+
+    public CorpusPlan(CorpusSpec spec) {
+        this.spec = spec;
+        SplittableRandom random = new SplittableRandom(spec.seed);
+
+        this.layers = (int) Math.max(5, Math.min(4000, spec.targetBytes / (24 * 1024)));
+        long bodyBytes = Math.max(0, spec.targetBytes - RESERVED_BYTES - (long) layers * (96 + 24L * spec.tools));
+        this.movesPerLayer = (int) Math.max(10, bodyBytes / layers / BYTES_PER_MOVE);
+
+        int tools = spec.tools;
+        this.materials = new String[tools];
+        this.densities = new double[tools];
+        this.colors = new String[tools];
+        this.gramsPerTool = new double[tools];
+        this.metersPerTool = new double[tools];
+
+        double totalGrams = (double) layers * movesPerLayer * 0.0025;
+        double[] shares = new double[tools];
+        double shareSum = 0;
+        for (int t = 0; t < tools; t++) {
+            shares[t] = 0.2 + random.nextDouble();
+            shareSum += shares[t];
+        }
+        int materialOffset = random.nextInt(MATERIALS.length);
+        double area = Math.PI * (DIAMETER_MM / 2) * (DIAMETER_MM / 2);
+        for (int t = 0; t < tools; t++) {
+            int m = (materialOffset + t) % MATERIALS.length;
+            materials[t] = MATERIALS[m];
+            densities[t] = DENSITIES[m];
+            colors[t] = String.format(Locale.ROOT, "#%06X", random.nextInt(0x1000000));
+            gramsPerTool[t] = round2(totalGrams * shares[t] / shareSum);
+            // g / (g/cm³) = cm³ -> mm³ / área de la sección = mm de filamento
+            metersPerTool[t] = round2(gramsPerTool[t] / densities[t] * 1000.0 / area / 1000.0);
+        }
+        this.timeSeconds = (long) layers * movesPerLayer / 20 + random.nextInt(600);
+
+        this.colorChangeLayers = new int[spec.colorChanges];
+        for (int i = 0; i < spec.colorChanges; i++) {
+            colorChangeLayers[i] = (int) ((long) (i + 1) * layers / (spec.colorChanges + 1));
+        }
+    }
+
+    /**
+     * @return Cambios de color que debe contar el parser: cambios de herramienta (sin la inicial) + M600.
+     */
+    public int expectedColorChanges() {
+        return layers * (spec.tools - 1) + spec.colorChanges;
+    }
+
+    public double totalGrams() {
+        double total = 0;
+        for (double g : gramsPerTool) total += g;
+        return total;
+    }
+
+    public double totalMeters() {
+        double total = 0;
+        for (double m : metersPerTool) total += m;
+        return total;
+    }
+
+    static double round2(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+}
@@ -0,0 +1,53 @@
+package com.calmasalud.hubi.corpus;
+
+/**
+ * Parámetros de un archivo sintético. Dos specs iguales generan exactamente los mismos bytes.
+ */
+public class CorpusSpec {
+
+    public static final long MIN_BYTES = 64L * 1024;
+    public static final long MAX_BYTES = 2L * 1024 * 1024 * 1024;
+
+    public final SlicerFlavor flavor;
+    public final long targetBytes;    // Tamaño aproximado del G-code (en un 3MF: del contenido sin comprimir)
+    public final long seed;
+
+    public int tools = 1;             // Herramientas usadas (T0..Tn-1)
+    public int colorChanges = 0;      // Pausas M600 repartidas entre las capas
+    public double layerHeightMm = 0.2;
+
+    public CorpusSpec(SlicerFlavor flavor, long targetBytes, long seed) {
+        if (targetBytes < MIN_BYTES || targetBytes > MAX_BYTES) {
+            throw new IllegalArgumentException("Tamaño fuera de rango (64 KB - 2 GB): " + targetBytes);
+        }
+        this.flavor = flavor;
+        this.targetBytes = targetBytes;
+        this.seed = seed;
+    }
+
+    public CorpusSpec tools(int tools) {
+        if (tools < 1 || tools > 16) throw new IllegalArgumentException("Herramientas fuera de rango (1-16): " + tools);
+        this.tools = tools;
+        return this;
+    }
+
+    public CorpusSpec colorChanges(int colorChanges) {
+        if (colorChanges < 0) throw new IllegalArgumentException("Cambios de color negativos: " + colorChanges);
+        this.colorChanges = colorChanges;
+        return this;
+    }
+
+    public CorpusSpec layerHeight(double layerHeightMm) {
+        if (layerHeightMm <= 0) throw new IllegalArgumentException("Altura de capa inválida: " + layerHeightMm);
+        this.layerHeightMm = layerHeightMm;
+        return this;
+    }
+
+    /**
+     * @return Nombre de archivo único por spec (para reutilizar archivos ya generados), sin extensión.
+     */
+    public String fileStem() {
+        return flavor.getId() + "-" + targetBytes + "-s" + seed + "-t" + tools + "-c" + colorChanges
+                + "-h" + Math.round(layerHeightMm * 1000);
+    }
+}
@@ -0,0 +1,336 @@
+package com.calmasalud.hubi.corpus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+/**
+ * Escribe un G-code sintético con el formato de cada slicer: encabezado (HEADER_BLOCK de Bambu, ;FLAVOR de Cura),
+ * marcas de capa, cambios de herramienta T&lt;n&gt; en cada capa, pausas M600 y el bloque de configuración final.
+ * El cuerpo es un paseo aleatorio de G1 con extrusión relativa; todo sale de la semilla del spec.
+ * Los números se escriben a mano (sin String.format) sobre un buffer propio, para generar archivos de 2 GB en segundos.
+ */
+public class GCodeCorpusGenerator {
+
+    private static final int OUTPUT_BUFFER = 1 << 20;
+    private static final double BED_MIN = 20.0;
+    private static final double BED_MAX = 230.0;
+    private static final String[] FEATURES = {"Perimeter", "External perimeter", "Internal infill", "Solid infill", "Support material"};
+
+    private final CorpusPlan plan;
+    private final StringBuilder line = new StringBuilder(256);
+    private final byte[] buffer = new byte[OUTPUT_BUFFER];
+    private int buffered;
+    private OutputStream out;
+    private long written;
+
+    public GCodeCorpusGenerator(CorpusPlan plan) {
+        this.plan = plan;
+    }
+
+    /**
+     * Escribe el G-code completo en out (no lo cierra).
+     * @return Bytes escritos.
+     */
+    public long write(OutputStream target) throws IOException {
+        this.out = target;
+        this.buffered = 0;
+        this.written = 0;
+        writeHeader();
+        writeBody();
+        writeFooter();
+        flushBuffer();
+        out.flush();
+        return written;
+    }
+
+    // --- ENCABEZADO ---
+
+    private void writeHeader() throws IOException {
+        CorpusSpec spec = plan.spec;
+        switch (spec.flavor) {
+            case PRUSA -> {
+                emit("; generated by PrusaSlicer 2.7.1 on 2024-03-01 at 10:00:00 UTC");
+                emit("");
+                emit("; external perimeters extrusion width = 0.45mm");
+                emit("; perimeters extrusion width = 0.45mm");
+            }
+            case ORCA -> {
+                emit("; HEADER_BLOCK_START");
+                emit("; generated by OrcaSlicer 2.1.1 on 2024-03-01 at 10:00:00");
+                emit("; total layer number: " + plan.layers);
+                emit("; HEADER_BLOCK_END");
+            }
+            case BAMBU -> {
+                emit("; HEADER_BLOCK_START");
+                emit("; BambuStudio 01.09.00.70");
+                emit("; model printing time: " + hms(plan.timeSeconds - 120) + "; total estimated time: " + hms(plan.timeSeconds));
+                emit("; total layer number: " + plan.layers);
+                emit("; total filament length [mm] : " + joined(plan.metersPerTool, 1000.0, ","));
+                emit("; total filament weight [g] : " + joined(plan.gramsPerTool, 1.0, ","));
+                emit("; filament_density: " + joined(plan.densities, 1.0, ","));
+                emit("; filament_diameter: " + repeat("1.75", ","));
+                emit("; max_z_height: " + fixed(plan.layers * spec.layerHeightMm, 2));
+                emit("; HEADER_BLOCK_END");
+            }
+            case CURA -> {
+                emit(";FLAVOR:Marlin");
+                emit(";TIME:" + plan.timeSeconds);
+                emit(";Filament used: " + fixed(plan.totalMeters(), 5) + "m");
+                emit(";Layer height: " + fixed(spec.layerHeightMm, 2));
+                emit(";MINX:" + fixed(BED_MIN, 3));
+                emit(";MINY:" + fixed(BED_MIN, 3));
+                emit(";MAXX:" + fixed(BED_MAX, 3));
+                emit(";MAXY:" + fixed(BED_MAX, 3));
+                emit(";TARGET_MACHINE.NAME:Creality Ender-3");
+                emit(";MATERIAL:" + plan.materials[0]);
+                emit(";Generated with Cura_SteamEngine 5.6.0");
+                emit(";LAYER_COUNT:" + plan.layers);
+            }
+        }
+        emit("M140 S60");
+        emit("M104 S210");
+        emit("G28 ; home all axes");
+        emit("G90");
+        emit("M83 ; extrusión relativa");
+        emit("G92 E0");
+    }
+
+    // --- CUERPO ---
+
+    private void writeBody() throws IOException {
+        CorpusSpec spec = plan.spec;
+        SplittableRandom random = new SplittableRandom(spec.seed ^ 0x5DEECE66DL);
+        double x = 100, y = 100;
+        int nextColorChange = 0;
+        int movesPerTool = Math.max(1, plan.movesPerLayer / spec.tools);
+
+        for (int layer = 0; layer < plan.layers; layer++) {
+            double z = (layer + 1) * spec.layerHeightMm;
+            writeLayerChange(layer, z);
+
+            if (nextColorChange < plan.colorChangeLayers.length && plan.colorChangeLayers[nextColorChange] == layer) {
+                emit("M600");
+                nextColorChange++;
+            }
+
+            // Capas pares: T0..Tn-1; impares: Tn-1..T0 (como los slicers, sin cambio entre capas)
+            for (int i = 0; i < spec.tools; i++) {
+                int tool = (layer % 2 == 0) ? i : spec.tools - 1 - i;
+                if (spec.tools > 1 || layer == 0) emit("T" + tool);
+                if (spec.flavor == SlicerFlavor.CURA) {
+                    emit(";TYPE:" + (i == 0 ? "WALL-OUTER" : "FILL"));
+                } else {
+                    emit(";TYPE:" + FEATURES[(layer + i) % FEATURES.length]);
+                }
+                int moves = (i == spec.tools - 1) ? plan.movesPerLayer - movesPerTool * (spec.tools - 1) : movesPerTool;
+                for (int m = 0; m < moves; m++) {
+                    double nx = clamp(x + (random.nextDouble() - 0.5) * 12);
+                    double ny = clamp(y + (random.nextDouble() - 0.5) * 12);
+                    if (random.nextInt(40) == 0) {
+                        // Viaje con retracción
+                        emit("G1 E-.8 F2100");
+                        line.setLength(0);
+                        line.append("G0 F9000 X");
+                        appendFixed(line, nx, 3);
+                        line.append(" Y");
+                        appendFixed(line, ny, 3);
+                        emitLine();
+                        emit("G1 E.8 F2100");
+                    } else {
+                        double distance = Math.hypot(nx - x, ny - y);
+                        line.setLength(0);
+                        line.append("G1 X");
+                        appendFixed(line, nx, 3);
+                        line.append(" Y");
+                        appendFixed(line, ny, 3);
+                        line.append(" E");
+                        appendFixed(line, distance * 0.0333, 5);
+                        emitLine();
+                    }
+                    x = nx;
+                    y = ny;
+                }
+            }
+            if (spec.flavor == SlicerFlavor.CURA) {
+                emit(";TIME_ELAPSED:" + plan.timeSeconds * (layer + 1) / plan.layers);
+            }
+        }
+    }
+
+    private void writeLayerChange(int layer, double z) throws IOException {
+        CorpusSpec spec = plan.spec;
+        switch (spec.flavor) {
+            case PRUSA -> {
+                emit(";LAYER_CHANGE");
+                emit(";Z:" + fixed(z, 3));
+                emit(";HEIGHT:" + fixed(spec.layerHeightMm, 3));
+            }
+            case ORCA, BAMBU -> {
+                emit("; CHANGE_LAYER");
+                emit("; Z_HEIGHT: " + fixed(z, 3));
+                emit("; LAYER_HEIGHT: " + fixed(spec.layerHeightMm, 3));
+                if (spec.flavor == SlicerFlavor.BAMBU) emit("M73 L" + (layer + 1));
+            }
+            case CURA -> emit(";LAYER:" + layer);
+        }
+        emit("G1 Z" + fixed(z, 3) + " F720");
+    }
+
+    // --- PIE Y CONFIGURACIÓN ---
+
+    private void writeFooter() throws IOException {
+        CorpusSpec spec = plan.spec;
+        emit("M104 S0");
+        emit("M140 S0");
+        emit("M84");
+        switch (spec.flavor) {
+            case PRUSA -> {
+                emit("");
+                emit("; filament used [mm] = " + joined(plan.metersPerTool, 1000.0, ", "));
+                emit("; filament used [cm3] = " + joined(cm3(), 1.0, ", "));
+                emit("; filament used [g] = " + joined(plan.gramsPerTool, 1.0, ", "));
+                emit("; filament cost = " + repeat("0.00", ", "));
+                emit("; estimated printing time (normal mode) = " + hms(plan.timeSeconds));
+                emit("");
+                emit("; prusaslicer_config = begin");
+                writeConfig(";");
+                emit("; prusaslicer_config = end");
+            }
+            case ORCA -> {
+                emit("; filament used [mm] = " + joined(plan.metersPerTool, 1000.0, ", "));
+                emit("; filament used [g] = " + joined(plan.gramsPerTool, 1.0, ", "));
+                emit("; estimated printing time (normal mode) = " + hms(plan.timeSeconds));
+                emit("; CONFIG_BLOCK_START");
+                writeConfig(",");
+                emit("; CONFIG_BLOCK_END");
+            }
+            case BAMBU -> {
+                emit("; CONFIG_BLOCK_START");
+                writeConfig(",");
+                emit("; CONFIG_BLOCK_END");
+            }
+            case CURA -> {
+                emit(";End of Gcode");
+                emit(";SETTING_3 {\"global_quality\": \"[general]\\\\nversion = 4\\\\nname = Standard\\\\n\"}");
+            }
+        }
+    }
+
+    // Lista de tipos y colores separada por ';', densidades por el separador del slicer
+    private void writeConfig(String numberSeparator) throws IOException {
+        emit("; filament_type = " + String.join(";", plan.materials));
+        emit("; filament_colour = " + String.join(";", plan.colors));
+        emit("; extruder_colour = " + String.join(";", plan.colors));
+        emit("; filament_density = " + joined(plan.densities, 1.0, numberSeparator));
+        emit("; filament_diameter = " + repeat("1.75", numberSeparator));
+        emit("; layer_height = " + fixed(plan.spec.layerHeightMm, 2));
+    }
+
+    private double[] cm3() {
+        double[] values = new double[plan.gramsPerTool.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = CorpusPlan.round2(plan.gramsPerTool[i] / plan.densities[i]);
+        }
+        return values;
+    }
+
+    // --- ESCRITURA ---
+
+    private void emit(String text) throws IOException {
+        line.setLength(0);
+        line.append(text);
+        emitLine();
+    }
+
+    private void emitLine() throws IOException {
+        line.append('\n');
+        int length = line.length();
+        for (int i = 0; i < length; i++) {
+            if (line.charAt(i) >= 0x80) {
+                // Comentarios con acentos (Ej: "extrusión"): el archivo es UTF-8, como el de los slicers
+                writeBytes(line.toString().getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+        }
+        if (buffered + length > buffer.length) flushBuffer();
+        for (int i = 0; i < length; i++) {
+            buffer[buffered++] = (byte) line.charAt(i); // ASCII: un byte por carácter
+        }
+        written += length;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (buffered + bytes.length > buffer.length) flushBuffer();
+        System.arraycopy(bytes, 0, buffer, buffered, bytes.length);
+        buffered += bytes.length;
+        written += bytes.length;
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, buffered);
+        buffered = 0;
+    }
+
+    private String joined(double[] values, double factor, String separator) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) sb.append(separator);
+            appendFixed(sb, values[i] * factor, 2);
+        }
+        return sb.toString();
+    }
+
+    private String repeat(String value, String separator) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < plan.spec.tools; i++) {
+            if (i > 0) sb.append(separator);
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+
+    static String hms(long totalSeconds) {
+        long s = Math.max(0, totalSeconds);
+        long h = s / 3600, m = (s % 3600) / 60, sec = s % 60;
+        return h > 0 ? h + "h " + m + "m " + sec + "s" : m + "m " + sec + "s";
+    }
+
+    private static String fixed(double value, int decimals) {
+        StringBuilder sb = new StringBuilder();
+        appendFixed(sb, value, decimals);
+        return sb.toString();
+    }
+
+    /**
+     * Escribe value con una cantidad fija de decimales, sin asignar (equivalente a "%.Nf" con Locale.ROOT).
+     */
+    static void appendFixed(StringBuilder sb, double value, int decimals) {
+        long scale = 1;
+        for (int i = 0; i < decimals; i++) scale *= 10;
+        long scaled = Math.round(Math.abs(value) * scale);
+        if (value < 0 && scaled != 0) sb.append('-');
+        sb.append(scaled / scale);
+        if (decimals == 0) return;
+        sb.append('.');
+        long fraction = scaled % scale;
+        for (long div = scale / 10; div > 0; div /= 10) {
+            sb.append((char) ('0' + (fraction / div) % 10));
+        }
+    }
+
+    private static double clamp(double v) {
+        return Math.max(BED_MIN, Math.min(BED_MAX, v));
+    }
+
+    /**
+     * @return El G-code completo como texto (para archivos chicos en tests).
+     */
+    public static String toText(CorpusPlan plan) throws IOException {
+        ByteArrayOutputStream text = new ByteArrayOutputStream((int) Math.min(plan.spec.targetBytes + 8192, Integer.MAX_VALUE - 8));
+        new GCodeCorpusGenerator(plan).write(text);
+        return text.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,130 @@
+package com.calmasalud.hubi.corpus;
+
+import java.io.ByteArrayOutputStream;
+import java.util.SplittableRandom;
+
+/**
+ * Imagen RGBA sintética codificada en QOI, como las miniaturas que PrusaSlicer embebe para la MK4/XL.
+ * Se arma por franjas para que el codificador use todas las operaciones del formato: un color plano (QOI_OP_RUN),
+ * un degradé (QOI_OP_DIFF / QOI_OP_LUMA), una paleta chica que se repite (QOI_OP_INDEX) y ruido con
+ * transparencia (QOI_OP_RGB / QOI_OP_RGBA). Los píxeles quedan disponibles para comparar contra lo decodificado.
+ */
+public class QoiCorpusImage {
+
+    private static final int OP_INDEX = 0x00;
+    private static final int OP_DIFF = 0x40;
+    private static final int OP_LUMA = 0x80;
+    private static final int OP_RUN = 0xC0;
+    private static final int OP_RGB = 0xFE;
+    private static final int OP_RGBA = 0xFF;
+    private static final int MAX_RUN = 62;
+
+    public final int width;
+    public final int height;
+    public final int[] rgba; // Un píxel por entero: 0xRRGGBBAA, fila por fila
+
+    public QoiCorpusImage(int width, int height, long seed) {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("Dimensiones inválidas: " + width + "x" + height);
+        this.width = width;
+        this.height = height;
+        this.rgba = new int[width * height];
+        SplittableRandom random = new SplittableRandom(seed);
+        int fondo = (random.nextInt(0x1000000) << 8) | 0xFF;
+        int[] paleta = new int[8];
+        for (int i = 0; i < paleta.length; i++) paleta[i] = (random.nextInt(0x1000000) << 8) | 0xFF;
+
+        for (int y = 0; y < height; y++) {
+            int franja = 4 * y / height;
+            int paso = y % 2 == 0 ? 1 : 3; // Degradé suave (DIFF) en filas pares, más marcado (LUMA) en impares
+            for (int x = 0; x < width; x++) {
+                int pixel = switch (franja) {
+                    case 0 -> fondo;
+                    case 1 -> rgbaOf(x * paso + y, x * paso, 255 - x * paso, 0xFF);
+                    case 2 -> paleta[random.nextInt(paleta.length)];
+                    default -> rgbaOf(random.nextInt(256), random.nextInt(256), random.nextInt(256), random.nextBoolean() ? 0xFF : 0x80);
+                };
+                rgba[y * width + x] = pixel;
+            }
+        }
+    }
+
+    /**
+     * @return La imagen en formato QOI 1.0 (4 canales, sRGB).
+     */
+    public byte[] toQoi() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(rgba.length * 2 + 22);
+        out.writeBytes(new byte[]{'q', 'o', 'i', 'f'});
+        writeInt(out, width);
+        writeInt(out, height);
+        out.write(4);
+        out.write(0);
+
+        int[] index = new int[64];
+        int previous = 0x000000FF;
+        int run = 0;
+        for (int i = 0; i < rgba.length; i++) {
+            int pixel = rgba[i];
+            if (pixel == previous) {
+                run++;
+                if (run == MAX_RUN || i == rgba.length - 1) {
+                    out.write(OP_RUN | (run - 1));
+                    run = 0;
+                }
+                continue;
+            }
+            if (run > 0) {
+                out.write(OP_RUN | (run - 1));
+                run = 0;
+            }
+            int slot = hash(pixel);
+            if (index[slot] == pixel) {
+                out.write(OP_INDEX | slot);
+            } else {
+                index[slot] = pixel;
+                int r = pixel >>> 24, g = (pixel >>> 16) & 0xFF, b = (pixel >>> 8) & 0xFF, a = pixel & 0xFF;
+                if (a == (previous & 0xFF)) {
+                    int vr = (byte) (r - (previous >>> 24));
+                    int vg = (byte) (g - ((previous >>> 16) & 0xFF));
+                    int vb = (byte) (b - ((previous >>> 8) & 0xFF));
+                    int vgR = vr - vg;
+                    int vgB = vb - vg;
+                    if (vr >= -2 && vr <= 1 && vg >= -2 && vg <= 1 && vb >= -2 && vb <= 1) {
+                        out.write(OP_DIFF | (vr + 2) << 4 | (vg + 2) << 2 | (vb + 2));
+                    } else if (vg >= -32 && vg <= 31 && vgR >= -8 && vgR <= 7 && vgB >= -8 && vgB <= 7) {
+                        out.write(OP_LUMA | (vg + 32));
+                        out.write((vgR + 8) << 4 | (vgB + 8));
+                    } else {
+                        out.write(OP_RGB);
+                        out.write(r);
+                        out.write(g);
+                        out.write(b);
+                    }
+                } else {
+                    out.write(OP_RGBA);
+                    out.write(r);
+                    out.write(g);
+                    out.write(b);
+                    out.write(a);
+                }
+            }
+            previous = pixel;
+        }
+        out.writeBytes(new byte[]{0, 0, 0, 0, 0, 0, 0, 1});
+        return out.toByteArray();
+    }
+
+    private static int rgbaOf(int r, int g, int b, int a) {
+        return (r & 0xFF) << 24 | (g & 0xFF) << 16 | (b & 0xFF) << 8 | (a & 0xFF);
+    }
+
+    private static int hash(int pixel) {
+        return ((pixel >>> 24) * 3 + ((pixel >>> 16) & 0xFF) * 5 + ((pixel >>> 8) & 0xFF) * 7 + (pixel & 0xFF) * 11) % 64;
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+}
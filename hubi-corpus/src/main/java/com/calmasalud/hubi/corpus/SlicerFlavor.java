@@ -0,0 +1,28 @@
+package com.calmasalud.hubi.corpus;
+
+/**
+ * Slicers cuyo formato de G-code imita el generador (encabezados, marcas de capa y bloque de configuración).
+ */
+public enum SlicerFlavor {
+    PRUSA("prusa"),
+    ORCA("orca"),
+    BAMBU("bambu"),
+    CURA("cura");
+
+    private final String id;
+
+    SlicerFlavor(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return true si el slicer informa gramos por herramienta (Cura solo informa el total en metros).
+     */
+    public boolean reportsGramsPerTool() {
+        return this != CURA;
+    }
+}
@@ -0,0 +1,247 @@
+package com.calmasalud.hubi.corpus;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Escribe un 3MF sintético: modelo 3D/3dmodel.model (mallas en grilla), configuración del slicer
+ * (Metadata/Slic3r_PE.config de PrusaSlicer o slice_info.config + plate_1.json de Bambu/Orca) y,
+ * opcionalmente, el G-code de la placa embebido (Metadata/plate_1.gcode, como un .gcode.3mf).
+ * Con varias placas, cada plan es una placa (plate_N.json, su &lt;plate&gt; en slice_info.config y su plate_N.gcode);
+ * el modelo y la configuración salen del primero.
+ * El tamaño objetivo es el del contenido sin comprimir: sin G-code lo ocupa la malla, con G-code el G-code.
+ */
+public class ThreeMFCorpusGenerator {
+
+    // Bytes aproximados por vértice de la grilla (1 vértice + 2 triángulos en XML)
+    private static final int BYTES_PER_VERTEX = 110;
+    private static final long EMBEDDED_MODEL_BYTES = 256 * 1024;
+
+    private final CorpusPlan plan;
+    private final List<CorpusPlan> plates;
+    private final boolean embedGCode;
+
+    public ThreeMFCorpusGenerator(CorpusPlan plan, boolean embedGCode) {
+        this(List.of(plan), embedGCode);
+    }
+
+    /**
+     * @param plates Un plan por placa (al menos uno), en orden: plate_1, plate_2...
+     */
+    public ThreeMFCorpusGenerator(List<CorpusPlan> plates, boolean embedGCode) {
+        if (plates.isEmpty()) throw new IllegalArgumentException("El 3MF necesita al menos una placa.");
+        this.plan = plates.get(0);
+        this.plates = List.copyOf(plates);
+        this.embedGCode = embedGCode;
+    }
+
+    /**
+     * @return Cantidad de objetos del modelo (1 a 3, según la semilla).
+     */
+    public int objectCount() {
+        return 1 + (int) Math.floorMod(plan.spec.seed, 3L);
+    }
+
+    /**
+     * @return Lado de la grilla de cada objeto (vértices por lado).
+     */
+    public int gridSide() {
+        long modelBytes = embedGCode ? EMBEDDED_MODEL_BYTES : plan.spec.targetBytes;
+        long verticesPerObject = Math.max(4, modelBytes / BYTES_PER_VERTEX / objectCount());
+        return (int) Math.max(2, Math.sqrt(verticesPerObject));
+    }
+
+    /**
+     * @return Triángulos de cada objeto (dos por celda de la grilla).
+     */
+    public long trianglesPerObject() {
+        long side = gridSide();
+        return 2 * (side - 1) * (side - 1);
+    }
+
+    /**
+     * Escribe el 3MF en out (no lo cierra).
+     */
+    public void write(OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        zip.setLevel(Deflater.BEST_SPEED);
+        Writer writer = new OutputStreamWriter(zip, StandardCharsets.UTF_8);
+
+        entry(zip, "[Content_Types].xml");
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                + "<Default Extension=\"model\" ContentType=\"application/vnd.ms-package.3dmanufacturing-3dmodel+xml\"/>"
+                + "</Types>\n");
+        writer.flush();
+
+        entry(zip, "_rels/.rels");
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                + "<Relationship Target=\"/3D/3dmodel.model\" Id=\"rel0\" "
+                + "Type=\"http://schemas.microsoft.com/3dmanufacturing/2013/01/3dmodel\"/></Relationships>\n");
+        writer.flush();
+
+        entry(zip, "3D/3dmodel.model");
+        writeModel(writer);
+        writer.flush();
+
+        switch (plan.spec.flavor) {
+            case PRUSA -> {
+                entry(zip, "Metadata/Slic3r_PE.config");
+                writer.write("; generated by PrusaSlicer 2.7.1 on 2024-03-01 at 10:00:00 UTC\n");
+                writeConfig(writer);
+            }
+            case ORCA, BAMBU -> {
+                entry(zip, "Metadata/project_settings.config");
+                writeProjectSettings(writer);
+                writer.flush();
+                entry(zip, "Metadata/slice_info.config");
+                writeSliceInfo(writer);
+                writer.flush();
+                for (int i = 0; i < plates.size(); i++) {
+                    CorpusPlan plate = plates.get(i);
+                    entry(zip, "Metadata/plate_" + (i + 1) + ".json");
+                    writer.write("{\"filament_colors\":[" + quoted(plate.colors) + "],\"filament_ids\":[" + ids(plate) + "],\"version\":2}\n");
+                    writer.flush();
+                }
+            }
+            case CURA -> {
+                entry(zip, "Cura/global.cfg");
+                writer.write("[general]\nversion = 4\nname = Standard\n\n[values]\nlayer_height = "
+                        + plan.spec.layerHeightMm + "\n");
+            }
+        }
+        writer.flush();
+
+        if (embedGCode) {
+            for (int i = 0; i < plates.size(); i++) {
+                entry(zip, "Metadata/plate_" + (i + 1) + ".gcode");
+                new GCodeCorpusGenerator(plates.get(i)).write(zip);
+            }
+        }
+        zip.finish();
+    }
+
+    private void writeModel(Writer writer) throws IOException {
+        SplittableRandom random = new SplittableRandom(plan.spec.seed ^ 0x3F3F3F3FL);
+        int side = gridSide();
+        StringBuilder sb = new StringBuilder(256);
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<model unit=\"millimeter\" xml:lang=\"en-US\" xmlns=\"http://schemas.microsoft.com/3dmanufacturing/core/2015/02\">\n"
+                + " <resources>\n");
+        for (int object = 1; object <= objectCount(); object++) {
+            writer.write("  <object id=\"" + object + "\" name=\"pieza_" + object + "\" type=\"model\">\n   <mesh>\n    <vertices>\n");
+            double step = 100.0 / side;
+            for (int i = 0; i < side; i++) {
+                for (int j = 0; j < side; j++) {
+                    sb.setLength(0);
+                    sb.append("     <vertex x=\"");
+                    GCodeCorpusGenerator.appendFixed(sb, i * step, 3);
+                    sb.append("\" y=\"");
+                    GCodeCorpusGenerator.appendFixed(sb, j * step, 3);
+                    sb.append("\" z=\"");
+                    GCodeCorpusGenerator.appendFixed(sb, random.nextDouble() * 5, 3);
+                    sb.append("\"/>\n");
+                    writer.append(sb);
+                }
+            }
+            writer.write("    </vertices>\n    <triangles>\n");
+            for (int i = 0; i < side - 1; i++) {
+                for (int j = 0; j < side - 1; j++) {
+                    int v = i * side + j;
+                    sb.setLength(0);
+                    sb.append("     <triangle v1=\"").append(v).append("\" v2=\"").append(v + 1)
+                            .append("\" v3=\"").append(v + side).append("\"/>\n");
+                    sb.append("     <triangle v1=\"").append(v + 1).append("\" v2=\"").append(v + side + 1)
+                            .append("\" v3=\"").append(v + side).append("\"/>\n");
+                    writer.append(sb);
+                }
+            }
+            writer.write("    </triangles>\n   </mesh>\n  </object>\n");
+        }
+        writer.write(" </resources>\n <build>\n");
+        for (int object = 1; object <= objectCount(); object++) {
+            writer.write("  <item objectid=\"" + object + "\" transform=\"1 0 0 0 1 0 0 0 1 " + (object * 60) + " 100 0\"/>\n");
+        }
+        writer.write(" </build>\n</model>\n");
+    }
+
+    private void writeConfig(Writer writer) throws IOException {
+        writer.write("; filament_type = " + String.join(";", plan.materials) + "\n");
+        writer.write("; filament_colour = " + String.join(";", plan.colors) + "\n");
+        writer.write("; filament_density = " + joined(plan.densities, ",") + "\n");
+        writer.write("; filament_diameter = " + String.join(",", Collections.nCopies(plan.spec.tools, "1.75")) + "\n");
+        writer.write("; layer_height = " + plan.spec.layerHeightMm + "\n");
+    }
+
+    // project_settings.config es JSON: el parser de configuración ignora estas líneas, como en los archivos reales
+    private void writeProjectSettings(Writer writer) throws IOException {
+        writer.write("{\n");
+        writer.write("    \"filament_type\": [" + quoted(plan.materials) + "],\n");
+        writer.write("    \"filament_colour\": [" + quoted(plan.colors) + "],\n");
+        writer.write("    \"layer_height\": \"" + plan.spec.layerHeightMm + "\",\n");
+        writer.write("    \"version\": \"01.09.00.70\"\n}\n");
+    }
+
+    private void writeSliceInfo(Writer writer) throws IOException {
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<config>\n  <header>\n"
+                + "    <header_item key=\"X-BBL-Client-Type\" value=\"slicer\"/>\n  </header>\n");
+        for (int i = 0; i < plates.size(); i++) {
+            CorpusPlan plate = plates.get(i);
+            writer.write("  <plate>\n");
+            writer.write("    <metadata key=\"index\" value=\"" + (i + 1) + "\"/>\n");
+            writer.write("    <metadata key=\"prediction\" value=\"" + plate.timeSeconds + "\"/>\n");
+            writer.write("    <metadata key=\"weight\" value=\"" + CorpusPlan.round2(plate.totalGrams()) + "\"/>\n");
+            for (int object = 1; object <= objectCount(); object++) {
+                writer.write("    <object identify_id=\"" + (100 * (i + 1) + object) + "\" name=\"pieza_" + object + "\" skipped=\"false\"/>\n");
+            }
+            for (int t = 0; t < plate.spec.tools; t++) {
+                writer.write("    <filament id=\"" + (t + 1) + "\" type=\"" + plate.materials[t] + "\" color=\"" + plate.colors[t]
+                        + "\" used_m=\"" + plate.metersPerTool[t] + "\" used_g=\"" + plate.gramsPerTool[t] + "\"/>\n");
+            }
+            writer.write("  </plate>\n");
+        }
+        writer.write("</config>\n");
+    }
+
+    private static void entry(ZipOutputStream zip, String name) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+    }
+
+    private static String quoted(String[] values) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append('"').append(values[i]).append('"');
+        }
+        return sb.toString();
+    }
+
+    private static String ids(CorpusPlan plate) {
+        StringBuilder sb = new StringBuilder();
+        for (int t = 0; t < plate.spec.tools; t++) {
+            if (t > 0) sb.append(',');
+            sb.append(t);
+        }
+        return sb.toString();
+    }
+
+    private static String joined(double[] values, String separator) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) sb.append(separator);
+            sb.append(values[i]);
+        }
+        return sb.toString();
+    }
+}
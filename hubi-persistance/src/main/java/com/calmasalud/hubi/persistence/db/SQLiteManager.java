@@ -5,24 +5,45 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Properties;
+
+import org.sqlite.SQLiteConfig;
 
 public class SQLiteManager {
 
     //private static final String DB_FILE = "jdbc:sqlite:hubi_catalog.db";
     private final String dbUrl;
+    private static final int BUSY_TIMEOUT_MS = 15000; // Espera máxima por el bloqueo de otra conexión
     public SQLiteManager(String dbFileName) {
         // Formato JDBC SQLite: jdbc:sqlite:nombre_archivo.db
         this.dbUrl = "jdbc:sqlite:" + dbFileName;
     }
     public Connection getConnection() throws SQLException {
         // Establece la conexión. El archivo .db se crea si no existe.
-        return DriverManager.getConnection(this.dbUrl);
+        return DriverManager.getConnection(this.dbUrl, connectionProperties());
+    }
+
+    // Las transacciones (setAutoCommit(false)) toman el bloqueo de escritura al empezar (BEGIN IMMEDIATE):
+    // con la transacción diferida, dos conexiones que leen y después escriben (Ej: los correlativos) se
+    // bloquean entre sí y SQLite aborta una con SQLITE_BUSY sin esperar. Así la segunda espera su turno.
+    private static Properties connectionProperties() {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setTransactionMode(SQLiteConfig.TransactionMode.IMMEDIATE);
+        config.setBusyTimeout(BUSY_TIMEOUT_MS);
+        return config.toProperties();
     }
 
 
     public static void initializeDatabase() {
         // Se utiliza una URL local estática para la inicialización inicial
-        String staticDbUrl = "jdbc:sqlite:hubi_catalog.db";
+        initializeDatabase("hubi_catalog.db");
+    }
+
+    /**
+     * Crea las tablas en otro archivo de base de datos (Ej: una base temporal para benchmarks).
+     */
+    public static void initializeDatabase(String dbFileName) {
+        String staticDbUrl = "jdbc:sqlite:" + dbFileName;
 
         try (Connection conn = DriverManager.getConnection(staticDbUrl);
              Statement stmt = conn.createStatement()) {
@@ -1,7 +1,11 @@
 package com.calmasalud.hubi.persistence.repository;
 
+import com.calmasalud.hubi.core.model.DeletedRows;
 import com.calmasalud.hubi.core.model.MasterProduct;
 import com.calmasalud.hubi.core.model.MasterProductView;
+import com.calmasalud.hubi.core.model.PieceStockColorView;
+import com.calmasalud.hubi.core.model.Product;
+import com.calmasalud.hubi.core.model.ProductComposition;
 import com.calmasalud.hubi.core.repository.IMasterProductRepository;
 import com.calmasalud.hubi.persistence.db.SQLiteManager;
 import java.sql.Connection;
@@ -9,6 +13,9 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 
@@ -17,6 +24,7 @@ public class MasterProductRepositorySQLite implements IMasterProductRepository {
     // CAMPOS DE INSTANCIA
     private final SQLiteManager sqLiteManager;
     private static final String DB_NAME = "hubi_catalog.db";
+    private static final int MAX_IN_PARAMS = 500; // SQLite anteriores a 3.32 aceptan hasta 999 parámetros
 
     // Constructor 1: Con inyección de dependencia (para Main.java)
     public MasterProductRepositorySQLite(SQLiteManager sqLiteManager) {
@@ -137,6 +145,80 @@ public class MasterProductRepositorySQLite implements IMasterProductRepository {
         }
     }
 
+    @Override
+    public long saveNewProductWithPieces(MasterProduct product, double initialPrice, List<Product> pieces) {
+        Connection conn = null;
+
+        String sqlInsertMaster = "INSERT INTO master_products (master_code, product_prefix, product_name, description) VALUES (?, ?, ?, ?)";
+        String sqlInsertStock = "INSERT INTO finished_products_stock (master_code, quantity_available, price) VALUES (?, 0, ?)";
+        String sqlInsertPiece = "INSERT INTO products (code, name, file_extension, peso_filamento_gramos, usage_detail, calculated_cost) VALUES (?, ?, ?, ?, ?, ?)";
+
+        try {
+            conn = sqLiteManager.getConnection();
+            conn.setAutoCommit(false); // Maestro, stock y piezas: una sola transacción
+
+            try (PreparedStatement pstmtMaster = conn.prepareStatement(sqlInsertMaster)) {
+                pstmtMaster.setString(1, product.getMasterCode());
+                pstmtMaster.setString(2, product.getProductPrefix());
+                pstmtMaster.setString(3, product.getProductName());
+                pstmtMaster.setString(4, product.getDescription());
+                pstmtMaster.executeUpdate();
+            }
+
+            try (PreparedStatement pstmtStock = conn.prepareStatement(sqlInsertStock)) {
+                pstmtStock.setString(1, product.getMasterCode());
+                pstmtStock.setDouble(2, initialPrice);
+                pstmtStock.executeUpdate();
+            }
+
+            try (PreparedStatement pstmtPiece = conn.prepareStatement(sqlInsertPiece)) {
+                for (Product piece : pieces) {
+                    pstmtPiece.setString(1, piece.getCode());
+                    pstmtPiece.setString(2, piece.getName());
+                    pstmtPiece.setString(3, piece.getFileExtension());
+                    pstmtPiece.setDouble(4, piece.getWeightGrams());
+                    pstmtPiece.setString(5, piece.getUsageDetail());
+                    pstmtPiece.setDouble(6, piece.getCost());
+                    pstmtPiece.addBatch();
+                }
+                pstmtPiece.executeBatch();
+            }
+
+            conn.commit();
+            return 1L;
+
+        } catch (SQLException e) {
+            System.err.println("❌ Error al guardar el producto " + product.getMasterCode() + " con sus piezas (revertido): " + e.getMessage());
+            if (conn != null) {
+                try { conn.rollback(); } catch (SQLException ex) { ex.printStackTrace(); }
+            }
+            throw new RuntimeException("Fallo al crear el Producto Maestro con sus piezas.", e);
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException e) { e.printStackTrace(); }
+            }
+        }
+    }
+
+    @Override
+    public boolean releaseMasterCode(String masterCode) {
+        if (masterCode == null || masterCode.length() <= 3) return false;
+        // Solo si nadie reservó otro código del mismo prefijo después (Ej: SOP03 -> last_number 2)
+        String sql = "UPDATE master_correlatives SET last_number = last_number - 1 WHERE master_prefix = ? AND last_number = ?";
+        try (Connection conn = sqLiteManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, masterCode.substring(0, 3));
+            pstmt.setInt(2, Integer.parseInt(masterCode.substring(3)));
+            return pstmt.executeUpdate() == 1;
+        } catch (SQLException | NumberFormatException e) {
+            System.err.println("⚠️ No se pudo devolver el código maestro " + masterCode + ": " + e.getMessage());
+            return false;
+        }
+    }
+
     @Override
     public long save(MasterProduct product) {
         return saveNewProduct(product, 0.0);
@@ -236,6 +318,211 @@ public class MasterProductRepositorySQLite implements IMasterProductRepository {
             }
         }
     }
+
+    @Override
+    public DeletedRows deleteProductWithPieces(String masterCode, Collection<String> pieceCodes, Collection<String> pieceNameBases) {
+        Connection conn = null;
+        try {
+            conn = sqLiteManager.getConnection();
+            conn.setAutoCommit(false); // Maestro, composición, piezas y stock: una sola transacción
+
+            // 1. Las filas tal como estaban (manifiesto de la papelera), dentro de la misma transacción
+            List<Product> pieces = new ArrayList<>();
+            executeIn(conn, "SELECT code, name, file_extension, peso_filamento_gramos, usage_detail, calculated_cost FROM products WHERE code IN ",
+                    pieceCodes, rs -> pieces.add(new Product(rs.getString("code"), rs.getString("name"), rs.getString("file_extension"),
+                            rs.getDouble("peso_filamento_gramos"), rs.getString("usage_detail"), rs.getDouble("calculated_cost"))));
+            List<PieceStockColorView> pieceStock = new ArrayList<>();
+            executeIn(conn, "SELECT piece_name_base, color_name, available_quantity FROM piece_stock WHERE piece_name_base IN ",
+                    pieceNameBases, rs -> pieceStock.add(new PieceStockColorView(rs.getString("piece_name_base"),
+                            rs.getString("color_name"), rs.getInt("available_quantity"))));
+            MasterProductView master = null;
+            List<ProductComposition> composition = new ArrayList<>();
+            if (masterCode != null) {
+                master = findWithStock(conn, masterCode);
+                String sqlComposition = "SELECT piece_name_base, required_quantity FROM product_composition WHERE master_code = ?";
+                try (PreparedStatement pstmt = conn.prepareStatement(sqlComposition)) {
+                    pstmt.setString(1, masterCode);
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) {
+                        composition.add(new ProductComposition(masterCode, rs.getString("piece_name_base"), rs.getInt("required_quantity")));
+                    }
+                }
+            }
+
+            // 2. Borrado por conjuntos
+            executeIn(conn, "DELETE FROM products WHERE code IN ", pieceCodes, null);
+            executeIn(conn, "DELETE FROM piece_stock WHERE piece_name_base IN ", pieceNameBases, null);
+
+            if (masterCode != null) {
+                // Sin PRAGMA foreign_keys el ON DELETE CASCADE de la composición no se aplica: se borra a mano
+                String[] sqlMaster = {
+                        "DELETE FROM product_composition WHERE master_code = ?",
+                        "DELETE FROM finished_products_stock WHERE master_code = ?",
+                        "DELETE FROM master_products WHERE master_code = ?"
+                };
+                for (String sql : sqlMaster) {
+                    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                        pstmt.setString(1, masterCode);
+                        pstmt.executeUpdate();
+                    }
+                }
+            }
+
+            conn.commit();
+            return new DeletedRows(master, composition, pieces, pieceStock);
+
+        } catch (SQLException e) {
+            System.err.println("❌ Error al eliminar el producto " + masterCode + " con sus piezas (revertido): " + e.getMessage());
+            if (conn != null) {
+                try { conn.rollback(); } catch (SQLException ex) { ex.printStackTrace(); }
+            }
+            throw new RuntimeException("Fallo al eliminar el Producto Maestro con sus piezas.", e);
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException e) { e.printStackTrace(); }
+            }
+        }
+    }
+
+    @Override
+    public void restoreRows(DeletedRows rows) {
+        Connection conn = null;
+        String sqlInsertMaster = "INSERT INTO master_products (master_code, product_prefix, product_name, description) VALUES (?, ?, ?, ?)";
+        String sqlInsertStock = "INSERT INTO finished_products_stock (master_code, quantity_available, price) VALUES (?, ?, ?)";
+        String sqlInsertComposition = "INSERT INTO product_composition (master_code, piece_name_base, required_quantity) VALUES (?, ?, ?)";
+        String sqlInsertPiece = "INSERT INTO products (code, name, file_extension, peso_filamento_gramos, usage_detail, calculated_cost) VALUES (?, ?, ?, ?, ?, ?)";
+        String sqlUpsertPieceStock = "INSERT INTO piece_stock (piece_name_base, color_name, available_quantity) VALUES (?, ?, ?) "
+                + "ON CONFLICT(piece_name_base, color_name) DO UPDATE SET available_quantity = available_quantity + excluded.available_quantity";
+
+        try {
+            conn = sqLiteManager.getConnection();
+            conn.setAutoCommit(false);
+
+            // 1. Los códigos no tienen que haberse vuelto a usar mientras estaba en la papelera
+            if (rows.master != null && findWithStock(conn, rows.master.getMasterCode()) != null) {
+                throw new IllegalStateException("El código maestro " + rows.master.getMasterCode() + " ya está en uso.");
+            }
+            List<String> pieceCodes = new ArrayList<>();
+            for (Product piece : rows.pieces) pieceCodes.add(piece.getCode());
+            List<String> inUse = new ArrayList<>();
+            executeIn(conn, "SELECT code FROM products WHERE code IN ", pieceCodes, rs -> inUse.add(rs.getString("code")));
+            if (!inUse.isEmpty()) {
+                throw new IllegalStateException("Códigos de pieza ya en uso: " + String.join(", ", inUse));
+            }
+
+            // 2. Maestro, stock final y composición
+            if (rows.master != null) {
+                MasterProductView master = rows.master;
+                try (PreparedStatement pstmt = conn.prepareStatement(sqlInsertMaster)) {
+                    pstmt.setString(1, master.getMasterCode());
+                    pstmt.setString(2, master.getProductPrefix());
+                    pstmt.setString(3, master.getProductName());
+                    pstmt.setString(4, master.getDescription());
+                    pstmt.executeUpdate();
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(sqlInsertStock)) {
+                    pstmt.setString(1, master.getMasterCode());
+                    pstmt.setInt(2, master.getQuantityAvailable());
+                    pstmt.setDouble(3, master.getPrice());
+                    pstmt.executeUpdate();
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(sqlInsertComposition)) {
+                    for (ProductComposition item : rows.composition) {
+                        pstmt.setString(1, item.getMasterCode());
+                        pstmt.setString(2, item.getPieceNameBase());
+                        pstmt.setInt(3, item.getRequiredQuantity());
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                }
+            }
+
+            // 3. Piezas y su stock
+            try (PreparedStatement pstmt = conn.prepareStatement(sqlInsertPiece)) {
+                for (Product piece : rows.pieces) {
+                    pstmt.setString(1, piece.getCode());
+                    pstmt.setString(2, piece.getName());
+                    pstmt.setString(3, piece.getFileExtension());
+                    pstmt.setDouble(4, piece.getWeightGrams());
+                    pstmt.setString(5, piece.getUsageDetail());
+                    pstmt.setDouble(6, piece.getCost());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(sqlUpsertPieceStock)) {
+                for (PieceStockColorView stock : rows.pieceStock) {
+                    pstmt.setString(1, stock.getPieceNameBase());
+                    pstmt.setString(2, stock.getColorName());
+                    pstmt.setInt(3, stock.getQuantityAvailable());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+
+            conn.commit();
+
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("❌ Error al restaurar filas desde la papelera (revertido): " + e.getMessage());
+            if (conn != null) {
+                try { conn.rollback(); } catch (SQLException ex) { ex.printStackTrace(); }
+            }
+            throw e instanceof RuntimeException ? (RuntimeException) e
+                    : new RuntimeException("Fallo al restaurar el producto desde la papelera.", e);
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException e) { e.printStackTrace(); }
+            }
+        }
+    }
+
+    // Maestro con su stock final y precio, leído con la conexión de la transacción en curso
+    private static MasterProductView findWithStock(Connection conn, String masterCode) throws SQLException {
+        String sql = "SELECT m.master_code, m.product_prefix, m.product_name, m.description, s.quantity_available, s.price "
+                + "FROM master_products m LEFT JOIN finished_products_stock s ON m.master_code = s.master_code "
+                + "WHERE m.master_code = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, masterCode);
+            ResultSet rs = pstmt.executeQuery();
+            if (!rs.next()) return null;
+            return new MasterProductView(rs.getString("master_code"), rs.getString("product_prefix"),
+                    rs.getString("product_name"), rs.getString("description"),
+                    rs.getInt("quantity_available"), rs.getDouble("price"));
+        }
+    }
+
+    // Lectura de una fila de un SELECT ... IN
+    private interface RowReader {
+        void read(ResultSet rs) throws SQLException;
+    }
+
+    // Sentencia ... IN (?, ?, ...) por tandas de MAX_IN_PARAMS (límite de parámetros de SQLite).
+    // Con reader es una consulta (cada fila se le pasa); sin reader, un UPDATE/DELETE.
+    private static void executeIn(Connection conn, String sqlPrefix, Collection<String> values, RowReader reader) throws SQLException {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(values));
+        for (int from = 0; from < distinct.size(); from += MAX_IN_PARAMS) {
+            List<String> chunk = distinct.subList(from, Math.min(from + MAX_IN_PARAMS, distinct.size()));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            try (PreparedStatement pstmt = conn.prepareStatement(sqlPrefix + "(" + placeholders + ")")) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    pstmt.setString(i + 1, chunk.get(i));
+                }
+                if (reader == null) {
+                    pstmt.executeUpdate();
+                } else {
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) reader.read(rs);
+                }
+            }
+        }
+    }
+
     @Override
     public MasterProduct findByProductName(String productName) {
         String sql = "SELECT master_code, product_prefix, product_name, description FROM master_products WHERE product_name = ?";
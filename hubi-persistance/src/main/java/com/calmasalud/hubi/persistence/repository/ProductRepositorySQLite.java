@@ -117,6 +117,84 @@ public class ProductRepositorySQLite implements IProductRepository {
         }
     }
 
+    @Override
+    public boolean saveAll(List<Product> products) {
+        String sql = "INSERT INTO products (code, name, file_extension, peso_filamento_gramos, usage_detail, calculated_cost) VALUES (?, ?, ?, ?, ?, ?)";
+        Connection conn = null;
+        try {
+            conn = sqLiteManager.getConnection();
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (Product product : products) {
+                    pstmt.setString(1, product.getCode());
+                    pstmt.setString(2, product.getName());
+                    pstmt.setString(3, product.getFileExtension());
+                    pstmt.setDouble(4, product.getWeightGrams());
+                    pstmt.setString(5, product.getUsageDetail());
+                    pstmt.setDouble(6, product.getCost());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            conn.commit();
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Error al guardar las piezas en BD (lote revertido): " + e.getMessage());
+            if (conn != null) {
+                try { conn.rollback(); } catch (SQLException ex) { ex.printStackTrace(); }
+            }
+            return false;
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException e) { e.printStackTrace(); }
+            }
+        }
+    }
+
+    @Override
+    public String reserveCorrelatives(String prefijoSeisLetras, int count) {
+        if (count <= 0) return null;
+        // Un solo UPSERT en lugar de count lecturas + escrituras
+        String sql = "INSERT INTO product_correlatives (prefix, last_number) VALUES (?, ?) " +
+                "ON CONFLICT(prefix) DO UPDATE SET last_number = last_number + excluded.last_number " +
+                "RETURNING last_number";
+
+        try (Connection conn = sqLiteManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, prefijoSeisLetras);
+            pstmt.setInt(2, count);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return String.format("%03d", rs.getInt(1));
+                }
+            }
+            throw new SQLException("La reserva no devolvió el último correlativo.");
+        } catch (SQLException e) {
+            System.err.println("Error de BD al reservar correlativos: " + e.getMessage());
+            throw new RuntimeException("Error en persistencia de correlativo.", e);
+        }
+    }
+
+    @Override
+    public boolean releaseCorrelatives(String prefijoSeisLetras, int first, int last) {
+        // Compara y asigna: si otra carga reservó después, los números quedan como hueco
+        String sql = "UPDATE product_correlatives SET last_number = ? WHERE prefix = ? AND last_number = ?";
+        try (Connection conn = sqLiteManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, first - 1);
+            pstmt.setString(2, prefijoSeisLetras);
+            pstmt.setInt(3, last);
+            return pstmt.executeUpdate() == 1;
+        } catch (SQLException e) {
+            System.err.println("⚠️ No se pudieron devolver los correlativos de " + prefijoSeisLetras + ": " + e.getMessage());
+            return false;
+        }
+    }
+
     @Override
     public void updateProductCost(String code, double cost) {
         String sql = "UPDATE products SET calculated_cost = ? WHERE code = ?";
@@ -135,7 +213,7 @@ public class ProductRepositorySQLite implements IProductRepository {
         // Actualizamos la consulta para traer el costo
         String sql = "SELECT code, name, file_extension, peso_filamento_gramos, usage_detail, calculated_cost FROM products " +
                 "WHERE code = ? " +
-                "ORDER BY CASE WHEN file_extension LIKE '%.gcode' THEN 1 ELSE 2 END ASC LIMIT 1";
+                "ORDER BY CASE WHEN file_extension LIKE '%gcode%' THEN 1 ELSE 2 END ASC LIMIT 1";
 
         Product product = null;
         try (Connection conn = sqLiteManager.getConnection();
@@ -201,6 +279,31 @@ public class ProductRepositorySQLite implements IProductRepository {
         return pieces;
     }
 
+    @Override
+    public List<Product> findAll() {
+        List<Product> pieces = new ArrayList<>();
+        String sql = "SELECT code, name, file_extension, peso_filamento_gramos, usage_detail, calculated_cost FROM products";
+
+        try (Connection conn = sqLiteManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+
+            while (rs.next()) {
+                pieces.add(new Product(
+                        rs.getString("code"),
+                        rs.getString("name"),
+                        rs.getString("file_extension"),
+                        rs.getDouble("peso_filamento_gramos"),
+                        rs.getString("usage_detail"),
+                        rs.getDouble("calculated_cost")
+                ));
+            }
+        } catch (SQLException e) {
+            System.err.println("❌ Error al listar todas las piezas: " + e.getMessage());
+        }
+        return pieces;
+    }
+
     /**
      * OBTENER STOCK TOTAL: Suma el stock de todos los colores de esa pieza.
      */
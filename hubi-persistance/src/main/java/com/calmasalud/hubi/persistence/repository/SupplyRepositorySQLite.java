@@ -10,7 +10,9 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class SupplyRepositorySQLite implements ISupplyRepository {
 
@@ -179,6 +181,55 @@ public class SupplyRepositorySQLite implements ISupplyRepository {
         return supplies;
     }
 
+    @Override
+    public Map<Long, Double> deductStockBatch(Map<Long, Double> gramsBySupplyId) throws RuntimeException {
+        // Misma tolerancia que CatalogService.removeSupplyStock
+        String updateSql = "UPDATE supply SET cantidadDisponible = CASE WHEN cantidadDisponible - ? <= 0.01 THEN 0 " +
+                "ELSE cantidadDisponible - ? END WHERE id = ? AND cantidadDisponible >= ? - 0.001";
+        String selectSql = "SELECT cantidadDisponible FROM supply WHERE id = ?";
+        Map<Long, Double> remaining = new LinkedHashMap<>();
+        Connection conn = null;
+        try {
+            conn = sqLiteManager.getConnection();
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement update = conn.prepareStatement(updateSql);
+                 PreparedStatement select = conn.prepareStatement(selectSql)) {
+                for (Map.Entry<Long, Double> deduction : gramsBySupplyId.entrySet()) {
+                    double grams = deduction.getValue();
+                    update.setDouble(1, grams);
+                    update.setDouble(2, grams);
+                    update.setLong(3, deduction.getKey());
+                    update.setDouble(4, grams);
+                    if (update.executeUpdate() == 0) {
+                        throw new RuntimeException("Stock insuficiente (o insumo inexistente) para descontar " +
+                                String.format("%.2f", grams) + "g del insumo ID " + deduction.getKey() + ".");
+                    }
+                    select.setLong(1, deduction.getKey());
+                    try (ResultSet rs = select.executeQuery()) {
+                        if (rs.next()) remaining.put(deduction.getKey(), rs.getDouble(1));
+                    }
+                }
+            }
+
+            conn.commit();
+            return remaining;
+
+        } catch (SQLException | RuntimeException e) {
+            if (conn != null) {
+                try { conn.rollback(); } catch (SQLException ex) { System.err.println("Error durante el rollback: " + ex.getMessage()); }
+            }
+            throw new RuntimeException("Fallo en el descuento de insumos. La operación fue revertida. Causa: " + e.getMessage(), e);
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException e) { e.printStackTrace(); }
+            }
+        }
+    }
+
     private Supply mapResultSetToSupply(ResultSet rs) throws SQLException {
         Supply supply = new Supply();
         supply.setId(rs.getLong("id"));
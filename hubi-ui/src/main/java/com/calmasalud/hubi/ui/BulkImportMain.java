@@ -0,0 +1,69 @@
+package com.calmasalud.hubi.ui;
+
+import com.calmasalud.hubi.core.service.BulkImportEngine;
+import com.calmasalud.hubi.core.service.CatalogService;
+import com.calmasalud.hubi.core.service.RecycleBinManager;
+import com.calmasalud.hubi.persistence.db.SQLiteManager;
+import com.calmasalud.hubi.persistence.repository.MasterProductRepositorySQLite;
+import com.calmasalud.hubi.persistence.repository.ProductCompositionRepositorySQLite;
+import com.calmasalud.hubi.persistence.repository.ProductRepositorySQLite;
+import com.calmasalud.hubi.persistence.repository.SupplyRepositorySQLite;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Importación masiva sin interfaz gráfica (Ej: para dejarla corriendo de noche).
+ * Uso: BulkImportMain &lt;carpetaOrigen&gt; [hilos] [archivoReporte]
+ * Usa la misma base de datos y el mismo repositorio que la aplicación; conviene no tenerla abierta mientras tanto.
+ * Termina con código 0 si no hubo errores, 1 si algún producto o archivo no se pudo importar y 2 si no se pudo empezar.
+ */
+public class BulkImportMain {
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Uso: BulkImportMain <carpetaOrigen> [hilos] [archivoReporte]");
+            System.exit(2);
+        }
+        Path origen = Paths.get(args[0]);
+        int hilos = BulkImportEngine.DEFAULT_WORKERS;
+        if (args.length > 1) {
+            try {
+                hilos = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                System.err.println("La cantidad de hilos debe ser un número: " + args[1]);
+                System.exit(2);
+            }
+        }
+        Path archivoReporte = args.length > 2 ? Paths.get(args[2])
+                : Paths.get("importacion-masiva-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".txt");
+
+        SQLiteManager.initializeDatabase();
+        RecycleBinManager.ensureRecycleBinExists();
+
+        CatalogService catalogService = new CatalogService(
+                new ProductRepositorySQLite(),
+                new MasterProductRepositorySQLite(),
+                new ProductCompositionRepositorySQLite(),
+                new SupplyRepositorySQLite()
+        );
+        // Una importación anterior cortada a la mitad se termina o se deshace antes de empezar
+        catalogService.recoverIngestions();
+        catalogService.rebuildCatalogIndex();
+
+        int codigo;
+        try {
+            BulkImportEngine.Report report = catalogService.bulkImport(origen, hilos);
+            System.out.println(report.summary());
+            report.writeTo(archivoReporte);
+            System.out.println("LOG: Reporte guardado en " + archivoReporte.toAbsolutePath());
+            codigo = report.hasErrors() ? 1 : 0;
+        } catch (IOException e) {
+            System.err.println("❌ No se pudo completar la importación masiva: " + e.getMessage());
+            codigo = 2;
+        }
+        System.exit(codigo); // Los hilos del servicio de extracción no deben mantener viva la JVM
+    }
+}
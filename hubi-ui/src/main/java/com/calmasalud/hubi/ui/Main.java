@@ -1,7 +1,17 @@
 package com.calmasalud.hubi.ui;
 
+import com.calmasalud.hubi.core.service.CatalogService;
+import com.calmasalud.hubi.core.service.CatalogWatcher;
 import com.calmasalud.hubi.core.service.RecycleBinManager;
+import com.calmasalud.hubi.core.service.RecycleBinRetentionJob;
+import com.calmasalud.hubi.core.service.StorageCompactionJob;
+import com.calmasalud.hubi.core.service.storage.RetentionPolicy;
+import com.calmasalud.hubi.core.service.storage.StoragePolicy;
 import com.calmasalud.hubi.persistence.db.SQLiteManager;
+import com.calmasalud.hubi.persistence.repository.MasterProductRepositorySQLite;
+import com.calmasalud.hubi.persistence.repository.ProductCompositionRepositorySQLite;
+import com.calmasalud.hubi.persistence.repository.ProductRepositorySQLite;
+import com.calmasalud.hubi.persistence.repository.SupplyRepositorySQLite;
 import com.calmasalud.hubi.ui.util.UISettings;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
@@ -11,10 +21,15 @@ import javafx.scene.text.Font; // Importar Font
 import javafx.stage.Stage;
 import javafx.application.Platform;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Objects; // Importar Objects
 
 public class Main extends Application {
 
+    private CatalogWatcher catalogWatcher;
+    private StorageCompactionJob storageCompactionJob;
+    private RecycleBinRetentionJob recycleBinRetentionJob;
+
     @Override
     public void start(Stage primaryStage) throws IOException {
         // 1. Cargar fuentes personalizadas (si existen)
@@ -45,6 +60,37 @@ public class Main extends Application {
         // Inicializar la papelera de reciclaje (crear carpeta si no existe)
         RecycleBinManager.ensureRecycleBinExists();
 
+        CatalogService catalogService = new CatalogService(
+                new ProductRepositorySQLite(),
+                new MasterProductRepositorySQLite(),
+                new ProductCompositionRepositorySQLite(),
+                new SupplyRepositorySQLite()
+        );
+        // Terminar o deshacer las cargas de productos que quedaron a la mitad (cierre inesperado)
+        catalogService.recoverIngestions();
+        // Índice en memoria del repositorio (lo comparten todas las vistas)
+        catalogService.rebuildCatalogIndex();
+        // Cambios hechos en el repositorio desde fuera de la aplicación (explorador de archivos)
+        catalogWatcher = new CatalogWatcher(
+                Paths.get(System.getProperty("user.home"), "SistemaHUBI", "RepositorioArchivos"), catalogService);
+        try {
+            catalogWatcher.start();
+        } catch (IOException e) {
+            System.err.println("Advertencia: No se pudo vigilar el repositorio de archivos: " + e.getMessage());
+        }
+        // Compresión en disco de los G-code sin uso (opcional, se elige en Configuración)
+        StoragePolicy storagePolicy = StoragePolicy.compressAfterDays(new UISettings().loadCompressAfterDays());
+        catalogService.setStoragePolicy(storagePolicy);
+        RecycleBinManager.setStoragePolicy(storagePolicy);
+        storageCompactionJob = new StorageCompactionJob(catalogService);
+        storageCompactionJob.start();
+        // Antigüedad y tamaño máximos de la papelera (opcional, se elige en Configuración)
+        UISettings retencion = new UISettings();
+        RecycleBinManager.setRetentionPolicy(
+                RetentionPolicy.of(retencion.loadRecycleBinMaxDays(), retencion.loadRecycleBinMaxSizeMB()));
+        recycleBinRetentionJob = new RecycleBinRetentionJob();
+        recycleBinRetentionJob.start();
+
         // 2. Cargar el archivo FXML de la vista principal
         FXMLLoader loader = new FXMLLoader(Objects.requireNonNull(getClass().getResource("/com/calmasalud/hubi/ui/view/MainView.fxml")));
         Parent root = loader.load();
@@ -105,6 +151,9 @@ public class Main extends Application {
             if (!primaryStage.isMaximized()) {
                 settings.saveWindowSize(primaryStage.getWidth(), primaryStage.getHeight());
             }
+            catalogWatcher.close();
+            storageCompactionJob.close();
+            recycleBinRetentionJob.close();
             Platform.exit();
             System.exit(0);
         });
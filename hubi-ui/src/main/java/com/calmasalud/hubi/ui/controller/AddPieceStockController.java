@@ -1,8 +1,10 @@
 package com.calmasalud.hubi.ui.controller;
 
+import com.calmasalud.hubi.core.model.DeductionPlan;
 import com.calmasalud.hubi.core.repository.IProductRepository;
 import com.calmasalud.hubi.core.service.CatalogService;
 import com.calmasalud.hubi.persistence.repository.ProductRepositorySQLite;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
@@ -87,6 +89,38 @@ public class AddPieceStockController {
         if (txtCantidad != null) {
             txtCantidad.setText("1");
         }
+        suggestColors();
+    }
+
+    /**
+     * Preselecciona los insumos que coinciden con los colores del archivo de la pieza.
+     * El archivo se analiza en segundo plano para no trabar el diálogo con G-codes grandes.
+     */
+    private void suggestColors() {
+        if (catalogService == null || pieceCode == null) return;
+        String code = pieceCode;
+        Thread worker = new Thread(() -> {
+            try {
+                List<String> suggested = catalogService.suggestColorKeys(code);
+                Platform.runLater(() -> applySuggestedColors(suggested));
+            } catch (RuntimeException e) {
+                System.err.println("⚠️ No se pudieron sugerir colores para " + code + ": " + e.getMessage());
+            }
+        }, "sugerencia-colores");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void applySuggestedColors(List<String> suggested) {
+        List<ComboBox<String>> combos = Arrays.asList(cmbColor1, cmbColor2, cmbColor3, cmbColor4);
+        for (int i = 0; i < suggested.size() && i < combos.size(); i++) {
+            ComboBox<String> combo = combos.get(i);
+            String key = suggested.get(i);
+            // Solo se preselecciona si el insumo está en la lista (con stock)
+            if (combo != null && key != null && combo.getItems().contains(key)) {
+                combo.getSelectionModel().select(key);
+            }
+        }
     }
 
     public boolean isProductionRegistered() {
@@ -110,6 +144,18 @@ public class AddPieceStockController {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Valor de cada ComboBox por posición (Color 1, Color 2...); null donde no se eligió insumo.
+     */
+    private List<String> getColorsByPosition() {
+        List<String> byPosition = new ArrayList<>();
+        for (ComboBox<String> combo : Arrays.asList(cmbColor1, cmbColor2, cmbColor3, cmbColor4)) {
+            String value = combo == null ? null : combo.getValue();
+            byPosition.add(value == null || value.trim().isEmpty() ? null : value.trim());
+        }
+        return byPosition;
+    }
+
     @FXML
     private void handleRegister() {
         // 1. VALIDACIÓN DE CANTIDAD
@@ -137,10 +183,20 @@ public class AddPieceStockController {
             return;
         }
 
-        // 3. PROCESAMIENTO CENTRALIZADO (Llamada única al servicio)
+        // 3. PLAN DE DESCUENTO: la línea i (de mayor a menor consumo) usa el insumo del Color i+1
         try {
-            // Esta función descuenta el insumo Y aumenta el stock de la pieza
-            List<String> reportMessages = catalogService.registerPieceProduction(this.pieceCode, selectedColors, quantity);
+            DeductionPlan plan = catalogService.planPieceProduction(this.pieceCode, quantity, getColorsByPosition());
+            if (plan == null) {
+                showAlert(AlertType.ERROR, "Error", "Pieza no encontrada con código: " + this.pieceCode);
+                return;
+            }
+            if (!plan.isValid()) {
+                showAlert(AlertType.ERROR, "Stock Insuficiente", String.join("\n", plan.problems));
+                return;
+            }
+
+            // Descuenta todos los insumos del plan en una sola transacción Y aumenta el stock de la pieza
+            List<String> reportMessages = catalogService.registerPieceProduction(this.pieceCode, plan);
 
             this.productionRegistered = true;
 
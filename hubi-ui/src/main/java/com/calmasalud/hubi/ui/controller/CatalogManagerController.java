@@ -1,7 +1,10 @@
 package com.calmasalud.hubi.ui.controller;
 
 
-import com.calmasalud.hubi.core.model.Product;
+import com.calmasalud.hubi.core.model.FilamentProfile;
+import com.calmasalud.hubi.core.model.PrintFileType;
+import com.calmasalud.hubi.core.model.PrintInfo;
+import com.calmasalud.hubi.core.model.PrintInfoFormatter;
 import com.calmasalud.hubi.core.repository.IMasterProductRepository;
 import com.calmasalud.hubi.core.repository.IProductCompositionRepository;
 import com.calmasalud.hubi.core.repository.IProductRepository;
@@ -9,8 +12,10 @@ import com.calmasalud.hubi.core.service.FileParameterExtractor;
 import com.calmasalud.hubi.persistence.repository.MasterProductRepositorySQLite;
 import com.calmasalud.hubi.persistence.repository.ProductCompositionRepositorySQLite;
 import com.calmasalud.hubi.persistence.repository.ProductRepositorySQLite;
+import com.calmasalud.hubi.core.service.CatalogIndex;
 import com.calmasalud.hubi.core.service.CatalogService;
 import com.calmasalud.hubi.ui.util.UISettings;
+import javafx.application.Platform;
 import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
@@ -20,6 +25,8 @@ import javafx.animation.Timeline;
 import javafx.geometry.Bounds;
 import javafx.scene.control.*;
 import javafx.scene.control.Alert.AlertType;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
 import javafx.scene.layout.StackPane;
 import javafx.scene.transform.Rotate;
 import javafx.stage.Modality;
@@ -30,6 +37,7 @@ import javafx.scene.control.TreeCell;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -113,7 +121,7 @@ public class CatalogManagerController {
     @FXML private StackPane visor3DPlaceholder;
 
     // NUEVO: ComboBox para seleccionar el perfil de filamento (Tool)
-    @FXML private ComboBox<Map.Entry<Integer, FileParameterExtractor.FilamentProfile>> cmbFilamento;
+    @FXML private ComboBox<Map.Entry<Integer, FilamentProfile>> cmbFilamento;
 
     // CAMPOS DE FILAMENTO ESPECÍFICO (Actualizados al cambiar cmbFilamento)
     @FXML private TextField paramPeso;
@@ -137,6 +145,11 @@ public class CatalogManagerController {
     private static final File REPOSITORIO_BASE =
             Paths.get(System.getProperty("user.home"), "SistemaHUBI", "RepositorioArchivos").toFile();
 
+    // Cambios externos del repositorio (CatalogWatcher). El índice lo guarda con referencia débil:
+    // vive mientras viva este controlador.
+    private final CatalogIndex.ChangeListener cambiosExternos =
+            change -> Platform.runLater(() -> aplicarCambiosExternos(change));
+
     @FXML
     public void initialize() {
         System.out.println("Controlador de Catálogo (v2.2 con Multi-Color) inicializado.");
@@ -194,26 +207,18 @@ public class CatalogManagerController {
             String realExtension = "";
 
             // 1. Obtenemos la extensión REAL del archivo en disco
-            int dotIndexFile = fileName.lastIndexOf('.');
-            if (dotIndexFile > 0) {
-                realExtension = fileName.substring(dotIndexFile); // Ej: ".stl"
-            }
-
-            // 2. Obtenemos el código para buscar en la BD
-            String code = (dotIndexFile > 0) ? fileName.substring(0, dotIndexFile) : fileName;
+            realExtension = PrintFileType.extensionOf(fileName); // Ej: ".stl", ".gcode.gz"
 
-            Product product = catalogoService.getProductDetails(code);
+            // 2. Nombre original de la pieza, desde el índice del catálogo (sin consultar la BD por fila)
+            CatalogIndex.PieceEntry piece = catalogoService.getCatalogIndex().getPiece(archivo.toPath());
 
             String nameToShow;
-            if (product != null && product.getName() != null) {
+            if (piece != null && piece.originalName != null) {
                 // 3. Obtenemos el nombre original de la BD (Ej: "MiPiezaOriginal.gcode")
-                String dbName = product.getName();
+                String dbName = piece.originalName;
 
                 // 4. Le quitamos la extensión vieja que traiga de la BD
-                int dotIndexDb = dbName.lastIndexOf('.');
-                if (dotIndexDb > 0) {
-                    dbName = dbName.substring(0, dotIndexDb); // Ej: "MiPiezaOriginal"
-                }
+                dbName = PrintFileType.baseName(dbName); // Ej: "MiPiezaOriginal"
 
                 // 5. CORRECCIÓN: Unimos Nombre BD + Extensión REAL
                 nameToShow = dbName + realExtension; // Resultado: "MiPiezaOriginal.stl"
@@ -227,17 +232,13 @@ public class CatalogManagerController {
         colTamaño.setCellValueFactory(cellData -> {
             File archivo = cellData.getValue();
             String fileName = archivo.getName();
-            String code = "";
-            if (fileName.contains(".")) {
-                code = fileName.substring(0, fileName.lastIndexOf('.'));
-            } else {
-                code = fileName;
-            }
+            String code = PrintFileType.baseName(fileName);
             return new ReadOnlyObjectWrapper<>(code);
         });
 
         colFechaMod.setCellValueFactory(cellData -> {
-            long timestamp = cellData.getValue().lastModified();
+            CatalogIndex.PieceEntry piece = catalogoService.getCatalogIndex().getPiece(cellData.getValue().toPath());
+            long timestamp = piece != null ? piece.lastModified : cellData.getValue().lastModified();
             Date fecha = new Date(timestamp);
             SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm");
             return new ReadOnlyObjectWrapper<>(sdf.format(fecha));
@@ -275,6 +276,7 @@ public class CatalogManagerController {
 
         // Carga inicial del TreeView y TableView
         refrescarVistaCatalogo();
+        catalogoService.getCatalogIndex().addListener(cambiosExternos);
         txtBusqueda.textProperty().addListener((observable, oldValue, newValue) -> {
             filtrarCatalogo(newValue);
         });
@@ -315,19 +317,12 @@ public class CatalogManagerController {
             return false;
         }
     }
-    // method auxiliar para cargar archivos de un directorio en la TableView
+    // method auxiliar para cargar archivos de un directorio en la TableView (desde el índice del catálogo:
+    // solo tiene archivos con extensiones permitidas y que no son ocultos)
     private void cargarDetallesCarpeta(File directorio) {
         fileTableView.getItems().clear();
-        File[] archivos = directorio.listFiles();
-        if (archivos != null) {
-            for (File f : archivos) {
-                String filename = f.getName().toLowerCase(Locale.ROOT);
-                // Filtrar solo archivos con extensiones permitidas y que no sean ocultos
-                if (f.isFile() && !f.getName().startsWith(".") &&
-                        (filename.endsWith(".stl") || filename.endsWith(".3mf") || filename.endsWith(".gcode"))) {
-                    fileTableView.getItems().add(f);
-                }
-            }
+        for (CatalogIndex.PieceEntry piece : catalogoService.getCatalogIndex().listPieces(directorio.toPath())) {
+            fileTableView.getItems().add(piece.path.toFile());
         }
     }
 
@@ -341,59 +336,58 @@ public class CatalogManagerController {
 
         // 1. Determinar el nombre base y la extensión del archivo seleccionado
         String fileName = selectedFile.getName();
-        String baseName = "";
-        String extension = "";
-        int dotIndex = fileName.lastIndexOf('.');
-
-        if (dotIndex > 0) {
-            baseName = fileName.substring(0, dotIndex);
-            extension = fileName.substring(dotIndex);
-        } else {
+        PrintFileType type = PrintFileType.fromFileName(fileName);
+        if (type == null) {
             clearParameters();
             return;
         }
+        String baseName = PrintFileType.baseName(fileName);
 
-        // 2. Determinar la extensión del archivo compañero y buscar
-        String companionExtension = "";
-        if (extension.toLowerCase(Locale.ROOT).endsWith(".gcode")) {
-            companionExtension = ".3mf";
-        } else if (extension.toLowerCase(Locale.ROOT).endsWith(".3mf")) {
-            companionExtension = ".gcode";
+        // 2. Determinar las extensiones del archivo compañero:
+        //    G-code (plano o archivado) -> .3mf ; .3mf/.stl -> cualquier variante de G-code
+        List<String> companionExtensions = new ArrayList<>();
+        if (type.isGCode()) {
+            companionExtensions.add(PrintFileType.THREE_MF.getExtension());
         } else {
-            // Si es .stl, se asume que no hay companion de datos relevantes o se busca el .gcode
-            companionExtension = ".gcode";
+            for (PrintFileType t : PrintFileType.values()) {
+                if (t.isGCode()) companionExtensions.add(t.getExtension());
+            }
         }
 
-        // 3. Buscar archivos en el mismo directorio
+        // 3. Buscar archivos en el mismo directorio (el primero que exista)
         File parentDir = selectedFile.getParentFile();
         List<File> filesToProcess = new ArrayList<>();
         filesToProcess.add(selectedFile);
 
-        if (!companionExtension.isEmpty()) {
+        for (String companionExtension : companionExtensions) {
             File companionFile = new File(parentDir, baseName + companionExtension);
             if (companionFile.exists()) {
                 filesToProcess.add(companionFile);
+                break;
             }
         }
 
         // 4. Extraer y cargar parámetros
-        FileParameterExtractor.PrintInfo info = extractor.extract(filesToProcess);
+        PrintInfo info = extractor.extract(filesToProcess);
         loadParameters(info);
 
-        // 5. Cargar modelo 3D (.stl)
+        // 5. Vista previa: primero la miniatura embebida (cacheada, sin leer la malla); si no hay, el .stl
+        Path thumbnail = null;
+        for (File f : filesToProcess) {
+            thumbnail = catalogoService.getThumbnail(f);
+            if (thumbnail != null) break;
+        }
         File stlFile = new File(parentDir, baseName + ".stl");
-        if (stlFile.exists()) {
+        if (thumbnail != null) {
+            showThumbnail(thumbnail);
+        } else if (stlFile.exists()) {
             loadStlModel(stlFile);
         } else {
             // Si no hay .stl, limpiar el visor y mostrar placeholder
             clear3DViewer();
         }
         // 6. Mantener el código de la pieza actual para futuras operaciones
-        if (fileName.contains(".")) {
-            this.currentPieceCode = fileName.substring(0, fileName.lastIndexOf('.'));
-        } else {
-            this.currentPieceCode = null;
-        }
+        this.currentPieceCode = PrintFileType.baseName(fileName);
         // Si el producto ya tiene un costo guardado en DB, podríamos mostrarlo,
         // pero aquí estamos calculando uno nuevo basado en el filamento.
         // La lógica actual recalcula el costo basado en el perfil extraído.
@@ -403,17 +397,18 @@ public class CatalogManagerController {
      * Carga los parámetros extraídos en los campos de la interfaz.
      * (MODIFICADO para manejar múltiples perfiles en el ComboBox)
      */
-    private void loadParameters(FileParameterExtractor.PrintInfo info) {
+    private void loadParameters(PrintInfo info) {
 
         // 1. Cargar parámetros generales (no cambian por filamento)
-        paramTiempo.setText(info.timeHuman != null ? info.timeHuman : "N/D");
-        paramAlturaCapa.setText(info.layerHeight != null ? info.layerHeight : "N/D");
+        String tiempo = PrintInfoFormatter.duration(info.timeSeconds);
+        paramTiempo.setText(info.timeEstimated ? tiempo + " (estimado)" : tiempo);
+        paramAlturaCapa.setText(PrintInfoFormatter.millimeters(info.layerHeightMm));
 
         // 2. Limpiar y llenar el ComboBox de Filamentos
         cmbFilamento.getItems().clear();
 
         // Convertir el mapa de perfiles a una lista de entradas para el ComboBox
-        List<Map.Entry<Integer, FileParameterExtractor.FilamentProfile>> profiles = new ArrayList<>(info.filamentProfiles.entrySet());
+        List<Map.Entry<Integer, FilamentProfile>> profiles = new ArrayList<>(info.filamentProfiles.entrySet());
         profiles.sort(Map.Entry.comparingByKey()); // Ordenar por Tool ID (T0, T1, T2...)
 
         cmbFilamento.setItems(FXCollections.observableArrayList(profiles));
@@ -421,7 +416,7 @@ public class CatalogManagerController {
         // 3. Seleccionar el primer perfil (o el T0) y cargar sus detalles en los campos específicos
         if (!profiles.isEmpty()) {
             // Intentar seleccionar T0. Si no existe, seleccionar el primero.
-            Map.Entry<Integer, FileParameterExtractor.FilamentProfile> initialSelection =
+            Map.Entry<Integer, FilamentProfile> initialSelection =
                     profiles.stream().filter(e -> e.getKey() == 0).findFirst().orElse(profiles.get(0));
 
             cmbFilamento.getSelectionModel().select(initialSelection);
@@ -436,19 +431,19 @@ public class CatalogManagerController {
     /**
      * Carga los parámetros de un perfil de filamento específico en los campos de la interfaz.
      */
-    private void loadFilamentProfile(FileParameterExtractor.FilamentProfile profile) {
+    private void loadFilamentProfile(FilamentProfile profile) {
         if (profile == null) {
             clearFilamentParameters();
             return;
         }
 
         // Asignación de parámetros específicos del filamento
-        paramPeso.setText(profile.filamentAmountG != null ? profile.filamentAmountG.replace(" g", "") : "N/D");
-        paramLargo.setText(profile.filamentAmountM != null ? profile.filamentAmountM.replace(" m", "") : "N/D");
-        paramTipoFilamento.setText(profile.filamentType != null ? profile.filamentType : "N/D");
+        paramPeso.setText(PrintInfoFormatter.number(profile.amountGrams));
+        paramLargo.setText(PrintInfoFormatter.number(profile.amountMeters));
+        paramTipoFilamento.setText(profile.materialLabel != null ? profile.materialLabel : PrintInfoFormatter.NOT_AVAILABLE);
         // Nota: paramColorFilamento ya no se usa, la info de color está en el ComboBox.
-        paramDensidad.setText(profile.filamentDensity != null ? profile.filamentDensity.replace(" g/cm³", "") : "N/D");
-        paramDiametro.setText(profile.filamentDiameter != null ? profile.filamentDiameter.replace(" mm", "") : "N/D");
+        paramDensidad.setText(PrintInfoFormatter.number(profile.densityGcm3));
+        paramDiametro.setText(PrintInfoFormatter.number(profile.diameterMm));
 
         // Disparar recálculo basado en el nuevo peso
         recalculateCost();
@@ -690,6 +685,21 @@ public class CatalogManagerController {
         }
     }
 
+    /**
+     * Muestra la miniatura en el visor, ajustada al tamaño del StackPane.
+     */
+    private void showThumbnail(Path thumbnail) {
+        Image image = new Image(thumbnail.toUri().toString(), true);
+        ImageView imageView = new ImageView(image);
+        imageView.setPreserveRatio(true);
+        imageView.setSmooth(true);
+        imageView.setManaged(false);
+        imageView.fitWidthProperty().bind(visor3DPlaceholder.widthProperty());
+        imageView.fitHeightProperty().bind(visor3DPlaceholder.heightProperty());
+        visor3DPlaceholder.getChildren().clear();
+        visor3DPlaceholder.getChildren().add(imageView);
+    }
+
     /**
      * Limpia el visor 3D y restaura el Label de placeholder.
      */
@@ -711,13 +721,9 @@ public class CatalogManagerController {
         TreeItem<File> item = new TreeItem<>(f);
         item.setExpanded(f.equals(REPOSITORIO_BASE));
 
-        File[] children = f.listFiles();
-        if (children != null) {
-            for (File childFile : children) {
-                if (childFile.isDirectory() && !childFile.getName().startsWith(".")) {
-                    item.getChildren().add(createNode(childFile));
-                }
-            }
+        // Subcarpetas visibles, desde el índice del catálogo
+        for (File childFile : catalogoService.getCatalogIndex().listFolders(f.toPath())) {
+            item.getChildren().add(createNode(childFile));
         }
         return item;
     }
@@ -820,6 +826,31 @@ public class CatalogManagerController {
         }
     }
 
+    /**
+     * Aplica un cambio externo del repositorio: si cambiaron carpetas se rearma el árbol (desde el índice,
+     * sin leer el disco); si solo cambiaron archivos se recarga la tabla de la carpeta visible.
+     */
+    private void aplicarCambiosExternos(CatalogIndex.Change change) {
+        String filtro = txtBusqueda.getText();
+        if (change.treeChanged) {
+            if (filtro != null && !filtro.trim().isEmpty()) {
+                filtrarCatalogo(filtro);
+            } else {
+                refrescarVistaCatalogo();
+            }
+            return;
+        }
+        TreeItem<File> selectedItem = folderTreeView.getSelectionModel().getSelectedItem();
+        File carpetaVisible = selectedItem != null ? selectedItem.getValue() : REPOSITORIO_BASE;
+        if (carpetaVisible != null && change.folders.contains(carpetaVisible.toPath().toAbsolutePath().normalize())) {
+            File seleccionado = fileTableView.getSelectionModel().getSelectedItem();
+            cargarDetallesCarpeta(carpetaVisible);
+            if (seleccionado != null && fileTableView.getItems().contains(seleccionado)) {
+                fileTableView.getSelectionModel().select(seleccionado);
+            }
+        }
+    }
+
     // Manejador del botón ELIMINAR
     @FXML
     public void handleEliminarClick() {
@@ -842,10 +873,7 @@ public class CatalogManagerController {
 
     // Muestra confirmación para eliminar Pieza
     private void showDeletePieceConfirmation(File pieceFile) {
-        String code = pieceFile.getName();
-        if (code.contains(".")) {
-            code = code.substring(0, code.lastIndexOf('.'));
-        }
+        String code = PrintFileType.baseName(pieceFile.getName());
 
         Optional<ButtonType> result = showConfirmationAlert("Confirmar Eliminación de Pieza",
                 "¿Está seguro de eliminar la pieza con código '" + code + "'?\nSe eliminará el archivo y su registro en la base de datos.");
@@ -937,23 +965,17 @@ public class CatalogManagerController {
             mostrarEsteNodo = true;
         }
 
-        // 2. Buscamos recursivamente en los hijos
-        File[] children = dir.listFiles();
-        if (children != null) {
-            for (File child : children) {
-                // Solo nos interesan las carpetas (los archivos van a la tabla de la derecha)
-                if (child.isDirectory() && !child.getName().startsWith(".")) {
+        // 2. Buscamos recursivamente en los hijos (solo carpetas: los archivos van a la tabla de la derecha)
+        for (File child : catalogoService.getCatalogIndex().listFolders(dir.toPath())) {
 
-                    // Llamada recursiva mágica
-                    TreeItem<File> childItem = createFilteredNode(child, texto);
+            // Llamada recursiva mágica
+            TreeItem<File> childItem = createFilteredNode(child, texto);
 
-                    // Si el hijo devolvió algo (es decir, él o sus descendientes coinciden)
-                    if (childItem != null) {
-                        item.getChildren().add(childItem);
-                        mostrarEsteNodo = true; // Si tengo un hijo que coincide, yo también debo apareer
-                        item.setExpanded(true); // Expandimos para que el usuario vea el resultado
-                    }
-                }
+            // Si el hijo devolvió algo (es decir, él o sus descendientes coinciden)
+            if (childItem != null) {
+                item.getChildren().add(childItem);
+                mostrarEsteNodo = true; // Si tengo un hijo que coincide, yo también debo apareer
+                item.setExpanded(true); // Expandimos para que el usuario vea el resultado
             }
         }
 
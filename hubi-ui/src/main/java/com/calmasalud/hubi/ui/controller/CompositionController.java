@@ -1,5 +1,6 @@
 package com.calmasalud.hubi.ui.controller;
 
+import com.calmasalud.hubi.core.model.PrintFileType;
 import com.calmasalud.hubi.core.model.Product;
 import com.calmasalud.hubi.core.model.ProductComposition;
 import com.calmasalud.hubi.core.repository.IProductCompositionRepository;
@@ -35,7 +36,7 @@ public class CompositionController {
 
         ObservableList<ProductComposition> initialComposition = rawPieces.stream()
                 .map(p -> {
-                    String baseName = p.getName().substring(0, p.getName().lastIndexOf('.'));
+                    String baseName = PrintFileType.baseName(p.getName());
                     // Valor por defecto: 1 unidad
                     return new ProductComposition(masterCode, baseName, 1);
                 })
@@ -9,6 +9,7 @@ import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.stage.Stage;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -19,6 +20,12 @@ public class ConfiguracionController {
     @FXML
     private ComboBox<String> cmbFuenteTamanos;
     @FXML
+    private ComboBox<String> cmbCompresion;
+    @FXML
+    private ComboBox<String> cmbPapeleraDias;
+    @FXML
+    private ComboBox<String> cmbPapeleraTamano;
+    @FXML
     private Button btnAplicar;
     @FXML
     private Button btnDetectar;
@@ -39,6 +46,29 @@ public class ConfiguracionController {
             "Extra Grande (25px)", 25.0
     );
 
+    // Días sin uso tras los que se comprime un G-code del repositorio (0 = nunca)
+    private final Map<String, Integer> PRESETS_COMPRESION = Map.of(
+            "Nunca", 0,
+            "Sin uso hace 30 días", 30,
+            "Sin uso hace 90 días", 90,
+            "Sin uso hace 180 días", 180
+    );
+
+    // Retención de la papelera: antigüedad máxima en días y tamaño máximo en MB (0 = sin límite)
+    private final Map<String, Integer> PRESETS_PAPELERA_DIAS = Map.of(
+            "Siempre", 0,
+            "30 días", 30,
+            "90 días", 90,
+            "1 año", 365
+    );
+
+    private final Map<String, Integer> PRESETS_PAPELERA_TAMANO = Map.of(
+            "Sin límite", 0,
+            "1 GB", 1024,
+            "5 GB", 5 * 1024,
+            "20 GB", 20 * 1024
+    );
+
     /**
      * Inyecta el Stage principal desde el MainController.
      */
@@ -114,6 +144,38 @@ public class ConfiguracionController {
         // Buscar el preset que coincida con el valor guardado
         String savedFontPreset = fontSizeToPreset(savedFontSize);
         cmbFuenteTamanos.setValue(savedFontPreset);
+
+        // Compresión de G-code: opciones ordenadas por días
+        cmbCompresion.setItems(FXCollections.observableArrayList(
+                PRESETS_COMPRESION.entrySet().stream()
+                        .sorted(Map.Entry.comparingByValue())
+                        .map(Map.Entry::getKey)
+                        .collect(Collectors.toList())
+        ));
+        int savedDays = settings.loadCompressAfterDays();
+        cmbCompresion.setValue(PRESETS_COMPRESION.entrySet().stream()
+                .filter(entry -> entry.getValue() == savedDays)
+                .map(Map.Entry::getKey)
+                .findFirst()
+                .orElse("Nunca"));
+
+        // Retención de la papelera
+        initPresetCombo(cmbPapeleraDias, PRESETS_PAPELERA_DIAS, settings.loadRecycleBinMaxDays());
+        initPresetCombo(cmbPapeleraTamano, PRESETS_PAPELERA_TAMANO, settings.loadRecycleBinMaxSizeMB());
+    }
+
+    // Opciones ordenadas por valor, con la guardada seleccionada (o la primera si no coincide con ninguna)
+    private static void initPresetCombo(ComboBox<String> combo, Map<String, Integer> presets, int saved) {
+        List<String> opciones = presets.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        combo.setItems(FXCollections.observableArrayList(opciones));
+        combo.setValue(presets.entrySet().stream()
+                .filter(entry -> entry.getValue() == saved)
+                .map(Map.Entry::getKey)
+                .findFirst()
+                .orElse(opciones.get(0)));
     }
 
     @FXML
@@ -173,6 +235,20 @@ public class ConfiguracionController {
         // Guardar configuración de fuente
         settings.saveBaseFontSize(baseFontSize);
 
+        // --- 3. Compresión de G-code (la tarea en segundo plano la toma al reiniciar) ---
+        String selectedCompresion = cmbCompresion.getValue();
+        if (selectedCompresion != null) {
+            settings.saveCompressAfterDays(PRESETS_COMPRESION.getOrDefault(selectedCompresion, 0));
+        }
+
+        // --- 4. Retención de la papelera (también al reiniciar) ---
+        if (cmbPapeleraDias.getValue() != null) {
+            settings.saveRecycleBinMaxDays(PRESETS_PAPELERA_DIAS.getOrDefault(cmbPapeleraDias.getValue(), 0));
+        }
+        if (cmbPapeleraTamano.getValue() != null) {
+            settings.saveRecycleBinMaxSizeMB(PRESETS_PAPELERA_TAMANO.getOrDefault(cmbPapeleraTamano.getValue(), 0));
+        }
+
         System.out.println("Configuración aplicada: " + width + "x" + height + " - Fuente: " + baseFontSize + "px");
     }
 
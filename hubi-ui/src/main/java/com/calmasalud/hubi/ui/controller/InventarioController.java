@@ -99,8 +99,7 @@ public class InventarioController {
             // Lógica para mostrar nombre de pieza vs producto
             if (item.getMasterCode() != null && item.getMasterCode().length() > 5) {
                 String originalFileName = item.getProductName();
-                int dotIndex = originalFileName.lastIndexOf('.');
-                return new SimpleStringProperty(dotIndex != -1 ? originalFileName.substring(0, dotIndex) : originalFileName);
+                return new SimpleStringProperty(PrintFileType.baseName(originalFileName));
             }
             return new SimpleStringProperty(item.getProductName());
         });
@@ -225,11 +224,11 @@ public class InventarioController {
 
                 for (Product piece : pieces) {
                     // Solo nos interesan los archivos GCODE (piezas físicas)
-                    if (piece.getFileExtension() == null || !piece.getFileExtension().equalsIgnoreCase(".gcode")) {
+                    if (!PrintFileType.isGCodeExtension(piece.getFileExtension())) {
                         continue;
                     }
 
-                    String pieceNameBase = piece.getName().substring(0, piece.getName().lastIndexOf('.'));
+                    String pieceNameBase = PrintFileType.baseName(piece.getName());
                     int totalPieceStock = productRepository.getPieceStockQuantity(pieceNameBase);
 
                     // Obtener costo unitario y cantidad requerida por receta
@@ -380,13 +379,10 @@ public class InventarioController {
                 List<Product> uniquePieces = new java.util.ArrayList<>(
                         rawPieces.stream()
                                 .collect(java.util.stream.Collectors.toMap(
-                                        p -> {
-                                            String name = p.getName();
-                                            return name.contains(".") ? name.substring(0, name.lastIndexOf('.')) : name;
-                                        },
+                                        p -> PrintFileType.baseName(p.getName()),
                                         p -> p,
                                         (existing, replacement) -> {
-                                            if (replacement.getFileExtension() != null && replacement.getFileExtension().equalsIgnoreCase(".gcode")) {
+                                            if (PrintFileType.isGCodeExtension(replacement.getFileExtension())) {
                                                 return replacement;
                                             }
                                             return existing;
@@ -546,7 +542,7 @@ public class InventarioController {
 
         MasterProduct pieceNode = pieceNodeItem.getValue(); // Nodo Padre: La pieza genérica
         String pieceNameOriginal = pieceNode.getProductName();
-        String pieceNameBase = pieceNameOriginal.substring(0, pieceNameOriginal.lastIndexOf('.'));
+        String pieceNameBase = PrintFileType.baseName(pieceNameOriginal);
         String colorName = colorNode.getProductName().replaceFirst("\\s*\\(\\d+ uds\\)", ""); // Limpiar el nombre del nodo para obtener solo el color
 
         // 3. SOLICITAR LA CANTIDAD A ELIMINAR (usando TextInputDialog)
@@ -1,5 +1,6 @@
 package com.calmasalud.hubi.ui.controller;
 
+import com.calmasalud.hubi.core.model.PrintFileType;
 import com.calmasalud.hubi.core.repository.IProductRepository;
 import com.calmasalud.hubi.persistence.repository.ProductRepositorySQLite;
 import javafx.collections.FXCollections;
@@ -107,7 +108,7 @@ public class RemovePieceStockController {
 
         try {
             // 2. OBTENER DATOS Y LLAMAR AL REPOSITORIO
-            String pieceNameBase = this.pieceName.substring(0, this.pieceName.lastIndexOf('.'));
+            String pieceNameBase = PrintFileType.baseName(this.pieceName);
             String colorUsed = cmbColor1.getValue();
 
             // Llama al Method que verifica el stock antes de restar
@@ -1,5 +1,6 @@
 package com.calmasalud.hubi.ui.controller;
 
+import com.calmasalud.hubi.core.model.PrintFileType;
 import com.calmasalud.hubi.core.repository.IMasterProductRepository;
 import com.calmasalud.hubi.core.repository.IProductCompositionRepository;
 import com.calmasalud.hubi.core.repository.IProductRepository;
@@ -12,6 +13,7 @@ import com.calmasalud.hubi.core.service.CatalogService;
 import com.calmasalud.hubi.core.repository.ISupplyRepository;
 import com.calmasalud.hubi.persistence.repository.SupplyRepositorySQLite;
 import javafx.collections.FXCollections;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.Node;
@@ -20,6 +22,7 @@ import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListView; // Importar
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.RadioButton;
 import javafx.scene.control.TextField;
 import javafx.scene.input.DragEvent;
@@ -72,6 +75,7 @@ public class TipoCargaController {
     @FXML private Button btnSeleccionarArchivo;
 
     @FXML private Label lblStatus;
+    @FXML private ProgressBar progressCarga;
     @FXML private Button btnSeleccionarDirectorio;
     @FXML private StackPane dropZone;
     @FXML private Label lblDropZone;
@@ -84,6 +88,8 @@ public class TipoCargaController {
     private File directorioProducto;
     private boolean cargaExitosa = false;
 
+    private static final long MB = 1024 * 1024;
+
     private static final String REPOSITORIO_BASE_PATH =
             System.getProperty("user.home") + File.separator + "SistemaHUBI" + File.separator + "RepositorioArchivos";
 
@@ -134,8 +140,7 @@ public class TipoCargaController {
      */
     private boolean esArchivoValido(File file) {
         if (file == null || !file.isFile()) return false;
-        String name = file.getName().toLowerCase();
-        return name.endsWith(".stl") || name.endsWith(".3mf") || name.endsWith(".gcode");
+        return PrintFileType.isSupported(file.getName());
     }
 
     /**
@@ -184,9 +189,9 @@ public class TipoCargaController {
     @FXML
     private void handleSeleccionarArchivos() {
         FileChooser fileChooser = new FileChooser();
-        fileChooser.setTitle("Seleccionar Archivo(s) de Diseño/Impresión (.stl, .3mf, .gcode)");
+        fileChooser.setTitle("Seleccionar Archivo(s) de Diseño/Impresión (.stl, .3mf, .gcode, .gcode.3mf, .gcode.gz, .bgcode)");
         fileChooser.getExtensionFilters().addAll(
-                new FileChooser.ExtensionFilter("Modelos 3D y GCode", "*.stl", "*.3mf", "*.gcode"),
+                new FileChooser.ExtensionFilter("Modelos 3D y GCode", "*.stl", "*.3mf", "*.gcode", "*.gcode.3mf", "*.gcode.gz", "*.bgcode"),
                 new FileChooser.ExtensionFilter("Todos los archivos", "*.*")
         );
         List<File> selected = fileChooser.showOpenMultipleDialog(rootVBox.getScene().getWindow());
@@ -317,14 +322,19 @@ public class TipoCargaController {
         // === NUEVA LÓGICA DE ADVERTENCIA PARA .3MF SOLO ===
         if (archivosSeleccionados.size() == 1) {
             File unicoArchivo = archivosSeleccionados.get(0);
-            String extension = unicoArchivo.getName().toLowerCase();
-
-            if (extension.endsWith(".3mf")) {
-                // Verificar si existe el archivo G-code complementario
-                String baseName = unicoArchivo.getName().substring(0, unicoArchivo.getName().lastIndexOf('.'));
-                File gcodeCompanion = new File(unicoArchivo.getParentFile(), baseName + ".gcode");
+            // Un .gcode.3mf ya trae el G-code embebido: solo se advierte por los .3mf de proyecto
+            if (PrintFileType.fromFileName(unicoArchivo.getName()) == PrintFileType.THREE_MF) {
+                // Verificar si existe el archivo G-code complementario (plano, comprimido o binario)
+                String baseName = PrintFileType.baseName(unicoArchivo.getName());
+                boolean gcodeCompanionExists = false;
+                for (PrintFileType type : PrintFileType.values()) {
+                    if (type.isGCode() && new File(unicoArchivo.getParentFile(), baseName + type.getExtension()).exists()) {
+                        gcodeCompanionExists = true;
+                        break;
+                    }
+                }
 
-                if (!gcodeCompanion.exists()) {
+                if (!gcodeCompanionExists) {
                     Optional<ButtonType> result = mostrarAlertaConOpcion(
                             "Advertencia de Extracción",
                             "Solo ha seleccionado un archivo .3mf (sin .gcode). La extracción de parámetros no será posible o será muy limitada.",
@@ -363,42 +373,66 @@ public class TipoCargaController {
             }
         }
 
-        // Lógica de carga (MODIFICADA CON BUCLE)
-        try {
-            int archivosCargados = 0;
-            int archivosFallidos = 0;
-            StringBuilder errores = new StringBuilder();
-
-            if (esPieza) {
-                // Modo Pieza: Bucle, cada archivo es procesado individualmente (con lógica de correlación/duplicado)
-                for (File archivo : this.archivosSeleccionados) {
+        // Lógica de carga (MODIFICADA CON BUCLE): corre en segundo plano con barra de avance
+        final String destino = esPieza ? valorIngresado : valorIngresado.trim();
+        final List<File> archivos = new ArrayList<>(this.archivosSeleccionados);
+        final StringBuilder errores = new StringBuilder();
+
+        Task<int[]> tareaCarga = new Task<>() {
+            @Override
+            protected int[] call() {
+                int archivosCargados = 0;
+                int archivosFallidos = 0;
+                updateMessage("Extrayendo parámetros...");
+                updateProgress(-1, 1);
+
+                if (esPieza) {
+                    // Modo Pieza: Bucle, cada archivo es procesado individualmente (con lógica de correlación/duplicado)
+                    for (File archivo : archivos) {
+                        final String nombre = archivo.getName();
+                        try {
+                            catalogoService.procesarCargaPieza(archivo, destino, // destino es la ruta del directorio
+                                    (hechos, total) -> informarAvance(nombre, hechos, total));
+                            archivosCargados++;
+                        } catch (IllegalArgumentException | IOException e) {
+                            archivosFallidos++;
+                            errores.append(archivo.getName()).append(": ").append(e.getMessage()).append("\n");
+                        } catch (Exception e) {
+                            archivosFallidos++;
+                            errores.append(archivo.getName()).append(": Error inesperado (").append(e.getClass().getSimpleName()).append(")\n");
+                            e.printStackTrace();
+                        }
+                    }
+                } else {
+                    // Modo Producto: Llamada al Method de lista (REQ 1)
                     try {
-                        catalogoService.procesarCargaPieza(archivo, valorIngresado); // valorIngresado es la ruta del directorio
-                        archivosCargados++;
+                        catalogoService.procesarCargaProducto(archivos, destino,
+                                (hechos, total) -> informarAvance(destino, hechos, total));
+                        archivosCargados = archivos.size();
                     } catch (IllegalArgumentException | IOException e) {
-                        archivosFallidos++;
-                        errores.append(archivo.getName()).append(": ").append(e.getMessage()).append("\n");
+                        archivosFallidos = archivos.size();
+                        errores.append("Producto ").append(destino).append(" (Error General):\n").append(e.getMessage()).append("\n");
                     } catch (Exception e) {
-                        archivosFallidos++;
-                        errores.append(archivo.getName()).append(": Error inesperado (").append(e.getClass().getSimpleName()).append(")\n");
+                        archivosFallidos = archivos.size();
+                        errores.append("Producto ").append(destino).append(": Error inesperado (").append(e.getClass().getSimpleName()).append(")\n");
                         e.printStackTrace();
                     }
                 }
-            } else {
-                // Modo Producto: Llamada al Method de lista (REQ 1)
-                try {
-                    catalogoService.procesarCargaProducto(this.archivosSeleccionados, valorIngresado.trim());
-                    archivosCargados = this.archivosSeleccionados.size();
-                } catch (IllegalArgumentException | IOException e) {
-                    archivosFallidos = this.archivosSeleccionados.size();
-                    errores.append("Producto ").append(valorIngresado).append(" (Error General):\n").append(e.getMessage()).append("\n");
-                } catch (Exception e) {
-                    archivosFallidos = this.archivosSeleccionados.size();
-                    errores.append("Producto ").append(valorIngresado).append(": Error inesperado (").append(e.getClass().getSimpleName()).append(")\n");
-                    e.printStackTrace();
-                }
+                return new int[]{archivosCargados, archivosFallidos};
             }
 
+            // Se llama desde los hilos de copia: updateProgress/updateMessage ya pasan al hilo de JavaFX
+            private void informarAvance(String nombre, long hechos, long total) {
+                updateProgress(hechos, total);
+                updateMessage("Copiando " + nombre + ": " + (hechos / MB) + " de " + (total / MB) + " MB");
+            }
+        };
+
+        tareaCarga.setOnSucceeded(e -> {
+            finalizarCarga();
+            int archivosCargados = tareaCarga.getValue()[0];
+            int archivosFallidos = tareaCarga.getValue()[1];
+
             // Reportar resultado
             if (archivosFallidos == 0) {
                 String tipo = (archivosCargados > 1) ? "archivos" : (esPieza ? "pieza" : "producto");
@@ -413,12 +447,37 @@ public class TipoCargaController {
                     closeWindow(event);
                 }
             }
-
-        } catch (Exception e) {
-            mostrarAlerta(AlertType.ERROR, "Error Inesperado", "Ocurrió un error no previsto: " + e.getMessage());
+        });
+        tareaCarga.setOnFailed(e -> {
+            finalizarCarga();
+            Throwable error = tareaCarga.getException();
+            mostrarAlerta(AlertType.ERROR, "Error Inesperado", "Ocurrió un error no previsto: " + error.getMessage());
             this.cargaExitosa = false;
-            e.printStackTrace();
-        }
+            error.printStackTrace();
+        });
+
+        // Bloquear el formulario mientras dura la carga
+        btnCargar.setDisable(true);
+        btnCancelar.setDisable(true);
+        progressCarga.setVisible(true);
+        progressCarga.setManaged(true);
+        progressCarga.progressProperty().bind(tareaCarga.progressProperty());
+        lblStatus.textProperty().bind(tareaCarga.messageProperty());
+
+        Thread hilo = new Thread(tareaCarga, "carga-archivos");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    // Devuelve el formulario a su estado normal al terminar la carga
+    private void finalizarCarga() {
+        progressCarga.progressProperty().unbind();
+        lblStatus.textProperty().unbind();
+        progressCarga.setVisible(false);
+        progressCarga.setManaged(false);
+        btnCargar.setDisable(false);
+        btnCancelar.setDisable(false);
+        lblStatus.setText(archivosSeleccionados.size() + " archivo(s) seleccionado(s).");
     }
 
     @FXML
@@ -16,6 +16,9 @@ public class UISettings {
     private static final String KEY_WINDOW_HEIGHT = "windowHeight";
     private static final String KEY_RESOLUTION_PRESET = "resolutionPreset";
     private static final String KEY_BASE_FONT_SIZE = "baseFontSize";
+    private static final String KEY_COMPRESS_AFTER_DAYS = "compressAfterDays";
+    private static final String KEY_RECYCLE_MAX_DAYS = "recycleBinMaxDays";
+    private static final String KEY_RECYCLE_MAX_SIZE_MB = "recycleBinMaxSizeMB";
 
     // Valores por defecto (mínimos seguros)
     private static final double DEFAULT_WIDTH = 1024;
@@ -141,6 +144,42 @@ public class UISettings {
         return prefs.getDouble(KEY_BASE_FONT_SIZE, DEFAULT_BASE_FONT_SIZE);
     }
 
+    /**
+     * Guarda los días sin uso tras los que se comprime un G-code del repositorio (0 = no comprimir).
+     */
+    public void saveCompressAfterDays(int days) {
+        prefs.putInt(KEY_COMPRESS_AFTER_DAYS, Math.max(0, days));
+    }
+
+    /**
+     * Carga los días sin uso para comprimir G-code (0 = no comprimir, el valor por defecto).
+     */
+    public int loadCompressAfterDays() {
+        return Math.max(0, prefs.getInt(KEY_COMPRESS_AFTER_DAYS, 0));
+    }
+
+    /**
+     * Guarda la antigüedad máxima de lo que queda en la papelera, en días (0 = sin límite).
+     */
+    public void saveRecycleBinMaxDays(int days) {
+        prefs.putInt(KEY_RECYCLE_MAX_DAYS, Math.max(0, days));
+    }
+
+    public int loadRecycleBinMaxDays() {
+        return Math.max(0, prefs.getInt(KEY_RECYCLE_MAX_DAYS, 0));
+    }
+
+    /**
+     * Guarda el tamaño máximo de la papelera, en MB (0 = sin límite).
+     */
+    public void saveRecycleBinMaxSizeMB(int megabytes) {
+        prefs.putInt(KEY_RECYCLE_MAX_SIZE_MB, Math.max(0, megabytes));
+    }
+
+    public int loadRecycleBinMaxSizeMB() {
+        return Math.max(0, prefs.getInt(KEY_RECYCLE_MAX_SIZE_MB, 0));
+    }
+
     /**
      * Versión principal de 4 argumentos. Llamada por Methods estáticos.
      */